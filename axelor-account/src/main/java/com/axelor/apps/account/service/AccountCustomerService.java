@@ -40,7 +40,9 @@ import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.time.ZoneOffset;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.persistence.Query;
 import javax.persistence.TemporalType;
 import org.slf4j.Logger;
@@ -84,26 +86,11 @@ public class AccountCustomerService {
 
     Query query =
         JPA.em()
-            .createNativeQuery(
-                "SELECT SUM(COALESCE(m1.sum_remaining,0) - COALESCE(m2.sum_remaining,0) ) "
-                    + "FROM public.account_move_line AS ml  "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.debit > 0  GROUP BY moveline.id, moveline.amount_remaining) AS m1 ON (m1.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.credit > 0  GROUP BY moveline.id, moveline.amount_remaining) AS m2 ON (m2.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN public.account_account AS account ON (ml.account = account.id) "
-                    + "LEFT OUTER JOIN public.account_move AS move ON (ml.move = move.id) "
-                    + "WHERE ml.partner = ?1 AND move.company = ?2 AND move.ignore_in_accounting_ok IN ('false', null)"
-                    + "AND account.use_for_partner_balance = 'true'"
-                    + "AND (move.status_select = ?3 or move.status_select = ?4) AND ml.amount_remaining > 0 ")
-            .setParameter(1, partner)
-            .setParameter(2, company)
-            .setParameter(3, MoveRepository.STATUS_VALIDATED)
-            .setParameter(4, MoveRepository.STATUS_ACCOUNTED);
+            .createNativeQuery(this.getBalanceQuery(false))
+            .setParameter("partner", partner)
+            .setParameter("company", company)
+            .setParameter("statusValidated", MoveRepository.STATUS_VALIDATED)
+            .setParameter("statusDaybook", MoveRepository.STATUS_ACCOUNTED);
 
     BigDecimal balance = (BigDecimal) query.getSingleResult();
 
@@ -116,6 +103,34 @@ public class AccountCustomerService {
     return balance;
   }
 
+  /**
+   * Compute the balance of every partner of a company with a single query.
+   *
+   * @param company A Company
+   * @return The balance by partner id, partners without balance are missing.
+   */
+  public Map<Long, BigDecimal> getBalanceMap(Company company) {
+    log.debug("Compute balances (Company : {})", company.getName());
+
+    Query query =
+        JPA.em()
+            .createNativeQuery(this.getBalanceQuery(true))
+            .setParameter("company", company)
+            .setParameter("statusValidated", MoveRepository.STATUS_VALIDATED)
+            .setParameter("statusDaybook", MoveRepository.STATUS_ACCOUNTED);
+
+    return this.getBalanceMap(query);
+  }
+
+  protected String getBalanceQuery(boolean groupByPartner) {
+    return this.getBalanceQuery(
+        null,
+        "",
+        "AND move.ignore_in_accounting_ok IN ('false', null) "
+            + "AND account.use_for_partner_balance = 'true' ",
+        groupByPartner);
+  }
+
   /**
    * Compute the balance due for a specific (company, trading name) combination.
    *
@@ -133,35 +148,8 @@ public class AccountCustomerService {
 
     Query query =
         JPA.em()
-            .createNativeQuery(
-                "SELECT SUM( COALESCE(m1.sum_remaining,0) - COALESCE(m2.sum_remaining,0) ) "
-                    + "FROM public.account_move_line AS ml  "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.debit > 0 "
-                    + "AND ((moveline.due_date IS NULL AND moveline.date_val <= :todayDate) OR (moveline.due_date IS NOT NULL AND moveline.due_date <= :todayDate)) "
-                    + "GROUP BY moveline.id, moveline.amount_remaining) AS m1 on (m1.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.credit > 0 "
-                    + "GROUP BY moveline.id, moveline.amount_remaining) AS m2 ON (m2.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN public.account_account AS account ON (ml.account = account.id) "
-                    + "LEFT OUTER JOIN public.account_move AS move ON (ml.move = move.id) "
-                    + "WHERE ml.partner = :partner AND move.company = :company AND move.ignore_in_debt_recovery_ok IN ('false', null) "
-                    + (tradingName != null ? "AND move.trading_name = :tradingName " : "")
-                    + "AND move.ignore_in_accounting_ok IN ('false', null) AND account.use_for_partner_balance = 'true'"
-                    + "AND (move.status_select = :statusValidated OR move.status_select = :statusDaybook) AND ml.amount_remaining > 0 ")
-            .setParameter(
-                "todayDate",
-                Date.from(
-                    appBaseService
-                        .getTodayDate(company)
-                        .atStartOfDay()
-                        .atZone(ZoneOffset.UTC)
-                        .toInstant()),
-                TemporalType.DATE)
+            .createNativeQuery(this.getBalanceDueQuery(tradingName != null, false))
+            .setParameter("todayDate", this.getTodayDate(company), TemporalType.DATE)
             .setParameter("partner", partner)
             .setParameter("company", company)
             .setParameter("statusValidated", MoveRepository.STATUS_VALIDATED)
@@ -182,6 +170,38 @@ public class AccountCustomerService {
     return balance;
   }
 
+  /**
+   * Compute the balance due of every partner of a company with a single query.
+   *
+   * @param company A Company
+   * @return The balance due by partner id, partners without balance due are missing.
+   */
+  public Map<Long, BigDecimal> getBalanceDueMap(Company company) {
+    log.debug("Compute balances due (Company : {})", company.getName());
+
+    Query query =
+        JPA.em()
+            .createNativeQuery(this.getBalanceDueQuery(false, true))
+            .setParameter("todayDate", this.getTodayDate(company), TemporalType.DATE)
+            .setParameter("company", company)
+            .setParameter("statusValidated", MoveRepository.STATUS_VALIDATED)
+            .setParameter("statusDaybook", MoveRepository.STATUS_ACCOUNTED);
+
+    return this.getBalanceMap(query);
+  }
+
+  protected String getBalanceDueQuery(boolean filterTradingName, boolean groupByPartner) {
+    return this.getBalanceQuery(
+        "((ml.due_date IS NULL AND ml.date_val <= :todayDate) "
+            + "OR (ml.due_date IS NOT NULL AND ml.due_date <= :todayDate))",
+        "",
+        "AND move.ignore_in_debt_recovery_ok IN ('false', null) "
+            + (filterTradingName ? "AND move.trading_name = :tradingName " : "")
+            + "AND move.ignore_in_accounting_ok IN ('false', null) "
+            + "AND account.use_for_partner_balance = 'true' ",
+        groupByPartner);
+  }
+
   /**
    * **************************************** 2. Calcul du solde exigible (relançable) du tiers
    * *****************************************
@@ -204,50 +224,12 @@ public class AccountCustomerService {
         company.getName(),
         tradingName != null ? tradingName.getName() : null);
 
-    int mailTransitTime = 0;
-
-    AccountConfig accountConfig = company.getAccountConfig();
-
-    if (accountConfig != null) {
-      mailTransitTime = accountConfig.getMailTransitTime();
-    }
-
     // TODO: Replace native query to standard JPQL query
     Query query =
         JPA.em()
-            .createNativeQuery(
-                "SELECT SUM( COALESCE(m1.sum_remaining,0) - COALESCE(m2.sum_remaining,0) ) "
-                    + "FROM public.account_move_line as ml  "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.debit > 0 AND (( moveline.date_val = moveline.due_date AND (moveline.due_date + :mailTransitTime ) < :todayDate ) "
-                    + "OR (moveline.due_date IS NOT NULL AND moveline.date_val != moveline.due_date AND moveline.due_date < :todayDate)"
-                    + "OR (moveline.due_date IS NULL AND moveline.date_val < :todayDate)) "
-                    + "GROUP BY moveline.id, moveline.amount_remaining) AS m1 ON (m1.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.credit > 0 "
-                    + "GROUP BY moveline.id, moveline.amount_remaining) AS m2 ON (m2.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN public.account_account AS account ON (ml.account = account.id) "
-                    + "LEFT OUTER JOIN public.account_move AS move ON (ml.move = move.id) "
-                    + "LEFT JOIN public.account_invoice AS invoice ON (move.invoice = invoice.id) "
-                    + "WHERE ml.partner = :partner AND move.company = :company AND move.ignore_in_debt_recovery_ok in ('false', null) "
-                    + (tradingName != null ? "AND move.trading_name = :tradingName " : "")
-                    + "AND move.ignore_in_accounting_ok IN ('false', null) AND account.use_for_partner_balance = 'true'"
-                    + "AND (move.status_select = :statusValidated OR move.status_select = :statusDaybook) AND ml.amount_remaining > 0 "
-                    + "AND (invoice IS NULL OR invoice.debt_recovery_blocking_ok = FALSE) ")
-            .setParameter("mailTransitTime", mailTransitTime)
-            .setParameter(
-                "todayDate",
-                Date.from(
-                    appBaseService
-                        .getTodayDate(company)
-                        .atStartOfDay()
-                        .atZone(ZoneOffset.UTC)
-                        .toInstant()),
-                TemporalType.DATE)
+            .createNativeQuery(this.getBalanceDueDebtRecoveryQuery(tradingName != null, false))
+            .setParameter("mailTransitTime", this.getMailTransitTime(company))
+            .setParameter("todayDate", this.getTodayDate(company), TemporalType.DATE)
             .setParameter("partner", partner)
             .setParameter("company", company)
             .setParameter("statusValidated", MoveRepository.STATUS_VALIDATED)
@@ -268,6 +250,96 @@ public class AccountCustomerService {
     return balance;
   }
 
+  /**
+   * Compute the balance due debt recovery of every partner of a company with a single query.
+   *
+   * @param company A Company
+   * @return The balance due debt recovery by partner id, partners without balance are missing.
+   */
+  public Map<Long, BigDecimal> getBalanceDueDebtRecoveryMap(Company company) {
+    log.debug("Compute balances due debt recovery (Company : {})", company.getName());
+
+    Query query =
+        JPA.em()
+            .createNativeQuery(this.getBalanceDueDebtRecoveryQuery(false, true))
+            .setParameter("mailTransitTime", this.getMailTransitTime(company))
+            .setParameter("todayDate", this.getTodayDate(company), TemporalType.DATE)
+            .setParameter("company", company)
+            .setParameter("statusValidated", MoveRepository.STATUS_VALIDATED)
+            .setParameter("statusDaybook", MoveRepository.STATUS_ACCOUNTED);
+
+    return this.getBalanceMap(query);
+  }
+
+  protected String getBalanceDueDebtRecoveryQuery(
+      boolean filterTradingName, boolean groupByPartner) {
+    return this.getBalanceQuery(
+        "((ml.date_val = ml.due_date AND (ml.due_date + :mailTransitTime) < :todayDate) "
+            + "OR (ml.due_date IS NOT NULL AND ml.date_val != ml.due_date "
+            + "AND ml.due_date < :todayDate) "
+            + "OR (ml.due_date IS NULL AND ml.date_val < :todayDate))",
+        "LEFT JOIN public.account_invoice AS invoice ON (move.invoice = invoice.id) ",
+        "AND move.ignore_in_debt_recovery_ok IN ('false', null) "
+            + (filterTradingName ? "AND move.trading_name = :tradingName " : "")
+            + "AND move.ignore_in_accounting_ok IN ('false', null) "
+            + "AND account.use_for_partner_balance = 'true' "
+            + "AND (invoice IS NULL OR invoice.debt_recovery_blocking_ok = FALSE) ",
+        groupByPartner);
+  }
+
+  /**
+   * Build a balance query on the move lines with a remaining amount of validated or accounted
+   * moves. Each line counts for its remaining amount, positively if it is a debit matching the
+   * debit condition and negatively if it is a credit.
+   *
+   * @param debitCondition condition on the debit lines (alias ml), can be null.
+   * @param join additional joins.
+   * @param filter additional filter.
+   * @param groupByPartner true to select the partner id and the balance of each partner of the
+   *     company, false to select the balance of the partner given as parameter.
+   * @return the native query.
+   */
+  protected String getBalanceQuery(
+      String debitCondition, String join, String filter, boolean groupByPartner) {
+    return "SELECT "
+        + (groupByPartner ? "ml.partner, " : "")
+        + "SUM((CASE WHEN ml.debit > 0 "
+        + (debitCondition != null ? "AND " + debitCondition + " " : "")
+        + "THEN ml.amount_remaining ELSE 0 END) "
+        + "- (CASE WHEN ml.credit > 0 THEN ml.amount_remaining ELSE 0 END)) "
+        + "FROM public.account_move_line AS ml "
+        + "LEFT OUTER JOIN public.account_account AS account ON (ml.account = account.id) "
+        + "LEFT OUTER JOIN public.account_move AS move ON (ml.move = move.id) "
+        + join
+        + (groupByPartner ? "WHERE ml.partner IS NOT NULL " : "WHERE ml.partner = :partner ")
+        + "AND move.company = :company "
+        + filter
+        + "AND (move.status_select = :statusValidated OR move.status_select = :statusDaybook) "
+        + "AND ml.amount_remaining > 0"
+        + (groupByPartner ? " GROUP BY ml.partner" : "");
+  }
+
+  @SuppressWarnings("unchecked")
+  protected Map<Long, BigDecimal> getBalanceMap(Query query) {
+    Map<Long, BigDecimal> balanceMap = new HashMap<>();
+    for (Object[] result : (List<Object[]>) query.getResultList()) {
+      if (result[1] != null) {
+        balanceMap.put(((Number) result[0]).longValue(), (BigDecimal) result[1]);
+      }
+    }
+    return balanceMap;
+  }
+
+  protected Date getTodayDate(Company company) {
+    return Date.from(
+        appBaseService.getTodayDate(company).atStartOfDay().atZone(ZoneOffset.UTC).toInstant());
+  }
+
+  protected int getMailTransitTime(Company company) {
+    AccountConfig accountConfig = company.getAccountConfig();
+    return accountConfig != null ? accountConfig.getMailTransitTime() : 0;
+  }
+
   /**
    * Méthode permettant de récupérer l'ensemble des lignes d'écriture pour une société et un tiers
    *
@@ -347,15 +419,41 @@ public class AccountCustomerService {
         updateDueCustAccount,
         updateDueDebtRecoveryCustAccount);
 
-    if (updateCustAccount) {
-      accountingSituation.setBalanceCustAccount(this.getBalance(partner, company));
+    return this.updateAccountingSituationCustomerAccount(
+        accountingSituation,
+        updateCustAccount ? this.getBalance(partner, company) : null,
+        updateDueCustAccount ? this.getBalanceDue(partner, company, null) : null,
+        updateDueDebtRecoveryCustAccount
+            ? this.getBalanceDueDebtRecovery(partner, company, null)
+            : null);
+  }
+
+  /**
+   * Update the customer account of an accounting situation with already computed balances, for
+   * instance from {@link #getBalanceMap(Company)}.
+   *
+   * @param accountingSituation An accounting situation
+   * @param balance The balance, null to keep the current one
+   * @param balanceDue The balance due, null to keep the current one
+   * @param balanceDueDebtRecovery The balance due debt recovery, null to keep the current one
+   * @return The updated accounting situation
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {Exception.class})
+  public AccountingSituation updateAccountingSituationCustomerAccount(
+      AccountingSituation accountingSituation,
+      BigDecimal balance,
+      BigDecimal balanceDue,
+      BigDecimal balanceDueDebtRecovery)
+      throws AxelorException {
+    if (balance != null) {
+      accountingSituation.setBalanceCustAccount(balance);
     }
-    if (updateDueCustAccount) {
-      accountingSituation.setBalanceDueCustAccount(this.getBalanceDue(partner, company, null));
+    if (balanceDue != null) {
+      accountingSituation.setBalanceDueCustAccount(balanceDue);
     }
-    if (updateDueDebtRecoveryCustAccount) {
-      accountingSituation.setBalanceDueDebtRecoveryCustAccount(
-          this.getBalanceDueDebtRecovery(partner, company, null));
+    if (balanceDueDebtRecovery != null) {
+      accountingSituation.setBalanceDueDebtRecoveryCustAccount(balanceDueDebtRecovery);
     }
     accountingSituation.setCustAccountMustBeUpdateOk(false);
     accSituationRepo.save(accountingSituation);
@@ -41,6 +41,7 @@ import com.axelor.apps.base.db.repo.SequenceRepository;
 import com.axelor.apps.base.service.PartnerService;
 import com.axelor.apps.base.service.administration.SequenceService;
 import com.axelor.apps.tool.file.CsvTool;
+import com.axelor.auth.AuthUtils;
 import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
@@ -49,8 +50,10 @@ import com.axelor.inject.Beans;
 import com.axelor.meta.MetaFiles;
 import com.axelor.meta.db.MetaFile;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
+import com.opencsv.CSVWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -60,11 +63,17 @@ import java.math.BigDecimal;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import javax.persistence.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -87,6 +96,8 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
 
   protected static final String DATE_FORMAT_YYYYMMDD = "yyyyMMdd";
   protected static final String DATE_FORMAT_YYYYMMDDHHMMSS = "yyyyMMddHHmmss";
+  protected static final int UPDATE_MOVE_CHUNK_SIZE = 1000;
+  protected static final int EXPORT_FETCH_SIZE = 500;
 
   @Inject
   public MoveLineExportServiceImpl(
@@ -120,25 +131,155 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       LocalDate localDate,
       String exportNumber) {
 
-    int i = 0;
-
-    int moveListSize = moveList.size();
+    List<Long> moveIdList = new ArrayList<>();
+    for (Move move : moveList) {
+      moveIdList.add(move.getId());
+    }
+    this.updateMoveIdList(moveIdList, accountingReport, localDate, exportNumber);
 
     for (Move move : moveList) {
+      if (JPA.em().contains(move)) {
+        JPA.em().refresh(move);
+      }
+    }
+  }
 
-      this.updateMove(
-          moveRepo.find(move.getId()),
-          accountingReportRepo.find(accountingReport.getId()),
-          localDate,
-          exportNumber);
+  /**
+   * Flag the moves as exported with bulk updates, without loading them. The version of the moves
+   * is incremented, so a move edited meanwhile cannot be saved over the export.
+   *
+   * <p>The save method of the move repository is not called: it only checks the accounted moves
+   * and fills the fields of new moves, and none of the updated fields are involved. The moves
+   * already loaded in the persistence context are not updated, the caller has to refresh them.
+   *
+   * @param moveIdList
+   * @param accountingReport
+   * @param localDate
+   * @param exportNumber
+   */
+  @Transactional
+  protected void updateMoveIdList(
+      List<Long> moveIdList,
+      AccountingReport accountingReport,
+      LocalDate localDate,
+      String exportNumber) {
+
+    Query updateQuery =
+        JPA.em()
+            .createQuery(
+                "UPDATE Move self SET self.exportNumber = :exportNumber, "
+                    + "self.exportDate = :exportDate, self.accountingOk = true, "
+                    + "self.accountingReport = :accountingReport, "
+                    + "self.version = self.version + 1, self.updatedOn = :updatedOn, "
+                    + "self.updatedBy = :updatedBy "
+                    + "WHERE self.id IN :moveIdList")
+            .setParameter("exportNumber", exportNumber)
+            .setParameter("exportDate", localDate)
+            .setParameter("accountingReport", accountingReportRepo.find(accountingReport.getId()))
+            .setParameter("updatedOn", LocalDateTime.now())
+            .setParameter("updatedBy", AuthUtils.getUser());
+
+    int i = 0;
+    for (List<Long> moveIdSubList : Lists.partition(moveIdList, UPDATE_MOVE_CHUNK_SIZE)) {
+      updateQuery.setParameter("moveIdList", moveIdSubList).executeUpdate();
+      i += moveIdSubList.size();
+      log.debug("Process : {} / {}", i, moveIdList.size());
+    }
+  }
 
-      if (i % 10 == 0) {
-        JPA.clear();
+  /**
+   * Get the ids of the moves of a journal at a date, without loading the moves.
+   *
+   * @param date
+   * @param journal
+   * @param moveQueryStr the other conditions on the moves, starting with AND
+   * @return the move ids, in id order
+   */
+  protected List<Long> findMoveIdList(LocalDate date, Journal journal, String moveQueryStr) {
+    return JPA.em()
+        .createQuery(
+            "SELECT self.id FROM Move self WHERE self.date = :date "
+                + "AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false "
+                + "AND self.journal = :journal"
+                + moveQueryStr
+                + " ORDER BY self.id",
+            Long.class)
+        .setParameter("date", date)
+        .setParameter("journal", journal)
+        .getResultList();
+  }
+
+  /**
+   * Sum an amount of the move lines of the given moves, querying the moves by chunks.
+   *
+   * @param amountField debit or credit
+   * @param queryFilter the move line filter, with a <code>self.move.id IN :moveIdList</code>
+   *     condition
+   * @param moveIdList
+   * @return the sum, zero if there is no move line
+   */
+  protected BigDecimal getMoveLineSum(
+      String amountField, String queryFilter, List<Long> moveIdList) {
+    BigDecimal sum = BigDecimal.ZERO;
+    for (List<Long> moveIdSubList : Lists.partition(moveIdList, UPDATE_MOVE_CHUNK_SIZE)) {
+      BigDecimal result =
+          JPA.em()
+              .createQuery(
+                  "SELECT SUM(self." + amountField + ") FROM MoveLine self WHERE " + queryFilter,
+                  BigDecimal.class)
+              .setParameter("moveIdList", moveIdSubList)
+              .getSingleResult();
+      if (result != null) {
+        sum = sum.add(result);
       }
-      if (i++ % 100 == 0) {
-        log.debug("Process : {} / {}", i, moveListSize);
+    }
+    log.debug("Total {} : {}", amountField, sum);
+    return sum;
+  }
+
+  protected long countMoveLines(String queryFilter, List<Long> moveIdList) {
+    long count = 0;
+    for (List<Long> moveIdSubList : Lists.partition(moveIdList, UPDATE_MOVE_CHUNK_SIZE)) {
+      count +=
+          JPA.em()
+              .createQuery("SELECT COUNT(self) FROM MoveLine self WHERE " + queryFilter, Long.class)
+              .setParameter("moveIdList", moveIdSubList)
+              .getSingleResult();
+    }
+    return count;
+  }
+
+  /**
+   * Get the account code of the first move line matching the filter.
+   *
+   * @return the account code, or null if there is no move line
+   */
+  protected String findFirstMoveLineAccountCode(String queryFilter, List<Long> moveIdList) {
+    for (List<Long> moveIdSubList : Lists.partition(moveIdList, UPDATE_MOVE_CHUNK_SIZE)) {
+      List<String> accountCodeList =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.account.code FROM MoveLine self WHERE "
+                      + queryFilter
+                      + " ORDER BY self.id",
+                  String.class)
+              .setParameter("moveIdList", moveIdSubList)
+              .setMaxResults(1)
+              .getResultList();
+      if (!accountCodeList.isEmpty()) {
+        return accountCodeList.get(0);
       }
     }
+    return null;
+  }
+
+  protected String getPeriodCode(Long moveId) {
+    return JPA.em()
+        .createQuery(
+            "SELECT self.period.fromDate FROM Move self WHERE self.id = :id", LocalDate.class)
+        .setParameter("id", moveId)
+        .getSingleResult()
+        .format(DateTimeFormatter.ofPattern("yyyyMM"));
   }
 
   @Transactional
@@ -354,7 +495,6 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
 
     log.debug("allDates : {}", allDates);
 
-    List<String[]> allMoveData = new ArrayList<>();
     String companyCode = "";
 
     String reference = "";
@@ -394,79 +534,71 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
 
     LocalDate interfaceDate = accountingReport.getDate();
 
-    for (LocalDate dt : allDates) {
-
-      List<Journal> journalList =
-          journalRepo
-              .all()
-              .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
-              .fetch();
-
-      if (accountingReport.getJournal() != null) {
-        journalList = new ArrayList<>();
-        journalList.add(accountingReport.getJournal());
-      }
+    String fileName =
+        "entete"
+            + appAccountService
+                .getTodayDateTime()
+                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
+            + "ventes.dat";
+    String filePath = this.getExportFilePath(company);
+    String[] columnHeader =
+        this.createHeaderForHeaderFile(accountingReport.getReportType().getTypeSelect());
 
-      for (Journal journal : journalList) {
+    try (CSVWriter csvWriter = this.createMoveLineCsvWriter(filePath, fileName, columnHeader)) {
+      for (LocalDate dt : allDates) {
 
-        List<? extends Move> moveList =
-            moveRepo
+        List<Journal> journalList =
+            journalRepo
                 .all()
-                .filter(
-                    "self.date = ?1 AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false AND self.journal = ?2"
-                        + moveQueryStr,
-                    dt,
-                    journal)
+                .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
                 .fetch();
 
-        String journalCode = journal.getExportCode();
+        if (accountingReport.getJournal() != null) {
+          journalList = new ArrayList<>();
+          journalList.add(accountingReport.getJournal());
+        }
+
+        for (Journal journal : journalList) {
+
+          List<Long> moveIdList = this.findMoveIdList(dt, journal, moveQueryStr);
 
-        if (!moveList.isEmpty()) {
+          String journalCode = journal.getExportCode();
 
-          BigDecimal sumDebit =
-              this.getSumDebit(
-                  "self.account.useForPartnerBalance = true AND self.debit != 0.00 AND self.move in ?1 "
-                      + moveLineQueryStr,
-                  moveList);
+          if (!moveIdList.isEmpty()) {
 
-          if (sumDebit.compareTo(BigDecimal.ZERO) > 0) {
+            BigDecimal sumDebit =
+                this.getMoveLineSum(
+                    "debit",
+                    "self.account.useForPartnerBalance = true AND self.debit != 0.00 "
+                        + "AND self.move.id IN :moveIdList "
+                        + moveLineQueryStr,
+                    moveIdList);
 
-            String exportNumber = this.getSaleExportNumber(company);
+            if (sumDebit.compareTo(BigDecimal.ZERO) > 0) {
 
-            Move firstMove = moveList.get(0);
-            String periodCode =
-                firstMove.getPeriod().getFromDate().format(DateTimeFormatter.ofPattern("yyyyMM"));
+              String exportNumber = this.getSaleExportNumber(company);
 
-            this.updateMoveList(
-                (List<Move>) moveList, accountingReport, interfaceDate, exportNumber);
+              String periodCode = this.getPeriodCode(moveIdList.get(0));
 
-            String items[] = new String[8];
-            items[0] = companyCode;
-            items[1] = journalCode;
-            items[2] = exportNumber;
-            items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[4] = sumDebit.toString();
-            items[5] = reference;
-            items[6] = dt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[7] = periodCode;
-            allMoveData.add(items);
+              this.updateMoveIdList(moveIdList, accountingReport, interfaceDate, exportNumber);
+
+              String items[] = new String[8];
+              items[0] = companyCode;
+              items[1] = journalCode;
+              items[2] = exportNumber;
+              items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+              items[4] = sumDebit.toString();
+              items[5] = reference;
+              items[6] = dt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+              items[7] = periodCode;
+              this.writeMoveLineData(csvWriter, items);
+            }
           }
         }
       }
     }
 
-    String fileName =
-        "entete"
-            + appAccountService
-                .getTodayDateTime()
-                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
-            + "ventes.dat";
-    writeMoveLineToCsvFile(
-        company,
-        fileName,
-        this.createHeaderForHeaderFile(accountingReport.getReportType().getTypeSelect()),
-        allMoveData,
-        accountingReport);
+    this.attachExportFile(filePath, fileName, accountingReport);
   }
 
   /**
@@ -544,7 +676,6 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
 
     log.debug("allDates : {}", allDates);
 
-    List<String[]> allMoveData = new ArrayList<>();
     String companyCode = "";
 
     String reference = "";
@@ -585,78 +716,71 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
 
     LocalDate interfaceDate = accountingReport.getDate();
 
-    for (LocalDate dt : allDates) {
-
-      List<Journal> journalList =
-          journalRepo
-              .all()
-              .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
-              .fetch();
-
-      if (accountingReport.getJournal() != null) {
-        journalList = new ArrayList<>();
-        journalList.add(accountingReport.getJournal());
-      }
+    String fileName =
+        "entete"
+            + appAccountService
+                .getTodayDateTime()
+                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
+            + "avoirs.dat";
+    String filePath = this.getExportFilePath(company);
+    String[] columnHeader =
+        this.createHeaderForHeaderFile(accountingReport.getReportType().getTypeSelect());
 
-      for (Journal journal : journalList) {
+    try (CSVWriter csvWriter = this.createMoveLineCsvWriter(filePath, fileName, columnHeader)) {
+      for (LocalDate dt : allDates) {
 
-        List<Move> moveList =
-            moveRepo
+        List<Journal> journalList =
+            journalRepo
                 .all()
-                .filter(
-                    "self.date = ?1 AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false AND self.journal = ?2"
-                        + moveQueryStr,
-                    dt,
-                    journal)
+                .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
                 .fetch();
 
-        String journalCode = journal.getExportCode();
+        if (accountingReport.getJournal() != null) {
+          journalList = new ArrayList<>();
+          journalList.add(accountingReport.getJournal());
+        }
+
+        for (Journal journal : journalList) {
 
-        if (!moveList.isEmpty()) {
+          List<Long> moveIdList = this.findMoveIdList(dt, journal, moveQueryStr);
 
-          BigDecimal sumCredit =
-              this.getSumCredit(
-                  "self.account.useForPartnerBalance = true AND self.credit != 0.00 AND self.move in ?1 "
-                      + moveLineQueryStr,
-                  moveList);
+          String journalCode = journal.getExportCode();
 
-          if (sumCredit.compareTo(BigDecimal.ZERO) > 0) {
+          if (!moveIdList.isEmpty()) {
 
-            String exportNumber = this.getRefundExportNumber(company);
+            BigDecimal sumCredit =
+                this.getMoveLineSum(
+                    "credit",
+                    "self.account.useForPartnerBalance = true AND self.credit != 0.00 "
+                        + "AND self.move.id IN :moveIdList "
+                        + moveLineQueryStr,
+                    moveIdList);
 
-            Move firstMove = moveList.get(0);
-            String periodCode =
-                firstMove.getPeriod().getFromDate().format(DateTimeFormatter.ofPattern("yyyyMM"));
+            if (sumCredit.compareTo(BigDecimal.ZERO) > 0) {
 
-            this.updateMoveList(moveList, accountingReport, interfaceDate, exportNumber);
+              String exportNumber = this.getRefundExportNumber(company);
 
-            String items[] = new String[8];
-            items[0] = companyCode;
-            items[1] = journalCode;
-            items[2] = exportNumber;
-            items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[4] = sumCredit.toString();
-            items[5] = reference;
-            items[6] = dt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[7] = periodCode;
-            allMoveData.add(items);
+              String periodCode = this.getPeriodCode(moveIdList.get(0));
+
+              this.updateMoveIdList(moveIdList, accountingReport, interfaceDate, exportNumber);
+
+              String items[] = new String[8];
+              items[0] = companyCode;
+              items[1] = journalCode;
+              items[2] = exportNumber;
+              items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+              items[4] = sumCredit.toString();
+              items[5] = reference;
+              items[6] = dt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+              items[7] = periodCode;
+              this.writeMoveLineData(csvWriter, items);
+            }
           }
         }
       }
     }
 
-    String fileName =
-        "entete"
-            + appAccountService
-                .getTodayDateTime()
-                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
-            + "avoirs.dat";
-    writeMoveLineToCsvFile(
-        company,
-        fileName,
-        this.createHeaderForHeaderFile(accountingReport.getReportType().getTypeSelect()),
-        allMoveData,
-        accountingReport);
+    this.attachExportFile(filePath, fileName, accountingReport);
   }
 
   /**
@@ -734,7 +858,6 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
 
     log.debug("allDates : {}", allDates);
 
-    List<String[]> allMoveData = new ArrayList<>();
     String companyCode = "";
 
     String reference = "";
@@ -774,80 +897,69 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
 
     LocalDate interfaceDate = accountingReport.getDate();
 
-    for (LocalDate dt : allDates) {
-
-      List<Journal> journalList =
-          journalRepo
-              .all()
-              .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
-              .fetch();
-
-      if (accountingReport.getJournal() != null) {
-        journalList = new ArrayList<>();
-        journalList.add(accountingReport.getJournal());
-      }
+    String fileName =
+        "entete"
+            + appAccountService
+                .getTodayDateTime()
+                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
+            + "tresorerie.dat";
+    String filePath = this.getExportFilePath(company);
+    String[] columnHeader =
+        this.createHeaderForHeaderFile(accountingReport.getReportType().getTypeSelect());
 
-      for (Journal journal : journalList) {
+    try (CSVWriter csvWriter = this.createMoveLineCsvWriter(filePath, fileName, columnHeader)) {
+      for (LocalDate dt : allDates) {
 
-        List<Move> moveList =
-            moveRepo
+        List<Journal> journalList =
+            journalRepo
                 .all()
-                .filter(
-                    "self.date = ?1 AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false AND self.journal = ?2"
-                        + moveQueryStr,
-                    dt,
-                    journal)
+                .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
                 .fetch();
 
-        String journalCode = journal.getExportCode();
+        if (accountingReport.getJournal() != null) {
+          journalList = new ArrayList<>();
+          journalList.add(accountingReport.getJournal());
+        }
+
+        for (Journal journal : journalList) {
 
-        if (!moveList.isEmpty()) {
+          List<Long> moveIdList = this.findMoveIdList(dt, journal, moveQueryStr);
 
-          long moveLineListSize =
-              moveLineRepo
-                  .all()
-                  .filter(
-                      "self.move in ?1 AND (self.debit > 0 OR self.credit > 0) " + moveLineQueryStr,
-                      moveList)
-                  .count();
+          String journalCode = journal.getExportCode();
 
-          if (moveLineListSize > 0) {
+          if (!moveIdList.isEmpty()) {
 
-            String exportNumber = this.getTreasuryExportNumber(company);
+            long moveLineListSize =
+                this.countMoveLines(
+                    "self.move.id IN :moveIdList AND (self.debit > 0 OR self.credit > 0) "
+                        + moveLineQueryStr,
+                    moveIdList);
 
-            Move firstMove = moveList.get(0);
-            String periodCode =
-                firstMove.getPeriod().getFromDate().format(DateTimeFormatter.ofPattern("yyyyMM"));
+            if (moveLineListSize > 0) {
 
-            this.updateMoveList(moveList, accountingReport, interfaceDate, exportNumber);
+              String exportNumber = this.getTreasuryExportNumber(company);
 
-            String items[] = new String[8];
-            items[0] = companyCode;
-            items[1] = journalCode;
-            items[2] = exportNumber;
-            items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[4] = "0";
-            items[5] = reference;
-            items[6] = dt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[7] = periodCode;
-            allMoveData.add(items);
+              String periodCode = this.getPeriodCode(moveIdList.get(0));
+
+              this.updateMoveIdList(moveIdList, accountingReport, interfaceDate, exportNumber);
+
+              String items[] = new String[8];
+              items[0] = companyCode;
+              items[1] = journalCode;
+              items[2] = exportNumber;
+              items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+              items[4] = "0";
+              items[5] = reference;
+              items[6] = dt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+              items[7] = periodCode;
+              this.writeMoveLineData(csvWriter, items);
+            }
           }
         }
       }
     }
 
-    String fileName =
-        "entete"
-            + appAccountService
-                .getTodayDateTime()
-                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
-            + "tresorerie.dat";
-    writeMoveLineToCsvFile(
-        company,
-        fileName,
-        this.createHeaderForHeaderFile(accountingReport.getReportType().getTypeSelect()),
-        allMoveData,
-        accountingReport);
+    this.attachExportFile(filePath, fileName, accountingReport);
   }
 
   /**
@@ -923,7 +1035,6 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
 
     log.debug("allDates : {}", allDates);
 
-    List<String[]> allMoveData = new ArrayList<>();
     String companyCode = "";
 
     String reference = "";
@@ -963,58 +1074,62 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
 
     LocalDate interfaceDate = accountingReport.getDate();
 
-    for (LocalDate dt : allDates) {
-
-      List<Journal> journalList =
-          journalRepo
-              .all()
-              .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
-              .fetch();
-
-      if (accountingReport.getJournal() != null) {
-        journalList = new ArrayList<>();
-        journalList.add(accountingReport.getJournal());
-      }
+    String fileName =
+        "entete"
+            + appAccountService
+                .getTodayDateTime()
+                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
+            + "achats.dat";
+    String filePath = this.getExportFilePath(company);
+    String[] columnHeader =
+        this.createHeaderForHeaderFile(accountingReport.getReportType().getTypeSelect());
 
-      for (Journal journal : journalList) {
+    try (CSVWriter csvWriter = this.createMoveLineCsvWriter(filePath, fileName, columnHeader)) {
+      for (LocalDate dt : allDates) {
 
-        List<Move> moveList =
-            moveRepo
+        List<Journal> journalList =
+            journalRepo
                 .all()
-                .filter(
-                    "self.date = ?1 AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false AND self.journal = ?2"
-                        + moveQueryStr,
-                    dt,
-                    journal)
+                .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
                 .fetch();
 
-        String journalCode = journal.getExportCode();
+        if (accountingReport.getJournal() != null) {
+          journalList = new ArrayList<>();
+          journalList.add(accountingReport.getJournal());
+        }
+
+        for (Journal journal : journalList) {
+
+          List<Long> moveIdList = this.findMoveIdList(dt, journal, moveQueryStr);
+
+          String journalCode = journal.getExportCode();
 
-        int moveListSize = moveList.size();
+          int moveListSize = moveIdList.size();
 
-        if (moveListSize > 0) {
+          if (moveListSize > 0) {
 
-          int i = 0;
+            int i = 0;
 
-          for (Move move : moveList) {
+            // the move lines of every move of the journal at this date, as before
+            String moveLineFilter =
+                "self.account.useForPartnerBalance = true AND self.credit != 0.00 "
+                    + "AND self.move.id IN :moveIdList"
+                    + moveLineQueryStr;
+            String firstAccountCode = this.findFirstMoveLineAccountCode(moveLineFilter, moveIdList);
+            if (firstAccountCode == null) {
+              continue;
+            }
+            BigDecimal totalCredit = this.getMoveLineSum("credit", moveLineFilter, moveIdList);
 
-            List<MoveLine> moveLineList =
-                moveLineRepo
-                    .all()
-                    .filter(
-                        "self.account.useForPartnerBalance = true AND self.credit != 0.00 AND self.move in ?1"
-                            + moveLineQueryStr,
-                        moveList)
-                    .fetch();
+            for (Long moveId : moveIdList) {
 
-            if (!moveLineList.isEmpty()) {
+              Move move = moveRepo.find(moveId);
 
               String exportNumber = this.getPurchaseExportNumber(company);
 
               String periodCode =
                   move.getPeriod().getFromDate().format(DateTimeFormatter.ofPattern("yyyyMM"));
 
-              BigDecimal totalCredit = this.getSumCredit(moveLineList);
               String invoiceId = "";
               String dueDate = "";
               if (move.getInvoice() != null) {
@@ -1022,7 +1137,6 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
                 dueDate = move.getInvoice().getDueDate().toString();
               }
 
-              MoveLine firstMoveLine = moveLineList.get(0);
               String items[] = new String[11];
               items[0] = companyCode;
               items[1] = journalCode;
@@ -1030,14 +1144,15 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
               items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
               items[4] = invoiceId;
               items[5] = dueDate;
-              items[6] = firstMoveLine.getAccount().getCode();
+              items[6] = firstAccountCode;
               items[7] = totalCredit.toString();
               items[8] = reference;
               items[9] = dt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
               items[10] = periodCode;
-              allMoveData.add(items);
+              this.writeMoveLineData(csvWriter, items);
 
-              this.updateMove(move, accountingReport, interfaceDate, exportNumber);
+              this.updateMoveList(
+                  Collections.singletonList(move), accountingReport, interfaceDate, exportNumber);
 
               if (i % 10 == 0) {
                 JPA.clear();
@@ -1051,18 +1166,7 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       }
     }
 
-    String fileName =
-        "entete"
-            + appAccountService
-                .getTodayDateTime()
-                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
-            + "achats.dat";
-    writeMoveLineToCsvFile(
-        company,
-        fileName,
-        this.createHeaderForHeaderFile(accountingReport.getReportType().getTypeSelect()),
-        allMoveData,
-        accountingReport);
+    this.attachExportFile(filePath, fileName, accountingReport);
   }
 
   @Override
@@ -1122,7 +1226,6 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       throws AxelorException, IOException {
 
     log.info("In Export type 1000 service : ");
-    List<String[]> allMoveLineData = new ArrayList<>();
     Company company = accountingReport.getCompany();
 
     LocalDate interfaceDate = accountingReport.getDate();
@@ -1175,23 +1278,21 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       }
     }
 
-    List<MoveLine> moveLineList =
-        moveLineRepo
-            .all()
-            .filter(moveLineQueryStr)
-            .order("move.validationDate")
-            .order("date")
-            .order("name")
-            .fetch();
-
-    if (!moveLineList.isEmpty()) {
-      List<Move> moveList = new ArrayList<>();
-      for (MoveLine moveLine : moveLineList) {
+    String fileName = this.setFileName(accountingReport);
+    String filePath = this.getExportFilePath(company);
+    Set<Long> moveIdSet = new LinkedHashSet<>();
+
+    try (CSVWriter csvWriter =
+            this.createMoveLineCsvWriter(filePath, fileName, this.createHeaderForJournalEntry());
+        ScrollableResults moveLineResults =
+            this.scrollMoveLines(
+                moveLineQueryStr, "self.move.validationDate, self.date, self.name")) {
+      int i = 0;
+      while (moveLineResults.next()) {
+        MoveLine moveLine = (MoveLine) moveLineResults.get(0);
         String[] items = new String[18];
         Move move = moveLine.getMove();
-        if (!moveList.contains(move)) {
-          moveList.add(move);
-        }
+        moveIdSet.add(move.getId());
         Journal journal = move.getJournal();
         items[0] = journal.getCode();
         items[1] = journal.getName();
@@ -1249,21 +1350,44 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
         if (move.getCurrency() != null) {
           items[17] = move.getCurrency().getCode();
         }
-        allMoveLineData.add(items);
-      }
+        this.writeMoveLineData(csvWriter, items);
 
-      if (!administration) {
-        String exportNumber = this.getSaleExportNumber(company);
-        this.updateMoveList(moveList, accountingReport, interfaceDate, exportNumber);
+        if (++i % EXPORT_FETCH_SIZE == 0) {
+          JPA.clear();
+        }
       }
     }
+    JPA.clear();
 
     accountingReport = accountingReportRepo.find(accountingReport.getId());
 
-    String fileName = this.setFileName(accountingReport);
+    if (!administration && !moveIdSet.isEmpty()) {
+      String exportNumber = this.getSaleExportNumber(accountingReport.getCompany());
+      this.updateMoveIdList(
+          new ArrayList<>(moveIdSet), accountingReport, interfaceDate, exportNumber);
+      accountingReport = accountingReportRepo.find(accountingReport.getId());
+    }
+
     accountingReportRepo.save(accountingReport);
-    return writeMoveLineToCsvFile(
-        company, fileName, this.createHeaderForJournalEntry(), allMoveLineData, accountingReport);
+    return this.attachExportFile(filePath, fileName, accountingReport);
+  }
+
+  /**
+   * Read the move lines matching a filter one by one, without loading the whole result. The
+   * persistence context has to be cleared regularly while reading.
+   *
+   * @param filter the move line filter, using self as alias.
+   * @param order the order by clause, using self as alias.
+   * @return the move lines as scrollable results.
+   */
+  protected ScrollableResults scrollMoveLines(String filter, String order) {
+    return JPA.em()
+        .createQuery(
+            "SELECT self FROM MoveLine self WHERE " + filter + " ORDER BY " + order,
+            MoveLine.class)
+        .unwrap(org.hibernate.query.Query.class)
+        .setFetchSize(EXPORT_FETCH_SIZE)
+        .scroll(ScrollMode.FORWARD_ONLY);
   }
 
   /**
@@ -1341,122 +1465,127 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
 
     log.debug("dates : {}", dates);
 
-    List<String[]> allMoveLineData = new ArrayList<>();
-
-    for (LocalDate localDate : dates) {
-
-      Query queryExportRef =
-          JPA.em()
-              .createQuery(
-                  "SELECT DISTINCT self.move.exportNumber from MoveLine self where self.account != null "
-                      + "AND (self.debit > 0 OR self.credit > 0) AND self.date = '"
-                      + localDate.toString()
-                      + "'"
-                      + moveLineQueryStr);
-      List<String> exportRefs = queryExportRef.getResultList();
-      for (String exportRef : exportRefs) {
-
-        if (exportRef != null && !exportRef.isEmpty()) {
-
-          int sequence = 1;
-
-          Query query =
-              JPA.em()
-                  .createQuery(
-                      "SELECT self.account.id from MoveLine self where self.account != null AND (self.debit > 0 OR self.credit > 0) "
-                          + "AND self.date = '"
-                          + localDate.toString()
-                          + "' AND self.move.exportNumber = '"
-                          + exportRef
-                          + "'"
-                          + moveLineQueryStr
-                          + " group by self.account.id");
-
-          List<Long> accountIds = query.getResultList();
-
-          log.debug("accountIds : {}", accountIds);
-
-          for (Long accountId : accountIds) {
-            if (accountId != null) {
-              String accountCode = accountRepo.find(accountId).getCode();
-              List<MoveLine> moveLines =
-                  moveLineRepo
-                      .all()
-                      .filter(
-                          "self.account.id = ?1 AND (self.debit > 0 OR self.credit > 0) AND self.date = '"
-                              + localDate.toString()
-                              + "' AND self.move.exportNumber = '"
-                              + exportRef
-                              + "'"
-                              + moveLineQueryStr,
-                          accountId)
-                      .fetch();
-
-              log.debug("movelines  : {} ", moveLines);
-
-              if (!moveLines.isEmpty()) {
-
-                List<MoveLine> moveLineList =
-                    moveLineConsolidateService.consolidateMoveLines(moveLines);
-
-                List<MoveLine> sortMoveLineList = this.sortMoveLineByDebitCredit(moveLineList);
-
-                for (MoveLine moveLine3 : sortMoveLineList) {
-
-                  Journal journal = moveLine3.getMove().getJournal();
-                  LocalDate date = moveLine3.getDate();
-                  String items[] = null;
-
-                  if (typeSelect == 9) {
-                    items = new String[13];
-                  } else {
-                    items = new String[12];
-                  }
-
-                  items[0] = companyCode;
-                  items[1] = journal.getExportCode();
-                  items[2] = moveLine3.getMove().getExportNumber();
-                  items[3] = String.format("%s", sequence);
-                  sequence++;
-                  items[4] = accountCode;
-
-                  BigDecimal totAmt = moveLine3.getCredit().subtract(moveLine3.getDebit());
-                  String moveLineSign = "C";
-                  if (totAmt.compareTo(BigDecimal.ZERO) < 0) {
-                    moveLineSign = "D";
-                    totAmt = totAmt.negate();
-                  }
-                  items[5] = moveLineSign;
-                  items[6] = totAmt.toString();
-
-                  String analyticAccounts = "";
-                  for (AnalyticMoveLine analyticDistributionLine :
-                      moveLine3.getAnalyticMoveLineList()) {
-                    analyticAccounts =
-                        analyticAccounts
-                            + analyticDistributionLine.getAnalyticAccount().getCode()
-                            + "/";
+    String filePath = this.getExportFilePath(company);
+
+    try (CSVWriter csvWriter =
+        this.createMoveLineCsvWriter(
+            filePath, fileName, this.createHeaderForDetailFile(typeSelect))) {
+      for (LocalDate localDate : dates) {
+
+        Query queryExportRef =
+            JPA.em()
+                .createQuery(
+                    "SELECT DISTINCT self.move.exportNumber from MoveLine self where self.account != null "
+                        + "AND (self.debit > 0 OR self.credit > 0) AND self.date = '"
+                        + localDate.toString()
+                        + "'"
+                        + moveLineQueryStr);
+        List<String> exportRefs = queryExportRef.getResultList();
+        for (String exportRef : exportRefs) {
+
+          if (exportRef != null && !exportRef.isEmpty()) {
+
+            int sequence = 1;
+
+            Query query =
+                JPA.em()
+                    .createQuery(
+                        "SELECT self.account.id from MoveLine self where self.account != null AND (self.debit > 0 OR self.credit > 0) "
+                            + "AND self.date = '"
+                            + localDate.toString()
+                            + "' AND self.move.exportNumber = '"
+                            + exportRef
+                            + "'"
+                            + moveLineQueryStr
+                            + " group by self.account.id");
+
+            List<Long> accountIds = query.getResultList();
+
+            log.debug("accountIds : {}", accountIds);
+
+            for (Long accountId : accountIds) {
+              if (accountId != null) {
+                String accountCode = accountRepo.find(accountId).getCode();
+                List<MoveLine> moveLines =
+                    moveLineRepo
+                        .all()
+                        .filter(
+                            "self.account.id = ?1 AND (self.debit > 0 OR self.credit > 0) AND self.date = '"
+                                + localDate.toString()
+                                + "' AND self.move.exportNumber = '"
+                                + exportRef
+                                + "'"
+                                + moveLineQueryStr,
+                            accountId)
+                        .fetch();
+
+                log.debug("movelines  : {} ", moveLines);
+
+                if (!moveLines.isEmpty()) {
+
+                  List<MoveLine> moveLineList =
+                      moveLineConsolidateService.consolidateMoveLines(moveLines);
+
+                  List<MoveLine> sortMoveLineList = this.sortMoveLineByDebitCredit(moveLineList);
+
+                  for (MoveLine moveLine3 : sortMoveLineList) {
+
+                    Journal journal = moveLine3.getMove().getJournal();
+                    LocalDate date = moveLine3.getDate();
+                    String items[] = null;
+
+                    if (typeSelect == 9) {
+                      items = new String[13];
+                    } else {
+                      items = new String[12];
+                    }
+
+                    items[0] = companyCode;
+                    items[1] = journal.getExportCode();
+                    items[2] = moveLine3.getMove().getExportNumber();
+                    items[3] = String.format("%s", sequence);
+                    sequence++;
+                    items[4] = accountCode;
+
+                    BigDecimal totAmt = moveLine3.getCredit().subtract(moveLine3.getDebit());
+                    String moveLineSign = "C";
+                    if (totAmt.compareTo(BigDecimal.ZERO) < 0) {
+                      moveLineSign = "D";
+                      totAmt = totAmt.negate();
+                    }
+                    items[5] = moveLineSign;
+                    items[6] = totAmt.toString();
+
+                    String analyticAccounts = "";
+                    for (AnalyticMoveLine analyticDistributionLine :
+                        moveLine3.getAnalyticMoveLineList()) {
+                      analyticAccounts =
+                          analyticAccounts
+                              + analyticDistributionLine.getAnalyticAccount().getCode()
+                              + "/";
+                    }
+
+                    if (typeSelect == 9) {
+                      items[7] = "";
+                      items[8] = analyticAccounts;
+                      items[9] =
+                          String.format(
+                              "%s DU %s",
+                              journal.getCode(),
+                              date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
+                    } else {
+                      items[7] = analyticAccounts;
+                      items[8] =
+                          String.format(
+                              "%s DU %s",
+                              journal.getCode(),
+                              date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
+                    }
+
+                    this.writeMoveLineData(csvWriter, items);
                   }
-
-                  if (typeSelect == 9) {
-                    items[7] = "";
-                    items[8] = analyticAccounts;
-                    items[9] =
-                        String.format(
-                            "%s DU %s",
-                            journal.getCode(),
-                            date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
-                  } else {
-                    items[7] = analyticAccounts;
-                    items[8] =
-                        String.format(
-                            "%s DU %s",
-                            journal.getCode(),
-                            date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
-                  }
-
-                  allMoveLineData.add(items);
                 }
+                JPA.clear();
               }
             }
           }
@@ -1464,12 +1593,7 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       }
     }
 
-    writeMoveLineToCsvFile(
-        company,
-        fileName,
-        this.createHeaderForDetailFile(typeSelect),
-        allMoveLineData,
-        accountingReport);
+    this.attachExportFile(filePath, fileName, accountingReport);
   }
 
   protected MetaFile writeMoveLineToCsvFile(
@@ -1480,22 +1604,59 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       AccountingReport accountingReport)
       throws AxelorException, IOException {
 
-    String filePath = accountConfigService.getAccountConfig(company).getExportPath();
-    String dataExportDir = appAccountService.getDataExportDir();
-
-    for (String[] items : allMoveData) {
-      for (int i = 0; i < items.length; i++) {
-        if (items[i] != null) {
-          items[i] = items[i].replaceAll("(\r\n|\n\r|\r|\n|\\|)", " ");
-        }
+    String filePath = this.getExportFilePath(company);
+    try (CSVWriter csvWriter = this.createMoveLineCsvWriter(filePath, fileName, columnHeader)) {
+      for (String[] items : allMoveData) {
+        this.writeMoveLineData(csvWriter, items);
       }
     }
+    return this.attachExportFile(filePath, fileName, accountingReport);
+  }
+
+  protected String getExportFilePath(Company company) throws AxelorException {
+
+    String filePath = accountConfigService.getAccountConfig(company).getExportPath();
+    String dataExportDir = appAccountService.getDataExportDir();
 
     filePath = filePath == null ? dataExportDir : dataExportDir + filePath;
     new File(filePath).mkdirs();
+    return filePath;
+  }
+
+  /**
+   * Open an export file, the rows are then written one by one with {@link
+   * #writeMoveLineData(CSVWriter, String[])} so that the export is never held in memory.
+   *
+   * @param filePath
+   * @param fileName
+   * @param columnHeader the header row, can be null.
+   * @return the writer of the export file, to close once every row is written.
+   * @throws IOException
+   */
+  protected CSVWriter createMoveLineCsvWriter(
+      String filePath, String fileName, String[] columnHeader) throws IOException {
 
     log.debug("Full path to export : {}{}", filePath, fileName);
-    CsvTool.csvWriter(filePath, fileName, '|', columnHeader, allMoveData);
+    CSVWriter csvWriter = CsvTool.setCsvFile(filePath, fileName, '|');
+    if (columnHeader != null) {
+      csvWriter.writeNext(columnHeader);
+    }
+    return csvWriter;
+  }
+
+  protected void writeMoveLineData(CSVWriter csvWriter, String[] items) {
+
+    for (int i = 0; i < items.length; i++) {
+      if (items[i] != null) {
+        items[i] = items[i].replaceAll("(\r\n|\n\r|\r|\n|\\|)", " ");
+      }
+    }
+    csvWriter.writeNext(items);
+  }
+
+  protected MetaFile attachExportFile(
+      String filePath, String fileName, AccountingReport accountingReport) throws IOException {
+
     Path path = Paths.get(filePath, fileName);
     try (InputStream is = new FileInputStream(path.toFile())) {
       return Beans.get(MetaFiles.class).attach(is, fileName, accountingReport).getMetaFile();
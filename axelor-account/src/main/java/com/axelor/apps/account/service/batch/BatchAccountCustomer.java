@@ -24,12 +24,15 @@ import com.axelor.apps.account.exception.IExceptionMessage;
 import com.axelor.apps.account.service.AccountCustomerService;
 import com.axelor.apps.base.db.Company;
 import com.axelor.db.JPA;
+import com.axelor.db.Model;
 import com.axelor.exception.db.repo.ExceptionOriginRepository;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
 import com.google.inject.Inject;
 import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,6 +69,39 @@ public class BatchAccountCustomer extends BatchStrategy {
     boolean updateDueDebtRecoveryCustAccountOk =
         accountingBatch.getUpdateDueDebtRecoveryCustAccountOk();
 
+    // Balances of all the partners of the company are computed once with grouped queries.
+    Map<Long, BigDecimal> balanceMap =
+        updateCustAccountOk ? accountCustomerService.getBalanceMap(company) : null;
+    Map<Long, BigDecimal> balanceDueMap =
+        updateDueCustAccountOk ? accountCustomerService.getBalanceDueMap(company) : null;
+    Map<Long, BigDecimal> balanceDueDebtRecoveryMap =
+        updateDueDebtRecoveryCustAccountOk
+            ? accountCustomerService.getBalanceDueDebtRecoveryMap(company)
+            : null;
+
+    int threadCount = accountingBatch.getThreadCount();
+    if (threadCount > 1) {
+      processPartitioned(
+          AccountingSituation.class,
+          this.getAccountingSituationIdList(company),
+          threadCount,
+          accountingSituation -> {
+            Long partnerId = accountingSituation.getPartner().getId();
+            accountingSituation =
+                accountCustomerService.updateAccountingSituationCustomerAccount(
+                    accountingSituation,
+                    this.getPartnerBalance(balanceMap, partnerId),
+                    this.getPartnerBalance(balanceDueMap, partnerId),
+                    this.getPartnerBalance(balanceDueDebtRecoveryMap, partnerId));
+            if (accountingSituation == null) {
+              return false;
+            }
+            accountingSituation.addBatchSetItem(batchRepo.find(batch.getId()));
+            return true;
+          });
+      return;
+    }
+
     List<AccountingSituation> accountingSituationList =
         accountingSituationRepo.all().filter("self.company = ?1", company).fetch();
     int i = 0;
@@ -73,12 +109,15 @@ public class BatchAccountCustomer extends BatchStrategy {
     for (AccountingSituation accountingSituation : accountingSituationList) {
       try {
 
+        accountingSituation = accountingSituationRepo.find(accountingSituation.getId());
+        Long partnerId = accountingSituation.getPartner().getId();
+
         accountingSituation =
             accountCustomerService.updateAccountingSituationCustomerAccount(
-                accountingSituationRepo.find(accountingSituation.getId()),
-                updateCustAccountOk,
-                updateDueCustAccountOk,
-                updateDueDebtRecoveryCustAccountOk);
+                accountingSituation,
+                this.getPartnerBalance(balanceMap, partnerId),
+                this.getPartnerBalance(balanceDueMap, partnerId),
+                this.getPartnerBalance(balanceDueDebtRecoveryMap, partnerId));
 
         if (accountingSituation != null) {
           this.updateAccountingSituation(accountingSituation);
@@ -111,6 +150,34 @@ public class BatchAccountCustomer extends BatchStrategy {
     }
   }
 
+  protected List<Long> getAccountingSituationIdList(Company company) {
+    return JPA.em()
+        .createQuery(
+            "SELECT self.id FROM AccountingSituation self WHERE self.company = :company",
+            Long.class)
+        .setParameter("company", company)
+        .getResultList();
+  }
+
+  @Override
+  protected void tracePartitionError(Class<? extends Model> modelClass, Long id, Exception e) {
+    TraceBackService.trace(
+        new Exception(
+            String.format(
+                I18n.get(IExceptionMessage.BATCH_ACCOUNT_1),
+                accountingSituationRepo.find(id).getName()),
+            e),
+        ExceptionOriginRepository.CUSTOMER_ACCOUNT,
+        batch.getId());
+  }
+
+  protected BigDecimal getPartnerBalance(Map<Long, BigDecimal> balanceMap, Long partnerId) {
+    if (balanceMap == null) {
+      return null;
+    }
+    return balanceMap.getOrDefault(partnerId, BigDecimal.ZERO);
+  }
+
   /**
    * As {@code batch} entity can be detached from the session, call {@code Batch.find()} get the
    * entity in the persistant context. Warning : {@code batch} entity have to be saved before.
@@ -28,7 +28,7 @@ public abstract class BatchStrategy extends AbstractBatch {
 
   protected InvoiceService invoiceService;
 
-  @Inject private BatchRepository batchRepo;
+  @Inject protected BatchRepository batchRepo;
 
   @Inject protected InvoiceRepository invoiceRepo;
 
@@ -17,16 +17,41 @@
  */
 package com.axelor.apps.account.service.invoice.generator.batch;
 
+import com.axelor.apps.account.db.AccountConfig;
 import com.axelor.apps.account.db.Invoice;
+import com.axelor.apps.account.db.InvoiceBatch;
+import com.axelor.apps.account.db.Journal;
+import com.axelor.apps.account.db.repo.InvoiceRepository;
 import com.axelor.apps.account.exception.IExceptionMessage;
+import com.axelor.apps.account.service.AccountCustomerService;
+import com.axelor.apps.account.service.AccountingService;
+import com.axelor.apps.account.service.config.AccountConfigService;
 import com.axelor.apps.account.service.invoice.InvoiceService;
+import com.axelor.apps.base.db.Company;
+import com.axelor.apps.base.db.Partner;
+import com.axelor.apps.base.db.Sequence;
+import com.axelor.apps.base.db.repo.CompanyRepository;
 import com.axelor.db.JPA;
+import com.axelor.db.Model;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.ExceptionOriginRepository;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
+import com.axelor.inject.Beans;
 import com.google.inject.Inject;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,15 +59,31 @@ public class BatchVentilation extends BatchWkf {
 
   static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  protected AccountConfigService accountConfigService;
+
+  protected CompanyRepository companyRepo;
+
   @Inject
-  public BatchVentilation(InvoiceService invoiceService) {
+  public BatchVentilation(
+      InvoiceService invoiceService,
+      AccountConfigService accountConfigService,
+      CompanyRepository companyRepo) {
 
     super(invoiceService);
+    this.accountConfigService = accountConfigService;
+    this.companyRepo = companyRepo;
   }
 
   @Override
   protected void process() {
 
+    InvoiceBatch invoiceBatch = batch.getInvoiceBatch();
+
+    if (invoiceBatch.getPipelinedVentilationOk()) {
+      processPipelined(invoiceBatch);
+      return;
+    }
+
     for (Invoice invoice : invoices(batch.getInvoiceBatch(), true)) {
 
       try {
@@ -74,6 +115,303 @@ public class BatchVentilation extends BatchWkf {
     }
   }
 
+  /**
+   * Ventilate the invoices in pipelined mode:
+   *
+   * <ul>
+   *   <li>only the ids of the invoices are loaded, sorted by invoice date;
+   *   <li>the invoices are grouped by company and by numbering: invoices sharing a numbering
+   *       sequence, a journal or a journal sequence are ventilated in order by a same worker, so
+   *       that their numbers follow the invoice dates, while independent groups run in parallel;
+   *   <li>the accounting situations of the partners are updated once per partner and company at
+   *       the end, instead of once per invoice.
+   * </ul>
+   *
+   * <p>As in the sequential mode, the numbering is gap-free only for the sequences without block
+   * size: the numbers of a block are reserved in their own transaction, so the number of an invoice
+   * whose ventilation is rolled back is lost.
+   *
+   * @param invoiceBatch
+   */
+  protected void processPipelined(InvoiceBatch invoiceBatch) {
+
+    List<List<Long>> partitionList;
+    try {
+      partitionList = this.getVentilationPartitionList(invoiceBatch);
+    } catch (AxelorException e) {
+      TraceBackService.trace(e, ExceptionOriginRepository.INVOICE_ORIGIN, batch.getId());
+      incrementAnomaly();
+      return;
+    }
+
+    Set<List<Long>> partnerCompanyIdSet = ConcurrentHashMap.newKeySet();
+
+    processPartitions(
+        Invoice.class,
+        partitionList,
+        Math.min(partitionList.size(), invoiceBatch.getThreadCount()),
+        invoice -> {
+          AccountingService.setUpdateCustomerAccount(false);
+          try {
+            invoiceService.ventilate(invoice);
+          } finally {
+            AccountingService.setUpdateCustomerAccount(true);
+          }
+          invoice.addBatchSetItem(batchRepo.find(batch.getId()));
+          partnerCompanyIdSet.add(
+              Arrays.asList(invoice.getPartner().getId(), invoice.getCompany().getId()));
+          return true;
+        });
+
+    this.updatePartnerAccountingSituations(partnerCompanyIdSet);
+  }
+
+  /**
+   * Get the ids of the invoices to ventilate, by partition.
+   *
+   * @param invoiceBatch
+   * @return
+   * @throws AxelorException
+   * @see #getVentilationPartitionList(List)
+   */
+  protected List<List<Long>> getVentilationPartitionList(InvoiceBatch invoiceBatch)
+      throws AxelorException {
+
+    return this.getVentilationPartitionList(this.getVentilationRowList(invoiceBatch));
+  }
+
+  /**
+   * Get the invoices to ventilate, sorted by invoice date.
+   *
+   * @param invoiceBatch
+   * @return the id, the operation type, the company id, the journal id and the journal sequence id
+   *     of each invoice
+   */
+  protected List<Object[]> getVentilationRowList(InvoiceBatch invoiceBatch) {
+
+    String select =
+        "SELECT self.id, self.operationTypeSelect, self.company.id, journal.id, journalSequence.id "
+            + "FROM Invoice self "
+            + "LEFT JOIN self.journal journal "
+            + "LEFT JOIN journal.sequence journalSequence ";
+
+    if (invoiceBatch.getOnSelectOk()) {
+      List<Long> invoiceIdList =
+          invoiceBatch.getInvoiceSet().stream().map(Invoice::getId).collect(Collectors.toList());
+      if (invoiceIdList.isEmpty()) {
+        return new ArrayList<>();
+      }
+      return JPA.em()
+          .createQuery(
+              select + "WHERE self.id IN :invoiceIds ORDER BY self.invoiceDate, self.id",
+              Object[].class)
+          .setParameter("invoiceIds", invoiceIdList)
+          .getResultList();
+    }
+
+    return JPA.em()
+        .createQuery(
+            select
+                + "WHERE self.company = :company AND self.statusSelect = :statusSelect "
+                + "ORDER BY self.invoiceDate, self.id",
+            Object[].class)
+        .setParameter("company", invoiceBatch.getCompany())
+        .setParameter("statusSelect", invoiceBatch.getToStatusSelect())
+        .getResultList();
+  }
+
+  /**
+   * Split the invoices to ventilate in partitions that can be ventilated in parallel.
+   *
+   * <p>The invoices are first grouped by company and by side, customer or supplier: the invoices of
+   * a side are numbered with the sequences and journals of this side, an invoice and a credit note
+   * being able to swap their journals. Groups sharing a numbering sequence, a journal or a journal
+   * sequence, in a same company or across companies, are then merged in a same partition. Each
+   * partition keeps the order of the given invoices.
+   *
+   * @param rowList the invoices to ventilate, as given by {@link
+   *     #getVentilationRowList(InvoiceBatch)}
+   * @return the ids of the invoices to ventilate, by partition
+   * @throws AxelorException if the accounting configuration of a company is missing
+   */
+  protected List<List<Long>> getVentilationPartitionList(List<Object[]> rowList)
+      throws AxelorException {
+
+    Map<List<Object>, Set<String>> groupNumberingKeyMap = new LinkedHashMap<>();
+    for (Object[] row : rowList) {
+      List<Object> groupKey = this.getNumberingGroupKey(row);
+      Set<String> numberingKeySet = groupNumberingKeyMap.get(groupKey);
+      if (numberingKeySet == null) {
+        numberingKeySet =
+            this.getNumberingKeySet((Long) groupKey.get(0), (Boolean) groupKey.get(1));
+        groupNumberingKeyMap.put(groupKey, numberingKeySet);
+      }
+      this.addJournalNumberingKeys(numberingKeySet, (Long) row[3], (Long) row[4]);
+    }
+
+    List<Set<List<Object>>> sharingGroupKeyList = new ArrayList<>();
+    List<Set<String>> sharingNumberingKeyList = new ArrayList<>();
+    for (Map.Entry<List<Object>, Set<String>> entry : groupNumberingKeyMap.entrySet()) {
+      Set<List<Object>> groupKeySet = new HashSet<>();
+      groupKeySet.add(entry.getKey());
+      Set<String> numberingKeySet = new HashSet<>(entry.getValue());
+
+      Iterator<Set<List<Object>>> groupKeyIt = sharingGroupKeyList.iterator();
+      Iterator<Set<String>> numberingKeyIt = sharingNumberingKeyList.iterator();
+      while (groupKeyIt.hasNext()) {
+        Set<List<Object>> sharingGroupKeySet = groupKeyIt.next();
+        Set<String> sharingNumberingKeySet = numberingKeyIt.next();
+        if (!Collections.disjoint(sharingNumberingKeySet, numberingKeySet)) {
+          groupKeySet.addAll(sharingGroupKeySet);
+          numberingKeySet.addAll(sharingNumberingKeySet);
+          groupKeyIt.remove();
+          numberingKeyIt.remove();
+        }
+      }
+
+      sharingGroupKeyList.add(groupKeySet);
+      sharingNumberingKeyList.add(numberingKeySet);
+    }
+
+    List<List<Long>> partitionList = new ArrayList<>();
+    Map<List<Object>, List<Long>> groupPartitionMap = new HashMap<>();
+    for (Set<List<Object>> groupKeySet : sharingGroupKeyList) {
+      List<Long> partition = new ArrayList<>();
+      partitionList.add(partition);
+      for (List<Object> groupKey : groupKeySet) {
+        groupPartitionMap.put(groupKey, partition);
+      }
+    }
+
+    for (Object[] row : rowList) {
+      groupPartitionMap.get(this.getNumberingGroupKey(row)).add((Long) row[0]);
+    }
+
+    return partitionList;
+  }
+
+  protected List<Object> getNumberingGroupKey(Object[] row) {
+    return Arrays.asList(row[2], this.isPurchase((Integer) row[1]));
+  }
+
+  protected boolean isPurchase(int operationTypeSelect) {
+    return operationTypeSelect == InvoiceRepository.OPERATION_TYPE_SUPPLIER_PURCHASE
+        || operationTypeSelect == InvoiceRepository.OPERATION_TYPE_SUPPLIER_REFUND;
+  }
+
+  /**
+   * Get the numbering sequences, journals and journal sequences used by default for the customer
+   * or supplier invoices of the company. Two groups of invoices sharing one of the returned keys
+   * have to be ventilated by a same worker.
+   *
+   * @param companyId
+   * @param isPurchase
+   * @return the keys of the journals and sequences
+   * @throws AxelorException if the accounting configuration of the company is missing
+   */
+  protected Set<String> getNumberingKeySet(Long companyId, boolean isPurchase)
+      throws AxelorException {
+
+    AccountConfig accountConfig =
+        accountConfigService.getAccountConfig(companyRepo.find(companyId));
+
+    List<Journal> journalList;
+    List<Sequence> sequenceList;
+    if (isPurchase) {
+      journalList =
+          Arrays.asList(
+              accountConfigService.getSupplierPurchaseJournal(accountConfig),
+              accountConfigService.getSupplierCreditNoteJournal(accountConfig));
+      sequenceList =
+          Arrays.asList(
+              accountConfigService.getSuppInvSequence(accountConfig),
+              accountConfigService.getSuppRefSequence(accountConfig));
+    } else {
+      journalList =
+          Arrays.asList(
+              accountConfigService.getCustomerSalesJournal(accountConfig),
+              accountConfigService.getCustomerCreditNoteJournal(accountConfig));
+      sequenceList =
+          Arrays.asList(
+              accountConfigService.getCustInvSequence(accountConfig),
+              accountConfigService.getCustRefSequence(accountConfig));
+    }
+
+    Set<String> numberingKeySet = new HashSet<>();
+    for (Journal journal : journalList) {
+      this.addJournalNumberingKeys(
+          numberingKeySet,
+          journal.getId(),
+          journal.getSequence() != null ? journal.getSequence().getId() : null);
+    }
+    for (Sequence sequence : sequenceList) {
+      numberingKeySet.add("sequence:" + sequence.getId());
+    }
+    return numberingKeySet;
+  }
+
+  protected void addJournalNumberingKeys(
+      Set<String> numberingKeySet, Long journalId, Long journalSequenceId) {
+    if (journalId != null) {
+      numberingKeySet.add("journal:" + journalId);
+    }
+    if (journalSequenceId != null) {
+      numberingKeySet.add("sequence:" + journalSequenceId);
+    }
+  }
+
+  /**
+   * Update the accounting situations of the partners of the ventilated invoices, in the company of
+   * their invoices.
+   *
+   * @param partnerCompanyIdSet the partner id and company id of each ventilated invoice
+   */
+  protected void updatePartnerAccountingSituations(Set<List<Long>> partnerCompanyIdSet) {
+
+    AccountCustomerService accountCustomerService = Beans.get(AccountCustomerService.class);
+
+    for (List<Long> partnerCompanyId : partnerCompanyIdSet) {
+      try {
+        JPA.runInTransaction(
+            () -> {
+              try {
+                accountCustomerService.updatePartnerAccountingSituation(
+                    Collections.singletonList(JPA.find(Partner.class, partnerCompanyId.get(0))),
+                    JPA.find(Company.class, partnerCompanyId.get(1)),
+                    true,
+                    true,
+                    false);
+              } catch (AxelorException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+      } catch (Exception e) {
+        TraceBackService.trace(e, ExceptionOriginRepository.INVOICE_ORIGIN, batch.getId());
+      } finally {
+        JPA.clear();
+      }
+    }
+  }
+
+  @Override
+  protected void tracePartitionError(Class<? extends Model> modelClass, Long id, Exception e) {
+
+    String invoiceId = invoiceRepo.find(id).getInvoiceId();
+
+    if (e instanceof AxelorException) {
+      TraceBackService.trace(
+          new AxelorException(
+              e, ((AxelorException) e).getCategory(), I18n.get("Invoice") + " %s", invoiceId),
+          ExceptionOriginRepository.INVOICE_ORIGIN,
+          batch.getId());
+    } else {
+      TraceBackService.trace(
+          new Exception(String.format(I18n.get("Invoice") + " %s", invoiceId), e),
+          ExceptionOriginRepository.INVOICE_ORIGIN,
+          batch.getId());
+    }
+  }
+
   @Override
   protected void stop() {
 
@@ -0,0 +1,291 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.service.invoice.generator.batch;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.axelor.apps.account.db.AccountConfig;
+import com.axelor.apps.account.db.Journal;
+import com.axelor.apps.account.db.repo.InvoiceRepository;
+import com.axelor.apps.account.service.config.AccountConfigService;
+import com.axelor.apps.account.service.invoice.InvoiceService;
+import com.axelor.apps.base.db.Company;
+import com.axelor.apps.base.db.Sequence;
+import com.axelor.apps.base.db.repo.CompanyRepository;
+import com.axelor.exception.AxelorException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBatchVentilation {
+
+  protected static final int CUSTOMER = InvoiceRepository.OPERATION_TYPE_CLIENT_SALE;
+  protected static final int CUSTOMER_REFUND = InvoiceRepository.OPERATION_TYPE_CLIENT_REFUND;
+  protected static final int SUPPLIER = InvoiceRepository.OPERATION_TYPE_SUPPLIER_PURCHASE;
+  protected static final int SUPPLIER_REFUND = InvoiceRepository.OPERATION_TYPE_SUPPLIER_REFUND;
+
+  protected AccountConfigService accountConfigService;
+  protected CompanyRepository companyRepo;
+  protected BatchVentilation batchVentilation;
+
+  protected Map<Long, AccountConfig> accountConfigMap;
+  protected long nextId;
+
+  /*
+   * Prepare dependencies by mocking them
+   */
+  @Before
+  public void prepare() {
+
+    accountConfigService = mock(AccountConfigService.class);
+    companyRepo = mock(CompanyRepository.class);
+    batchVentilation =
+        new BatchVentilation(mock(InvoiceService.class), accountConfigService, companyRepo);
+
+    accountConfigMap = new HashMap<>();
+    nextId = 100;
+  }
+
+  /**
+   * Create a company whose customer and supplier invoices have their own journals, journal
+   * sequences and invoice sequences.
+   */
+  protected AccountConfig createCompany(long companyId) throws AxelorException {
+
+    Company company = new Company();
+    company.setId(companyId);
+    AccountConfig accountConfig = new AccountConfig();
+    accountConfigMap.put(companyId, accountConfig);
+
+    when(companyRepo.find(companyId)).thenReturn(company);
+    when(accountConfigService.getAccountConfig(company)).thenReturn(accountConfig);
+
+    Journal supplierPurchaseJournal = createJournal(createSequence());
+    Journal supplierCreditNoteJournal = createJournal(createSequence());
+    Journal customerSalesJournal = createJournal(createSequence());
+    Journal customerCreditNoteJournal = createJournal(createSequence());
+    when(accountConfigService.getSupplierPurchaseJournal(accountConfig))
+        .thenReturn(supplierPurchaseJournal);
+    when(accountConfigService.getSupplierCreditNoteJournal(accountConfig))
+        .thenReturn(supplierCreditNoteJournal);
+    when(accountConfigService.getCustomerSalesJournal(accountConfig))
+        .thenReturn(customerSalesJournal);
+    when(accountConfigService.getCustomerCreditNoteJournal(accountConfig))
+        .thenReturn(customerCreditNoteJournal);
+
+    setInvoiceSequences(
+        accountConfig, createSequence(), createSequence(), createSequence(), createSequence());
+
+    return accountConfig;
+  }
+
+  protected void setInvoiceSequences(
+      AccountConfig accountConfig,
+      Sequence suppInvSequence,
+      Sequence suppRefSequence,
+      Sequence custInvSequence,
+      Sequence custRefSequence)
+      throws AxelorException {
+
+    when(accountConfigService.getSuppInvSequence(accountConfig)).thenReturn(suppInvSequence);
+    when(accountConfigService.getSuppRefSequence(accountConfig)).thenReturn(suppRefSequence);
+    when(accountConfigService.getCustInvSequence(accountConfig)).thenReturn(custInvSequence);
+    when(accountConfigService.getCustRefSequence(accountConfig)).thenReturn(custRefSequence);
+  }
+
+  protected Sequence createSequence() {
+    Sequence sequence = new Sequence();
+    sequence.setId(nextId++);
+    return sequence;
+  }
+
+  protected Journal createJournal(Sequence sequence) {
+    Journal journal = new Journal();
+    journal.setId(nextId++);
+    journal.setSequence(sequence);
+    return journal;
+  }
+
+  protected Object[] createRow(long invoiceId, int operationTypeSelect, long companyId) {
+    return createRow(invoiceId, operationTypeSelect, companyId, null);
+  }
+
+  protected Object[] createRow(
+      long invoiceId, int operationTypeSelect, long companyId, Journal journal) {
+    return new Object[] {
+      invoiceId,
+      operationTypeSelect,
+      companyId,
+      journal != null ? journal.getId() : null,
+      journal != null && journal.getSequence() != null ? journal.getSequence().getId() : null
+    };
+  }
+
+  protected void assertPartitionsEqual(List<List<Long>> expected, List<List<Long>> actual) {
+    Assert.assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+    Assert.assertEquals(expected.size(), actual.size());
+  }
+
+  @Test
+  public void testPartitionByCompanyAndSide() throws AxelorException {
+    createCompany(1L);
+    createCompany(2L);
+
+    List<Object[]> rowList =
+        Arrays.asList(
+            createRow(1L, CUSTOMER, 1L),
+            createRow(2L, SUPPLIER, 2L),
+            createRow(3L, SUPPLIER_REFUND, 1L),
+            createRow(4L, CUSTOMER_REFUND, 2L),
+            createRow(5L, CUSTOMER_REFUND, 1L),
+            createRow(6L, SUPPLIER, 1L),
+            createRow(7L, CUSTOMER, 2L));
+
+    assertPartitionsEqual(
+        Arrays.asList(
+            Arrays.asList(1L, 5L),
+            Arrays.asList(2L),
+            Arrays.asList(3L, 6L),
+            Arrays.asList(4L, 7L)),
+        batchVentilation.getVentilationPartitionList(rowList));
+  }
+
+  @Test
+  public void testPartitionEmpty() throws AxelorException {
+    Assert.assertTrue(batchVentilation.getVentilationPartitionList(new ArrayList<>()).isEmpty());
+  }
+
+  @Test
+  public void testSharedInvoiceSequence() throws AxelorException {
+    AccountConfig accountConfig = createCompany(1L);
+    Sequence sharedSequence = createSequence();
+    setInvoiceSequences(
+        accountConfig, sharedSequence, createSequence(), sharedSequence, createSequence());
+
+    List<Object[]> rowList =
+        Arrays.asList(
+            createRow(1L, SUPPLIER, 1L), createRow(2L, CUSTOMER, 1L), createRow(3L, SUPPLIER, 1L));
+
+    assertPartitionsEqual(
+        Arrays.asList(Arrays.asList(1L, 2L, 3L)),
+        batchVentilation.getVentilationPartitionList(rowList));
+  }
+
+  @Test
+  public void testSharedJournalSequence() throws AxelorException {
+    AccountConfig accountConfig = createCompany(1L);
+    Sequence sharedSequence = createSequence();
+    Journal supplierCreditNoteJournal = createJournal(sharedSequence);
+    Journal customerCreditNoteJournal = createJournal(sharedSequence);
+    when(accountConfigService.getSupplierCreditNoteJournal(accountConfig))
+        .thenReturn(supplierCreditNoteJournal);
+    when(accountConfigService.getCustomerCreditNoteJournal(accountConfig))
+        .thenReturn(customerCreditNoteJournal);
+
+    List<Object[]> rowList =
+        Arrays.asList(createRow(1L, SUPPLIER, 1L), createRow(2L, CUSTOMER, 1L));
+
+    assertPartitionsEqual(
+        Arrays.asList(Arrays.asList(1L, 2L)),
+        batchVentilation.getVentilationPartitionList(rowList));
+  }
+
+  @Test
+  public void testSharedInvoiceJournal() throws AxelorException {
+    createCompany(1L);
+    Journal sharedJournal = createJournal(null);
+
+    List<Object[]> rowList =
+        Arrays.asList(
+            createRow(1L, SUPPLIER, 1L, sharedJournal),
+            createRow(2L, CUSTOMER, 1L),
+            createRow(3L, CUSTOMER, 1L, sharedJournal));
+
+    assertPartitionsEqual(
+        Arrays.asList(Arrays.asList(1L, 2L, 3L)),
+        batchVentilation.getVentilationPartitionList(rowList));
+  }
+
+  @Test
+  public void testSharedSequenceAcrossCompanies() throws AxelorException {
+    createCompany(1L);
+    AccountConfig accountConfig2 = createCompany(2L);
+    createCompany(3L);
+    Sequence company1CustInvSequence =
+        accountConfigService.getCustInvSequence(accountConfigMap.get(1L));
+    Sequence company3SuppRefSequence =
+        accountConfigService.getSuppRefSequence(accountConfigMap.get(3L));
+    setInvoiceSequences(
+        accountConfig2,
+        createSequence(),
+        company3SuppRefSequence,
+        company1CustInvSequence,
+        createSequence());
+
+    List<Object[]> rowList =
+        Arrays.asList(
+            createRow(1L, CUSTOMER, 1L),
+            createRow(2L, SUPPLIER, 3L),
+            createRow(3L, CUSTOMER, 2L),
+            createRow(4L, SUPPLIER, 2L),
+            createRow(5L, SUPPLIER, 1L),
+            createRow(6L, CUSTOMER, 3L),
+            createRow(7L, CUSTOMER_REFUND, 1L));
+
+    assertPartitionsEqual(
+        Arrays.asList(
+            Arrays.asList(1L, 3L, 7L),
+            Arrays.asList(2L, 4L),
+            Arrays.asList(5L),
+            Arrays.asList(6L)),
+        batchVentilation.getVentilationPartitionList(rowList));
+  }
+
+  @Test
+  public void testTransitiveSharing() throws AxelorException {
+    createCompany(1L);
+    AccountConfig accountConfig2 = createCompany(2L);
+    Sequence company1SuppInvSequence =
+        accountConfigService.getSuppInvSequence(accountConfigMap.get(1L));
+    Sequence sharedSequence = createSequence();
+    setInvoiceSequences(
+        accountConfig2, company1SuppInvSequence, createSequence(), sharedSequence, sharedSequence);
+
+    // company 1 supplier <-> company 2 supplier <-> company 2 customer (through the journal)
+    Journal company2SupplierJournal =
+        accountConfigService.getSupplierPurchaseJournal(accountConfig2);
+
+    List<Object[]> rowList =
+        Arrays.asList(
+            createRow(1L, CUSTOMER, 2L, company2SupplierJournal),
+            createRow(2L, SUPPLIER, 1L),
+            createRow(3L, CUSTOMER, 1L),
+            createRow(4L, SUPPLIER, 2L));
+
+    assertPartitionsEqual(
+        Arrays.asList(Arrays.asList(1L, 2L, 4L), Arrays.asList(3L)),
+        batchVentilation.getVentilationPartitionList(rowList));
+  }
+}
@@ -35,6 +35,7 @@ import com.axelor.db.Query;
 import com.axelor.db.internal.DBHelper;
 import com.axelor.db.mapper.Mapper;
 import com.axelor.db.mapper.Property;
+import com.axelor.db.tenants.TenantAware;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.exception.service.TraceBackService;
@@ -48,14 +49,18 @@ import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.inject.Inject;
+import com.google.inject.persist.UnitOfWork;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
 import com.opencsv.CSVWriter;
 import com.thoughtworks.xstream.XStream;
-import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.sql.Connection;
@@ -75,9 +80,15 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import javax.naming.NamingException;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.NullWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -155,80 +166,99 @@ public class DataBackupCreateService {
       fileNameList.clear();
     }
 
-    if (errorsCount == 0) {
-      for (MetaModel metaModel : metaModelList) {
-
-        try {
-          List<String> subClasses = subClassesMap.get(metaModel.getFullName());
-          long totalRecord = getMetaModelDataCount(metaModel, subClasses);
-          if (!dataBackup.getIsProcessEmptyTable() && totalRecord < 1) {
-            continue;
-          }
+    File zippedFile = new File(tempDirectoryPath, getBackupZipFileName());
 
-          LOG.debug("Exporting Model : " + metaModel.getFullName());
-          notNullReferenceFlag = false;
-          referenceFlag = false;
-
-          CSVWriter csvWriter =
-              new CSVWriter(
-                  new FileWriter(new File(tempDirectoryPath, metaModel.getName() + ".csv")),
-                  SEPARATOR,
-                  QUOTE_CHAR);
-          CSVInput csvInput =
-              writeCSVData(
-                  metaModel, csvWriter, dataBackup, totalRecord, subClasses, tempDirectoryPath);
-          csvWriter.close();
+    if (errorsCount == 0) {
+      // The csv files are written straight into the archive, the other files are added at the end.
+      try (ZipOutputStream zipOut =
+          new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zippedFile)))) {
+
+        if (dataBackup.getThreadCount() > 1) {
+          errorsCount =
+              exportMetaModelsInParallel(
+                  dataBackup,
+                  metaModelList,
+                  subClassesMap,
+                  tempDirectoryPath,
+                  zipOut,
+                  simpleCsvs,
+                  refernceCsvs,
+                  notNullReferenceCsvs);
+        } else {
+          for (MetaModel metaModel : metaModelList) {
+
+            try {
+              List<String> subClasses = subClassesMap.get(metaModel.getFullName());
+              long totalRecord = getMetaModelDataCount(metaModel, subClasses);
+              if (!dataBackup.getIsProcessEmptyTable() && totalRecord < 1) {
+                continue;
+              }
 
-          if (notNullReferenceFlag) {
-            notNullReferenceCsvs.add(csvInput);
-          } else if (referenceFlag) {
-            refernceCsvs.add(csvInput);
-            CSVInput temcsv = new CSVInput();
-            temcsv.setFileName(csvInput.getFileName());
-            temcsv.setTypeName(csvInput.getTypeName());
-
-            if (dataBackup.getIsRelativeDate()) {
-              temcsv.setBindings(new ArrayList<>());
-              getCsvInputForDateorDateTime(metaModel, temcsv);
-            }
-            if (AutoImportModelMap.containsKey(csvInput.getTypeName())) {
-              temcsv.setSearch(AutoImportModelMap.get(csvInput.getTypeName()).toString());
-            }
-            if (Class.forName(metaModel.getFullName()).getSuperclass() == App.class) {
-              temcsv.setSearch("self.code = :code");
-            }
-            if (!AutoImportModelMap.containsKey(csvInput.getTypeName())
-                && !((Class.forName(metaModel.getFullName()).getSuperclass()).equals(App.class))) {
-              temcsv.setSearch("self.importId = :importId");
+              LOG.debug("Exporting Model : " + metaModel.getFullName());
+              long startTime = System.currentTimeMillis();
+              notNullReferenceFlag = false;
+              referenceFlag = false;
+
+              zipOut.putNextEntry(new ZipEntry(metaModel.getName() + ".csv"));
+              CSVInput csvInput;
+              try (CSVWriter csvWriter =
+                  new CSVWriter(
+                      new OutputStreamWriter(new CloseShieldOutputStream(zipOut)),
+                      SEPARATOR,
+                      QUOTE_CHAR)) {
+                csvInput =
+                    writeCSVData(
+                        metaModel,
+                        csvWriter,
+                        dataBackup,
+                        totalRecord,
+                        subClasses,
+                        tempDirectoryPath);
+              }
+              zipOut.closeEntry();
+
+              addCsvInput(
+                  metaModel,
+                  csvInput,
+                  dataBackup,
+                  referenceFlag,
+                  notNullReferenceFlag,
+                  simpleCsvs,
+                  refernceCsvs,
+                  notNullReferenceCsvs);
+              appendExportTime(metaModel, totalRecord, startTime);
+            } catch (ClassNotFoundException e) {
+              TraceBackService.trace(e, DataBackupService.class.getName());
+            } catch (IOException e) {
+              // The entry of the model may be half written, so the archive must not be used.
+              TraceBackService.trace(e, DataBackupService.class.getName());
+              sb.append("\nError occured while writing model : " + metaModel.getFullName() + "\n");
+              sb.append(e.getMessage() + "\n");
+              errorsCount++;
+            } catch (Exception e) {
+              JPA.em().getTransaction().rollback();
+              if (!dataBackup.getCheckAllErrorFirst()) {
+                sb.append(
+                    "\nError occured while processing model : " + metaModel.getFullName() + "\n");
+                sb.append(e.getMessage() + "\n");
+              }
+              JPA.em().getTransaction().begin();
+              dataBackup = Beans.get(DataBackupRepository.class).find(dataBackup.getId());
+              errorsCount++;
             }
-            simpleCsvs.add(temcsv);
-          } else {
-            simpleCsvs.add(csvInput);
           }
-
-          fileNameList.add(metaModel.getName() + ".csv");
-        } catch (ClassNotFoundException | IOException e) {
-          TraceBackService.trace(e, DataBackupService.class.getName());
-        } catch (Exception e) {
-          JPA.em().getTransaction().rollback();
-          if (!dataBackup.getCheckAllErrorFirst()) {
-            sb.append("\nError occured while processing model : " + metaModel.getFullName() + "\n");
-            sb.append(e.getMessage() + "\n");
-          }
-          JPA.em().getTransaction().begin();
-          dataBackup = Beans.get(DataBackupRepository.class).find(dataBackup.getId());
-          errorsCount++;
         }
-      }
 
-      CSVConfig csvConfig = new CSVConfig();
-      csvConfig.setInputs(simpleCsvs);
-      csvConfig.getInputs().addAll(notNullReferenceCsvs);
-      csvConfig.getInputs().addAll(refernceCsvs);
-      csvConfig.getInputs().addAll(notNullReferenceCsvs);
-      generateConfig(tempDirectoryPath, csvConfig);
+        CSVConfig csvConfig = new CSVConfig();
+        csvConfig.setInputs(simpleCsvs);
+        csvConfig.getInputs().addAll(notNullReferenceCsvs);
+        csvConfig.getInputs().addAll(refernceCsvs);
+        csvConfig.getInputs().addAll(notNullReferenceCsvs);
+        generateConfig(tempDirectoryPath, csvConfig);
 
-      fileNameList.add(DataBackupServiceImpl.CONFIG_FILE_NAME);
+        fileNameList.add(DataBackupServiceImpl.CONFIG_FILE_NAME);
+        addFilesToZip(zipOut, tempDirectoryPath, fileNameList);
+      }
     }
 
     try {
@@ -248,7 +278,6 @@ public class DataBackupCreateService {
       }
 
       if (errorsCount == 0) {
-        File zippedFile = generateZIP(tempDirectoryPath, fileNameList);
         dataBackup.setBackupMetaFile(metaFiles.upload(zippedFile));
       } else {
         dataBackup.setStatusSelect(DataBackupRepository.DATA_BACKUP_STATUS_ERROR);
@@ -260,6 +289,208 @@ public class DataBackupCreateService {
     return dataBackup;
   }
 
+  protected void addCsvInput(
+      MetaModel metaModel,
+      CSVInput csvInput,
+      DataBackup dataBackup,
+      boolean referenceFlag,
+      boolean notNullReferenceFlag,
+      List<CSVInput> simpleCsvs,
+      List<CSVInput> refernceCsvs,
+      List<CSVInput> notNullReferenceCsvs)
+      throws ClassNotFoundException {
+
+    if (notNullReferenceFlag) {
+      notNullReferenceCsvs.add(csvInput);
+    } else if (referenceFlag) {
+      refernceCsvs.add(csvInput);
+      CSVInput temcsv = new CSVInput();
+      temcsv.setFileName(csvInput.getFileName());
+      temcsv.setTypeName(csvInput.getTypeName());
+
+      if (dataBackup.getIsRelativeDate()) {
+        temcsv.setBindings(new ArrayList<>());
+        getCsvInputForDateorDateTime(metaModel, temcsv);
+      }
+      if (AutoImportModelMap.containsKey(csvInput.getTypeName())) {
+        temcsv.setSearch(AutoImportModelMap.get(csvInput.getTypeName()).toString());
+      }
+      if (Class.forName(metaModel.getFullName()).getSuperclass() == App.class) {
+        temcsv.setSearch("self.code = :code");
+      }
+      if (!AutoImportModelMap.containsKey(csvInput.getTypeName())
+          && !((Class.forName(metaModel.getFullName()).getSuperclass()).equals(App.class))) {
+        temcsv.setSearch("self.importId = :importId");
+      }
+      simpleCsvs.add(temcsv);
+    } else {
+      simpleCsvs.add(csvInput);
+    }
+  }
+
+  protected void appendExportTime(MetaModel metaModel, long totalRecord, long startTime) {
+    sb.append(
+        String.format(
+            "Model %s : %d records exported in %d ms%n",
+            metaModel.getFullName(),
+            totalRecord,
+            System.currentTimeMillis() - startTime));
+  }
+
+  /**
+   * Export the models in worker threads, each model being exported by a new instance of the
+   * service with its own database session into a temporary csv file. The csv files are then added
+   * to the archive in the order of the models, each csv file being deleted once added.
+   *
+   * @return the number of models in error
+   */
+  protected int exportMetaModelsInParallel(
+      DataBackup dataBackup,
+      List<MetaModel> metaModelList,
+      Map<String, List<String>> subClassesMap,
+      String dirPath,
+      ZipOutputStream zipOut,
+      List<CSVInput> simpleCsvs,
+      List<CSVInput> refernceCsvs,
+      List<CSVInput> notNullReferenceCsvs)
+      throws IOException {
+
+    int errorsCount = 0;
+    Long dataBackupId = dataBackup.getId();
+    ExecutorService executor = Executors.newFixedThreadPool(dataBackup.getThreadCount());
+
+    try {
+      MetaModelExport[] metaModelExports = new MetaModelExport[metaModelList.size()];
+      List<Future<?>> futureList = new ArrayList<>();
+      for (int i = 0; i < metaModelList.size(); i++) {
+        int index = i;
+        MetaModel metaModel = metaModelList.get(i);
+        Long metaModelId = metaModel.getId();
+        List<String> subClasses = subClassesMap.get(metaModel.getFullName());
+        Runnable task =
+            () ->
+                metaModelExports[index] =
+                    exportMetaModelInWorker(dataBackupId, metaModelId, subClasses, dirPath);
+        futureList.add(executor.submit(new TenantAware(task).withTransaction(false)));
+      }
+
+      for (int i = 0; i < metaModelList.size(); i++) {
+        MetaModel metaModel = metaModelList.get(i);
+        futureList.get(i).get();
+        MetaModelExport metaModelExport = metaModelExports[i];
+        sb.append(metaModelExport.log);
+        fileNameList.addAll(metaModelExport.fileNameList);
+        if (metaModelExport.error) {
+          errorsCount++;
+        }
+        if (metaModelExport.csvInput == null) {
+          // The csv file of a model in error may be half written.
+          Files.deleteIfExists(new File(dirPath, metaModel.getName() + ".csv").toPath());
+          continue;
+        }
+
+        addFilesToZip(
+            zipOut, dirPath, Collections.singletonList(metaModelExport.csvInput.getFileName()));
+        try {
+          addCsvInput(
+              metaModel,
+              metaModelExport.csvInput,
+              dataBackup,
+              metaModelExport.referenceFlag,
+              metaModelExport.notNullReferenceFlag,
+              simpleCsvs,
+              refernceCsvs,
+              notNullReferenceCsvs);
+        } catch (ClassNotFoundException e) {
+          TraceBackService.trace(e, DataBackupService.class.getName());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    return errorsCount;
+  }
+
+  protected MetaModelExport exportMetaModelInWorker(
+      Long dataBackupId, Long metaModelId, List<String> subClasses, String dirPath) {
+
+    final RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      return Beans.get(DataBackupCreateService.class)
+          .exportMetaModel(
+              Beans.get(DataBackupRepository.class).find(dataBackupId),
+              metaModelRepo.find(metaModelId),
+              subClasses,
+              dirPath);
+    } finally {
+      Beans.get(UnitOfWork.class).end();
+    }
+  }
+
+  /**
+   * Export the data of a model into a csv file of the given directory. This instance must only be
+   * used to export this model.
+   */
+  protected MetaModelExport exportMetaModel(
+      DataBackup dataBackup, MetaModel metaModel, List<String> subClasses, String dirPath) {
+
+    MetaModelExport metaModelExport = new MetaModelExport();
+    fileNameList = new ArrayList<>();
+
+    try {
+      long totalRecord = getMetaModelDataCount(metaModel, subClasses);
+      if (dataBackup.getIsProcessEmptyTable() || totalRecord > 0) {
+        LOG.debug("Exporting Model : " + metaModel.getFullName());
+        long startTime = System.currentTimeMillis();
+        notNullReferenceFlag = false;
+        referenceFlag = false;
+
+        try (CSVWriter csvWriter =
+            new CSVWriter(
+                new BufferedWriter(
+                    new FileWriter(new File(dirPath, metaModel.getName() + ".csv"))),
+                SEPARATOR,
+                QUOTE_CHAR)) {
+          metaModelExport.csvInput =
+              writeCSVData(metaModel, csvWriter, dataBackup, totalRecord, subClasses, dirPath);
+        }
+        metaModelExport.referenceFlag = referenceFlag;
+        metaModelExport.notNullReferenceFlag = notNullReferenceFlag;
+        appendExportTime(metaModel, totalRecord, startTime);
+      }
+    } catch (ClassNotFoundException | IOException e) {
+      TraceBackService.trace(e, DataBackupService.class.getName());
+      metaModelExport.csvInput = null;
+    } catch (Exception e) {
+      if (!dataBackup.getCheckAllErrorFirst()) {
+        sb.append("\nError occured while processing model : " + metaModel.getFullName() + "\n");
+        sb.append(e.getMessage() + "\n");
+      }
+      metaModelExport.csvInput = null;
+      metaModelExport.error = true;
+    }
+
+    metaModelExport.fileNameList = fileNameList;
+    metaModelExport.log = sb.toString();
+    return metaModelExport;
+  }
+
+  /** Result of the export of a model by a worker thread. */
+  protected static class MetaModelExport {
+    protected CSVInput csvInput;
+    protected boolean referenceFlag;
+    protected boolean notNullReferenceFlag;
+    protected boolean error;
+    protected List<String> fileNameList;
+    protected String log;
+  }
+
   protected void getCsvInputForDateorDateTime(MetaModel metaModel, CSVInput csvInput) {
     try {
       Mapper metaModelMapper = Mapper.of(Class.forName(metaModel.getFullName()));
@@ -321,20 +552,6 @@ public class DataBackupCreateService {
     return subClassMap;
   }
 
-  /* Get All Data of Specific MetaModel */
-  protected List<Model> getMetaModelDataList(
-      MetaModel metaModel, int start, Integer fetchLimit, List<String> subClasses)
-      throws ClassNotFoundException {
-
-    Query<Model> query = getQuery(metaModel, subClasses);
-
-    if (query != null) {
-      return query.fetch(fetchLimit, start);
-    }
-
-    return null;
-  }
-
   protected long getMetaModelDataCount(MetaModel metaModel, List<String> subClasses)
       throws ClassNotFoundException {
     Query<Model> query = getQuery(metaModel, subClasses);
@@ -345,8 +562,22 @@ public class DataBackupCreateService {
     return count;
   }
 
-  protected Query<Model> getQuery(MetaModel metaModel, List<String> subClasses)
+  /**
+   * Get a query on the records of the model ordered by id, to fetch them by pages after the id
+   * bound to the "lastId" parameter.
+   */
+  protected Query<Model> getKeysetQuery(MetaModel metaModel, List<String> subClasses)
       throws ClassNotFoundException {
+    @SuppressWarnings("unchecked")
+    Class<Model> klass = (Class<Model>) Class.forName(metaModel.getFullName());
+    String whereStr = getSubClassesFilter(subClasses);
+    return JpaRepository.of(klass)
+        .all()
+        .filter((StringUtils.notEmpty(whereStr) ? whereStr + " AND " : "") + "self.id > :lastId")
+        .order("id");
+  }
+
+  protected String getSubClassesFilter(List<String> subClasses) {
     StringBuilder whereStr = new StringBuilder();
     if (subClasses != null && !subClasses.isEmpty()) {
       for (String subClassName : subClasses) {
@@ -354,6 +585,12 @@ public class DataBackupCreateService {
         whereStr.append("id NOT IN (select id from ").append(subClassName).append(")");
       }
     }
+    return whereStr.toString();
+  }
+
+  protected Query<Model> getQuery(MetaModel metaModel, List<String> subClasses)
+      throws ClassNotFoundException {
+    String whereStr = getSubClassesFilter(subClasses);
     @SuppressWarnings("unchecked")
     Class<Model> klass = (Class<Model>) Class.forName(metaModel.getFullName());
     JpaRepository<Model> model = null;
@@ -365,8 +602,8 @@ public class DataBackupCreateService {
     }
     if (model != null) {
       query = JpaRepository.of(klass).all();
-      if (StringUtils.notEmpty(whereStr.toString())) {
-        query.filter(whereStr.toString());
+      if (StringUtils.notEmpty(whereStr)) {
+        query.filter(whereStr);
       }
 
       try {
@@ -416,7 +653,6 @@ public class DataBackupCreateService {
       throws AxelorException {
 
     CSVInput csvInput = new CSVInput();
-    boolean headerFlag = true;
     List<String> dataArr;
     List<String> headerArr = new ArrayList<>();
     List<Model> dataList;
@@ -433,65 +669,76 @@ public class DataBackupCreateService {
       csvInput.setTypeName(metaModel.getFullName());
       csvInput.setBindings(new ArrayList<>());
 
+      // Exported columns and their headers are computed once for the model.
+      List<Property> exportablePropertyList = new ArrayList<>();
+      for (Property property : pro) {
+        if (isPropertyExportable(property)) {
+          exportablePropertyList.add(property);
+          headerArr.add(getMetaModelHeader(property, csvInput, isRelativeDate));
+        }
+      }
+      if (byteArrFieldFlag) {
+        csvInput.setCallable(
+            "com.axelor.apps.base.service.app.DataBackupRestoreService:importObjectWithByteArray");
+        byteArrFieldFlag = false;
+      }
+      csvWriter.writeNext(headerArr.toArray(new String[headerArr.size()]), true);
+
+      Long dataBackupId = dataBackup.getId();
+      Map<String, List<DataBackupConfigAnonymizeLine>> anonymizeLineMap =
+          anonymizeData
+              ? getAnonymizeLineMap(metaModel, JPA.find(DataBackup.class, dataBackupId))
+              : Collections.emptyMap();
+
       if (totalRecord > 0) {
-        for (int i = 0; i < totalRecord; i = i + fetchLimit) {
-
-          dataList = getMetaModelDataList(metaModel, i, fetchLimit, subClasses);
-
-          if (dataList != null && !dataList.isEmpty()) {
-            for (Object dataObject : dataList) {
-              dataArr = new ArrayList<>();
-
-              for (Property property : pro) {
-                if (isPropertyExportable(property)) {
-                  if (headerFlag) {
-                    String headerStr = getMetaModelHeader(property, csvInput, isRelativeDate);
-                    headerArr.add(headerStr);
-                  }
-                  dataArr.add(
-                      getMetaModelData(
-                          metaModel.getName(),
-                          metaModelMapper,
-                          property,
-                          dataObject,
-                          dirPath,
-                          isRelativeDate,
-                          updateImportId,
-                          anonymizeData,
-                          dataBackup.getDataBackupConfigAnonymizeLineList()));
-                }
-              }
-              if (headerFlag) {
-                if (byteArrFieldFlag) {
-                  csvInput.setCallable(
-                      "com.axelor.apps.base.service.app.DataBackupRestoreService:importObjectWithByteArray");
-                  byteArrFieldFlag = false;
-                }
-                csvWriter.writeNext(headerArr.toArray(new String[headerArr.size()]), true);
-                headerFlag = false;
-              }
+        Query<Model> query = getKeysetQuery(metaModel, subClasses);
+        long exportedRecord = 0;
+        long lastId = 0L;
+
+        while (exportedRecord < totalRecord) {
+          dataList =
+              query
+                  .bind("lastId", lastId)
+                  .fetch((int) Math.min(fetchLimit, totalRecord - exportedRecord));
+          if (dataList.isEmpty()) {
+            break;
+          }
 
-              if ("Partner".equals(metaModel.getName()) && dataBackup.getAnonymizeData()) {
-                dataArr = csvComputeAnonymizedFullname(dataArr, headerArr);
-              }
+          for (Model dataObject : dataList) {
+            dataArr = new ArrayList<>();
+
+            for (Property property : exportablePropertyList) {
+              dataArr.add(
+                  getMetaModelData(
+                      metaModel.getName(),
+                      metaModelMapper,
+                      property,
+                      dataObject,
+                      dirPath,
+                      isRelativeDate,
+                      updateImportId,
+                      anonymizeData,
+                      anonymizeLineMap.getOrDefault(
+                          property.getName(), Collections.emptyList())));
+            }
 
-              csvWriter.writeNext(dataArr.toArray(new String[dataArr.size()]), true);
+            if ("Partner".equals(metaModel.getName()) && anonymizeData) {
+              dataArr = csvComputeAnonymizedFullname(dataArr, headerArr);
             }
+
+            csvWriter.writeNext(dataArr.toArray(new String[dataArr.size()]), true);
+            lastId = dataObject.getId();
           }
-        }
-      } else {
-        for (Property property : pro) {
-          if (isPropertyExportable(property)) {
-            String headerStr = getMetaModelHeader(property, csvInput, isRelativeDate);
-            headerArr.add(headerStr);
+          exportedRecord += dataList.size();
+
+          // The session is cleared after each page, with the records and the records they
+          // reference, so its size depends on the fetch limit and not on the table size.
+          JPA.clear();
+          if (anonymizeData) {
+            anonymizeLineMap =
+                getAnonymizeLineMap(metaModel, JPA.find(DataBackup.class, dataBackupId));
           }
         }
-        if (byteArrFieldFlag) {
-          csvInput.setCallable(
-              "com.axelor.apps.base.service.app.DataBackupRestoreService:importObjectWithByteArray");
-          byteArrFieldFlag = false;
-        }
-        csvWriter.writeNext(headerArr.toArray(new String[headerArr.size()]), true);
       }
 
       if (AutoImportModelMap.containsKey(csvInput.getTypeName())) {
@@ -508,6 +755,22 @@ public class DataBackupCreateService {
     return csvInput;
   }
 
+  protected Map<String, List<DataBackupConfigAnonymizeLine>> getAnonymizeLineMap(
+      MetaModel metaModel, DataBackup dataBackup) {
+    Map<String, List<DataBackupConfigAnonymizeLine>> anonymizeLineMap = new HashMap<>();
+    for (DataBackupConfigAnonymizeLine dataBackupConfigAnonymizeLine :
+        dataBackup.getDataBackupConfigAnonymizeLineList()) {
+      if (metaModel.getName().equals(dataBackupConfigAnonymizeLine.getMetaModel().getName())
+          && dataBackupConfigAnonymizeLine.getMetaField() != null) {
+        anonymizeLineMap
+            .computeIfAbsent(
+                dataBackupConfigAnonymizeLine.getMetaField().getName(), key -> new ArrayList<>())
+            .add(dataBackupConfigAnonymizeLine);
+      }
+    }
+    return anonymizeLineMap;
+  }
+
   protected List<String> csvComputeAnonymizedFullname(
       List<String> dataArr, List<String> headerArr) {
 
@@ -822,31 +1085,9 @@ public class DataBackupCreateService {
 
   protected File generateZIP(String dirPath, List<String> fileNameList) {
 
-    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
-    String backupZipFileName = "DataBackup_" + LocalDateTime.now().format(formatter) + ".zip";
-    File zipFile = new File(dirPath, backupZipFileName);
+    File zipFile = new File(dirPath, getBackupZipFileName());
     try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile))) {
-
-      for (String fileName : fileNameList) {
-        ZipEntry e = new ZipEntry(fileName);
-        out.putNextEntry(e);
-        File file = new File(dirPath, fileName);
-        try (BufferedInputStream bin = new BufferedInputStream(new FileInputStream(file))) {
-          byte[] data;
-          while (bin.available() > 0) {
-            if (bin.available() < BUFFER_SIZE) {
-              data = new byte[bin.available()];
-            } else {
-              data = new byte[BUFFER_SIZE];
-            }
-            bin.read(data, 0, data.length);
-            out.write(data, 0, data.length);
-          }
-          out.closeEntry();
-
-          file.delete();
-        }
-      }
+      addFilesToZip(out, dirPath, fileNameList);
     } catch (IOException e) {
       TraceBackService.trace(e, "Error From DataBackupCreateService - generateZIP()");
     }
@@ -854,6 +1095,26 @@ public class DataBackupCreateService {
     return zipFile;
   }
 
+  protected String getBackupZipFileName() {
+    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    return "DataBackup_" + LocalDateTime.now().format(formatter) + ".zip";
+  }
+
+  /* Add the files of the directory to the archive, then delete them */
+  protected void addFilesToZip(ZipOutputStream out, String dirPath, List<String> fileNameList)
+      throws IOException {
+
+    for (String fileName : fileNameList) {
+      ZipEntry e = new ZipEntry(fileName);
+      out.putNextEntry(e);
+      File file = new File(dirPath, fileName);
+      Files.copy(file.toPath(), out);
+      out.closeEntry();
+
+      file.delete();
+    }
+  }
+
   /* Generate XML File from CSVConfig */
   protected void generateConfig(String dirPath, CSVConfig csvConfig) {
 
@@ -885,11 +1146,8 @@ public class DataBackupCreateService {
         if (totalRecord > 0) {
           LOG.debug("Checking Model : " + metaModel.getFullName());
 
-          CSVWriter csvWriter =
-              new CSVWriter(
-                  new FileWriter(new File(tempDirectoryPath, metaModel.getName() + ".csv")),
-                  SEPARATOR,
-                  QUOTE_CHAR);
+          // Only the errors are checked, the data is not kept.
+          CSVWriter csvWriter = new CSVWriter(new NullWriter(), SEPARATOR, QUOTE_CHAR);
           writeCSVData(metaModel, csvWriter, dataBackup, 1, subClasses, tempDirectoryPath);
           csvWriter.close();
         }
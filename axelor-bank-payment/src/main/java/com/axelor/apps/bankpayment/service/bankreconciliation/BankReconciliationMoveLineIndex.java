@@ -0,0 +1,150 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.bankpayment.service.bankreconciliation;
+
+import com.axelor.apps.account.db.MoveLine;
+import com.axelor.apps.bankpayment.db.BankStatementLine;
+import com.axelor.apps.bankpayment.db.repo.BankStatementQueryRepository;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Index of the move lines to reconcile with the lines of a bank statement. Move lines are sorted by
+ * debit and by credit, so the candidates of a bank statement line are found with the configured
+ * amount and date margins without going through every move line.
+ *
+ * <p>The candidates are always a superset of the move lines accepted by the query, and are
+ * returned in the order of the list given to the constructor.
+ */
+public class BankReconciliationMoveLineIndex {
+
+  protected final List<MoveLine> moveLineList;
+  protected final Map<MoveLine, Integer> positionMap = new IdentityHashMap<>();
+  protected final boolean[] removed;
+
+  protected final NavigableMap<BigDecimal, List<MoveLine>> debitIndex = new TreeMap<>();
+  protected final NavigableMap<BigDecimal, List<MoveLine>> creditIndex = new TreeMap<>();
+
+  protected final BigDecimal amountMarginLow;
+  protected final BigDecimal amountMarginHigh;
+  protected final int dateMargin;
+
+  public BankReconciliationMoveLineIndex(
+      List<MoveLine> moveLineList,
+      BigDecimal amountMarginLow,
+      BigDecimal amountMarginHigh,
+      int dateMargin) {
+    this.moveLineList = moveLineList;
+    this.removed = new boolean[moveLineList.size()];
+    this.amountMarginLow = amountMarginLow;
+    this.amountMarginHigh = amountMarginHigh;
+    this.dateMargin = dateMargin;
+
+    for (int position = 0; position < moveLineList.size(); position++) {
+      MoveLine moveLine = moveLineList.get(position);
+      positionMap.put(moveLine, position);
+      debitIndex.computeIfAbsent(moveLine.getDebit(), debit -> new ArrayList<>()).add(moveLine);
+      creditIndex.computeIfAbsent(moveLine.getCredit(), credit -> new ArrayList<>()).add(moveLine);
+    }
+  }
+
+  /**
+   * Get the move lines that may match the given bank statement line.
+   *
+   * @param bankStatementLine
+   * @param candidateFilterSelect the candidate filter of the bank statement query
+   * @return the move lines not reconciled yet, passing the filter
+   */
+  public List<MoveLine> getCandidateList(
+      BankStatementLine bankStatementLine, int candidateFilterSelect) {
+
+    if (candidateFilterSelect == BankStatementQueryRepository.CANDIDATE_FILTER_NONE) {
+      List<MoveLine> candidateList = new ArrayList<>();
+      for (int position = 0; position < moveLineList.size(); position++) {
+        if (!removed[position]) {
+          candidateList.add(moveLineList.get(position));
+        }
+      }
+      return candidateList;
+    }
+
+    BigDecimal credit = bankStatementLine.getCredit();
+    BigDecimal debit = bankStatementLine.getDebit();
+    BigDecimal minDebit = credit.multiply(amountMarginLow);
+    BigDecimal maxDebit = credit.multiply(amountMarginHigh);
+    BigDecimal minCredit = debit.multiply(amountMarginLow);
+    BigDecimal maxCredit = debit.multiply(amountMarginHigh);
+
+    // a debit statement line is matched with credit move lines: searching the debit index would
+    // go through every move line with a zero debit
+    NavigableMap<BigDecimal, List<MoveLine>> amountMap =
+        debit.signum() != 0
+            ? creditIndex.subMap(minCredit, true, maxCredit, true)
+            : debitIndex.subMap(minDebit, true, maxDebit, true);
+
+    return amountMap.values().stream()
+        .flatMap(List::stream)
+        .filter(moveLine -> !removed[positionMap.get(moveLine)])
+        .filter(
+            moveLine ->
+                moveLine.getDebit().compareTo(minDebit) >= 0
+                    && moveLine.getDebit().compareTo(maxDebit) <= 0
+                    && moveLine.getCredit().compareTo(minCredit) >= 0
+                    && moveLine.getCredit().compareTo(maxCredit) <= 0)
+        .filter(
+            moveLine ->
+                candidateFilterSelect != BankStatementQueryRepository.CANDIDATE_FILTER_AMOUNT_DATE
+                    || this.isInDateRange(moveLine, bankStatementLine))
+        .sorted(Comparator.comparing(positionMap::get))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Remove a reconciled move line from the index.
+   *
+   * @param moveLine
+   */
+  public void remove(MoveLine moveLine) {
+    Integer position = positionMap.get(moveLine);
+    if (position != null) {
+      removed[position] = true;
+    }
+  }
+
+  protected boolean isInDateRange(MoveLine moveLine, BankStatementLine bankStatementLine) {
+    return this.isInDateRange(moveLine.getDate(), bankStatementLine.getValueDate())
+        || this.isInDateRange(moveLine.getDueDate(), bankStatementLine.getValueDate())
+        || this.isInDateRange(moveLine.getDate(), bankStatementLine.getOperationDate())
+        || this.isInDateRange(moveLine.getDueDate(), bankStatementLine.getOperationDate());
+  }
+
+  protected boolean isInDateRange(LocalDate date, LocalDate referenceDate) {
+    return date != null
+        && referenceDate != null
+        && !date.isBefore(referenceDate.minusDays(dateMargin))
+        && !date.isAfter(referenceDate.plusDays(dateMargin));
+  }
+}
@@ -60,6 +60,7 @@ import com.axelor.apps.bankpayment.service.bankreconciliation.load.BankReconcili
 import com.axelor.apps.bankpayment.service.bankreconciliation.load.afb120.BankReconciliationLoadAFB120Service;
 import com.axelor.apps.bankpayment.service.config.BankPaymentConfigService;
 import com.axelor.apps.base.db.BankDetails;
+import com.axelor.apps.base.db.Company;
 import com.axelor.apps.base.db.PrintingSettings;
 import com.axelor.apps.base.service.BankDetailsService;
 import com.axelor.apps.base.service.PeriodService;
@@ -94,6 +95,7 @@ import org.apache.commons.collections.CollectionUtils;
 
 public class BankReconciliationService {
   protected static final int RETURNED_SCALE = 2;
+  protected static final int AUTO_ACCOUNTING_FETCH_LIMIT = 50;
 
   protected AccountManagementRepository accountManagementRepository;
   protected AccountService accountService;
@@ -175,69 +177,163 @@ public class BankReconciliationService {
 
   public void generateMovesAutoAccounting(BankReconciliation bankReconciliation)
       throws AxelorException {
-    Context scriptContext;
-    Move move;
-    int limit = 10;
-    int offset = 0;
+    Map<Long, List<AutoAccountingRule>> autoAccountingRuleMap =
+        getAutoAccountingRuleMap(bankReconciliation.getCompany());
+    if (autoAccountingRuleMap.isEmpty()) {
+      return;
+    }
+    Long bankReconciliationId = bankReconciliation.getId();
+    long lastId = 0L;
     List<BankReconciliationLine> bankReconciliationLines =
-        bankReconciliationLineRepository
-            .findByBankReconciliation(bankReconciliation)
-            .fetch(limit, offset);
+        fetchBankReconciliationLinesToAccount(bankReconciliationId, lastId);
 
-    List<BankStatementRule> bankStatementRules;
-    while (bankReconciliationLines.size() > 0) {
-      for (BankReconciliationLine bankReconciliationLine : bankReconciliationLines) {
-        if (bankReconciliationLine.getMoveLine() != null) {
+    while (!bankReconciliationLines.isEmpty()) {
+      generateMovesAutoAccounting(bankReconciliationLines, autoAccountingRuleMap);
+      lastId = bankReconciliationLines.get(bankReconciliationLines.size() - 1).getId();
+      JPA.clear();
+      bankReconciliationLines = fetchBankReconciliationLinesToAccount(bankReconciliationId, lastId);
+    }
+  }
+
+  protected void generateMovesAutoAccounting(
+      List<BankReconciliationLine> bankReconciliationLines,
+      Map<Long, List<AutoAccountingRule>> autoAccountingRuleMap)
+      throws AxelorException {
+    for (BankReconciliationLine bankReconciliationLine : bankReconciliationLines) {
+      AutoAccountingRule autoAccountingRule =
+          findAutoAccountingRule(bankReconciliationLine, autoAccountingRuleMap);
+      if (autoAccountingRule != null) {
+        generateMoveAutoAccounting(bankReconciliationLine, autoAccountingRule);
+      }
+    }
+  }
+
+  /**
+   * Find the first rule whose query matches the bank statement line of the given line.
+   *
+   * @return the rule, or null if the line is already reconciled or no rule with a journal matches
+   */
+  protected AutoAccountingRule findAutoAccountingRule(
+      BankReconciliationLine bankReconciliationLine,
+      Map<Long, List<AutoAccountingRule>> autoAccountingRuleMap) {
+    BankStatementLine bankStatementLine = bankReconciliationLine.getBankStatementLine();
+    if (bankReconciliationLine.getMoveLine() != null
+        || bankStatementLine == null
+        || bankStatementLine.getOperationInterbankCodeLine() == null
+        || bankStatementLine.getBankDetails() == null) {
+      return null;
+    }
+    List<AutoAccountingRule> autoAccountingRules =
+        autoAccountingRuleMap.get(bankStatementLine.getOperationInterbankCodeLine().getId());
+    if (autoAccountingRules == null) {
+      return null;
+    }
+    GroovyScriptHelper scriptHelper = null;
+
+    for (AutoAccountingRule autoAccountingRule : autoAccountingRules) {
+      if (!autoAccountingRule.bankDetailsId.equals(bankStatementLine.getBankDetails().getId())) {
+        continue;
+      }
+      if (scriptHelper == null) {
+        scriptHelper =
+            new GroovyScriptHelper(
+                new Context(Mapper.toMap(bankStatementLine), BankStatementLineAFB120.class));
+      }
+      if (Boolean.TRUE.equals(scriptHelper.eval(autoAccountingRule.query))) {
+        if (!autoAccountingRule.hasJournal) {
           continue;
         }
-        scriptContext =
-            new Context(
-                Mapper.toMap(bankReconciliationLine.getBankStatementLine()),
-                BankStatementLineAFB120.class);
-        bankStatementRules =
-            bankStatementRuleRepository
-                .all()
-                .filter(
-                    "self.ruleTypeSelect = :ruleTypeSelect"
-                        + " AND self.accountManagement.interbankCodeLine = :interbankCodeLine"
-                        + " AND self.accountManagement.company = :company"
-                        + " AND self.accountManagement.bankDetails = :bankDetails")
-                .bind("ruleTypeSelect", BankStatementRuleRepository.RULE_TYPE_ACCOUNTING_AUTO)
-                .bind(
-                    "interbankCodeLine",
-                    bankReconciliationLine.getBankStatementLine().getOperationInterbankCodeLine())
-                .bind("company", bankReconciliationLine.getBankReconciliation().getCompany())
-                .bind("bankDetails", bankReconciliationLine.getBankStatementLine().getBankDetails())
-                .fetch();
-
-        for (BankStatementRule bankStatementRule : bankStatementRules) {
-
-          if (bankStatementRule != null
-              && bankStatementRule.getBankStatementQuery() != null
-              && !Strings.isNullOrEmpty(bankStatementRule.getBankStatementQuery().getQuery())
-              && Boolean.TRUE.equals(
-                  new GroovyScriptHelper(scriptContext)
-                      .eval(
-                          bankStatementRule
-                              .getBankStatementQuery()
-                              .getQuery()
-                              .replaceAll(
-                                  "%s", "\"" + bankStatementRule.getSearchLabel() + "\"")))) {
-            if (bankStatementRule.getAccountManagement().getJournal() == null) {
-              continue;
-            }
-            move = generateMove(bankReconciliationLine, bankStatementRule);
-            moveValidateService.validate(move);
-            break;
-          }
-        }
+        return autoAccountingRule;
       }
-      offset += limit;
-      JPA.clear();
-      bankReconciliationLines =
-          bankReconciliationLineRepository
-              .findByBankReconciliation(bankReconciliation)
-              .fetch(limit, offset);
+    }
+    return null;
+  }
+
+  /**
+   * Generate and validate the move of a bank reconciliation line in its own transaction, so that a
+   * failure does not roll back the moves already generated for the other lines.
+   */
+  @Transactional(rollbackOn = {Exception.class})
+  protected void generateMoveAutoAccounting(
+      BankReconciliationLine bankReconciliationLine, AutoAccountingRule autoAccountingRule)
+      throws AxelorException {
+    Move move =
+        generateMove(
+            bankReconciliationLine,
+            bankStatementRuleRepository.find(autoAccountingRule.bankStatementRuleId));
+    moveValidateService.validate(move);
+  }
+
+  protected List<BankReconciliationLine> fetchBankReconciliationLinesToAccount(
+      Long bankReconciliationId, long lastId) {
+    return bankReconciliationLineRepository
+        .all()
+        .filter(
+            "self.bankReconciliation.id = :bankReconciliationId"
+                + " AND self.moveLine IS NULL"
+                + " AND self.id > :lastId")
+        .bind("bankReconciliationId", bankReconciliationId)
+        .bind("lastId", lastId)
+        .order("id")
+        .fetch(AUTO_ACCOUNTING_FETCH_LIMIT);
+  }
+
+  /**
+   * Load the auto accounting rules of the company once, grouped by interbank code, with their
+   * query already computed so that each expression is only compiled once by the script engine.
+   *
+   * @param company
+   * @return the rules by interbank code line id, in id order
+   */
+  protected Map<Long, List<AutoAccountingRule>> getAutoAccountingRuleMap(Company company) {
+    List<BankStatementRule> bankStatementRules =
+        bankStatementRuleRepository
+            .all()
+            .filter(
+                "self.ruleTypeSelect = :ruleTypeSelect"
+                    + " AND self.accountManagement.company = :company"
+                    + " AND self.accountManagement.interbankCodeLine IS NOT NULL"
+                    + " AND self.accountManagement.bankDetails IS NOT NULL")
+            .bind("ruleTypeSelect", BankStatementRuleRepository.RULE_TYPE_ACCOUNTING_AUTO)
+            .bind("company", company)
+            .order("id")
+            .fetch();
+
+    Map<Long, List<AutoAccountingRule>> autoAccountingRuleMap = new HashMap<>();
+    for (BankStatementRule bankStatementRule : bankStatementRules) {
+      BankStatementQuery bankStatementQuery = bankStatementRule.getBankStatementQuery();
+      if (bankStatementQuery == null || Strings.isNullOrEmpty(bankStatementQuery.getQuery())) {
+        continue;
+      }
+      AccountManagement accountManagement = bankStatementRule.getAccountManagement();
+      autoAccountingRuleMap
+          .computeIfAbsent(
+              accountManagement.getInterbankCodeLine().getId(), id -> new ArrayList<>())
+          .add(
+              new AutoAccountingRule(
+                  bankStatementRule.getId(),
+                  accountManagement.getBankDetails().getId(),
+                  bankStatementQuery
+                      .getQuery()
+                      .replace("%s", "\"" + bankStatementRule.getSearchLabel() + "\""),
+                  accountManagement.getJournal() != null));
+    }
+    return autoAccountingRuleMap;
+  }
+
+  /** Auto accounting rule detached from the persistence context, with its computed query. */
+  protected static class AutoAccountingRule {
+    protected final Long bankStatementRuleId;
+    protected final Long bankDetailsId;
+    protected final String query;
+    protected final boolean hasJournal;
+
+    protected AutoAccountingRule(
+        Long bankStatementRuleId, Long bankDetailsId, String query, boolean hasJournal) {
+      this.bankStatementRuleId = bankStatementRuleId;
+      this.bankDetailsId = bankDetailsId;
+      this.query = query;
+      this.hasJournal = hasJournal;
     }
   }
 
@@ -334,79 +430,26 @@ public class BankReconciliationService {
   }
 
   public BankReconciliation computeBalances(BankReconciliation bankReconciliation) {
-    int limit = 10;
-    int offset = 0;
-    List<BankReconciliation> bankReconciliations;
-    List<MoveLine> moveLines;
-
-    BigDecimal statementReconciledLineBalance = BigDecimal.ZERO;
-    BigDecimal movesReconciledLineBalance = BigDecimal.ZERO;
-    BigDecimal statementUnreconciledLineBalance = BigDecimal.ZERO;
-    BigDecimal movesUnreconciledLineBalance = BigDecimal.ZERO;
-    BigDecimal statementOngoingReconciledBalance = BigDecimal.ZERO;
-    BigDecimal movesOngoingReconciledBalance = BigDecimal.ZERO;
-
-    bankReconciliations =
-        bankReconciliationRepository
-            .findByBankDetails(bankReconciliation.getBankDetails())
-            .order("id")
-            .fetch(limit, offset);
-    if (bankReconciliations.size() != 0) {
-      statementReconciledLineBalance =
-          statementReconciledLineBalance.add(bankReconciliations.get(0).getStartingBalance());
-      movesReconciledLineBalance =
-          movesReconciledLineBalance.add(bankReconciliations.get(0).getStartingBalance());
+    BankDetails bankDetails = bankReconciliation.getBankDetails();
+
+    BigDecimal startingBalance = BigDecimal.ZERO;
+    BankReconciliation firstBankReconciliation =
+        bankReconciliationRepository.findByBankDetails(bankDetails).order("id").fetchOne();
+    if (firstBankReconciliation != null) {
+      startingBalance = firstBankReconciliation.getStartingBalance();
     }
-    do {
-      for (BankReconciliation br : bankReconciliations) {
-        for (BankReconciliationLine brl : br.getBankReconciliationLineList()) {
-          statementReconciledLineBalance =
-              computeStatementReconciledLineBalance(statementReconciledLineBalance, brl);
-          statementUnreconciledLineBalance =
-              computeStatementUnreconciledLineBalance(statementUnreconciledLineBalance, brl);
-          statementOngoingReconciledBalance =
-              computeStatementOngoingReconciledLineBalance(statementOngoingReconciledBalance, brl);
-          movesOngoingReconciledBalance =
-              computeMovesOngoingReconciledLineBalance(movesOngoingReconciledBalance, brl);
-        }
-      }
-      offset += limit;
-      JPA.clear();
-      bankReconciliations =
-          bankReconciliationRepository
-              .findByBankDetails(bankReconciliation.getBankDetails())
-              .fetch(limit, offset);
-    } while (bankReconciliations.size() != 0);
-
-    offset = 0;
-    JPA.clear();
-    bankReconciliation = bankReconciliationRepository.find(bankReconciliation.getId());
-    moveLines =
-        moveLineRepository
-            .all()
-            .filter("self.account = :cashAccount")
-            .bind("cashAccount", bankReconciliation.getCashAccount())
-            .fetch(limit, offset);
-    do {
-      for (MoveLine moveLine : moveLines) {
-        movesReconciledLineBalance =
-            computeMovesReconciledLineBalance(movesReconciledLineBalance, moveLine);
-        movesUnreconciledLineBalance =
-            computeMovesUnreconciledLineBalance(movesUnreconciledLineBalance, moveLine);
-      }
-      offset += limit;
-      JPA.clear();
-      bankReconciliation = bankReconciliationRepository.find(bankReconciliation.getId());
-      moveLines =
-          moveLineRepository
-              .all()
-              .filter("self.account = :cashAccount")
-              .bind("cashAccount", bankReconciliation.getCashAccount())
-              .fetch(limit, offset);
-    } while (moveLines.size() != 0);
-    JPA.clear();
-    bankReconciliation = bankReconciliationRepository.find(bankReconciliation.getId());
+
+    BigDecimal[] statementBalances = this.computeStatementBalances(bankDetails);
+    BigDecimal statementReconciledLineBalance = startingBalance.add(statementBalances[0]);
+    BigDecimal statementUnreconciledLineBalance = statementBalances[1];
+    BigDecimal statementOngoingReconciledBalance = statementBalances[2];
+    BigDecimal movesOngoingReconciledBalance = statementBalances[3];
+
     Account cashAccount = bankReconciliation.getCashAccount();
+    BigDecimal[] movesBalances = this.computeMovesBalances(cashAccount);
+    BigDecimal movesReconciledLineBalance = startingBalance.add(movesBalances[0]);
+    BigDecimal movesUnreconciledLineBalance = movesBalances[1];
+
     if (cashAccount != null) {
       bankReconciliation.setAccountBalance(
           accountService.computeBalance(cashAccount, AccountService.BALANCE_TYPE_DEBIT_BALANCE));
@@ -429,77 +472,93 @@ public class BankReconciliationService {
     return saveBR(bankReconciliation);
   }
 
-  protected BigDecimal computeMovesReconciledLineBalance(
-      BigDecimal movesReconciledLineBalance, MoveLine moveLine) {
-    if (moveLine.getDebit().compareTo(BigDecimal.ZERO) != 0) { // Debit line
-      movesReconciledLineBalance =
-          movesReconciledLineBalance.add(moveLine.getBankReconciledAmount());
-    } else { // Credit line
-      movesReconciledLineBalance =
-          movesReconciledLineBalance.subtract(moveLine.getBankReconciledAmount());
-    }
-    return movesReconciledLineBalance;
+  /**
+   * Compute the balances of the bank reconciliation lines of all the bank reconciliations of the
+   * bank details with a single aggregate query.
+   *
+   * @param bankDetails
+   * @return the statement reconciled, statement unreconciled, statement ongoing reconciled and
+   *     moves ongoing reconciled balances.
+   */
+  protected BigDecimal[] computeStatementBalances(BankDetails bankDetails) {
+    String ongoing =
+        "(self.isPosted IS NULL OR self.isPosted = false) "
+            + "AND self.postedNbr IS NOT NULL AND self.postedNbr != ''";
+    String amount = "(COALESCE(self.credit, 0) - COALESCE(self.debit, 0))";
+
+    Object[] result =
+        JPA.em()
+            .createQuery(
+                "SELECT "
+                    + "SUM(CASE WHEN self.isPosted = true THEN "
+                    + amount
+                    + " ELSE 0 END), "
+                    + "SUM(CASE WHEN self.isPosted IS NULL OR self.isPosted = false THEN "
+                    + amount
+                    + " ELSE 0 END), "
+                    + "SUM(CASE WHEN "
+                    + ongoing
+                    + " THEN "
+                    + amount
+                    + " ELSE 0 END), "
+                    + "SUM(CASE WHEN "
+                    + ongoing
+                    + " AND moveLine.id IS NOT NULL THEN "
+                    + "(CASE WHEN moveLine.debit != 0 THEN 1 ELSE -1 END) "
+                    + "* (COALESCE(self.credit, 0) + COALESCE(self.debit, 0)) ELSE 0 END) "
+                    + "FROM BankReconciliationLine self "
+                    + "LEFT JOIN self.moveLine moveLine "
+                    + "WHERE self.bankReconciliation.bankDetails = :bankDetails",
+                Object[].class)
+            .setParameter("bankDetails", bankDetails)
+            .getSingleResult();
+
+    return this.toBalances(result);
   }
 
-  protected BigDecimal computeMovesUnreconciledLineBalance(
-      BigDecimal movesUnreconciledLineBalance, MoveLine moveLine) {
-    if (moveLine.getDebit().compareTo(BigDecimal.ZERO) != 0) { // Debit line
-      movesUnreconciledLineBalance =
-          movesUnreconciledLineBalance.add(
-              moveLine.getDebit().subtract(moveLine.getBankReconciledAmount()));
-    } else { // Credit line
-      movesUnreconciledLineBalance =
-          movesUnreconciledLineBalance.subtract(
-              moveLine.getCredit().subtract(moveLine.getBankReconciledAmount()));
-    }
-    return movesUnreconciledLineBalance;
-  }
-
-  protected BigDecimal computeStatementReconciledLineBalance(
-      BigDecimal statementReconciledLineBalance, BankReconciliationLine brl) {
-    if (brl.getIsPosted()) {
-
-      statementReconciledLineBalance = statementReconciledLineBalance.subtract(brl.getDebit());
-      statementReconciledLineBalance = statementReconciledLineBalance.add(brl.getCredit());
+  /**
+   * Compute the reconciled and unreconciled balances of the move lines of the cash account with a
+   * single aggregate query.
+   *
+   * @param cashAccount
+   * @return the moves reconciled and moves unreconciled balances.
+   */
+  protected BigDecimal[] computeMovesBalances(Account cashAccount) {
+    if (cashAccount == null) {
+      return new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO};
     }
-    return statementReconciledLineBalance;
-  }
-
-  protected BigDecimal computeStatementUnreconciledLineBalance(
-      BigDecimal statementUnreconciledLineBalance, BankReconciliationLine brl) {
-    if (!brl.getIsPosted()) {
-      statementUnreconciledLineBalance = statementUnreconciledLineBalance.subtract(brl.getDebit());
-      statementUnreconciledLineBalance = statementUnreconciledLineBalance.add(brl.getCredit());
-    }
-    return statementUnreconciledLineBalance;
-  }
 
-  protected BigDecimal computeStatementOngoingReconciledLineBalance(
-      BigDecimal statementOngoingReconciledBalance, BankReconciliationLine brl) {
-    if (!brl.getIsPosted() && !Strings.isNullOrEmpty(brl.getPostedNbr())) {
-      statementOngoingReconciledBalance =
-          statementOngoingReconciledBalance.subtract(brl.getDebit());
-      statementOngoingReconciledBalance = statementOngoingReconciledBalance.add(brl.getCredit());
-    }
-    return statementOngoingReconciledBalance;
+    String reconciledAmount = "COALESCE(self.bankReconciledAmount, 0)";
+
+    Object[] result =
+        JPA.em()
+            .createQuery(
+                "SELECT "
+                    + "SUM(CASE WHEN self.debit != 0 THEN "
+                    + reconciledAmount
+                    + " ELSE -"
+                    + reconciledAmount
+                    + " END), "
+                    + "SUM(CASE WHEN self.debit != 0 THEN self.debit - "
+                    + reconciledAmount
+                    + " ELSE "
+                    + reconciledAmount
+                    + " - self.credit END) "
+                    + "FROM MoveLine self "
+                    + "WHERE self.account = :cashAccount",
+                Object[].class)
+            .setParameter("cashAccount", cashAccount)
+            .getSingleResult();
+
+    return this.toBalances(result);
   }
 
-  protected BigDecimal computeMovesOngoingReconciledLineBalance(
-      BigDecimal movesOngoingReconciledBalance, BankReconciliationLine brl) {
-    MoveLine tempMoveLine;
-    if (!brl.getIsPosted() && !Strings.isNullOrEmpty(brl.getPostedNbr())) {
-      tempMoveLine = brl.getMoveLine();
-      if (tempMoveLine != null) {
-        if (tempMoveLine.getDebit().compareTo(BigDecimal.ZERO) != 0) {
-          movesOngoingReconciledBalance =
-              movesOngoingReconciledBalance.add(brl.getCredit().add(brl.getDebit()));
-        } else {
-          movesOngoingReconciledBalance =
-              movesOngoingReconciledBalance.subtract(brl.getCredit().add(brl.getDebit()));
-        }
-      }
+  protected BigDecimal[] toBalances(Object[] result) {
+    BigDecimal[] balances = new BigDecimal[result.length];
+    for (int i = 0; i < result.length; i++) {
+      balances[i] = result[i] != null ? (BigDecimal) result[i] : BigDecimal.ZERO;
     }
-    return movesOngoingReconciledBalance;
+    return balances;
   }
 
   public void compute(BankReconciliation bankReconciliation) {
@@ -785,32 +844,37 @@ public class BankReconciliationService {
         bankReconciliationLines.stream()
             .filter(line -> line.getMoveLine() == null)
             .collect(Collectors.toList());
-    Context scriptContext;
+    BankReconciliationMoveLineIndex moveLineIndex =
+        new BankReconciliationMoveLineIndex(
+            moveLines, amountMarginLow, amountMarginHigh, dateMargin.intValue());
+    List<Map<String, Object>> scriptValuesList = new ArrayList<>();
+    for (BankReconciliationLine bankReconciliationLine : bankReconciliationLines) {
+      scriptValuesList.add(Mapper.toMap(bankReconciliationLine.getBankStatementLine()));
+    }
     for (BankStatementQuery bankStatementQuery : bankStatementQueries) {
-      for (BankReconciliationLine bankReconciliationLine : bankReconciliationLines) {
+      String query =
+          computeQuery(bankStatementQuery, dateMargin, amountMarginLow, amountMarginHigh);
+      for (int i = 0; i < bankReconciliationLines.size(); i++) {
+        BankReconciliationLine bankReconciliationLine = bankReconciliationLines.get(i);
         if (bankReconciliationLine.getMoveLine() != null) {
           continue;
         }
-        for (MoveLine moveLine : moveLines) {
-          bankReconciliationLine.getBankStatementLine().setMoveLine(moveLine);
-          scriptContext =
-              new Context(
-                  Mapper.toMap(bankReconciliationLine.getBankStatementLine()),
-                  BankStatementLineAFB120.class);
-          String query =
-              computeQuery(bankStatementQuery, dateMargin, amountMarginLow, amountMarginHigh);
+        BankStatementLine bankStatementLine = bankReconciliationLine.getBankStatementLine();
+        Map<String, Object> scriptValues = scriptValuesList.get(i);
+        for (MoveLine moveLine :
+            moveLineIndex.getCandidateList(
+                bankStatementLine, bankStatementQuery.getCandidateFilterSelect())) {
+          scriptValues.put("moveLine", moveLine);
+          Context scriptContext = new Context(scriptValues, BankStatementLineAFB120.class);
           if (Boolean.TRUE.equals(new GroovyScriptHelper(scriptContext).eval(query))) {
-            bankReconciliationLine =
-                updateBankReconciliationLine(bankReconciliationLine, moveLine, bankStatementQuery);
+            bankStatementLine.setMoveLine(moveLine);
+            updateBankReconciliationLine(bankReconciliationLine, moveLine, bankStatementQuery);
             moveLine.setPostedNbr(bankReconciliationLine.getPostedNbr());
-            moveLines.remove(moveLine);
+            moveLineIndex.remove(moveLine);
             break;
           }
-          bankReconciliationLine.getBankStatementLine().setMoveLine(null);
-        }
-        if (bankReconciliationLine.getMoveLine() != null) {
-          continue;
         }
+        scriptValues.put("moveLine", bankStatementLine.getMoveLine());
       }
     }
     return bankReconciliation;
@@ -0,0 +1,165 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.bankpayment.test;
+
+import com.axelor.apps.account.db.MoveLine;
+import com.axelor.apps.bankpayment.db.BankStatementLine;
+import com.axelor.apps.bankpayment.db.repo.BankStatementQueryRepository;
+import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationMoveLineIndex;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestBankReconciliationMoveLineIndex {
+
+  private static final BigDecimal AMOUNT_MARGIN_LOW = new BigDecimal("0.95");
+  private static final BigDecimal AMOUNT_MARGIN_HIGH = new BigDecimal("1.05");
+  private static final int DATE_MARGIN = 3;
+  private static final LocalDate START_DATE = LocalDate.of(2020, 1, 1);
+
+  private final Random random = new Random(42);
+
+  @Test
+  public void testCandidatesOfDebitAndCreditLines() {
+    List<MoveLine> moveLineList = createMoveLineList(2000);
+    BankReconciliationMoveLineIndex moveLineIndex = createIndex(moveLineList);
+
+    for (BankStatementLine bankStatementLine : createBankStatementLineList(500)) {
+      for (int candidateFilterSelect :
+          new int[] {
+            BankStatementQueryRepository.CANDIDATE_FILTER_AMOUNT,
+            BankStatementQueryRepository.CANDIDATE_FILTER_AMOUNT_DATE
+          }) {
+        Assert.assertEquals(
+            scan(moveLineList, bankStatementLine, candidateFilterSelect),
+            moveLineIndex.getCandidateList(bankStatementLine, candidateFilterSelect));
+      }
+    }
+  }
+
+  @Test
+  public void testRemovedMoveLineIsNotCandidate() {
+    MoveLine moveLine = createMoveLine(BigDecimal.ZERO, new BigDecimal("100.00"), START_DATE);
+    List<MoveLine> moveLineList = new ArrayList<>();
+    moveLineList.add(moveLine);
+    BankReconciliationMoveLineIndex moveLineIndex = createIndex(moveLineList);
+    BankStatementLine bankStatementLine =
+        createBankStatementLine(new BigDecimal("100.00"), BigDecimal.ZERO, START_DATE);
+
+    Assert.assertEquals(
+        moveLineList,
+        moveLineIndex.getCandidateList(
+            bankStatementLine, BankStatementQueryRepository.CANDIDATE_FILTER_AMOUNT));
+
+    moveLineIndex.remove(moveLine);
+
+    Assert.assertTrue(
+        moveLineIndex
+            .getCandidateList(
+                bankStatementLine, BankStatementQueryRepository.CANDIDATE_FILTER_AMOUNT)
+            .isEmpty());
+    Assert.assertTrue(
+        moveLineIndex
+            .getCandidateList(bankStatementLine, BankStatementQueryRepository.CANDIDATE_FILTER_NONE)
+            .isEmpty());
+  }
+
+  private BankReconciliationMoveLineIndex createIndex(List<MoveLine> moveLineList) {
+    return new BankReconciliationMoveLineIndex(
+        moveLineList, AMOUNT_MARGIN_LOW, AMOUNT_MARGIN_HIGH, DATE_MARGIN);
+  }
+
+  private List<MoveLine> scan(
+      List<MoveLine> moveLineList,
+      BankStatementLine bankStatementLine,
+      int candidateFilterSelect) {
+
+    BigDecimal credit = bankStatementLine.getCredit();
+    BigDecimal debit = bankStatementLine.getDebit();
+
+    return moveLineList.stream()
+        .filter(
+            moveLine ->
+                moveLine.getDebit().compareTo(credit.multiply(AMOUNT_MARGIN_LOW)) >= 0
+                    && moveLine.getDebit().compareTo(credit.multiply(AMOUNT_MARGIN_HIGH)) <= 0
+                    && moveLine.getCredit().compareTo(debit.multiply(AMOUNT_MARGIN_LOW)) >= 0
+                    && moveLine.getCredit().compareTo(debit.multiply(AMOUNT_MARGIN_HIGH)) <= 0)
+        .filter(
+            moveLine ->
+                candidateFilterSelect != BankStatementQueryRepository.CANDIDATE_FILTER_AMOUNT_DATE
+                    || Math.abs(
+                            moveLine.getDate().toEpochDay()
+                                - bankStatementLine.getValueDate().toEpochDay())
+                        <= DATE_MARGIN)
+        .collect(Collectors.toList());
+  }
+
+  private List<MoveLine> createMoveLineList(int size) {
+    List<MoveLine> moveLineList = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      BigDecimal amount = randomAmount();
+      moveLineList.add(
+          random.nextBoolean()
+              ? createMoveLine(amount, BigDecimal.ZERO, randomDate())
+              : createMoveLine(BigDecimal.ZERO, amount, randomDate()));
+    }
+    return moveLineList;
+  }
+
+  private List<BankStatementLine> createBankStatementLineList(int size) {
+    List<BankStatementLine> bankStatementLineList = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      BigDecimal amount = randomAmount();
+      bankStatementLineList.add(
+          random.nextBoolean()
+              ? createBankStatementLine(amount, BigDecimal.ZERO, randomDate())
+              : createBankStatementLine(BigDecimal.ZERO, amount, randomDate()));
+    }
+    return bankStatementLineList;
+  }
+
+  private MoveLine createMoveLine(BigDecimal debit, BigDecimal credit, LocalDate date) {
+    MoveLine moveLine = new MoveLine();
+    moveLine.setDebit(debit);
+    moveLine.setCredit(credit);
+    moveLine.setDate(date);
+    return moveLine;
+  }
+
+  private BankStatementLine createBankStatementLine(
+      BigDecimal debit, BigDecimal credit, LocalDate valueDate) {
+    BankStatementLine bankStatementLine = new BankStatementLine();
+    bankStatementLine.setDebit(debit);
+    bankStatementLine.setCredit(credit);
+    bankStatementLine.setValueDate(valueDate);
+    return bankStatementLine;
+  }
+
+  private BigDecimal randomAmount() {
+    return BigDecimal.valueOf(1 + random.nextInt(100000), 2);
+  }
+
+  private LocalDate randomDate() {
+    return START_DATE.plusDays(random.nextInt(365));
+  }
+}
@@ -73,8 +73,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import javax.inject.Singleton;
 import javax.mail.MessagingException;
 import javax.mail.internet.InternetAddress;
@@ -86,8 +84,6 @@ import org.slf4j.LoggerFactory;
 public class MailServiceBaseImpl extends MailServiceMessageImpl {
   private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-  private ExecutorService executor = Executors.newCachedThreadPool();
-
   private String userName = null;
 
   protected Template messageTemplate = null;
@@ -342,7 +338,7 @@ public class MailServiceBaseImpl extends MailServiceMessageImpl {
       }
 
       // send email using a separate process to void thread blocking
-      executor.submit(
+      sendMailQueueService.submitMailTask(
           new Callable<Boolean>() {
             @Override
             public Boolean call() throws Exception {
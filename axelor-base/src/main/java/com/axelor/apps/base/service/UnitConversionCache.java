@@ -0,0 +1,225 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service;
+
+import com.axelor.apps.base.db.Unit;
+import com.axelor.apps.base.db.UnitConversion;
+import com.axelor.apps.base.db.repo.UnitConversionRepository;
+import com.axelor.apps.tool.TransactionTool;
+import com.axelor.db.tenants.TenantConfig;
+import com.axelor.db.tenants.TenantResolver;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ImportCustomizer;
+
+/**
+ * Cache of the unit conversions, indexed by units for each tenant. Formulas are compiled once into
+ * a script class. The cache of a tenant is cleared when a transaction saving or removing a unit
+ * conversion is committed.
+ *
+ * <p>The cache is local to each node: on a cluster, a unit conversion changed on a node is only
+ * seen by the other nodes after their restart.
+ */
+@Singleton
+public class UnitConversionCache {
+
+  /** A template variable like $Product.netMass$, replaced by a groovy variable. */
+  protected static final Pattern TEMPLATE_VARIABLE_PATTERN =
+      Pattern.compile("\\$([A-Za-z_]\\w*(?:\\.[A-Za-z_]\\w*)*)\\$");
+
+  protected static final char TEMPLATE_DELIMITER = '$';
+
+  protected final Map<String, Map<List<Long>, List<CachedUnitConversion>>> conversionCache =
+      new ConcurrentHashMap<>();
+
+  protected final Map<String, Optional<Class<? extends Script>>> scriptClassCache =
+      new ConcurrentHashMap<>();
+
+  protected final AtomicLong invalidationCount = new AtomicLong();
+
+  protected UnitConversionRepository unitConversionRepo;
+
+  @Inject
+  public UnitConversionCache(UnitConversionRepository unitConversionRepo) {
+    this.unitConversionRepo = unitConversionRepo;
+  }
+
+  /**
+   * Get the conversions between the two given units, in both directions, in the same order as in
+   * the unit conversion table.
+   *
+   * @param startUnit
+   * @param endUnit
+   * @return an unmodifiable list, empty if there is no conversion between these units
+   */
+  public List<CachedUnitConversion> getConversionList(Unit startUnit, Unit endUnit) {
+
+    String tenant = getTenant();
+    Map<List<Long>, List<CachedUnitConversion>> conversionMap = conversionCache.get(tenant);
+
+    if (conversionMap == null) {
+      // loaded outside of the map, the query may flush and trigger a listener using the cache
+      long loadInvalidationCount = invalidationCount.get();
+      conversionMap = this.load();
+      Map<List<Long>, List<CachedUnitConversion>> cachedConversionMap =
+          conversionCache.putIfAbsent(tenant, conversionMap);
+
+      if (cachedConversionMap != null) {
+        conversionMap = cachedConversionMap;
+      } else if (loadInvalidationCount != invalidationCount.get()) {
+        // invalidated while loading, the loaded conversions may be outdated
+        conversionCache.remove(tenant, conversionMap);
+      }
+    }
+
+    return conversionMap.getOrDefault(
+        getKey(startUnit.getId(), endUnit.getId()), Collections.emptyList());
+  }
+
+  /**
+   * Get the compiled script of a formula, the template variables of the formula being replaced by
+   * variables of the script binding.
+   *
+   * @param formula
+   * @return the script class, or null if the formula uses template features that cannot be
+   *     compiled
+   */
+  public Class<? extends Script> getScriptClass(String formula) {
+
+    if (formula == null) {
+      return null;
+    }
+
+    return scriptClassCache.computeIfAbsent(formula, this::compile).orElse(null);
+  }
+
+  public void invalidate() {
+    this.invalidate(getTenant());
+  }
+
+  /** Clear the cache of the current tenant once the current transaction is committed. */
+  public void invalidateAfterCommit() {
+    String tenant = getTenant();
+    TransactionTool.afterCommit(() -> this.invalidate(tenant));
+  }
+
+  protected void invalidate(String tenant) {
+    invalidationCount.incrementAndGet();
+    conversionCache.remove(tenant);
+  }
+
+  protected Map<List<Long>, List<CachedUnitConversion>> load() {
+
+    Map<List<Long>, List<CachedUnitConversion>> conversionMap = new HashMap<>();
+
+    for (UnitConversion unitConversion : unitConversionRepo.all().fetch()) {
+      CachedUnitConversion cachedUnitConversion = new CachedUnitConversion(unitConversion);
+      conversionMap
+          .computeIfAbsent(
+              getKey(cachedUnitConversion.getStartUnitId(), cachedUnitConversion.getEndUnitId()),
+              key -> new ArrayList<>())
+          .add(cachedUnitConversion);
+    }
+
+    conversionMap.replaceAll((key, list) -> Collections.unmodifiableList(list));
+
+    return conversionMap;
+  }
+
+  protected Optional<Class<? extends Script>> compile(String formula) {
+
+    String source = TEMPLATE_VARIABLE_PATTERN.matcher(formula).replaceAll("($1)");
+
+    if (source.indexOf(TEMPLATE_DELIMITER) >= 0) {
+      return Optional.empty();
+    }
+
+    CompilerConfiguration conf = new CompilerConfiguration();
+    ImportCustomizer customizer = new ImportCustomizer();
+    customizer.addStaticStars("java.lang.Math");
+    conf.addCompilationCustomizers(customizer);
+
+    return Optional.of(new GroovyShell(conf).parse(source).getClass());
+  }
+
+  protected List<Long> getKey(Long firstUnitId, Long secondUnitId) {
+
+    return firstUnitId <= secondUnitId
+        ? Arrays.asList(firstUnitId, secondUnitId)
+        : Arrays.asList(secondUnitId, firstUnitId);
+  }
+
+  protected String getTenant() {
+
+    String tenantId = TenantResolver.currentTenantIdentifier();
+
+    return tenantId == null ? TenantConfig.DEFAULT_TENANT_ID : tenantId;
+  }
+
+  /** Detached copy of a unit conversion, safe to share between threads. */
+  public static class CachedUnitConversion {
+
+    private final Long startUnitId;
+    private final Long endUnitId;
+    private final int typeSelect;
+    private final BigDecimal coef;
+    private final String formula;
+
+    public CachedUnitConversion(UnitConversion unitConversion) {
+      this.startUnitId = unitConversion.getStartUnit().getId();
+      this.endUnitId = unitConversion.getEndUnit().getId();
+      this.typeSelect = unitConversion.getTypeSelect();
+      this.coef = unitConversion.getCoef();
+      this.formula = unitConversion.getFormula();
+    }
+
+    public Long getStartUnitId() {
+      return startUnitId;
+    }
+
+    public Long getEndUnitId() {
+      return endUnitId;
+    }
+
+    public int getTypeSelect() {
+      return typeSelect;
+    }
+
+    public BigDecimal getCoef() {
+      return coef;
+    }
+
+    public String getFormula() {
+      return formula;
+    }
+  }
+}
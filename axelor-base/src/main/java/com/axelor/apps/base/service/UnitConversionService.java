@@ -24,6 +24,7 @@ import com.axelor.apps.base.db.Unit;
 import com.axelor.apps.base.db.UnitConversion;
 import com.axelor.apps.base.db.repo.UnitConversionRepository;
 import com.axelor.apps.base.exceptions.IExceptionMessage;
+import com.axelor.apps.base.service.UnitConversionCache.CachedUnitConversion;
 import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.auth.AuthUtils;
 import com.axelor.auth.db.User;
@@ -36,15 +37,19 @@ import com.google.inject.Inject;
 import com.google.inject.servlet.RequestScoped;
 import groovy.lang.Binding;
 import groovy.lang.GroovyShell;
+import groovy.lang.Script;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import org.codehaus.groovy.control.CompilationFailedException;
 import org.codehaus.groovy.control.CompilerConfiguration;
 import org.codehaus.groovy.control.customizers.ImportCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,6 +66,8 @@ public class UnitConversionService {
 
   @Inject protected UnitConversionRepository unitConversionRepo;
 
+  @Inject protected UnitConversionCache unitConversionCache;
+
   /**
    * Convert a value from a unit to another
    *
@@ -98,7 +105,11 @@ public class UnitConversionService {
     else {
       try {
         BigDecimal coefficient =
-            this.getCoefficient(unitConversionRepo.all().fetch(), startUnit, endUnit, product);
+            this.getCachedCoefficient(
+                unitConversionCache.getConversionList(startUnit, endUnit),
+                startUnit,
+                endUnit,
+                product);
 
         return value.multiply(coefficient).setScale(scale, RoundingMode.HALF_UP);
       } catch (IOException | ClassNotFoundException e) {
@@ -129,60 +140,42 @@ public class UnitConversionService {
       Unit endUnit,
       Product product)
       throws AxelorException, CompilationFailedException, ClassNotFoundException, IOException {
+
+    return this.getCachedCoefficient(
+        unitConversionList.stream().map(CachedUnitConversion::new).collect(Collectors.toList()),
+        startUnit,
+        endUnit,
+        product);
+  }
+
+  protected BigDecimal getCachedCoefficient(
+      Collection<CachedUnitConversion> unitConversionList,
+      Unit startUnit,
+      Unit endUnit,
+      Product product)
+      throws AxelorException, CompilationFailedException, ClassNotFoundException, IOException {
     /* Looking for the start unit and the end unit in the unitConversionList to get the coefficient */
-    if (product != null) {
-      this.maker =
-          new TemplateMaker(
-              Optional.ofNullable(AuthUtils.getUser()).map(User::getActiveCompany).orElse(null)
-                      != null
-                  ? Optional.ofNullable(AuthUtils.getUser())
-                      .map(User::getActiveCompany)
-                      .map(Company::getTimezone)
-                      .orElse(null)
-                  : "",
-              AppFilter.getLocale(),
-              TEMPLATE_DELIMITER,
-              TEMPLATE_DELIMITER);
-      this.maker.setContext(product, "Product");
-    }
-    String eval = null;
-    for (UnitConversion unitConversion : unitConversionList) {
+    for (CachedUnitConversion unitConversion : unitConversionList) {
 
-      if (unitConversion.getStartUnit().equals(startUnit)
-          && unitConversion.getEndUnit().equals(endUnit)) {
+      if (unitConversion.getStartUnitId().equals(startUnit.getId())
+          && unitConversion.getEndUnitId().equals(endUnit.getId())) {
         if (unitConversion.getTypeSelect() == UnitConversionRepository.TYPE_COEFF) {
           return unitConversion.getCoef();
         } else if (product != null) {
-          maker.setTemplate(unitConversion.getFormula());
-          eval = maker.make();
-          CompilerConfiguration conf = new CompilerConfiguration();
-          ImportCustomizer customizer = new ImportCustomizer();
-          customizer.addStaticStars("java.lang.Math");
-          conf.addCompilationCustomizers(customizer);
-          Binding binding = new Binding();
-          GroovyShell shell = new GroovyShell(binding, conf);
-          return new BigDecimal(shell.evaluate(eval).toString());
+          return this.evaluateFormula(unitConversion.getFormula(), product);
         }
       }
 
       /* The endUnit become the start unit and the startUnit become the end unit */
 
-      if (unitConversion.getStartUnit().equals(endUnit)
-          && unitConversion.getEndUnit().equals(startUnit)) {
+      if (unitConversion.getStartUnitId().equals(endUnit.getId())
+          && unitConversion.getEndUnitId().equals(startUnit.getId())) {
         if (unitConversion.getTypeSelect() == UnitConversionRepository.TYPE_COEFF
             && unitConversion.getCoef().compareTo(BigDecimal.ZERO) != 0) {
           return BigDecimal.ONE.divide(
               unitConversion.getCoef(), DEFAULT_COEFFICIENT_SCALE, RoundingMode.HALF_UP);
         } else if (product != null) {
-          maker.setTemplate(unitConversion.getFormula());
-          eval = maker.make();
-          CompilerConfiguration conf = new CompilerConfiguration();
-          ImportCustomizer customizer = new ImportCustomizer();
-          customizer.addStaticStars("java.lang.Math");
-          conf.addCompilationCustomizers(customizer);
-          Binding binding = new Binding();
-          GroovyShell shell = new GroovyShell(binding, conf);
-          BigDecimal result = new BigDecimal(shell.evaluate(eval).toString());
+          BigDecimal result = this.evaluateFormula(unitConversion.getFormula(), product);
           if (result.compareTo(BigDecimal.ZERO) != 0) {
             return BigDecimal.ONE.divide(result, DEFAULT_COEFFICIENT_SCALE, RoundingMode.HALF_UP);
           }
@@ -196,4 +189,51 @@ public class UnitConversionService {
         startUnit.getName(),
         endUnit.getName());
   }
+
+  /**
+   * Evaluate a conversion formula for a product. The formula is compiled once and cached, the
+   * product being given to the script as the <code>Product</code> variable. Formulas that cannot be
+   * compiled this way are rendered with a template then evaluated.
+   *
+   * <p>A template variable on an empty product field is now null in the compiled script, whereas
+   * the template rendered it as an empty text. A formula like <code>$Product.netMass$ ?: 1</code>
+   * gets a value instead of failing, other formulas still fail on an empty field.
+   *
+   * @param formula
+   * @param product
+   * @return the result of the formula
+   */
+  protected BigDecimal evaluateFormula(String formula, Product product) {
+
+    Class<? extends Script> scriptClass = unitConversionCache.getScriptClass(formula);
+
+    if (scriptClass != null) {
+      Binding binding = new Binding();
+      binding.setVariable("Product", product);
+      return new BigDecimal(InvokerHelper.createScript(scriptClass, binding).run().toString());
+    }
+
+    this.maker =
+        new TemplateMaker(
+            Optional.ofNullable(AuthUtils.getUser()).map(User::getActiveCompany).orElse(null)
+                    != null
+                ? Optional.ofNullable(AuthUtils.getUser())
+                    .map(User::getActiveCompany)
+                    .map(Company::getTimezone)
+                    .orElse(null)
+                : "",
+            AppFilter.getLocale(),
+            TEMPLATE_DELIMITER,
+            TEMPLATE_DELIMITER);
+    this.maker.setContext(product, "Product");
+    maker.setTemplate(formula);
+    String eval = maker.make();
+    CompilerConfiguration conf = new CompilerConfiguration();
+    ImportCustomizer customizer = new ImportCustomizer();
+    customizer.addStaticStars("java.lang.Math");
+    conf.addCompilationCustomizers(customizer);
+    Binding binding = new Binding();
+    GroovyShell shell = new GroovyShell(binding, conf);
+    return new BigDecimal(shell.evaluate(eval).toString());
+  }
 }
@@ -25,15 +25,31 @@ import com.axelor.auth.db.AuditableModel;
 import com.axelor.db.EntityHelper;
 import com.axelor.db.JPA;
 import com.axelor.db.Model;
+import com.axelor.db.tenants.TenantAware;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
+import com.axelor.inject.Beans;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.inject.persist.Transactional;
+import com.google.inject.persist.UnitOfWork;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.inject.Inject;
+import javax.persistence.EntityTransaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +58,12 @@ public abstract class AbstractBatch {
 
   public static final int FETCH_LIMIT = 10;
 
+  /** Number of records of a partition, in partitioned mode. */
+  public static final int PARTITION_SIZE = 100;
+
+  /** Interval between two updates of the batch counters, in partitioned mode. */
+  protected static final int PROGRESS_INTERVAL_SECONDS = 5;
+
   @Inject protected AppBaseService appBaseService;
 
   protected static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -226,6 +248,155 @@ public abstract class AbstractBatch {
     return field.getType().equals(EntityHelper.getEntityClass(model));
   }
 
+  /**
+   * Process records in partitioned mode. The ids are sorted and split into partitions of {@link
+   * #PARTITION_SIZE} records, processed by a pool of workers. Each worker has its own entity
+   * manager, and each record is processed in its own transaction.
+   *
+   * <p>A record is counted as done when the processor returns true, and is not counted when it
+   * returns false. If the processor throws an exception, the record is counted as an anomaly and
+   * given to {@link #tracePartitionError}. The workers run with the tenant of the batch. The
+   * counters are kept in memory and saved to the batch periodically, so the processor must not call
+   * {@link #incrementDone()} nor {@link #incrementAnomaly()}.
+   *
+   * @param modelClass the class of the records
+   * @param idList the ids of the records to process
+   * @param threadCount the number of workers
+   * @param processor the processing of one record
+   */
+  protected <T extends Model> void processPartitioned(
+      Class<T> modelClass,
+      List<Long> idList,
+      int threadCount,
+      PartitionRecordProcessor<T> processor) {
+
+    List<Long> sortedIdList = new ArrayList<>(idList);
+    Collections.sort(sortedIdList);
+
+    processPartitions(
+        modelClass, Lists.partition(sortedIdList, PARTITION_SIZE), threadCount, processor);
+  }
+
+  /**
+   * Process records in partitioned mode, with partitions given by the strategy. The records of a
+   * partition are processed in the given order by a same worker, so a strategy can keep records
+   * that must not be processed concurrently in a same partition.
+   *
+   * @param modelClass the class of the records
+   * @param partitionList the ids of the records to process, by partition
+   * @param threadCount the number of workers
+   * @param processor the processing of one record
+   * @see #processPartitioned(Class, List, int, PartitionRecordProcessor)
+   */
+  protected <T extends Model> void processPartitions(
+      Class<T> modelClass,
+      List<List<Long>> partitionList,
+      int threadCount,
+      PartitionRecordProcessor<T> processor) {
+
+    AtomicInteger doneCount = new AtomicInteger();
+    AtomicInteger anomalyCount = new AtomicInteger();
+    Long batchId = batch.getId();
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(threadCount, 1));
+    try {
+      List<Future<?>> futureList = new ArrayList<>();
+      for (List<Long> partition : partitionList) {
+        Runnable task =
+            () ->
+                processPartition(
+                    batchId, modelClass, partition, processor, doneCount, anomalyCount);
+        futureList.add(executor.submit(new TenantAware(task).withTransaction(false)));
+      }
+      executor.shutdown();
+
+      while (!executor.awaitTermination(PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS)) {
+        saveProgress(doneCount, anomalyCount);
+      }
+
+      for (Future<?> future : futureList) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+      saveProgress(doneCount, anomalyCount);
+    }
+  }
+
+  protected <T extends Model> void processPartition(
+      Long batchId,
+      Class<T> modelClass,
+      List<Long> partition,
+      PartitionRecordProcessor<T> processor,
+      AtomicInteger doneCount,
+      AtomicInteger anomalyCount) {
+
+    final RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      threadBatchId.set(batchId);
+
+      for (Long id : partition) {
+        EntityTransaction transaction = JPA.em().getTransaction();
+        try {
+          transaction.begin();
+          boolean isDone = processor.process(JPA.find(modelClass, id));
+          transaction.commit();
+          if (isDone) {
+            doneCount.incrementAndGet();
+          }
+        } catch (Exception e) {
+          if (transaction.isActive()) {
+            transaction.rollback();
+          }
+          JPA.clear();
+          anomalyCount.incrementAndGet();
+          tracePartitionError(modelClass, id, e);
+        }
+      }
+      JPA.clear();
+    } finally {
+      threadBatchId.remove();
+      Beans.get(UnitOfWork.class).end();
+    }
+  }
+
+  /**
+   * Trace the error of a record processed in partitioned mode. Called in the worker thread, out of
+   * any transaction.
+   *
+   * @param modelClass
+   * @param id
+   * @param e
+   */
+  protected void tracePartitionError(Class<? extends Model> modelClass, Long id, Exception e) {
+    TraceBackService.trace(e, null, getCurrentBatchId());
+  }
+
+  protected void saveProgress(AtomicInteger doneCount, AtomicInteger anomalyCount) {
+    findBatch();
+    done += doneCount.getAndSet(0);
+    anomaly += anomalyCount.getAndSet(0);
+    batch.setDone(done);
+    batch.setAnomaly(anomaly);
+    checkPoint();
+  }
+
+  /** Processing of one record in partitioned mode. */
+  @FunctionalInterface
+  protected interface PartitionRecordProcessor<T extends Model> {
+    /**
+     * @param record the record to process
+     * @return true if the record is processed, false if there was nothing to do
+     * @throws Exception
+     */
+    boolean process(T record) throws Exception;
+  }
+
   protected Batch findBatch() {
     if (!JPA.em().contains(batch)) {
       batch = JPA.find(Batch.class, batch.getId());
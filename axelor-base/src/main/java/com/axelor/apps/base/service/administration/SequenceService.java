@@ -27,8 +27,12 @@ import com.axelor.apps.base.db.repo.SequenceVersionRepository;
 import com.axelor.apps.base.exceptions.IExceptionMessage;
 import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.apps.tool.StringTool;
+import com.axelor.apps.tool.TransactionTool;
 import com.axelor.db.JPA;
 import com.axelor.db.Model;
+import com.axelor.db.tenants.TenantAware;
+import com.axelor.db.tenants.TenantConfig;
+import com.axelor.db.tenants.TenantResolver;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
@@ -36,14 +40,29 @@ import com.axelor.inject.Beans;
 import com.axelor.meta.db.MetaSelectItem;
 import com.axelor.meta.db.repo.MetaSelectItemRepository;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.persist.Transactional;
+import com.google.inject.persist.UnitOfWork;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
 import java.lang.invoke.MethodHandles;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoField;
 import java.time.temporal.IsoFields;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.persistence.FlushModeType;
 import javax.persistence.LockModeType;
@@ -73,6 +92,20 @@ public class SequenceService {
 
   protected final SequenceRepository sequenceRepo;
 
+  protected static final ExecutorService SEQUENCE_BLOCK_EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder().setNameFormat("sequence-block-%d").setDaemon(true).build());
+
+  /**
+   * The blocks of numbers reserved in memory, by tenant and sequence id, then by sequence version
+   * id. The blocks are local to the node, each node reserving its own blocks.
+   */
+  protected final Map<List<Object>, Map<Long, SequenceBlock>> sequenceBlockMap =
+      new ConcurrentHashMap<>();
+
+  /** The locks serializing the reservation of blocks, by tenant and sequence id. */
+  protected final Map<List<Object>, Object> sequenceBlockLockMap = new ConcurrentHashMap<>();
+
   @Inject
   public SequenceService(
       SequenceVersionRepository sequenceVersionRepository,
@@ -168,13 +201,10 @@ public class SequenceService {
    */
   @Transactional
   public String getSequenceNumber(Sequence sequence, LocalDate refDate) {
-    Sequence seq =
-        JPA.em()
-            .createQuery("SELECT self FROM Sequence self WHERE id = :id", Sequence.class)
-            .setParameter("id", sequence.getId())
-            .setLockMode(LockModeType.PESSIMISTIC_WRITE)
-            .setFlushMode(FlushModeType.COMMIT)
-            .getSingleResult();
+    if (sequence.getBlockSize() > 0) {
+      return getBlockSequenceNumber(sequence, refDate);
+    }
+    Sequence seq = lockSequence(sequence.getId());
     SequenceVersion sequenceVersion = getVersion(seq, refDate);
     String nextSeq = computeNextSeq(sequenceVersion, seq, refDate);
     sequenceVersion.setNextNum(sequenceVersion.getNextNum() + seq.getToBeAdded());
@@ -184,6 +214,225 @@ public class SequenceService {
     return nextSeq;
   }
 
+  protected Sequence lockSequence(Long sequenceId) {
+    return JPA.em()
+        .createQuery("SELECT self FROM Sequence self WHERE id = :id", Sequence.class)
+        .setParameter("id", sequenceId)
+        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+        .setFlushMode(FlushModeType.COMMIT)
+        .getSingleResult();
+  }
+
+  /**
+   * Return a sequence number from the block of numbers reserved in memory for the sequence version
+   * of the reference date. A new block is reserved in an independent transaction when the block is
+   * exhausted or when there is no block for the version, so the sequence row is only locked for the
+   * time of the reservation.
+   *
+   * <p>Numbers that are not used before a restart, or before the blocks are invalidated, are lost:
+   * this must only be used for sequences which are not required to be gap-free.
+   *
+   * @param sequence
+   * @param refDate
+   * @return
+   */
+  protected String getBlockSequenceNumber(Sequence sequence, LocalDate refDate) {
+    List<Object> sequenceKey = Arrays.asList(getTenant(), sequence.getId());
+    while (true) {
+      SequenceBlock sequenceBlock = findSequenceBlock(sequenceKey, sequence, refDate);
+      if (sequenceBlock != null) {
+        long nextNum = sequenceBlock.next();
+        if (nextNum > 0) {
+          return computeNextSeq(
+              new SequenceVersion(sequence, null, null, nextNum), sequence, refDate);
+        }
+      }
+      Object lock = sequenceBlockLockMap.computeIfAbsent(sequenceKey, key -> new Object());
+      synchronized (lock) {
+        // another thread may have replaced the block while this one was waiting for the lock
+        if (findSequenceBlock(sequenceKey, sequence, refDate) == sequenceBlock) {
+          SequenceBlock newBlock = reserveSequenceBlock(sequence, refDate);
+          sequenceBlockMap
+              .computeIfAbsent(sequenceKey, key -> new ConcurrentHashMap<>())
+              .put(newBlock.sequenceVersionId, newBlock);
+        }
+      }
+    }
+  }
+
+  protected SequenceBlock findSequenceBlock(
+      List<Object> sequenceKey, Sequence sequence, LocalDate refDate) {
+    Map<Long, SequenceBlock> versionBlockMap = sequenceBlockMap.get(sequenceKey);
+    if (versionBlockMap == null) {
+      return null;
+    }
+    for (SequenceBlock sequenceBlock : versionBlockMap.values()) {
+      if (isBlockValid(sequenceBlock, sequence, refDate)) {
+        return sequenceBlock;
+      }
+    }
+    return null;
+  }
+
+  protected boolean isBlockValid(
+      SequenceBlock sequenceBlock, Sequence sequence, LocalDate refDate) {
+    if (sequence.getMonthlyResetOk()) {
+      return sequenceBlock.startDate.getYear() == refDate.getYear()
+          && sequenceBlock.startDate.getMonthValue() == refDate.getMonthValue();
+    }
+    if (sequence.getYearlyResetOk()) {
+      return sequenceBlock.startDate.getYear() == refDate.getYear();
+    }
+    return !refDate.isBefore(sequenceBlock.startDate)
+        && (sequenceBlock.endDate == null || !refDate.isAfter(sequenceBlock.endDate));
+  }
+
+  protected SequenceBlock reserveSequenceBlock(Sequence sequence, LocalDate refDate) {
+    Long sequenceId = sequence.getId();
+    SequenceBlock[] sequenceBlock = new SequenceBlock[1];
+    Runnable task = () -> sequenceBlock[0] = reserveSequenceBlockInWorker(sequenceId, refDate);
+    Future<?> future = SEQUENCE_BLOCK_EXECUTOR.submit(new TenantAware(task).withTransaction(false));
+    try {
+      future.get();
+      return sequenceBlock[0];
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Reserve a block of numbers in the unit of work of the worker thread, so the transaction is
+   * committed, and the lock on the sequence released, independently of the caller's transaction.
+   *
+   * @param sequenceId
+   * @param refDate
+   * @return the reserved block
+   */
+  protected SequenceBlock reserveSequenceBlockInWorker(Long sequenceId, LocalDate refDate) {
+    final RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      SequenceBlock[] sequenceBlock = new SequenceBlock[1];
+      JPA.runInTransaction(
+          () -> {
+            Sequence seq = lockSequence(sequenceId);
+            SequenceVersion sequenceVersion = getVersion(seq, refDate);
+            long startNum = sequenceVersion.getNextNum();
+            sequenceVersion.setNextNum(startNum + (long) seq.getBlockSize() * seq.getToBeAdded());
+            if (sequenceVersion.getId() == null) {
+              sequenceVersionRepository.save(sequenceVersion);
+            }
+            sequenceBlock[0] =
+                new SequenceBlock(
+                    sequenceVersion.getId(),
+                    sequenceVersion.getStartDate(),
+                    sequenceVersion.getEndDate(),
+                    startNum,
+                    sequenceVersion.getNextNum(),
+                    seq.getToBeAdded());
+          });
+      log.debug(
+          "Sequence {} : numbers {} to {} reserved",
+          sequenceId,
+          sequenceBlock[0].nextNum,
+          sequenceBlock[0].endNum);
+      return sequenceBlock[0];
+    } finally {
+      Beans.get(UnitOfWork.class).end();
+    }
+  }
+
+  /**
+   * Drop the blocks of the sequence for the current tenant once the current transaction is
+   * committed, so that the next numbers are reserved from the saved sequence versions.
+   *
+   * @param sequence
+   */
+  public void invalidateSequenceBlocksAfterCommit(Sequence sequence) {
+    String tenant = getTenant();
+    Long sequenceId = sequence.getId();
+    TransactionTool.afterCommit(() -> invalidateSequenceBlocks(tenant, sequenceId, null));
+  }
+
+  /**
+   * Drop the block of the sequence version for the current tenant once the current transaction is
+   * committed, so that the next numbers are reserved from the saved next number of the version.
+   *
+   * @param sequenceVersion
+   */
+  public void invalidateSequenceBlocksAfterCommit(SequenceVersion sequenceVersion) {
+    if (sequenceVersion.getSequence() == null || sequenceVersion.getId() == null) {
+      return;
+    }
+    String tenant = getTenant();
+    Long sequenceId = sequenceVersion.getSequence().getId();
+    if (!sequenceBlockMap.containsKey(Arrays.asList(tenant, sequenceId))) {
+      return;
+    }
+    Long sequenceVersionId = sequenceVersion.getId();
+    TransactionTool.afterCommit(
+        () -> invalidateSequenceBlocks(tenant, sequenceId, sequenceVersionId));
+  }
+
+  /**
+   * Drop the blocks of a sequence, or only the block of one of its versions.
+   *
+   * @param tenant
+   * @param sequenceId
+   * @param sequenceVersionId the id of the version, or null to drop the blocks of all versions
+   */
+  protected void invalidateSequenceBlocks(String tenant, Long sequenceId, Long sequenceVersionId) {
+    List<Object> sequenceKey = Arrays.asList(tenant, sequenceId);
+    if (sequenceVersionId == null) {
+      sequenceBlockMap.remove(sequenceKey);
+      return;
+    }
+    Map<Long, SequenceBlock> versionBlockMap = sequenceBlockMap.get(sequenceKey);
+    if (versionBlockMap != null) {
+      versionBlockMap.remove(sequenceVersionId);
+    }
+  }
+
+  protected String getTenant() {
+    String tenantId = TenantResolver.currentTenantIdentifier();
+    return tenantId == null ? TenantConfig.DEFAULT_TENANT_ID : tenantId;
+  }
+
+  /** A block of sequence numbers reserved for a sequence version and handed out from memory. */
+  protected static class SequenceBlock {
+
+    protected final Long sequenceVersionId;
+    protected final LocalDate startDate;
+    protected final LocalDate endDate;
+    protected final AtomicLong nextNum;
+    protected final long endNum;
+    protected final int toBeAdded;
+
+    public SequenceBlock(
+        Long sequenceVersionId,
+        LocalDate startDate,
+        LocalDate endDate,
+        long startNum,
+        long endNum,
+        int toBeAdded) {
+      this.sequenceVersionId = sequenceVersionId;
+      this.startDate = startDate;
+      this.endDate = endDate;
+      this.nextNum = new AtomicLong(startNum);
+      this.endNum = endNum;
+      this.toBeAdded = toBeAdded;
+    }
+
+    /** @return the next number of the block, or 0 if the block is exhausted. */
+    protected long next() {
+      long num = nextNum.getAndAdd(toBeAdded);
+      return num < endNum ? num : 0;
+    }
+  }
+
   protected String computeNextSeq(
       SequenceVersion sequenceVersion, Sequence sequence, LocalDate refDate) {
 
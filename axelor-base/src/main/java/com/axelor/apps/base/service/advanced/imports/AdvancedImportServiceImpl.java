@@ -25,6 +25,7 @@ import com.axelor.apps.base.db.repo.FileFieldRepository;
 import com.axelor.apps.base.exceptions.IExceptionMessage;
 import com.axelor.apps.tool.reader.DataReaderFactory;
 import com.axelor.apps.tool.reader.DataReaderService;
+import com.axelor.apps.tool.reader.DataRowCursor;
 import com.axelor.common.Inflector;
 import com.axelor.db.EntityHelper;
 import com.axelor.db.JpaRepository;
@@ -44,6 +45,7 @@ import com.google.common.base.Strings;
 import com.google.common.io.Files;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -102,10 +104,14 @@ public class AdvancedImportServiceImpl implements AdvancedImportService {
       return false;
     }
 
-    DataReaderService reader = dataReaderFactory.getDataReader(extension);
+    DataReaderService reader = dataReaderFactory.getStreamDataReader(extension);
     reader.initialize(advancedImport.getImportFile(), advancedImport.getFileSeparator());
 
-    return this.process(reader, advancedImport);
+    try {
+      return this.process(reader, advancedImport);
+    } finally {
+      reader.close();
+    }
   }
 
   @Transactional
@@ -129,56 +135,66 @@ public class AdvancedImportServiceImpl implements AdvancedImportService {
     int fileTabSequence = 1;
 
     for (String sheet : sheets) {
-      int totalLines = reader.getTotalLines(sheet);
-      if (totalLines == 0) {
-        continue;
-      }
+      // The rows of the sheet are read in a single pass, so the file is never fully loaded.
+      try (DataRowCursor cursor = reader.openCursor(sheet)) {
+        if (!cursor.next()) {
+          continue;
+        }
 
-      FileTab fileTab = new FileTab();
-      fileTab.setName(sheet);
-      fileTab.setSequence(fileTabSequence);
-      fileTabSequence++;
+        FileTab fileTab = new FileTab();
+        fileTab.setName(sheet);
+        fileTab.setSequence(fileTabSequence);
+        fileTabSequence++;
 
-      String[] objectRow = reader.read(sheet, startIndex, 0);
-      if (objectRow == null) {
-        isValid = false;
-        break;
-      }
+        String[] objectRow = reader.read(sheet, startIndex, 0);
+        if (objectRow == null) {
+          isValid = false;
+          break;
+        }
 
-      if (isConfig && isTabConfig) {
-        tabConfigRowCount = getTabConfigRowCount(sheet, reader, totalLines, objectRow);
-      }
+        if (isConfig && isTabConfig) {
+          tabConfigRowCount =
+              getTabConfigRowCount(sheet, reader, reader.getTotalLines(sheet), objectRow);
+        }
 
-      isValid = this.applyObject(objectRow, fileTab, isConfig, linesToIgnore, isTabConfig);
-      if (!isValid) {
-        break;
-      }
+        isValid = this.applyObject(objectRow, fileTab, isConfig, linesToIgnore, isTabConfig);
+        if (!isValid) {
+          break;
+        }
 
-      List<FileField> fileFieldList = new ArrayList<>();
-      List<Integer> ignoreFields = new ArrayList<Integer>();
+        List<FileField> fileFieldList = new ArrayList<>();
+        List<Integer> ignoreFields = new ArrayList<Integer>();
+        int firstLine = isConfig ? 1 : linesToIgnore;
 
-      for (int line = isConfig ? 1 : linesToIgnore; line < totalLines; line++) {
-        String[] row = reader.read(sheet, line, isConfig ? 0 : objectRow.length);
-        if (row == null) {
-          continue;
-        }
+        do {
+          int line = cursor.getIndex();
+          if (line < firstLine) {
+            continue;
+          }
+          String[] row = cursor.getRow(isConfig ? 0 : objectRow.length);
+          if (row == null) {
+            continue;
+          }
 
-        if (isConfig) {
-          this.applyWithConfig(
-              row, line, fileFieldList, ignoreFields, fileTab, isTabConfig, tabConfigRowCount);
-        } else {
-          this.applyWithoutConfig(row, (line - linesToIgnore), fileFieldList, fileTab, isHeader);
-        }
-      }
+          if (isConfig) {
+            this.applyWithConfig(
+                row, line, fileFieldList, ignoreFields, fileTab, isTabConfig, tabConfigRowCount);
+          } else {
+            this.applyWithoutConfig(row, (line - linesToIgnore), fileFieldList, fileTab, isHeader);
+          }
+        } while (cursor.next());
 
-      if (isConfig) {
-        fileFieldList.removeIf(field -> field.getImportField() == null);
-        if (!fileTab.getImportType().equals(FileFieldRepository.IMPORT_TYPE_NEW)) {
-          fileTab = this.setSearchField(fileTab, searchFieldList, fileFieldList);
+        if (isConfig) {
+          fileFieldList.removeIf(field -> field.getImportField() == null);
+          if (!fileTab.getImportType().equals(FileFieldRepository.IMPORT_TYPE_NEW)) {
+            fileTab = this.setSearchField(fileTab, searchFieldList, fileFieldList);
+          }
         }
+        advancedImport.addFileTabListItem(fileTab);
+        advancedImportRepository.save(advancedImport);
+      } catch (IOException e) {
+        throw new AxelorException(e, TraceBackRepository.CATEGORY_INCONSISTENCY);
       }
-      advancedImport.addFileTabListItem(fileTab);
-      advancedImportRepository.save(advancedImport);
     }
     return isValid;
   }
@@ -660,7 +676,8 @@ public class AdvancedImportServiceImpl implements AdvancedImportService {
         && (objectRow.length > 1 && StringUtils.containsIgnoreCase(objectRow[1], "Object"))) {
       int linesForTab;
       for (linesForTab = 3; linesForTab < totalLines; linesForTab++) {
-        if (reader.read(sheet, linesForTab, 0)[0] != null) {
+        String[] row = reader.read(sheet, linesForTab, 0);
+        if (row != null && row.length > 0 && row[0] != null) {
           tabConfigRowCount++;
         } else {
           break;
@@ -26,6 +26,9 @@ import java.util.Map;
 
 public interface DataImportService {
 
+  /** Context key set when the data files are imported by chunks in parallel. */
+  public static final String CHUNK_IMPORT = "chunkImport";
+
   public MetaFile importData(AdvancedImport advanceImport)
       throws IOException, AxelorException, ClassNotFoundException;
 
@@ -21,9 +21,11 @@ import com.axelor.apps.base.db.AdvancedImport;
 import com.axelor.apps.base.db.FileField;
 import com.axelor.apps.base.db.FileTab;
 import com.axelor.apps.base.db.repo.FileFieldRepository;
+import com.axelor.apps.base.db.repo.FileTabRepository;
 import com.axelor.apps.base.service.imports.listener.ImporterListener;
 import com.axelor.apps.tool.reader.DataReaderFactory;
 import com.axelor.apps.tool.reader.DataReaderService;
+import com.axelor.apps.tool.reader.DataRowCursor;
 import com.axelor.apps.tool.service.TranslationService;
 import com.axelor.common.Inflector;
 import com.axelor.common.StringUtils;
@@ -34,12 +36,16 @@ import com.axelor.data.csv.CSVBind;
 import com.axelor.data.csv.CSVConfig;
 import com.axelor.data.csv.CSVImporter;
 import com.axelor.data.csv.CSVInput;
+import com.axelor.db.JPA;
 import com.axelor.db.Model;
 import com.axelor.db.mapper.Mapper;
 import com.axelor.db.mapper.Property;
+import com.axelor.db.tenants.TenantAware;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.service.TraceBackService;
+import com.axelor.inject.Beans;
 import com.axelor.meta.MetaFiles;
+import com.axelor.meta.db.MetaField;
 import com.axelor.meta.db.MetaFile;
 import com.axelor.meta.db.MetaModel;
 import com.axelor.meta.db.MetaSelect;
@@ -51,9 +57,13 @@ import com.axelor.rpc.JsonContext;
 import com.google.common.base.Strings;
 import com.google.common.io.Files;
 import com.google.inject.Inject;
+import com.google.inject.persist.UnitOfWork;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
 import com.opencsv.CSVWriter;
 import com.thoughtworks.xstream.XStream;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -63,11 +73,16 @@ import java.lang.invoke.MethodHandles;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
@@ -92,6 +107,7 @@ public class DataImportServiceImpl implements DataImportService {
   private static final String SPLIT = ".split('\\\\";
   private static final String AS_LIST = "') as List";
   private static final String REPLACE_SYMBOL = "$";
+  private static final String CHUNK_DIR = "chunks";
 
   private CSVInput csvInput;
 
@@ -109,6 +125,8 @@ public class DataImportServiceImpl implements DataImportService {
 
   private File dataDir;
 
+  private List<FileTabImport> fileTabImportList;
+
   private int counter = 1;
 
   private Inflector inflector = Inflector.getInstance();
@@ -127,6 +145,8 @@ public class DataImportServiceImpl implements DataImportService {
 
   @Inject private MetaSelectRepository metaSelectRepo;
 
+  @Inject private FileTabRepository fileTabRepo;
+
   @Override
   public MetaFile importData(AdvancedImport advancedImport)
       throws IOException, AxelorException, ClassNotFoundException {
@@ -135,19 +155,28 @@ public class DataImportServiceImpl implements DataImportService {
     importContext = new HashMap<String, Object>();
     language = advancedImport.getLanguageSelect();
     dataDir = Files.createTempDir();
+    fileTabImportList = new ArrayList<>();
 
     String extension = Files.getFileExtension(advancedImport.getImportFile().getFileName());
 
-    DataReaderService reader = dataReaderFactory.getDataReader(extension);
+    DataReaderService reader = dataReaderFactory.getStreamDataReader(extension);
     reader.initialize(advancedImport.getImportFile(), advancedImport.getFileSeparator());
 
-    List<CSVInput> inputs = this.process(reader, advancedImport);
+    List<CSVInput> inputs;
+    try {
+      inputs = this.process(reader, advancedImport);
+    } finally {
+      reader.close();
+    }
 
     if (advancedImport.getAttachment() != null) {
       this.processAttachments(advancedImport.getAttachment());
     }
 
-    MetaFile logFile = this.importData(inputs);
+    MetaFile logFile =
+        advancedImport.getChunkSize() > 0
+            ? this.importDataInChunks(advancedImport.getThreadCount())
+            : this.importData(inputs);
     FileUtils.forceDelete(dataDir);
     return logFile;
   }
@@ -160,6 +189,7 @@ public class DataImportServiceImpl implements DataImportService {
     boolean isConfig = advancedImport.getIsConfigInFile();
     int linesToIgnore = advancedImport.getNbOfFirstLineIgnore();
     boolean isTabConfig = advancedImport.getIsFileTabConfigAdded();
+    int chunkSize = advancedImport.getChunkSize();
     List<CSVInput> inputList = new ArrayList<CSVInput>();
 
     validatorService.sortFileTabList(advancedImport.getFileTabList());
@@ -175,47 +205,51 @@ public class DataImportServiceImpl implements DataImportService {
       csvInput = this.createCSVInput(fileTab, fileName);
       ifList = new ArrayList<String>();
 
-      try (CSVWriter csvWriter =
-          new CSVWriter(new FileWriter(new File(dataDir, fileName)), CSV_SEPRATOR)) {
-
-        int totalLines = reader.getTotalLines(fileTab.getName());
-        if (totalLines == 0) {
-          continue;
-        }
+      List<File> chunkDirList;
+      try (ChunkedCSVWriter csvWriter = new ChunkedCSVWriter(fileTab, fileName, chunkSize)) {
 
         Mapper mapper = advancedImportService.getMapper(fileTab.getMetaModel().getFullName());
-        List<String[]> allLines = new ArrayList<String[]>();
         int startIndex = isConfig ? 1 : linesToIgnore;
 
         String[] row = reader.read(fileTab.getName(), startIndex, 0);
+        if (row == null) {
+          continue;
+        }
         String[] headers = this.createHeader(row, fileTab, isConfig, mapper);
-        allLines.add(headers);
+        csvWriter.writeHeader(headers);
 
         int tabConfigRowCount = 0;
         if (isTabConfig) {
           String objectRow[] = reader.read(fileTab.getName(), 0, 0);
           tabConfigRowCount =
               advancedImportService.getTabConfigRowCount(
-                  fileTab.getName(), reader, totalLines, objectRow);
+                  fileTab.getName(), reader, reader.getTotalLines(fileTab.getName()), objectRow);
         }
         startIndex =
             isConfig
                 ? tabConfigRowCount + 3
                 : fileTab.getAdvancedImport().getIsHeader() ? linesToIgnore + 1 : linesToIgnore;
 
-        for (int line = startIndex; line < totalLines; line++) {
-          String[] dataRow = reader.read(fileTab.getName(), line, row.length);
-          if (dataRow == null || Arrays.stream(dataRow).allMatch(StringUtils::isBlank)) {
-            continue;
+        // Rows are converted one by one in a single pass, so the file is never fully loaded.
+        try (DataRowCursor cursor = reader.openCursor(fileTab.getName())) {
+          while (cursor.next()) {
+            if (cursor.getIndex() < startIndex) {
+              continue;
+            }
+            String[] dataRow = cursor.getRow(row.length);
+            if (dataRow == null || Arrays.stream(dataRow).allMatch(StringUtils::isBlank)) {
+              continue;
+            }
+            csvWriter.writeNext(this.createData(dataRow, fileTab, isConfig, mapper));
           }
-          String[] data = this.createData(dataRow, fileTab, isConfig, mapper);
-          allLines.add(data);
         }
-        csvWriter.writeAll(allLines);
-        csvWriter.flush();
+        chunkDirList = csvWriter.getChunkDirList();
       }
 
       inputList.add(csvInput);
+      if (chunkSize > 0) {
+        fileTabImportList.add(new FileTabImport(fileTab, csvInput, chunkDirList));
+      }
       importContext.put("ifConditions" + fileTab.getId(), ifList);
       importContext.put("jsonContextValues" + fileTab.getId(), createJsonContext(fileTab));
       importContext.put("actionsToApply" + fileTab.getId(), fileTab.getActions());
@@ -911,17 +945,57 @@ public class DataImportServiceImpl implements DataImportService {
       return null;
     }
 
+    CSVConfig config = this.createCSVConfig(inputs);
+
+    CSVImporter importer = new CSVImporter(config, dataDir.getAbsolutePath());
+    ImporterListener listener = new ImporterListener("importData");
+    importer.addListener(listener);
+    importer.setContext(importContext);
+    importer.run();
+
+    if (!listener.isImported()) {
+      MetaFile logFile = this.createImportLogFile(listener);
+      return logFile;
+    }
+    return null;
+  }
+
+  private CSVConfig createCSVConfig(List<CSVInput> inputs) {
     CSVConfig config = new CSVConfig();
     config.setInputs(inputs);
     if (!CollectionUtils.isEmpty(adapterMap.values())) {
       config.getAdapters().addAll(adapterMap.values());
     }
+    return config;
+  }
+
+  /**
+   * Import the chunks of the data files. Tabs are imported in the order of their sequence, the
+   * chunks of the tabs having a same sequence being imported in parallel.
+   */
+  private MetaFile importDataInChunks(int threadCount) throws IOException {
+    if (CollectionUtils.isEmpty(fileTabImportList)) {
+      return null;
+    }
 
-    CSVImporter importer = new CSVImporter(config, dataDir.getAbsolutePath());
     ImporterListener listener = new ImporterListener("importData");
-    importer.addListener(listener);
-    importer.setContext(importContext);
-    importer.run();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(threadCount, 1));
+
+    try {
+      int start = 0;
+      while (start < fileTabImportList.size()) {
+        Integer sequence = fileTabImportList.get(start).fileTab.getSequence();
+        int end = start + 1;
+        while (end < fileTabImportList.size()
+            && sequence.equals(fileTabImportList.get(end).fileTab.getSequence())) {
+          end++;
+        }
+        this.importFileTabs(fileTabImportList.subList(start, end), executor, listener);
+        start = end;
+      }
+    } finally {
+      executor.shutdownNow();
+    }
 
     if (!listener.isImported()) {
       MetaFile logFile = this.createImportLogFile(listener);
@@ -930,6 +1004,100 @@ public class DataImportServiceImpl implements DataImportService {
     return null;
   }
 
+  private void importFileTabs(
+      List<FileTabImport> fileTabImports, ExecutorService executor, ImporterListener listener)
+      throws IOException {
+
+    Map<String, Object> chunkContext = new HashMap<>(importContext);
+    chunkContext.put(CHUNK_IMPORT, true);
+    List<Future<?>> futureList = new ArrayList<>();
+    List<ImporterListener> chunkListenerList = new ArrayList<>();
+
+    try {
+      for (FileTabImport fileTabImport : fileTabImports) {
+        CSVConfig config = this.createCSVConfig(Collections.singletonList(fileTabImport.csvInput));
+        boolean isParallel = this.isParallelChunkImport(fileTabImport);
+
+        for (int i = 0; i < fileTabImport.chunkDirList.size(); i++) {
+          File chunkDir = fileTabImport.chunkDirList.get(i);
+          ImporterListener chunkListener = new ImporterListener("importData");
+          chunkListenerList.add(chunkListener);
+          Runnable task = () -> this.importChunk(config, chunkDir, chunkContext, chunkListener);
+          Future<?> future = executor.submit(new TenantAware(task).withTransaction(false));
+          futureList.add(future);
+
+          // The first chunk is imported alone, so that the custom fields created for the new
+          // records are not created by several chunks at the same time.
+          if (i == 0 || !isParallel) {
+            future.get();
+          }
+        }
+      }
+
+      for (Future<?> future : futureList) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+
+    for (ImporterListener chunkListener : chunkListenerList) {
+      listener.merge(chunkListener);
+    }
+
+    JPA.runInTransaction(
+        () -> {
+          for (FileTabImport fileTabImport : fileTabImports) {
+            FileTab fileTab = fileTabRepo.find(fileTabImport.fileTab.getId());
+            Context context =
+                (Context)
+                    ((Map<?, ?>) importContext.get("jsonContextValues" + fileTab.getId()))
+                        .get("context");
+            fileTab.setAttrs(context.get("attrs").toString());
+          }
+        });
+  }
+
+  /**
+   * Whether the chunks of a tab can be imported in parallel. The chunks of a tab searching for
+   * existing records, or referencing records of its own model, are imported one after the other,
+   * otherwise a chunk could miss the records being created by another chunk.
+   */
+  private boolean isParallelChunkImport(FileTabImport fileTabImport) {
+    if (!Strings.isNullOrEmpty(fileTabImport.csvInput.getSearch())) {
+      return false;
+    }
+
+    MetaModel metaModel = fileTabImport.fileTab.getMetaModel();
+    for (FileField fileField : fileTabImport.fileTab.getFileFieldList()) {
+      MetaField importField = fileField.getImportField();
+      if (importField != null
+          && importField.getRelationship() != null
+          && metaModel.getName().equals(importField.getTypeName())
+          && metaModel.getPackageName().equals(importField.getPackageName())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void importChunk(
+      CSVConfig config, File chunkDir, Map<String, Object> context, ImporterListener listener) {
+
+    final RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      CSVImporter importer = new CSVImporter(config, chunkDir.getAbsolutePath());
+      importer.addListener(listener);
+      importer.setContext(new HashMap<>(context));
+      importer.run();
+    } finally {
+      Beans.get(UnitOfWork.class).end();
+    }
+  }
+
   private void setImportIf(Property prop, CSVBind bind, String column) {
     if (prop.isRequired()) {
       bind.setCondition(column.toString() + "!= null && !" + column.toString() + ".empty");
@@ -960,4 +1128,86 @@ public class DataImportServiceImpl implements DataImportService {
     _map.put("jsonContext", jsonContext);
     return _map;
   }
+
+  /** Data file of a tab written by chunks. */
+  private static class FileTabImport {
+
+    private final FileTab fileTab;
+    private final CSVInput csvInput;
+    private final List<File> chunkDirList;
+
+    private FileTabImport(FileTab fileTab, CSVInput csvInput, List<File> chunkDirList) {
+      this.fileTab = fileTab;
+      this.csvInput = csvInput;
+      this.chunkDirList = chunkDirList;
+    }
+  }
+
+  /**
+   * Writer of the data file of a tab. When a chunk size is given, a new file is started in a new
+   * directory every chunk size lines, each file beginning with the header.
+   */
+  private class ChunkedCSVWriter implements Closeable {
+
+    private final FileTab fileTab;
+    private final String fileName;
+    private final int chunkSize;
+    private final List<File> chunkDirList = new ArrayList<>();
+    private CSVWriter csvWriter;
+    private String[] headers;
+    private int lineCount;
+
+    private ChunkedCSVWriter(FileTab fileTab, String fileName, int chunkSize) {
+      this.fileTab = fileTab;
+      this.fileName = fileName;
+      this.chunkSize = chunkSize;
+    }
+
+    private void writeHeader(String[] headers) throws IOException {
+      this.headers = headers;
+      this.openChunk();
+    }
+
+    private void writeNext(String[] line) throws IOException {
+      if (chunkSize > 0 && lineCount == chunkSize) {
+        this.openChunk();
+      }
+      csvWriter.writeNext(line);
+      lineCount++;
+    }
+
+    private void openChunk() throws IOException {
+      this.close();
+
+      File chunkDir = dataDir;
+      if (chunkSize > 0) {
+        chunkDir =
+            new File(
+                dataDir,
+                CHUNK_DIR
+                    + File.separator
+                    + fileTab.getId()
+                    + File.separator
+                    + chunkDirList.size());
+        chunkDir.mkdirs();
+      }
+      chunkDirList.add(chunkDir);
+
+      csvWriter = new CSVWriter(new FileWriter(new File(chunkDir, fileName)), CSV_SEPRATOR);
+      csvWriter.writeNext(headers);
+      lineCount = 0;
+    }
+
+    private List<File> getChunkDirList() {
+      return chunkDirList;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (csvWriter != null) {
+        csvWriter.close();
+        csvWriter = null;
+      }
+    }
+  }
 }
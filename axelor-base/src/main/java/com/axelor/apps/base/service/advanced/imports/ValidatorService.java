@@ -25,6 +25,7 @@ import com.axelor.apps.base.db.repo.FileTabRepository;
 import com.axelor.apps.base.exceptions.IExceptionMessage;
 import com.axelor.apps.tool.reader.DataReaderFactory;
 import com.axelor.apps.tool.reader.DataReaderService;
+import com.axelor.apps.tool.reader.DataRowCursor;
 import com.axelor.common.Inflector;
 import com.axelor.db.Model;
 import com.axelor.db.mapper.Mapper;
@@ -119,10 +120,14 @@ public class ValidatorService {
           I18n.get(IExceptionMessage.ADVANCED_IMPORT_FILE_FORMAT_INVALID));
     }
 
-    DataReaderService reader = dataReaderFactory.getDataReader(extension);
+    DataReaderService reader = dataReaderFactory.getStreamDataReader(extension);
     reader.initialize(advancedImport.getImportFile(), advancedImport.getFileSeparator());
 
-    return validate(reader, advancedImport);
+    try {
+      return validate(reader, advancedImport);
+    } finally {
+      reader.close();
+    }
   }
 
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
@@ -152,13 +157,13 @@ public class ValidatorService {
       this.validateModel(fileTab);
 
       int tabConfigRowCount = 0;
-      int totalLines = reader.getTotalLines(fileTab.getName());
 
       if (isConfig) {
         String[] objectRow = reader.read(sheet, 0, 0);
         if (isTabConfig) {
           tabConfigRowCount =
-              advancedImportService.getTabConfigRowCount(sheet, reader, totalLines, objectRow);
+              advancedImportService.getTabConfigRowCount(
+                  sheet, reader, reader.getTotalLines(sheet), objectRow);
         }
         this.validateObject(objectRow, fileTab, isTabConfig);
       }
@@ -322,19 +327,22 @@ public class ValidatorService {
       return;
     }
 
-    int totalLines = reader.getTotalLines(sheet);
-
     startIndex =
         isConfig
             ? tabConfigRowCount + 3
             : fileTab.getAdvancedImport().getIsHeader() ? linesToIgnore + 1 : linesToIgnore;
 
-    for (int line = startIndex; line < totalLines; line++) {
-      String[] dataRow = reader.read(sheet, line, row.length);
-      if (dataRow == null) {
-        continue;
+    try (DataRowCursor cursor = reader.openCursor(sheet)) {
+      while (cursor.next()) {
+        if (cursor.getIndex() < startIndex) {
+          continue;
+        }
+        String[] dataRow = cursor.getRow(row.length);
+        if (dataRow == null) {
+          continue;
+        }
+        this.validateData(dataRow, cursor.getIndex(), isConfig, fileTab);
       }
-      this.validateData(dataRow, line, isConfig, fileTab);
     }
   }
 
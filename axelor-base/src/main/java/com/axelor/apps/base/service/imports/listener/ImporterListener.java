@@ -87,6 +87,15 @@ public class ImporterListener implements Listener {
         ExceptionOriginRepository.IMPORT);
   }
 
+  /** Add the records and the anomalies handled by another listener, e.g. of a chunk. */
+  public void merge(ImporterListener listener) {
+    importLog += listener.importLog;
+    totalRecord += listener.totalRecord;
+    successRecord += listener.successRecord;
+    notNull += listener.notNull;
+    anomaly += listener.anomaly;
+  }
+
   public boolean isImported() {
     if ((anomaly == 0 || notNull == 0) && (totalRecord == successRecord)) {
       return true;
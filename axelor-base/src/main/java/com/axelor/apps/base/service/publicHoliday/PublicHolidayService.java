@@ -18,15 +18,14 @@
 package com.axelor.apps.base.service.publicHoliday;
 
 import com.axelor.apps.base.db.EventsPlanning;
-import com.axelor.apps.base.db.EventsPlanningLine;
 import com.axelor.apps.base.db.WeeklyPlanning;
 import com.axelor.apps.base.db.repo.EventsPlanningLineRepository;
 import com.axelor.apps.base.service.weeklyplanning.WeeklyPlanningService;
-import com.axelor.common.ObjectUtils;
+import com.axelor.apps.base.service.weeklyplanning.WorkingCalendarCache;
+import com.axelor.inject.Beans;
 import com.google.inject.Inject;
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.util.List;
 
 public class PublicHolidayService {
 
@@ -47,25 +46,29 @@ public class PublicHolidayService {
       LocalDate toDate,
       WeeklyPlanning weeklyPlanning,
       EventsPlanning publicHolidayPlanning) {
-    BigDecimal publicHolidayDays = BigDecimal.ZERO;
+    return Beans.get(WorkingCalendarCache.class)
+        .get(weeklyPlanning, publicHolidayPlanning)
+        .getPublicHolidayDaysValue(fromDate, toDate);
+  }
 
-    List<EventsPlanningLine> publicHolidayDayList =
-        eventsPlanningLineRepo
-            .all()
-            .filter(
-                "self.eventsPlanning = ?1 AND self.date BETWEEN ?2 AND ?3",
-                publicHolidayPlanning,
-                fromDate,
-                toDate)
-            .fetch();
-    for (EventsPlanningLine publicHolidayDay : publicHolidayDayList) {
-      publicHolidayDays =
-          publicHolidayDays.add(
-              BigDecimal.valueOf(
-                  weeklyPlanningService.getWorkingDayValueInDays(
-                      weeklyPlanning, publicHolidayDay.getDate())));
-    }
-    return publicHolidayDays;
+  /**
+   * Computes the working hours between the two dates, both included, according to the weekly
+   * planning, public holidays excluded.
+   *
+   * @param fromDate
+   * @param toDate
+   * @param weeklyPlanning
+   * @param publicHolidayPlanning can be null
+   * @return
+   */
+  public BigDecimal computeWorkingHours(
+      LocalDate fromDate,
+      LocalDate toDate,
+      WeeklyPlanning weeklyPlanning,
+      EventsPlanning publicHolidayPlanning) {
+    return Beans.get(WorkingCalendarCache.class)
+        .get(weeklyPlanning, publicHolidayPlanning)
+        .getWorkingHoursOutsidePublicHolidays(fromDate, toDate);
   }
 
   /**
@@ -81,12 +84,8 @@ public class PublicHolidayService {
       return false;
     }
 
-    List<EventsPlanningLine> publicHolidayDayList =
-        eventsPlanningLineRepo
-            .all()
-            .filter(
-                "self.eventsPlanning = ?1 AND self.date = ?2", publicHolidayEventsPlanning, date)
-            .fetch();
-    return ObjectUtils.notEmpty(publicHolidayDayList);
+    return Beans.get(WorkingCalendarCache.class)
+        .get(null, publicHolidayEventsPlanning)
+        .isPublicHoliday(date);
   }
 }
@@ -49,6 +49,18 @@ public interface WeeklyPlanningService {
    */
   public double getWorkingDayValueInDays(WeeklyPlanning planning, LocalDate date);
 
+  /**
+   * Computes the sum of the working values of the days between the two dates, both included,
+   * according to the weekly planning.
+   *
+   * @param planning
+   * @param fromDate
+   * @param toDate
+   * @return
+   */
+  public BigDecimal getWorkingDaysValueInDays(
+      WeeklyPlanning planning, LocalDate fromDate, LocalDate toDate);
+
   /**
    * Computes the working value of the given day, according to the weekly planning and whether
    * morning and/or afternoon should be taken into account.
@@ -149,6 +149,14 @@ public class WeeklyPlanningServiceImp implements WeeklyPlanningService {
     return value;
   }
 
+  @Override
+  public BigDecimal getWorkingDaysValueInDays(
+      WeeklyPlanning planning, LocalDate fromDate, LocalDate toDate) {
+    return Beans.get(WorkingCalendarCache.class)
+        .get(planning, null)
+        .getWorkingDaysValue(fromDate, toDate);
+  }
+
   @Override
   public double getWorkingDayValueInDaysWithSelect(
       WeeklyPlanning planning, LocalDate date, boolean morning, boolean afternoon) {
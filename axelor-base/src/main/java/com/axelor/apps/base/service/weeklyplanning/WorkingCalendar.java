@@ -0,0 +1,212 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service.weeklyplanning;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+
+/**
+ * Working calendar compiled from a weekly planning and a public holiday events planning. The
+ * working values of the week days are computed once, and the public holidays are kept sorted with
+ * the prefix sums of their working values, so that working durations are computed without
+ * iterating over the days of the period. Instances are immutable and can be shared between threads.
+ */
+public class WorkingCalendar {
+
+  protected static final int DAYS_PER_WEEK = 7;
+
+  /** Working values by day of week, Monday first. */
+  protected final BigDecimal[] dayValues;
+
+  protected final BigDecimal weekValue;
+
+  /** Working hours by day of week, Monday first. */
+  protected final BigDecimal[] dayHours;
+
+  protected final BigDecimal weekHours;
+
+  /** Start of the first working period by day of week, null if the day is not worked. */
+  protected final LocalTime[] firstPeriodFroms;
+
+  /** Epoch days of the public holiday lines, sorted, one item by line. */
+  protected final long[] publicHolidayLineDays;
+
+  /** Working values of the first n public holiday lines. */
+  protected final BigDecimal[] publicHolidayLineValueSums;
+
+  /** Epoch days of the public holidays, sorted and distinct. */
+  protected final long[] publicHolidayDays;
+
+  /** Working hours of the first n public holidays. */
+  protected final BigDecimal[] publicHolidayHoursSums;
+
+  public WorkingCalendar(
+      BigDecimal[] dayValues,
+      BigDecimal[] dayHours,
+      LocalTime[] firstPeriodFroms,
+      long[] publicHolidayLineDays) {
+
+    this.dayValues = dayValues.clone();
+    this.dayHours = dayHours.clone();
+    this.firstPeriodFroms = firstPeriodFroms.clone();
+    this.weekValue = sum(this.dayValues);
+    this.weekHours = sum(this.dayHours);
+
+    this.publicHolidayLineDays = publicHolidayLineDays.clone();
+    Arrays.sort(this.publicHolidayLineDays);
+    this.publicHolidayLineValueSums = new BigDecimal[this.publicHolidayLineDays.length + 1];
+    this.publicHolidayLineValueSums[0] = BigDecimal.ZERO;
+    for (int i = 0; i < this.publicHolidayLineDays.length; i++) {
+      this.publicHolidayLineValueSums[i + 1] =
+          this.publicHolidayLineValueSums[i].add(
+              dayOfWeekValue(this.dayValues, this.publicHolidayLineDays[i]));
+    }
+
+    this.publicHolidayDays = Arrays.stream(this.publicHolidayLineDays).distinct().toArray();
+    this.publicHolidayHoursSums = new BigDecimal[this.publicHolidayDays.length + 1];
+    this.publicHolidayHoursSums[0] = BigDecimal.ZERO;
+    for (int i = 0; i < this.publicHolidayDays.length; i++) {
+      this.publicHolidayHoursSums[i + 1] =
+          this.publicHolidayHoursSums[i].add(
+              dayOfWeekValue(this.dayHours, this.publicHolidayDays[i]));
+    }
+  }
+
+  /**
+   * Sum of the working values in days of the weekly planning between the two dates, both
+   * included. Public holidays are not taken into account.
+   *
+   * @param fromDate
+   * @param toDate
+   * @return
+   */
+  public BigDecimal getWorkingDaysValue(LocalDate fromDate, LocalDate toDate) {
+    return sumBetween(dayValues, weekValue, fromDate, toDate);
+  }
+
+  /**
+   * Sum of the working values in days of the public holidays between the two dates, both
+   * included.
+   *
+   * @param fromDate
+   * @param toDate
+   * @return
+   */
+  public BigDecimal getPublicHolidayDaysValue(LocalDate fromDate, LocalDate toDate) {
+    if (fromDate.isAfter(toDate)) {
+      return BigDecimal.ZERO;
+    }
+    int fromIndex = lowerBound(publicHolidayLineDays, fromDate.toEpochDay());
+    int toIndex = lowerBound(publicHolidayLineDays, toDate.toEpochDay() + 1);
+    return publicHolidayLineValueSums[toIndex].subtract(publicHolidayLineValueSums[fromIndex]);
+  }
+
+  /**
+   * Sum of the working hours of the weekly planning between the two dates, both included, public
+   * holidays excluded.
+   *
+   * @param fromDate
+   * @param toDate
+   * @return
+   */
+  public BigDecimal getWorkingHoursOutsidePublicHolidays(LocalDate fromDate, LocalDate toDate) {
+    if (fromDate.isAfter(toDate)) {
+      return BigDecimal.ZERO;
+    }
+    int fromIndex = lowerBound(publicHolidayDays, fromDate.toEpochDay());
+    int toIndex = lowerBound(publicHolidayDays, toDate.toEpochDay() + 1);
+    return sumBetween(dayHours, weekHours, fromDate, toDate)
+        .subtract(publicHolidayHoursSums[toIndex].subtract(publicHolidayHoursSums[fromIndex]));
+  }
+
+  public boolean isPublicHoliday(LocalDate date) {
+    return Arrays.binarySearch(publicHolidayDays, date.toEpochDay()) >= 0;
+  }
+
+  /**
+   * Get the first day after the given date having a working period in the weekly planning.
+   *
+   * @param date
+   * @return the next working date, or null if no day of the week is worked
+   */
+  public LocalDate getNextWorkingDate(LocalDate date) {
+    for (int i = 1; i <= DAYS_PER_WEEK; i++) {
+      LocalDate nextDate = date.plusDays(i);
+      if (getFirstPeriodFrom(nextDate) != null) {
+        return nextDate;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the start of the first working period of the given date in the weekly planning.
+   *
+   * @param date
+   * @return the start time, or null if the day is not worked
+   */
+  public LocalTime getFirstPeriodFrom(LocalDate date) {
+    return firstPeriodFroms[date.getDayOfWeek().getValue() - 1];
+  }
+
+  protected BigDecimal sumBetween(
+      BigDecimal[] values, BigDecimal weekTotal, LocalDate fromDate, LocalDate toDate) {
+
+    if (fromDate.isAfter(toDate)) {
+      return BigDecimal.ZERO;
+    }
+
+    long dayCount = ChronoUnit.DAYS.between(fromDate, toDate) + 1;
+    BigDecimal total = weekTotal.multiply(BigDecimal.valueOf(dayCount / DAYS_PER_WEEK));
+    int dayIndex = fromDate.getDayOfWeek().getValue() - 1;
+    for (int i = 0; i < dayCount % DAYS_PER_WEEK; i++) {
+      total = total.add(values[(dayIndex + i) % DAYS_PER_WEEK]);
+    }
+    return total;
+  }
+
+  protected static BigDecimal dayOfWeekValue(BigDecimal[] values, long epochDay) {
+    return values[LocalDate.ofEpochDay(epochDay).getDayOfWeek().getValue() - 1];
+  }
+
+  protected static BigDecimal sum(BigDecimal[] values) {
+    BigDecimal total = BigDecimal.ZERO;
+    for (BigDecimal value : values) {
+      total = total.add(value);
+    }
+    return total;
+  }
+
+  /** Index of the first item greater or equal to the key. */
+  protected static int lowerBound(long[] sortedValues, long key) {
+    int low = 0;
+    int high = sortedValues.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (sortedValues[middle] < key) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+}
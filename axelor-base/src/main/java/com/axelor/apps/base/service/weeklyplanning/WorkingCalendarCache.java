@@ -0,0 +1,171 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service.weeklyplanning;
+
+import com.axelor.apps.base.db.DayPlanning;
+import com.axelor.apps.base.db.EventsPlanning;
+import com.axelor.apps.base.db.WeeklyPlanning;
+import com.axelor.apps.tool.TransactionTool;
+import com.axelor.db.JPA;
+import com.axelor.db.tenants.TenantConfig;
+import com.axelor.db.tenants.TenantResolver;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the working calendars for each tenant, by weekly planning and public holiday events
+ * planning. The cache of a tenant is cleared when a transaction saving or removing a weekly
+ * planning, a day planning or a public holiday is committed.
+ */
+@Singleton
+public class WorkingCalendarCache {
+
+  /** A monday, used to compute the working values of each day of week. */
+  protected static final LocalDate REFERENCE_MONDAY = LocalDate.of(2018, 1, 1);
+
+  protected final Map<String, Map<List<Long>, WorkingCalendar>> calendarCache =
+      new ConcurrentHashMap<>();
+
+  protected final AtomicLong invalidationCount = new AtomicLong();
+
+  protected WeeklyPlanningService weeklyPlanningService;
+
+  @Inject
+  public WorkingCalendarCache(WeeklyPlanningService weeklyPlanningService) {
+    this.weeklyPlanningService = weeklyPlanningService;
+  }
+
+  /**
+   * Get the working calendar of a weekly planning and a public holiday events planning.
+   *
+   * @param weeklyPlanning can be null to only use the public holidays
+   * @param publicHolidayPlanning can be null if there is no public holiday
+   * @return
+   */
+  public WorkingCalendar get(WeeklyPlanning weeklyPlanning, EventsPlanning publicHolidayPlanning) {
+
+    Long weeklyPlanningId = weeklyPlanning != null ? weeklyPlanning.getId() : null;
+    Long publicHolidayPlanningId =
+        publicHolidayPlanning != null ? publicHolidayPlanning.getId() : null;
+
+    if ((weeklyPlanning != null && weeklyPlanningId == null)
+        || (publicHolidayPlanning != null && publicHolidayPlanningId == null)) {
+      return compile(weeklyPlanning, publicHolidayPlanningId);
+    }
+
+    String tenant = getTenant();
+    List<Long> key = Arrays.asList(weeklyPlanningId, publicHolidayPlanningId);
+    Map<List<Long>, WorkingCalendar> calendarMap =
+        calendarCache.computeIfAbsent(tenant, k -> new ConcurrentHashMap<>());
+    WorkingCalendar workingCalendar = calendarMap.get(key);
+
+    if (workingCalendar == null) {
+      // compiled outside of the map, the query may flush and trigger a listener using the cache
+      long loadInvalidationCount = invalidationCount.get();
+      workingCalendar = this.compile(weeklyPlanning, publicHolidayPlanningId);
+      WorkingCalendar cachedWorkingCalendar = calendarMap.putIfAbsent(key, workingCalendar);
+
+      if (cachedWorkingCalendar != null) {
+        workingCalendar = cachedWorkingCalendar;
+      } else if (loadInvalidationCount != invalidationCount.get()) {
+        // invalidated while compiling, the compiled calendar may be outdated
+        calendarMap.remove(key, workingCalendar);
+      }
+    }
+
+    return workingCalendar;
+  }
+
+  public void invalidate() {
+    this.invalidate(getTenant());
+  }
+
+  /** Clear the cache of the current tenant once the current transaction is committed. */
+  public void invalidateAfterCommit() {
+    String tenant = getTenant();
+    TransactionTool.afterCommit(() -> this.invalidate(tenant));
+  }
+
+  protected void invalidate(String tenant) {
+    invalidationCount.incrementAndGet();
+    calendarCache.remove(tenant);
+  }
+
+  protected WorkingCalendar compile(WeeklyPlanning weeklyPlanning, Long publicHolidayPlanningId) {
+
+    BigDecimal[] dayValues = new BigDecimal[7];
+    BigDecimal[] dayHours = new BigDecimal[7];
+    LocalTime[] firstPeriodFroms = new LocalTime[7];
+
+    for (int i = 0; i < 7; i++) {
+      LocalDate date = REFERENCE_MONDAY.plusDays(i);
+
+      if (weeklyPlanning == null) {
+        dayValues[i] = BigDecimal.ZERO;
+        dayHours[i] = BigDecimal.ZERO;
+        continue;
+      }
+
+      dayValues[i] =
+          BigDecimal.valueOf(weeklyPlanningService.getWorkingDayValueInDays(weeklyPlanning, date));
+      dayHours[i] =
+          weeklyPlanningService.getWorkingDayValueInHours(weeklyPlanning, date, null, null);
+
+      DayPlanning dayPlanning = weeklyPlanningService.findDayPlanning(weeklyPlanning, date);
+      if (dayPlanning != null) {
+        firstPeriodFroms[i] =
+            dayPlanning.getMorningFrom() != null
+                ? dayPlanning.getMorningFrom()
+                : dayPlanning.getAfternoonFrom();
+      }
+    }
+
+    long[] publicHolidayLineDays = new long[0];
+    if (publicHolidayPlanningId != null) {
+      publicHolidayLineDays =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.date FROM EventsPlanningLine self "
+                      + "WHERE self.eventsPlanning.id = :eventsPlanningId "
+                      + "AND self.date IS NOT NULL",
+                  LocalDate.class)
+              .setParameter("eventsPlanningId", publicHolidayPlanningId)
+              .getResultList()
+              .stream()
+              .mapToLong(LocalDate::toEpochDay)
+              .toArray();
+    }
+
+    return new WorkingCalendar(dayValues, dayHours, firstPeriodFroms, publicHolidayLineDays);
+  }
+
+  protected String getTenant() {
+
+    String tenantId = TenantResolver.currentTenantIdentifier();
+
+    return tenantId == null ? TenantConfig.DEFAULT_TENANT_ID : tenantId;
+  }
+}
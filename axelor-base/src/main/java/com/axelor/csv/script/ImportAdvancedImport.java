@@ -20,6 +20,7 @@ package com.axelor.csv.script;
 import com.axelor.apps.base.db.FileTab;
 import com.axelor.apps.base.db.repo.FileTabRepository;
 import com.axelor.apps.base.service.advanced.imports.ActionService;
+import com.axelor.apps.base.service.advanced.imports.DataImportService;
 import com.axelor.apps.base.service.advanced.imports.ValidatorService;
 import com.axelor.common.Inflector;
 import com.axelor.common.ObjectUtils;
@@ -138,27 +139,33 @@ public class ImportAdvancedImport {
     JsonContext jsonContext = (JsonContext) jsonContextValues.get("jsonContext");
     Context context = (Context) jsonContextValues.get("context");
 
-    if (!jsonContext.containsKey(field)) {
-      recordList = new ArrayList<Object>();
-    } else {
-      recordList =
-          ((List<Object>) jsonContext.get(field))
-              .stream()
-                  .map(
-                      obj -> {
-                        if (Mapper.toMap(EntityHelper.getEntity(obj)).get("id") != null) {
-                          Map<String, Object> idMap = new HashMap<String, Object>();
-                          idMap.put("id", Mapper.toMap(EntityHelper.getEntity(obj)).get("id"));
-                          return idMap;
-                        }
-                        return obj;
-                      })
-                  .collect(Collectors.toList());
-    }
-    recordList.add(recordMap);
-    jsonContext.put(field, recordList);
+    // Chunks of a tab imported in parallel share the same json context.
+    synchronized (jsonContext) {
+      if (!jsonContext.containsKey(field)) {
+        recordList = new ArrayList<Object>();
+      } else {
+        recordList =
+            ((List<Object>) jsonContext.get(field))
+                .stream()
+                    .map(
+                        obj -> {
+                          if (Mapper.toMap(EntityHelper.getEntity(obj)).get("id") != null) {
+                            Map<String, Object> idMap = new HashMap<String, Object>();
+                            idMap.put("id", Mapper.toMap(EntityHelper.getEntity(obj)).get("id"));
+                            return idMap;
+                          }
+                          return obj;
+                        })
+                    .collect(Collectors.toList());
+      }
+      recordList.add(recordMap);
+      jsonContext.put(field, recordList);
 
-    fileTab.setAttrs(context.get("attrs").toString());
+      // The file tab is updated once all the chunks are imported.
+      if (!Boolean.TRUE.equals(values.get(DataImportService.CHUNK_IMPORT))) {
+        fileTab.setAttrs(context.get("attrs").toString());
+      }
+    }
   }
 
   public Object importPicture(String value, String pathVal) throws IOException {
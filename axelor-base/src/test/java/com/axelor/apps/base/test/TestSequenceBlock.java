@@ -0,0 +1,188 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.test;
+
+import com.axelor.apps.base.db.Sequence;
+import com.axelor.apps.base.db.SequenceTypeSelect;
+import com.axelor.apps.base.service.administration.SequenceService;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSequenceBlock {
+
+  private static final int BLOCK_SIZE = 10;
+
+  private TestSequenceService sequenceService;
+  private Sequence sequence;
+
+  @Before
+  public void setUp() {
+    sequenceService = new TestSequenceService();
+
+    sequence = new Sequence();
+    sequence.setId(1L);
+    sequence.setSequenceTypeSelect(SequenceTypeSelect.NUMBERS);
+    sequence.setPrefixe("%YYYY%FM-");
+    sequence.setPadding(4);
+    sequence.setToBeAdded(1);
+    sequence.setBlockSize(BLOCK_SIZE);
+    sequence.setMonthlyResetOk(true);
+  }
+
+  @Test
+  public void testNumbersHandedOutFromBlocks() {
+    LocalDate refDate = LocalDate.of(2022, 3, 15);
+
+    for (int i = 1; i <= 25; i++) {
+      Assert.assertEquals(
+          String.format("202203-%04d", i), sequenceService.getSequenceNumber(sequence, refDate));
+    }
+    Assert.assertEquals(3, sequenceService.reservationCount.get());
+  }
+
+  @Test
+  public void testBlockKeptForEachVersion() {
+    LocalDate march = LocalDate.of(2022, 3, 31);
+    LocalDate april = LocalDate.of(2022, 4, 1);
+
+    for (int i = 1; i <= 5; i++) {
+      Assert.assertEquals(
+          String.format("202203-%04d", i), sequenceService.getSequenceNumber(sequence, march));
+      Assert.assertEquals(
+          String.format("202204-%04d", i), sequenceService.getSequenceNumber(sequence, april));
+    }
+    Assert.assertEquals(2, sequenceService.reservationCount.get());
+  }
+
+  @Test
+  public void testBlocksKeptForEachTenant() {
+    LocalDate refDate = LocalDate.of(2022, 3, 15);
+
+    Assert.assertEquals("202203-0001", sequenceService.getSequenceNumber(sequence, refDate));
+    sequenceService.tenant = "other";
+    Assert.assertEquals("202203-0001", sequenceService.getSequenceNumber(sequence, refDate));
+    sequenceService.tenant = "test";
+    Assert.assertEquals("202203-0002", sequenceService.getSequenceNumber(sequence, refDate));
+    Assert.assertEquals(2, sequenceService.reservationCount.get());
+  }
+
+  @Test
+  public void testInvalidatedBlockReservedAgain() {
+    LocalDate refDate = LocalDate.of(2022, 3, 15);
+
+    Assert.assertEquals("202203-0001", sequenceService.getSequenceNumber(sequence, refDate));
+    // the next number of the version is edited by a user
+    sequenceService.nextNumMap.put(Arrays.asList("test", YearMonth.from(refDate)), 100L);
+    sequenceService.invalidate(sequence.getId(), sequenceService.getVersionId(refDate));
+    Assert.assertEquals("202203-0100", sequenceService.getSequenceNumber(sequence, refDate));
+
+    sequenceService.invalidate(sequence.getId(), null);
+    Assert.assertEquals("202203-0110", sequenceService.getSequenceNumber(sequence, refDate));
+    Assert.assertEquals(3, sequenceService.reservationCount.get());
+  }
+
+  @Test
+  public void testConcurrentNumbersAreUnique() throws Exception {
+    LocalDate refDate = LocalDate.of(2022, 3, 15);
+    int threadCount = 8;
+    int numberCount = 1000;
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    List<Future<List<String>>> futureList = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      futureList.add(
+          executor.submit(
+              () -> {
+                List<String> numberList = new ArrayList<>();
+                for (int j = 0; j < numberCount; j++) {
+                  numberList.add(sequenceService.getSequenceNumber(sequence, refDate));
+                }
+                return numberList;
+              }));
+    }
+
+    Set<String> numberSet = new HashSet<>();
+    for (Future<List<String>> future : futureList) {
+      numberSet.addAll(future.get());
+    }
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.MINUTES);
+
+    Assert.assertEquals(threadCount * numberCount, numberSet.size());
+    Assert.assertEquals(
+        threadCount * numberCount / BLOCK_SIZE, sequenceService.reservationCount.get());
+  }
+
+  /** Reserve the blocks from in memory versions, one for each tenant and month. */
+  private static class TestSequenceService extends SequenceService {
+
+    private final Map<List<Object>, Long> nextNumMap = new HashMap<>();
+    private final AtomicInteger reservationCount = new AtomicInteger();
+    private volatile String tenant = "test";
+
+    TestSequenceService() {
+      super(null, null, null);
+    }
+
+    @Override
+    protected String getTenant() {
+      return tenant;
+    }
+
+    @Override
+    protected synchronized SequenceBlock reserveSequenceBlock(
+        Sequence sequence, LocalDate refDate) {
+      reservationCount.incrementAndGet();
+      YearMonth month = YearMonth.from(refDate);
+      List<Object> versionKey = Arrays.asList(tenant, month);
+      long startNum = nextNumMap.getOrDefault(versionKey, 1L);
+      long endNum = startNum + (long) sequence.getBlockSize() * sequence.getToBeAdded();
+      nextNumMap.put(versionKey, endNum);
+      return new SequenceBlock(
+          getVersionId(refDate),
+          month.atDay(1),
+          month.atEndOfMonth(),
+          startNum,
+          endNum,
+          sequence.getToBeAdded());
+    }
+
+    private Long getVersionId(LocalDate refDate) {
+      return (long) YearMonth.from(refDate).hashCode();
+    }
+
+    private void invalidate(Long sequenceId, Long sequenceVersionId) {
+      invalidateSequenceBlocks(tenant, sequenceId, sequenceVersionId);
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.base.db.Unit;
+import com.axelor.apps.base.db.UnitConversion;
+import com.axelor.apps.base.db.repo.UnitConversionRepository;
+import com.axelor.apps.base.service.UnitConversionCache;
+import com.axelor.apps.base.service.UnitConversionCache.CachedUnitConversion;
+import com.axelor.db.Query;
+import groovy.lang.Binding;
+import groovy.lang.Script;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestUnitConversionCache {
+
+  private Query<UnitConversion> query;
+  private UnitConversionCache unitConversionCache;
+  private List<UnitConversion> unitConversionList;
+
+  private Unit kilogram;
+  private Unit gram;
+  private Unit ton;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    UnitConversionRepository unitConversionRepo = mock(UnitConversionRepository.class);
+    query = mock(Query.class);
+    when(unitConversionRepo.all()).thenReturn(query);
+
+    unitConversionList = new ArrayList<>();
+    when(query.fetch()).thenAnswer(invocation -> new ArrayList<>(unitConversionList));
+
+    unitConversionCache =
+        new UnitConversionCache(unitConversionRepo) {
+          @Override
+          protected String getTenant() {
+            return "test";
+          }
+        };
+
+    kilogram = createUnit(1L);
+    gram = createUnit(2L);
+    ton = createUnit(3L);
+    unitConversionList.add(createUnitConversion(kilogram, gram, "1000"));
+    unitConversionList.add(createUnitConversion(ton, kilogram, "1000"));
+  }
+
+  @Test
+  public void testConversionListInBothDirectionsLoadedOnce() {
+    List<CachedUnitConversion> conversionList =
+        unitConversionCache.getConversionList(kilogram, gram);
+
+    Assert.assertEquals(1, conversionList.size());
+    Assert.assertEquals(kilogram.getId(), conversionList.get(0).getStartUnitId());
+    Assert.assertEquals(conversionList, unitConversionCache.getConversionList(gram, kilogram));
+    Assert.assertEquals(1, unitConversionCache.getConversionList(kilogram, ton).size());
+    Assert.assertTrue(unitConversionCache.getConversionList(gram, ton).isEmpty());
+    verify(query, times(1)).fetch();
+  }
+
+  @Test
+  public void testInvalidateReloadsConversions() {
+    Assert.assertTrue(unitConversionCache.getConversionList(gram, ton).isEmpty());
+
+    unitConversionList.add(createUnitConversion(ton, gram, "1000000"));
+    unitConversionCache.invalidate();
+
+    Assert.assertEquals(1, unitConversionCache.getConversionList(gram, ton).size());
+    verify(query, times(2)).fetch();
+  }
+
+  @Test
+  public void testInvalidationDuringLoadIsNotCached() {
+    // a listener triggered by the flush of the load query
+    when(query.fetch())
+        .thenAnswer(
+            invocation -> {
+              unitConversionCache.invalidate();
+              return new ArrayList<>(unitConversionList);
+            })
+        .thenAnswer(invocation -> new ArrayList<>(unitConversionList));
+
+    Assert.assertEquals(1, unitConversionCache.getConversionList(kilogram, gram).size());
+    Assert.assertEquals(1, unitConversionCache.getConversionList(kilogram, gram).size());
+    Assert.assertEquals(1, unitConversionCache.getConversionList(kilogram, gram).size());
+    verify(query, times(2)).fetch();
+  }
+
+  @Test
+  public void testScriptClassBindsProduct() {
+    Class<? extends Script> scriptClass =
+        unitConversionCache.getScriptClass("$Product.netMass$ * 2");
+    Assert.assertSame(scriptClass, unitConversionCache.getScriptClass("$Product.netMass$ * 2"));
+
+    Product product = new Product();
+    product.setNetMass(new BigDecimal("1.5"));
+    Binding binding = new Binding();
+    binding.setVariable("Product", product);
+
+    Assert.assertEquals(
+        0,
+        new BigDecimal("3")
+            .compareTo(
+                new BigDecimal(
+                    InvokerHelper.createScript(scriptClass, binding).run().toString())));
+  }
+
+  @Test
+  public void testScriptClassOfTemplateFormulaIsNull() {
+    Assert.assertNull(unitConversionCache.getScriptClass("$Product.netMass;format=\"0.0\"$ * 2"));
+    Assert.assertNull(unitConversionCache.getScriptClass(null));
+  }
+
+  private Unit createUnit(Long id) {
+    Unit unit = new Unit();
+    unit.setId(id);
+    return unit;
+  }
+
+  private UnitConversion createUnitConversion(Unit startUnit, Unit endUnit, String coef) {
+    UnitConversion unitConversion = new UnitConversion();
+    unitConversion.setStartUnit(startUnit);
+    unitConversion.setEndUnit(endUnit);
+    unitConversion.setTypeSelect(UnitConversionRepository.TYPE_COEFF);
+    unitConversion.setCoef(new BigDecimal(coef));
+    return unitConversion;
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.test;
+
+import com.axelor.apps.base.service.weeklyplanning.WorkingCalendar;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestWorkingCalendar {
+
+  private static final LocalDate MONDAY = LocalDate.of(2022, 1, 3);
+  private static final LocalDate SATURDAY = LocalDate.of(2022, 1, 8);
+  private static final LocalDate SUNDAY = LocalDate.of(2022, 1, 9);
+
+  private WorkingCalendar workingCalendar;
+
+  @Before
+  public void setUp() {
+    // Monday to Friday: a full day of 8 hours, Saturday: half a day of 4 hours, Sunday: not worked.
+    BigDecimal[] dayValues = new BigDecimal[7];
+    BigDecimal[] dayHours = new BigDecimal[7];
+    LocalTime[] firstPeriodFroms = new LocalTime[7];
+    for (int i = 0; i < 5; i++) {
+      dayValues[i] = BigDecimal.ONE;
+      dayHours[i] = BigDecimal.valueOf(8);
+      firstPeriodFroms[i] = LocalTime.of(8, 0);
+    }
+    dayValues[5] = new BigDecimal("0.5");
+    dayHours[5] = BigDecimal.valueOf(4);
+    firstPeriodFroms[5] = LocalTime.of(9, 0);
+    dayValues[6] = BigDecimal.ZERO;
+    dayHours[6] = BigDecimal.ZERO;
+
+    // Not sorted, and the Monday is in the events planning twice.
+    long[] publicHolidayLineDays = {
+      SATURDAY.toEpochDay(), MONDAY.toEpochDay(), SUNDAY.toEpochDay(), MONDAY.toEpochDay()
+    };
+
+    workingCalendar =
+        new WorkingCalendar(dayValues, dayHours, firstPeriodFroms, publicHolidayLineDays);
+  }
+
+  @Test
+  public void testWorkingDaysValueOverWeeks() {
+    assertEquals("5.5", workingCalendar.getWorkingDaysValue(MONDAY, SUNDAY));
+    assertEquals("11", workingCalendar.getWorkingDaysValue(MONDAY, SUNDAY.plusWeeks(1)));
+    // Thursday to next Tuesday: 1 + 1 + 0.5 + 0 + 1 + 1
+    assertEquals(
+        "4.5", workingCalendar.getWorkingDaysValue(MONDAY.plusDays(3), MONDAY.plusDays(8)));
+
+    // Same sums as adding the days one by one, from any day of week.
+    for (int from = 0; from < 7; from++) {
+      for (int length = 0; length < 30; length++) {
+        LocalDate fromDate = MONDAY.plusDays(from);
+        LocalDate toDate = fromDate.plusDays(length);
+        BigDecimal expected = BigDecimal.ZERO;
+        for (LocalDate date = fromDate; !date.isAfter(toDate); date = date.plusDays(1)) {
+          expected = expected.add(workingCalendar.getWorkingDaysValue(date, date));
+        }
+        Assert.assertEquals(
+            fromDate + " - " + toDate,
+            0,
+            expected.compareTo(workingCalendar.getWorkingDaysValue(fromDate, toDate)));
+      }
+    }
+  }
+
+  @Test
+  public void testWorkingDaysValueLimits() {
+    assertEquals("1", workingCalendar.getWorkingDaysValue(MONDAY, MONDAY));
+    assertEquals("0", workingCalendar.getWorkingDaysValue(SUNDAY, SUNDAY));
+    assertEquals("0", workingCalendar.getWorkingDaysValue(MONDAY.plusDays(1), MONDAY));
+  }
+
+  @Test
+  public void testPublicHolidayDaysValue() {
+    // Each line counts, so the Monday twice: 1 + 1 + 0.5 + 0
+    assertEquals(
+        "2.5", workingCalendar.getPublicHolidayDaysValue(MONDAY.minusDays(2), SUNDAY.plusDays(7)));
+    assertEquals("2", workingCalendar.getPublicHolidayDaysValue(MONDAY, MONDAY));
+    assertEquals(
+        "0.5", workingCalendar.getPublicHolidayDaysValue(MONDAY.plusDays(1), SATURDAY));
+    assertEquals(
+        "0", workingCalendar.getPublicHolidayDaysValue(MONDAY.plusDays(1), SATURDAY.minusDays(1)));
+    assertEquals("0", workingCalendar.getPublicHolidayDaysValue(SUNDAY, MONDAY));
+  }
+
+  @Test
+  public void testWorkingHoursOutsidePublicHolidays() {
+    // 44 hours in the week, minus the Monday counted once and the Saturday.
+    assertEquals("32", workingCalendar.getWorkingHoursOutsidePublicHolidays(MONDAY, SUNDAY));
+    assertEquals(
+        "76", workingCalendar.getWorkingHoursOutsidePublicHolidays(MONDAY, SUNDAY.plusWeeks(1)));
+    assertEquals("0", workingCalendar.getWorkingHoursOutsidePublicHolidays(MONDAY, MONDAY));
+    assertEquals(
+        "32",
+        workingCalendar.getWorkingHoursOutsidePublicHolidays(
+            MONDAY.plusDays(1), SATURDAY.minusDays(1)));
+    assertEquals("0", workingCalendar.getWorkingHoursOutsidePublicHolidays(SUNDAY, MONDAY));
+  }
+
+  @Test
+  public void testIsPublicHoliday() {
+    Assert.assertTrue(workingCalendar.isPublicHoliday(MONDAY));
+    Assert.assertTrue(workingCalendar.isPublicHoliday(SUNDAY));
+    Assert.assertFalse(workingCalendar.isPublicHoliday(MONDAY.plusDays(1)));
+  }
+
+  @Test
+  public void testNextWorkingDate() {
+    Assert.assertEquals(MONDAY.plusDays(1), workingCalendar.getNextWorkingDate(MONDAY));
+    Assert.assertEquals(SATURDAY, workingCalendar.getNextWorkingDate(SATURDAY.minusDays(1)));
+    Assert.assertEquals(MONDAY.plusWeeks(1), workingCalendar.getNextWorkingDate(SATURDAY));
+    Assert.assertEquals(MONDAY.plusWeeks(1), workingCalendar.getNextWorkingDate(SUNDAY));
+    Assert.assertEquals(LocalTime.of(9, 0), workingCalendar.getFirstPeriodFrom(SATURDAY));
+    Assert.assertNull(workingCalendar.getFirstPeriodFrom(SUNDAY));
+  }
+
+  @Test
+  public void testNextWorkingDateWithoutWorkingDay() {
+    BigDecimal[] zeros = new BigDecimal[7];
+    Arrays.fill(zeros, BigDecimal.ZERO);
+    WorkingCalendar notWorkingCalendar =
+        new WorkingCalendar(zeros, zeros, new LocalTime[7], new long[0]);
+
+    Assert.assertNull(notWorkingCalendar.getNextWorkingDate(MONDAY));
+    assertEquals("0", notWorkingCalendar.getPublicHolidayDaysValue(MONDAY, SUNDAY));
+  }
+
+  private static void assertEquals(String expected, BigDecimal actual) {
+    Assert.assertEquals(0, new BigDecimal(expected).compareTo(actual));
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.hr.job;
+
+import com.axelor.apps.base.job.ThreadedJob;
+import com.axelor.apps.base.job.UncheckedJobExecutionException;
+import com.axelor.apps.hr.service.project.ProjectTimeSpentService;
+import com.axelor.exception.service.TraceBackService;
+import com.axelor.inject.Beans;
+import org.quartz.JobExecutionContext;
+
+/** Recompute the time spent of all the projects from the validated timesheet lines. */
+public class ProjectTimeSpentJob extends ThreadedJob {
+
+  @Override
+  public void executeInThread(JobExecutionContext context) {
+    try {
+      Beans.get(ProjectTimeSpentService.class).recomputeTimeSpent();
+    } catch (Exception e) {
+      TraceBackService.trace(e);
+      throw new UncheckedJobExecutionException(e);
+    }
+  }
+}
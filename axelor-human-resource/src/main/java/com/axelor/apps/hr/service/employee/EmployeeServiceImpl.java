@@ -133,14 +133,9 @@ public class EmployeeServiceImpl extends UserServiceImpl implements EmployeeServ
           employee.getName());
     }
 
-    LocalDate date = fromDate;
-    while (!date.isAfter(toDate)) {
-      duration =
-          duration.add(
-              BigDecimal.valueOf(
-                  weeklyPlanningService.getWorkingDayValueInDays(weeklyPlanning, date)));
-      date = date.plusDays(1);
-    }
+    duration =
+        duration.add(
+            weeklyPlanningService.getWorkingDaysValueInDays(weeklyPlanning, fromDate, toDate));
 
     duration =
         duration.subtract(
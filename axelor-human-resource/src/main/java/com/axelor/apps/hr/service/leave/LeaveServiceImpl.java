@@ -252,14 +252,10 @@ public class LeaveServiceImpl implements LeaveService {
           duration.add(
               BigDecimal.valueOf(computeStartDateWithSelect(fromDate, startOn, weeklyPlanning)));
 
-      LocalDate itDate = fromDate.plusDays(1);
-      while (!itDate.isEqual(toDate) && !itDate.isAfter(toDate)) {
-        duration =
-            duration.add(
-                BigDecimal.valueOf(
-                    weeklyPlanningService.getWorkingDayValueInDays(weeklyPlanning, itDate)));
-        itDate = itDate.plusDays(1);
-      }
+      duration =
+          duration.add(
+              weeklyPlanningService.getWorkingDaysValueInDays(
+                  weeklyPlanning, fromDate.plusDays(1), toDate.minusDays(1)));
 
       duration =
           duration.add(BigDecimal.valueOf(computeEndDateWithSelect(toDate, endOn, weeklyPlanning)));
@@ -321,14 +317,10 @@ public class LeaveServiceImpl implements LeaveService {
       }
 
       // Daily leave duration of the other days between from and to date
-      for (LocalDate date = fromDate; date.isBefore(toDate); date = date.plusDays(1)) {
-        if (!publicHolidayHrService.checkPublicHolidayDay(date, holidayPlanning)) {
-          duration =
-              duration.add(
-                  weeklyPlanningService.getWorkingDayValueInHours(
-                      weeklyPlanning, date, null, null));
-        }
-      }
+      duration =
+          duration.add(
+              publicHolidayHrService.computeWorkingHours(
+                  fromDate, toDate.minusDays(1), weeklyPlanning, holidayPlanning));
     }
 
     return duration;
@@ -0,0 +1,284 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.hr.service.project;
+
+import com.axelor.apps.hr.db.repo.TimesheetRepository;
+import com.axelor.apps.project.db.Project;
+import com.axelor.apps.tool.TransactionTool;
+import com.axelor.db.JPA;
+import com.axelor.db.tenants.TenantAware;
+import com.axelor.db.tenants.TenantConfig;
+import com.axelor.db.tenants.TenantResolver;
+import com.axelor.event.Observes;
+import com.axelor.events.ShutdownEvent;
+import com.axelor.exception.service.TraceBackService;
+import com.axelor.inject.Beans;
+import com.google.common.base.Throwables;
+import com.google.inject.Singleton;
+import com.google.inject.persist.UnitOfWork;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Maintains the time spent of the projects, which is the sum of the validated timesheet lines of a
+ * project and of all its sub-projects.
+ *
+ * <p>Hours added or removed by a timesheet are propagated to the parent projects as deltas, queued
+ * once the transaction adding them is committed. Deltas are merged by tenant and project and
+ * applied by a single worker with atomic increments, so that validating timesheets never locks nor
+ * recomputes the project tree. {@link #recomputeTimeSpent()} rebuilds all the totals from the
+ * timesheet lines, on the same worker, so that it never runs between the application of deltas.
+ */
+@Singleton
+public class ProjectTimeSpentService {
+
+  /** Hours still to add to the time spent of the projects, by tenant and by project id. */
+  protected final Map<String, Map<Long, BigDecimal>> pendingTimeSpentMap =
+      new ConcurrentHashMap<>();
+
+  /** Tenants whose pending hours are already scheduled to be applied by the worker. */
+  protected final Set<String> scheduledTenantSet = ConcurrentHashMap.newKeySet();
+
+  protected final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  /**
+   * Add hours to the time spent of projects and of all their parent projects. The update is done
+   * asynchronously once the current transaction is committed, and is dropped if it is rolled back.
+   *
+   * @param projectTimeSpentMap the hours to add by project, negative to remove hours
+   */
+  public void addTimeSpent(Map<Project, BigDecimal> projectTimeSpentMap) {
+
+    Map<Long, BigDecimal> timeSpentMap = new HashMap<>();
+    for (Map.Entry<Project, BigDecimal> entry : projectTimeSpentMap.entrySet()) {
+      BigDecimal timeSpent = entry.getValue();
+      if (timeSpent == null || timeSpent.signum() == 0) {
+        continue;
+      }
+
+      Set<Long> projectIdSet = new HashSet<>();
+      for (Project project = entry.getKey();
+          project != null && project.getId() != null && projectIdSet.add(project.getId());
+          project = project.getParentProject()) {
+        timeSpentMap.merge(project.getId(), timeSpent, BigDecimal::add);
+      }
+    }
+
+    if (timeSpentMap.isEmpty()) {
+      return;
+    }
+
+    String tenant = getTenant();
+    TransactionTool.afterCommit(() -> this.queueTimeSpent(tenant, timeSpentMap));
+  }
+
+  protected void queueTimeSpent(String tenant, Map<Long, BigDecimal> timeSpentMap) {
+
+    Map<Long, BigDecimal> tenantTimeSpentMap =
+        pendingTimeSpentMap.computeIfAbsent(tenant, key -> new ConcurrentHashMap<>());
+    timeSpentMap.forEach(
+        (projectId, timeSpent) -> tenantTimeSpentMap.merge(projectId, timeSpent, BigDecimal::add));
+
+    if (scheduledTenantSet.add(tenant)) {
+      Runnable task = () -> this.applyPendingTimeSpent(tenant);
+      executor.submit(new TenantAware(task).withTransaction(false));
+    }
+  }
+
+  protected void applyPendingTimeSpent(String tenant) {
+
+    scheduledTenantSet.remove(tenant);
+    this.applyPendingTimeSpentInTransaction(tenant);
+  }
+
+  /**
+   * Apply the pending hours of a tenant in a new transaction.
+   *
+   * @return false if the hours could not be applied, in which case they are kept as pending
+   */
+  protected boolean applyPendingTimeSpentInTransaction(String tenant) {
+
+    // Sorted by id, so that concurrent updates lock the projects in the same order.
+    Map<Long, BigDecimal> tenantTimeSpentMap =
+        pendingTimeSpentMap.getOrDefault(tenant, Collections.emptyMap());
+    Map<Long, BigDecimal> timeSpentMap = new TreeMap<>();
+    for (Long projectId : new ArrayList<>(tenantTimeSpentMap.keySet())) {
+      BigDecimal timeSpent = tenantTimeSpentMap.remove(projectId);
+      if (timeSpent != null && timeSpent.signum() != 0) {
+        timeSpentMap.put(projectId, timeSpent);
+      }
+    }
+
+    if (timeSpentMap.isEmpty()) {
+      return true;
+    }
+
+    final RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      JPA.runInTransaction(() -> timeSpentMap.forEach(this::incrementTimeSpent));
+      return true;
+    } catch (Exception e) {
+      // Kept to be applied with the next update, or fixed by a recomputation.
+      timeSpentMap.forEach(
+          (projectId, timeSpent) ->
+              tenantTimeSpentMap.merge(projectId, timeSpent, BigDecimal::add));
+      TraceBackService.trace(e);
+      return false;
+    } finally {
+      Beans.get(UnitOfWork.class).end();
+    }
+  }
+
+  protected void incrementTimeSpent(Long projectId, BigDecimal timeSpent) {
+    JPA.em()
+        .createQuery(
+            "UPDATE Project self "
+                + "SET self.timeSpent = COALESCE(self.timeSpent, 0) + :timeSpent, "
+                + "self.version = self.version + 1 "
+                + "WHERE self.id = :projectId")
+        .setParameter("timeSpent", timeSpent)
+        .setParameter("projectId", projectId)
+        .executeUpdate();
+  }
+
+  protected void setTimeSpent(Long projectId, BigDecimal timeSpent) {
+    JPA.em()
+        .createQuery(
+            "UPDATE Project self "
+                + "SET self.timeSpent = :timeSpent, self.version = self.version + 1 "
+                + "WHERE self.id = :projectId")
+        .setParameter("timeSpent", timeSpent)
+        .setParameter("projectId", projectId)
+        .executeUpdate();
+  }
+
+  /**
+   * Recompute the time spent of all the projects of the current tenant from the validated
+   * timesheet lines, and update the projects whose time spent is wrong. The computation is done by
+   * the worker applying the hours added by timesheets, after the pending hours of the tenant, and
+   * this method waits for it to end.
+   */
+  public void recomputeTimeSpent() {
+    String tenant = getTenant();
+    Runnable task = () -> this.recomputeTimeSpentInWorker(tenant);
+    Future<?> future = executor.submit(new TenantAware(task).withTransaction(false));
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  protected void recomputeTimeSpentInWorker(String tenant) {
+
+    // The pending hours are applied first, as the totals include the timesheets which added them.
+    if (!this.applyPendingTimeSpentInTransaction(tenant)) {
+      throw new IllegalStateException(
+          "The pending time spent of the projects could not be applied before recomputing it.");
+    }
+
+    final RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      JPA.runInTransaction(this::recomputeTimeSpentInTransaction);
+    } finally {
+      Beans.get(UnitOfWork.class).end();
+    }
+  }
+
+  protected void recomputeTimeSpentInTransaction() {
+
+    Map<Long, BigDecimal> totalTimeSpentMap = new HashMap<>();
+    Map<Long, Long> parentProjectIdMap = new HashMap<>();
+    Map<Long, BigDecimal> currentTimeSpentMap = new HashMap<>();
+
+    List<Object[]> projectRows =
+        JPA.em()
+            .createQuery(
+                "SELECT self.id, parentProject.id, self.timeSpent FROM Project self "
+                    + "LEFT JOIN self.parentProject parentProject",
+                Object[].class)
+            .getResultList();
+    for (Object[] row : projectRows) {
+      parentProjectIdMap.put((Long) row[0], (Long) row[1]);
+      currentTimeSpentMap.put(
+          (Long) row[0], row[2] != null ? (BigDecimal) row[2] : BigDecimal.ZERO);
+    }
+
+    List<Object[]> timeSpentRows =
+        JPA.em()
+            .createQuery(
+                "SELECT self.project.id, SUM(self.hoursDuration) FROM TimesheetLine self "
+                    + "WHERE self.project IS NOT NULL AND self.timesheet.statusSelect = :status "
+                    + "GROUP BY self.project.id",
+                Object[].class)
+            .setParameter("status", TimesheetRepository.STATUS_VALIDATED)
+            .getResultList();
+    for (Object[] row : timeSpentRows) {
+      BigDecimal timeSpent = (BigDecimal) row[1];
+      if (timeSpent == null) {
+        continue;
+      }
+
+      Set<Long> projectIdSet = new HashSet<>();
+      for (Long projectId = (Long) row[0];
+          projectId != null && projectIdSet.add(projectId);
+          projectId = parentProjectIdMap.get(projectId)) {
+        totalTimeSpentMap.merge(projectId, timeSpent, BigDecimal::add);
+      }
+    }
+
+    for (Map.Entry<Long, BigDecimal> entry : new TreeMap<>(currentTimeSpentMap).entrySet()) {
+      BigDecimal timeSpent = totalTimeSpentMap.getOrDefault(entry.getKey(), BigDecimal.ZERO);
+      if (timeSpent.compareTo(entry.getValue()) != 0) {
+        setTimeSpent(entry.getKey(), timeSpent);
+      }
+    }
+  }
+
+  protected String getTenant() {
+    String tenantId = TenantResolver.currentTenantIdentifier();
+    return tenantId == null ? TenantConfig.DEFAULT_TENANT_ID : tenantId;
+  }
+
+  /**
+   * This method calls shutdown on the executor when the application stops.
+   *
+   * @param event shutdown event
+   */
+  protected void onApplicationShutdown(@Observes ShutdownEvent event) {
+    executor.shutdown();
+  }
+}
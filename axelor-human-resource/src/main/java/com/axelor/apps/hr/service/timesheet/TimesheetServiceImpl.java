@@ -52,6 +52,7 @@ import com.axelor.apps.hr.exception.IExceptionMessage;
 import com.axelor.apps.hr.service.app.AppHumanResourceService;
 import com.axelor.apps.hr.service.config.HRConfigService;
 import com.axelor.apps.hr.service.leave.LeaveService;
+import com.axelor.apps.hr.service.project.ProjectTimeSpentService;
 import com.axelor.apps.hr.service.publicHoliday.PublicHolidayHrService;
 import com.axelor.apps.hr.service.user.UserHrService;
 import com.axelor.apps.message.db.Message;
@@ -90,17 +91,11 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import javax.mail.MessagingException;
-import javax.persistence.EntityNotFoundException;
-import javax.persistence.LockModeType;
-import javax.persistence.PersistenceException;
 import org.apache.commons.collections4.ListUtils;
 import wslite.json.JSONException;
 
@@ -121,9 +116,6 @@ public class TimesheetServiceImpl extends JpaSupport implements TimesheetService
   protected TimesheetLineRepository timesheetlineRepo;
   protected TimesheetRepository timeSheetRepository;
   protected ProjectService projectService;
-  private ExecutorService executor = Executors.newCachedThreadPool();
-  private static final int ENTITY_FIND_TIMEOUT = 10000;
-  private static final int ENTITY_FIND_INTERVAL = 50;
 
   @Inject
   public TimesheetServiceImpl(
@@ -711,75 +703,12 @@ public class TimesheetServiceImpl extends JpaSupport implements TimesheetService
     List<TimesheetLine> timesheetLineList = timesheet.getTimesheetLineList();
 
     if (timesheetLineList != null) {
-      Map<Project, BigDecimal> projectTimeSpentMap =
-          timesheetLineService.getProjectTimeSpentMap(timesheetLineList);
-
-      Iterator<Project> projectIterator = projectTimeSpentMap.keySet().iterator();
-
-      while (projectIterator.hasNext()) {
-        Project project = projectIterator.next();
-        getEntityManager().flush();
-        executor.submit(
-            () -> {
-              final Long startTime = System.currentTimeMillis();
-              boolean done = false;
-              PersistenceException persistenceException = null;
-
-              do {
-                try {
-                  inTransaction(
-                      () -> {
-                        final Project updateProject = findProject(project.getId());
-                        getEntityManager().lock(updateProject, LockModeType.PESSIMISTIC_WRITE);
-
-                        BigDecimal timeSpent =
-                            projectTimeSpentMap
-                                .get(updateProject)
-                                .add(this.computeSubTimeSpent(updateProject));
-                        updateProject.setTimeSpent(timeSpent);
-
-                        projectRepo.save(updateProject);
-
-                        this.computeParentTimeSpent(updateProject);
-                      });
-                  done = true;
-                } catch (PersistenceException e) {
-                  persistenceException = e;
-                  sleep();
-                }
-              } while (!done && System.currentTimeMillis() - startTime < ENTITY_FIND_TIMEOUT);
-
-              if (!done) {
-                throw persistenceException;
-              }
-              return true;
-            });
-      }
+      Beans.get(ProjectTimeSpentService.class)
+          .addTimeSpent(timesheetLineService.getProjectTimeSpentMap(timesheetLineList));
     }
     this.setProjectTaskTotalRealHrs(timesheet.getTimesheetLineList(), true);
   }
 
-  private Project findProject(Long projectId) {
-    Project project;
-    final long startTime = System.currentTimeMillis();
-    while ((project = projectRepo.find(projectId)) == null
-        && System.currentTimeMillis() - startTime < ENTITY_FIND_TIMEOUT) {
-      sleep();
-    }
-    if (project == null) {
-      throw new EntityNotFoundException(projectId.toString());
-    }
-    return project;
-  }
-
-  private void sleep() {
-    try {
-      Thread.sleep(ENTITY_FIND_INTERVAL);
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-    }
-  }
-
   @Override
   public BigDecimal computeSubTimeSpent(Project project) {
     BigDecimal sum = BigDecimal.ZERO;
@@ -24,6 +24,10 @@ public class MessageManagementRepository extends MessageRepository {
   public Message copy(Message entity, boolean deep) {
     entity.setStatusSelect(1);
     entity.setSentDateT(null);
+    entity.setSendAttemptCount(0);
+    entity.setNextSendAttemptDateT(null);
+    entity.setSendClaimToken(null);
+    entity.setSendClaimDateT(null);
     entity.setToEmailAddressSet(null);
     entity.setCcEmailAddressSet(null);
     entity.setBccEmailAddressSet(null);
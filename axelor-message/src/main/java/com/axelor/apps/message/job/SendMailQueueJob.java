@@ -0,0 +1,37 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.message.job;
+
+import com.axelor.apps.message.service.SendMailQueueService;
+import com.google.inject.Inject;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+
+/**
+ * Resume the outbound mail queue of every tenant, in case messages were queued by another node,
+ * their worker missed them or the claim of their worker expired.
+ */
+public class SendMailQueueJob implements Job {
+
+  @Inject private SendMailQueueService sendMailQueueService;
+
+  @Override
+  public void execute(JobExecutionContext context) {
+    sendMailQueueService.resume();
+  }
+}
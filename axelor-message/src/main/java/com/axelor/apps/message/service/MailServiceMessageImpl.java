@@ -50,8 +50,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import javax.inject.Singleton;
 import javax.mail.MessagingException;
 import javax.mail.internet.AddressException;
@@ -65,8 +63,6 @@ public class MailServiceMessageImpl extends MailServiceImpl {
 
   private Logger log = LoggerFactory.getLogger(MailService.class);
 
-  private ExecutorService executor = Executors.newCachedThreadPool();
-
   private MailSender sender = null;
 
   private MailReader reader = null;
@@ -77,6 +73,8 @@ public class MailServiceMessageImpl extends MailServiceImpl {
 
   @Inject protected MailAccountService mailAccountService;
 
+  @Inject protected SendMailQueueService sendMailQueueService;
+
   @Override
   public Model resolve(String email) {
     final EmailAddressRepository addresses = Beans.get(EmailAddressRepository.class);
@@ -194,7 +192,7 @@ public class MailServiceMessageImpl extends MailServiceImpl {
     }
 
     // send email using a separate process to void thread blocking
-    executor.submit(
+    sendMailQueueService.submitMailTask(
         new Callable<Boolean>() {
           @Override
           public Boolean call() throws Exception {
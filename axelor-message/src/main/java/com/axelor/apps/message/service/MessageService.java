@@ -21,6 +21,7 @@ import com.axelor.apps.message.db.EmailAccount;
 import com.axelor.apps.message.db.EmailAddress;
 import com.axelor.apps.message.db.Message;
 import com.axelor.exception.AxelorException;
+import com.axelor.mail.MailSender;
 import com.axelor.meta.db.MetaAttachment;
 import com.axelor.meta.db.MetaFile;
 import com.google.inject.persist.Transactional;
@@ -28,6 +29,7 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Set;
 import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
 import wslite.json.JSONException;
 
 public interface MessageService {
@@ -146,6 +148,20 @@ public interface MessageService {
   public Message sendByEmail(Message message, Boolean isTemporaryEmail)
       throws MessagingException, AxelorException;
 
+  /**
+   * Build the email of a message, to be sent with the given sender. Used by the mail queue to send
+   * the queued messages.
+   *
+   * @param message
+   * @param sender
+   * @return
+   * @throws MessagingException
+   * @throws AxelorException
+   * @throws IOException
+   */
+  public MimeMessage buildEmail(Message message, MailSender sender)
+      throws MessagingException, AxelorException, IOException;
+
   @Transactional
   public Message sendToUser(Message message);
 
@@ -58,7 +58,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import javax.mail.MessagingException;
-import javax.persistence.LockModeType;
+import javax.mail.internet.MimeMessage;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -354,6 +354,24 @@ public class MessageServiceImpl extends JpaSupport implements MessageService {
       return message;
     }
 
+    if (!isTemporaryEmail) {
+      this.checkEmail(message);
+
+      // the message is queued and sent by the mail queue workers once committed
+      message.setStatusSelect(MessageRepository.STATUS_IN_PROGRESS);
+      message.setSendAttemptCount(0);
+      message.setNextSendAttemptDateT(null);
+      message.setSendClaimToken(null);
+      message.setSendClaimDateT(null);
+      if (AuthUtils.getUser() != null) {
+        message.setSenderUser(AuthUtils.getUser());
+      }
+      messageRepository.save(message);
+      sendMailQueueService.submitMailJob(message);
+
+      return message;
+    }
+
     log.debug("Sending email...");
     MailAccountService mailAccountService = Beans.get(MailAccountService.class);
     com.axelor.mail.MailAccount account =
@@ -364,19 +382,61 @@ public class MessageServiceImpl extends JpaSupport implements MessageService {
             mailAccountService.getDecryptPassword(mailAccount.getPassword()),
             mailAccountService.getSecurity(mailAccount));
 
-    List<String> replytoRecipients = this.getEmailAddresses(message.getReplyToEmailAddressSet());
-    List<String> toRecipients = this.getEmailAddresses(message.getToEmailAddressSet());
-    List<String> ccRecipients = this.getEmailAddresses(message.getCcEmailAddressSet());
-    List<String> bccRecipients = this.getEmailAddresses(message.getBccEmailAddressSet());
+    // Sending email(message) which is not saved.
+    // No separate thread or JPA persistence lock required
+    MailBuilder mailBuilder = this.composeEmail(message, new MailSender(account), false);
+    try {
+      mailBuilder.send();
+    } catch (IOException e) {
+      log.debug("Exception when sending email", e);
+      TraceBackService.trace(e);
+    }
+
+    log.debug("Email sent.");
+
+    return message;
+  }
 
-    if (toRecipients.isEmpty() && ccRecipients.isEmpty() && bccRecipients.isEmpty()) {
+  @Override
+  public MimeMessage buildEmail(Message message, MailSender sender)
+      throws MessagingException, AxelorException, IOException {
+
+    return this.composeEmail(message, sender, true).build();
+  }
+
+  protected void checkEmail(Message message) throws AxelorException {
+
+    if (this.getEmailAddresses(message.getToEmailAddressSet()).isEmpty()
+        && this.getEmailAddresses(message.getCcEmailAddressSet()).isEmpty()
+        && this.getEmailAddresses(message.getBccEmailAddressSet()).isEmpty()) {
       throw new AxelorException(
           message,
           TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
           I18n.get(IExceptionMessage.MESSAGE_6));
     }
 
-    MailSender sender = new MailSender(account);
+    EmailAccount mailAccount = message.getMailAccount();
+    if (!Strings.isNullOrEmpty(mailAccount.getFromAddress())
+        && Strings.isNullOrEmpty(mailAccount.getFromName())
+        && message.getFromEmailAddress() != null
+        && Strings.isNullOrEmpty(message.getFromEmailAddress().getAddress())) {
+      throw new AxelorException(
+          message, TraceBackRepository.CATEGORY_CONFIGURATION_ERROR, IExceptionMessage.MESSAGE_5);
+    }
+  }
+
+  protected MailBuilder composeEmail(Message message, MailSender sender, boolean withAttachments)
+      throws AxelorException {
+
+    this.checkEmail(message);
+
+    EmailAccount mailAccount = message.getMailAccount();
+
+    List<String> replytoRecipients = this.getEmailAddresses(message.getReplyToEmailAddressSet());
+    List<String> toRecipients = this.getEmailAddresses(message.getToEmailAddressSet());
+    List<String> ccRecipients = this.getEmailAddresses(message.getCcEmailAddressSet());
+    List<String> bccRecipients = this.getEmailAddresses(message.getBccEmailAddressSet());
+
     MailBuilder mailBuilder = sender.compose();
 
     mailBuilder.subject(message.getSubject());
@@ -387,61 +447,35 @@ public class MessageServiceImpl extends JpaSupport implements MessageService {
         fromAddress =
             String.format("%s <%s>", mailAccount.getFromName(), mailAccount.getFromAddress());
       } else if (message.getFromEmailAddress() != null) {
-        if (!Strings.isNullOrEmpty(message.getFromEmailAddress().getAddress())) {
-          log.debug(
-              "Override from :::  {}", this.getFullEmailAddress(message.getFromEmailAddress()));
-          mailBuilder.from(this.getFullEmailAddress(message.getFromEmailAddress()));
-        } else {
-          throw new AxelorException(
-              message,
-              TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
-              IExceptionMessage.MESSAGE_5);
-        }
+        log.debug("Override from :::  {}", this.getFullEmailAddress(message.getFromEmailAddress()));
+        mailBuilder.from(this.getFullEmailAddress(message.getFromEmailAddress()));
       }
       mailBuilder.from(fromAddress);
     }
-    if (replytoRecipients != null && !replytoRecipients.isEmpty()) {
+    if (!replytoRecipients.isEmpty()) {
       mailBuilder.replyTo(Joiner.on(",").join(replytoRecipients));
     }
     if (!toRecipients.isEmpty()) {
       mailBuilder.to(Joiner.on(",").join(toRecipients));
     }
-    if (ccRecipients != null && !ccRecipients.isEmpty()) {
+    if (!ccRecipients.isEmpty()) {
       mailBuilder.cc(Joiner.on(",").join(ccRecipients));
     }
-    if (bccRecipients != null && !bccRecipients.isEmpty()) {
+    if (!bccRecipients.isEmpty()) {
       mailBuilder.bcc(Joiner.on(",").join(bccRecipients));
     }
     if (!Strings.isNullOrEmpty(message.getContent())) {
       mailBuilder.html(message.getContent());
     }
 
-    if (!isTemporaryEmail) {
+    if (withAttachments) {
       for (MetaAttachment metaAttachment : getMetaAttachments(message)) {
         MetaFile metaFile = metaAttachment.getMetaFile();
         mailBuilder.attach(metaFile.getFileName(), MetaFiles.getPath(metaFile).toString());
       }
-
-      getEntityManager().flush();
-      getEntityManager().lock(message, LockModeType.PESSIMISTIC_WRITE);
-      // send email using a separate process to avoid thread blocking
-      sendMailQueueService.submitMailJob(mailBuilder, message);
-
-    } else {
-
-      // Sending email(message) which is not saved.
-      // No separate thread or JPA persistence lock required
-      try {
-        mailBuilder.send();
-      } catch (IOException e) {
-        log.debug("Exception when sending email", e);
-        TraceBackService.trace(e);
-      }
-
-      log.debug("Email sent.");
     }
 
-    return message;
+    return mailBuilder;
   }
 
   @Override
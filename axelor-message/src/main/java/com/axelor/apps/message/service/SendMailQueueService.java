@@ -17,93 +17,518 @@
  */
 package com.axelor.apps.message.service;
 
+import com.axelor.app.AppSettings;
+import com.axelor.apps.message.db.EmailAccount;
 import com.axelor.apps.message.db.Message;
+import com.axelor.apps.message.db.repo.EmailAccountRepository;
 import com.axelor.apps.message.db.repo.MessageRepository;
-import com.axelor.auth.AuthUtils;
-import com.axelor.auth.db.User;
-import com.axelor.auth.db.repo.UserRepository;
+import com.axelor.apps.tool.TransactionTool;
 import com.axelor.db.JpaSupport;
+import com.axelor.db.tenants.TenantAware;
+import com.axelor.db.tenants.TenantConfig;
+import com.axelor.db.tenants.TenantConfigProvider;
+import com.axelor.db.tenants.TenantResolver;
 import com.axelor.event.Observes;
 import com.axelor.events.ShutdownEvent;
+import com.axelor.events.StartupEvent;
 import com.axelor.exception.service.TraceBackService;
-import com.axelor.mail.MailBuilder;
+import com.axelor.inject.Beans;
+import com.axelor.mail.MailAccount;
+import com.axelor.mail.MailSender;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.persist.UnitOfWork;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
 import java.lang.invoke.MethodHandles;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import javax.persistence.EntityNotFoundException;
-import javax.persistence.LockModeType;
-import javax.persistence.PersistenceException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Outbound mail queue.
+ *
+ * <p>The queue is the {@link Message} table: emails to send are the messages in progress, so they
+ * are not lost on restart. Each email account of a tenant is drained by one worker at a time, which
+ * sends the messages by batches on a same SMTP connection, at the rate allowed by the account. A
+ * worker never waits for the rate of its account: it gives its thread back and the draining is
+ * scheduled again when the next message can be sent. Failed messages are retried with an
+ * exponential backoff and go back to draft after the last attempt.
+ *
+ * <p>A worker claims each batch in the database before sending it, so that a batch is sent by a
+ * single node when several nodes share the database. A claim not released after the timeout of
+ * the mail.queue.claim.timeout setting, in minutes, is considered lost with its worker, and its
+ * messages are claimed again.
+ */
 @Singleton
 public class SendMailQueueService extends JpaSupport {
 
-  private static final int ENTITY_FIND_TIMEOUT = 10000;
-  private static final int ENTITY_FIND_INTERVAL = 200;
+  protected static final String CONFIG_QUEUE_THREADS = "mail.queue.threads";
+  protected static final String CONFIG_QUEUE_BATCH_SIZE = "mail.queue.batch.size";
+  protected static final String CONFIG_QUEUE_MAX_ATTEMPTS = "mail.queue.max.attempts";
+  protected static final String CONFIG_QUEUE_CLAIM_TIMEOUT = "mail.queue.claim.timeout";
+  protected static final String CONFIG_MULTI_TENANCY = "application.multi_tenancy";
+
+  protected static final long RETRY_DELAY_SECONDS = 60;
+  protected static final long RETRY_MAX_DELAY_SECONDS = 3600;
+
+  private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
   protected MessageRepository messageRepository;
-  protected UserRepository userRepository;
+  protected EmailAccountRepository emailAccountRepository;
+  protected MailAccountService mailAccountService;
+
+  protected final int batchSize;
+  protected final int maxAttempts;
+  protected final long claimTimeoutMinutes;
+  protected final ScheduledThreadPoolExecutor executor;
+
+  /** Accounts being drained by a worker. */
+  protected final Set<AccountKey> drainingAccountSet = ConcurrentHashMap.newKeySet();
+
+  /** Accounts with messages submitted since their worker last looked for queued messages. */
+  protected final Set<AccountKey> pendingAccountSet = ConcurrentHashMap.newKeySet();
+
+  /** SMTP connections of the accounts being drained, kept open while the draining is scheduled. */
+  protected final Map<AccountKey, Transport> transportMap = new ConcurrentHashMap<>();
+
+  /** Time in milliseconds from which the next message of a rate limited account can be sent. */
+  protected final Map<AccountKey, Long> nextSendTimeMap = new ConcurrentHashMap<>();
 
   @Inject
-  public SendMailQueueService(MessageRepository messageRepository, UserRepository userRepository) {
+  public SendMailQueueService(
+      MessageRepository messageRepository,
+      EmailAccountRepository emailAccountRepository,
+      MailAccountService mailAccountService) {
+    this(
+        messageRepository,
+        emailAccountRepository,
+        mailAccountService,
+        AppSettings.get().getInt(CONFIG_QUEUE_THREADS, 2),
+        AppSettings.get().getInt(CONFIG_QUEUE_BATCH_SIZE, 50),
+        AppSettings.get().getInt(CONFIG_QUEUE_MAX_ATTEMPTS, 5),
+        AppSettings.get().getInt(CONFIG_QUEUE_CLAIM_TIMEOUT, 10));
+  }
+
+  protected SendMailQueueService(
+      MessageRepository messageRepository,
+      EmailAccountRepository emailAccountRepository,
+      MailAccountService mailAccountService,
+      int threadCount,
+      int batchSize,
+      int maxAttempts,
+      long claimTimeoutMinutes) {
     this.messageRepository = messageRepository;
-    this.userRepository = userRepository;
+    this.emailAccountRepository = emailAccountRepository;
+    this.mailAccountService = mailAccountService;
+
+    this.batchSize = Math.max(batchSize, 1);
+    this.maxAttempts = Math.max(maxAttempts, 1);
+    this.claimTimeoutMinutes = Math.max(claimTimeoutMinutes, 1);
+    this.executor = new ScheduledThreadPoolExecutor(Math.max(threadCount, 1));
+    // queued messages are persisted, pending retries do not have to delay the shutdown
+    this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
   }
 
-  private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
-  protected ExecutorService executor = Executors.newSingleThreadExecutor();
+  /**
+   * Submit a queued message to the workers of the mail queue. The workers are woken up once the
+   * current transaction is committed, so that they find the message.
+   *
+   * @param message a message in progress, with a mail account
+   */
+  public void submitMailJob(Message message) {
+    AccountKey accountKey = new AccountKey(getTenant(), message.getMailAccount().getId());
+    log.debug("Submitting message {} to the mail queue...", message.getId());
+    TransactionTool.afterCommit(() -> wakeUp(accountKey));
+  }
 
   /**
-   * Submit a mail job to an executor which will send mails in a separate thread.
+   * Submit a mail task, like sending a notification, to the workers of the mail queue.
    *
-   * @param mailBuilder
-   * @param message
+   * @param task
    */
-  public void submitMailJob(MailBuilder mailBuilder, Message message) {
-    long messageId = message.getId();
-    log.debug("Submitting job to executor for message {}...", messageId);
-    User currentUser = AuthUtils.getUser();
+  public void submitMailTask(Callable<Boolean> task) {
     executor.submit(
         () -> {
           try {
-            final long startTime = System.currentTimeMillis();
-            boolean done = false;
-            PersistenceException persistenceException = null;
-            log.debug("Sending message {}...", messageId);
-            mailBuilder.send();
-            log.debug("Message {} sent.", messageId);
-            do {
-              try {
-                inTransaction(
-                    () -> {
-                      final Message updateMessage = findMessage(messageId);
-                      getEntityManager().lock(updateMessage, LockModeType.PESSIMISTIC_WRITE);
-                      updateMessage.setSentByEmail(true);
-                      updateMessage.setStatusSelect(MessageRepository.STATUS_SENT);
-                      updateMessage.setSentDateT(LocalDateTime.now());
-                      if (currentUser != null) {
-                        updateMessage.setSenderUser(userRepository.find(currentUser.getId()));
-                      }
-                      messageRepository.save(updateMessage);
-                    });
-                done = true;
-              } catch (PersistenceException e) {
-                persistenceException = e;
-                sleep();
-              }
-            } while (!done && System.currentTimeMillis() - startTime < ENTITY_FIND_TIMEOUT);
-            if (!done) {
-              throw persistenceException;
+            return task.call();
+          } catch (Exception e) {
+            log.error("Exception when sending email", e);
+            return false;
+          }
+        });
+  }
+
+  /** Wake up the workers of all the accounts having messages to send, in every tenant. */
+  public void resume() {
+    for (String tenantId : getTenantIdList()) {
+      executor.execute(toWorker(tenantId, () -> resume(tenantId)));
+    }
+  }
+
+  /**
+   * Wake up the workers of the accounts of the current tenant having messages to send, that is
+   * messages due and not claimed by a worker, or whose claim has expired.
+   *
+   * @param tenantId the current tenant
+   */
+  protected void resume(String tenantId) {
+    LocalDateTime now = LocalDateTime.now();
+    List<Long> accountIdList =
+        getEntityManager()
+            .createQuery(
+                "SELECT DISTINCT self.mailAccount.id FROM Message self "
+                    + "WHERE self.statusSelect = :statusSelect "
+                    + "AND self.mediaTypeSelect = :mediaTypeSelect "
+                    + "AND (self.nextSendAttemptDateT IS NULL "
+                    + "OR self.nextSendAttemptDateT <= :now) "
+                    + "AND (self.sendClaimDateT IS NULL "
+                    + "OR self.sendClaimDateT < :claimExpiryDateT)",
+                Long.class)
+            .setParameter("statusSelect", MessageRepository.STATUS_IN_PROGRESS)
+            .setParameter("mediaTypeSelect", MessageRepository.MEDIA_TYPE_EMAIL)
+            .setParameter("now", now)
+            .setParameter("claimExpiryDateT", getClaimExpiryDateT(now))
+            .getResultList();
+
+    log.debug("Resuming the mail queue of {} accounts in {}", accountIdList.size(), tenantId);
+    accountIdList.forEach(accountId -> wakeUp(new AccountKey(tenantId, accountId)));
+  }
+
+  protected void wakeUp(AccountKey accountKey) {
+    pendingAccountSet.add(accountKey);
+    if (drainingAccountSet.add(accountKey)) {
+      executor.execute(toWorker(accountKey.tenantId, () -> drain(accountKey)));
+    }
+  }
+
+  protected void drain(AccountKey accountKey) {
+    try {
+      do {
+        pendingAccountSet.remove(accountKey);
+        long delay = sendQueuedMessages(accountKey);
+        if (delay > 0) {
+          // the account stays drained by this worker, which gives its thread back until then
+          executor.schedule(
+              toWorker(accountKey.tenantId, () -> drain(accountKey)),
+              delay,
+              TimeUnit.MILLISECONDS);
+          return;
+        }
+        closeTransport(transportMap.remove(accountKey));
+        drainingAccountSet.remove(accountKey);
+      } while (pendingAccountSet.contains(accountKey) && drainingAccountSet.add(accountKey));
+    } catch (Exception e) {
+      closeTransport(transportMap.remove(accountKey));
+      drainingAccountSet.remove(accountKey);
+      throw e;
+    }
+  }
+
+  /**
+   * Send the queued messages of an account, by batches on a same SMTP connection, until there is no
+   * queued message left or the rate of the account is reached.
+   *
+   * @param accountKey
+   * @return the delay in milliseconds before the next message can be sent, or 0 if there is no
+   *     queued message left
+   */
+  protected long sendQueuedMessages(AccountKey accountKey) {
+    EmailAccount emailAccount = emailAccountRepository.find(accountKey.accountId);
+    if (emailAccount == null) {
+      return 0;
+    }
+
+    MailAccount mailAccount = mailAccountService.getMailAccount(emailAccount);
+    MailSender sender = new MailSender(mailAccount);
+    int maxSentPerMinute = emailAccount.getMaxSentPerMinute();
+    long sendInterval =
+        maxSentPerMinute > 0 ? TimeUnit.MINUTES.toMillis(1) / maxSentPerMinute : 0;
+
+    while (true) {
+      String claimToken = UUID.randomUUID().toString();
+      List<Long> messageIdList = claimQueuedMessages(accountKey.accountId, claimToken);
+      if (messageIdList.isEmpty()) {
+        return 0;
+      }
+
+      List<Long> sentIdList = new ArrayList<>();
+      List<Long> unsentIdList = new ArrayList<>(messageIdList);
+      try {
+        for (Long messageId : messageIdList) {
+          long delay = nextSendTimeMap.getOrDefault(accountKey, 0L) - System.currentTimeMillis();
+          if (delay > 0) {
+            return delay;
+          }
+          unsentIdList.remove(messageId);
+          try {
+            MimeMessage email =
+                Beans.get(MessageService.class)
+                    .buildEmail(messageRepository.find(messageId), sender);
+            Transport transport = getTransport(accountKey, mailAccount);
+            if (sendInterval > 0) {
+              nextSendTimeMap.put(accountKey, System.currentTimeMillis() + sendInterval);
             }
+            transport.sendMessage(email, email.getAllRecipients());
+            sentIdList.add(messageId);
           } catch (Exception e) {
-            log.debug("Exception when sending email", e);
-            TraceBackService.trace(e);
+            onSendFailure(accountKey, messageId, e);
+          }
+        }
+      } finally {
+        markMessagesSent(sentIdList, claimToken);
+        releaseMessages(unsentIdList, claimToken);
+        getEntityManager().clear();
+      }
+    }
+  }
+
+  /** Get the SMTP connection of the account, connecting it if it is not connected. */
+  protected Transport getTransport(AccountKey accountKey, MailAccount mailAccount)
+      throws MessagingException {
+    Transport transport = transportMap.get(accountKey);
+    if (transport == null || !transport.isConnected()) {
+      transport = mailAccount.getSession().getTransport();
+      transport.connect();
+      transportMap.put(accountKey, transport);
+    }
+    return transport;
+  }
+
+  /**
+   * Claim the next batch of messages to send of an account. The claim is a conditional update of
+   * the messages not claimed yet, or whose claim has expired, so that a message claimed by another
+   * worker in the meantime, on this node or another one, is left to that worker.
+   *
+   * @param accountId
+   * @param claimToken the token identifying the batch
+   * @return the ids of the claimed messages, in the queue order
+   */
+  protected List<Long> claimQueuedMessages(Long accountId, String claimToken) {
+    LocalDateTime now = LocalDateTime.now();
+    LocalDateTime claimExpiryDateT = getClaimExpiryDateT(now);
+
+    List<Long> messageIdList =
+        getEntityManager()
+            .createQuery(
+                "SELECT self.id FROM Message self "
+                    + "WHERE self.mailAccount.id = :accountId "
+                    + "AND self.statusSelect = :statusSelect "
+                    + "AND self.mediaTypeSelect = :mediaTypeSelect "
+                    + "AND (self.nextSendAttemptDateT IS NULL "
+                    + "OR self.nextSendAttemptDateT <= :now) "
+                    + "AND (self.sendClaimDateT IS NULL "
+                    + "OR self.sendClaimDateT < :claimExpiryDateT) "
+                    + "ORDER BY self.id",
+                Long.class)
+            .setParameter("accountId", accountId)
+            .setParameter("statusSelect", MessageRepository.STATUS_IN_PROGRESS)
+            .setParameter("mediaTypeSelect", MessageRepository.MEDIA_TYPE_EMAIL)
+            .setParameter("now", now)
+            .setParameter("claimExpiryDateT", claimExpiryDateT)
+            .setMaxResults(batchSize)
+            .getResultList();
+
+    if (messageIdList.isEmpty()) {
+      return messageIdList;
+    }
+
+    inTransaction(
+        () ->
+            getEntityManager()
+                .createQuery(
+                    "UPDATE Message self SET self.sendClaimToken = :claimToken, "
+                        + "self.sendClaimDateT = :now, self.version = self.version + 1 "
+                        + "WHERE self.id IN :messageIds "
+                        + "AND self.statusSelect = :statusSelect "
+                        + "AND (self.sendClaimDateT IS NULL "
+                        + "OR self.sendClaimDateT < :claimExpiryDateT)")
+                .setParameter("claimToken", claimToken)
+                .setParameter("now", now)
+                .setParameter("messageIds", messageIdList)
+                .setParameter("statusSelect", MessageRepository.STATUS_IN_PROGRESS)
+                .setParameter("claimExpiryDateT", claimExpiryDateT)
+                .executeUpdate());
+
+    return getEntityManager()
+        .createQuery(
+            "SELECT self.id FROM Message self "
+                + "WHERE self.id IN :messageIds AND self.sendClaimToken = :claimToken "
+                + "ORDER BY self.id",
+            Long.class)
+        .setParameter("messageIds", messageIdList)
+        .setParameter("claimToken", claimToken)
+        .getResultList();
+  }
+
+  protected LocalDateTime getClaimExpiryDateT(LocalDateTime now) {
+    return now.minusMinutes(claimTimeoutMinutes);
+  }
+
+  /**
+   * Mark the sent messages of a batch in a single update, releasing their claim.
+   *
+   * @param messageIdList
+   * @param claimToken the token of the batch
+   */
+  protected void markMessagesSent(List<Long> messageIdList, String claimToken) {
+    if (messageIdList.isEmpty()) {
+      return;
+    }
+
+    inTransaction(
+        () ->
+            getEntityManager()
+                .createQuery(
+                    "UPDATE Message self SET self.statusSelect = :statusSelect, "
+                        + "self.sentByEmail = true, self.sentDateT = :sentDateT, "
+                        + "self.nextSendAttemptDateT = NULL, self.sendClaimToken = NULL, "
+                        + "self.sendClaimDateT = NULL, self.version = self.version + 1 "
+                        + "WHERE self.id IN :messageIds AND self.sendClaimToken = :claimToken")
+                .setParameter("statusSelect", MessageRepository.STATUS_SENT)
+                .setParameter("sentDateT", LocalDateTime.now())
+                .setParameter("messageIds", messageIdList)
+                .setParameter("claimToken", claimToken)
+                .executeUpdate());
+
+    log.debug("{} messages sent.", messageIdList.size());
+  }
+
+  /**
+   * Release the claim of the messages of a batch left unsent, so that they can be claimed again
+   * without waiting for the claim to expire.
+   *
+   * @param messageIdList
+   * @param claimToken the token of the batch
+   */
+  protected void releaseMessages(List<Long> messageIdList, String claimToken) {
+    if (messageIdList.isEmpty()) {
+      return;
+    }
+
+    inTransaction(
+        () ->
+            getEntityManager()
+                .createQuery(
+                    "UPDATE Message self SET self.sendClaimToken = NULL, "
+                        + "self.sendClaimDateT = NULL, self.version = self.version + 1 "
+                        + "WHERE self.id IN :messageIds AND self.sendClaimToken = :claimToken")
+                .setParameter("messageIds", messageIdList)
+                .setParameter("claimToken", claimToken)
+                .executeUpdate());
+  }
+
+  protected void onSendFailure(AccountKey accountKey, Long messageId, Exception e) {
+    log.debug("Exception when sending email", e);
+    TraceBackService.trace(e);
+
+    Message message = messageRepository.find(messageId);
+    if (message == null) {
+      return;
+    }
+
+    int sendAttemptCount = message.getSendAttemptCount() + 1;
+    long retryDelay = sendAttemptCount < maxAttempts ? getRetryDelayMillis(sendAttemptCount) : 0;
+
+    inTransaction(
+        () -> {
+          message.setSendAttemptCount(sendAttemptCount);
+          message.setSendClaimToken(null);
+          message.setSendClaimDateT(null);
+          if (retryDelay > 0) {
+            message.setNextSendAttemptDateT(
+                LocalDateTime.now().plus(retryDelay, ChronoUnit.MILLIS));
+          } else {
+            // back to draft, so that it can be sent again by hand
+            message.setStatusSelect(MessageRepository.STATUS_DRAFT);
+            message.setNextSendAttemptDateT(null);
           }
-          return true;
         });
+
+    if (retryDelay > 0) {
+      executor.schedule(() -> wakeUp(accountKey), retryDelay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Get the delay before the next attempt to send a message, doubled at each failed attempt.
+   *
+   * @param sendAttemptCount the number of failed attempts
+   * @return the delay in milliseconds
+   */
+  protected long getRetryDelayMillis(int sendAttemptCount) {
+    return TimeUnit.SECONDS.toMillis(
+        Math.min(
+            RETRY_DELAY_SECONDS << Math.min(sendAttemptCount - 1, 10), RETRY_MAX_DELAY_SECONDS));
+  }
+
+  protected void closeTransport(Transport transport) {
+    if (transport == null || !transport.isConnected()) {
+      return;
+    }
+    try {
+      transport.close();
+    } catch (MessagingException e) {
+      log.debug("Exception when closing SMTP connection", e);
+    }
+  }
+
+  /** Get a task running the given one in a worker of the queue, in the given tenant. */
+  protected Runnable toWorker(String tenantId, Runnable task) {
+    Runnable worker = () -> runInWorker(task);
+    return new TenantAware(worker).tenantId(tenantId).withTransaction(false);
+  }
+
+  protected void runInWorker(Runnable task) {
+    final RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      task.run();
+    } catch (Exception e) {
+      TraceBackService.trace(e);
+    } finally {
+      Beans.get(UnitOfWork.class).end();
+    }
+  }
+
+  protected String getTenant() {
+    String tenantId = TenantResolver.currentTenantIdentifier();
+    return tenantId == null ? TenantConfig.DEFAULT_TENANT_ID : tenantId;
+  }
+
+  /** Get the tenants whose queue is resumed, every active tenant in multi-tenancy mode. */
+  protected List<String> getTenantIdList() {
+    if (!AppSettings.get().getBoolean(CONFIG_MULTI_TENANCY, false)) {
+      return Collections.singletonList(getTenant());
+    }
+    return Beans.get(TenantConfigProvider.class).findAll(null).stream()
+        .filter(tenantConfig -> !Boolean.FALSE.equals(tenantConfig.getActive()))
+        .map(TenantConfig::getTenantId)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * This method resumes the messages queued before the application stopped.
+   *
+   * @param event startup event
+   */
+  protected void onApplicationStartup(@Observes StartupEvent event) {
+    resume();
   }
 
   /**
@@ -117,27 +542,37 @@ public class SendMailQueueService extends JpaSupport {
     log.debug("Mail executor stopped.");
   }
 
-  private Message findMessage(Long messageId) {
-    Message foundMessage;
-    final long startTime = System.currentTimeMillis();
+  /** Email account of a tenant, drained by one worker at a time. */
+  protected static final class AccountKey {
+
+    protected final String tenantId;
+    protected final Long accountId;
 
-    while ((foundMessage = messageRepository.find(messageId)) == null
-        && System.currentTimeMillis() - startTime < ENTITY_FIND_TIMEOUT) {
-      sleep();
+    protected AccountKey(String tenantId, Long accountId) {
+      this.tenantId = tenantId;
+      this.accountId = accountId;
     }
 
-    if (foundMessage == null) {
-      throw new EntityNotFoundException(messageId.toString());
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof AccountKey)) {
+        return false;
+      }
+      AccountKey other = (AccountKey) obj;
+      return tenantId.equals(other.tenantId) && accountId.equals(other.accountId);
     }
 
-    return foundMessage;
-  }
+    @Override
+    public int hashCode() {
+      return Objects.hash(tenantId, accountId);
+    }
 
-  private void sleep() {
-    try {
-      Thread.sleep(ENTITY_FIND_INTERVAL);
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
+    @Override
+    public String toString() {
+      return tenantId + "/" + accountId;
     }
   }
 }
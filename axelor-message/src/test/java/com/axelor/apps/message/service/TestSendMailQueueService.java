@@ -0,0 +1,459 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.message.service;
+
+import com.axelor.apps.message.db.EmailAccount;
+import com.axelor.apps.message.db.EmailAddress;
+import com.axelor.apps.message.db.Message;
+import com.axelor.apps.message.db.repo.EmailAccountRepository;
+import com.axelor.apps.message.db.repo.EmailAddressRepository;
+import com.axelor.apps.message.db.repo.MessageRepository;
+import com.axelor.apps.message.module.MessageModule;
+import com.axelor.db.JPA;
+import com.axelor.db.JpaModule;
+import com.axelor.test.GuiceModules;
+import com.axelor.test.GuiceRunner;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(GuiceRunner.class)
+@GuiceModules({TestSendMailQueueService.MyModule.class})
+public class TestSendMailQueueService {
+
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  public static class MyModule extends AbstractModule {
+
+    @Override
+    protected void configure() {
+      install(new JpaModule("testUnit", true, true));
+      install(new MessageModule());
+    }
+  }
+
+  @Inject private MessageRepository messageRepo;
+
+  @Inject private EmailAccountRepository emailAccountRepo;
+
+  @Inject private EmailAddressRepository emailAddressRepo;
+
+  @Inject private MailAccountService mailAccountService;
+
+  private final List<SendMailQueueService> queueServiceList = new ArrayList<>();
+  private final List<Long> emailAccountIdList = new ArrayList<>();
+
+  private SmtpServer smtpServer;
+
+  @Before
+  public void setUp() throws IOException {
+    smtpServer = new SmtpServer();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    queueServiceList.forEach(queueService -> queueService.executor.shutdownNow());
+    smtpServer.close();
+
+    JPA.em().clear();
+    JPA.runInTransaction(
+        () -> {
+          for (Long emailAccountId : emailAccountIdList) {
+            for (Message message :
+                messageRepo.all().filter("self.mailAccount.id = ?", emailAccountId).fetch()) {
+              List<EmailAddress> emailAddressList = new ArrayList<>(message.getToEmailAddressSet());
+              messageRepo.remove(message);
+              emailAddressList.forEach(emailAddressRepo::remove);
+            }
+            emailAccountRepo.remove(emailAccountRepo.find(emailAccountId));
+          }
+        });
+  }
+
+  @Test
+  public void testSendByBatchesOnOneConnection() throws InterruptedException {
+    SendMailQueueService queueService = this.createQueueService(2, 3, 5);
+    EmailAccount emailAccount = this.createEmailAccount(0);
+    List<Long> messageIdList = new ArrayList<>();
+    for (int i = 1; i <= 7; i++) {
+      messageIdList.add(this.createMessage(emailAccount, "user" + i + "@example.com").getId());
+    }
+
+    this.wakeUp(queueService, emailAccount);
+    this.await(() -> this.countMessages(emailAccount, MessageRepository.STATUS_SENT) == 7);
+
+    Assert.assertEquals(7, smtpServer.receivedList.size());
+    Assert.assertEquals(1, smtpServer.connectionCount.get());
+    for (Long messageId : messageIdList) {
+      Message message = messageRepo.find(messageId);
+      Assert.assertTrue(message.getSentByEmail());
+      Assert.assertNotNull(message.getSentDateT());
+      Assert.assertNull(message.getSendClaimToken());
+      Assert.assertNull(message.getSendClaimDateT());
+    }
+  }
+
+  @Test
+  public void testClaimIsExclusive() {
+    SendMailQueueService queueService = this.createQueueService(1, 3, 5);
+    SendMailQueueService otherQueueService = this.createQueueService(1, 3, 5);
+    EmailAccount emailAccount = this.createEmailAccount(0);
+    List<Long> messageIdList = new ArrayList<>();
+    for (int i = 1; i <= 5; i++) {
+      messageIdList.add(this.createMessage(emailAccount, "user" + i + "@example.com").getId());
+    }
+    Long emailAccountId = emailAccount.getId();
+
+    List<Long> claimedIdList = queueService.claimQueuedMessages(emailAccountId, "claim-1");
+    Assert.assertEquals(messageIdList.subList(0, 3), claimedIdList);
+
+    // another node only gets the messages left
+    Assert.assertEquals(
+        messageIdList.subList(3, 5),
+        otherQueueService.claimQueuedMessages(emailAccountId, "claim-2"));
+    Assert.assertTrue(queueService.claimQueuedMessages(emailAccountId, "claim-3").isEmpty());
+
+    // a claim left by a stopped node is taken over once expired
+    this.expireClaim("claim-1");
+    Assert.assertEquals(
+        claimedIdList, otherQueueService.claimQueuedMessages(emailAccountId, "claim-4"));
+
+    // the stopped node does not mark the messages claimed by another one
+    queueService.markMessagesSent(claimedIdList, "claim-1");
+    Assert.assertEquals(0, this.countMessages(emailAccount, MessageRepository.STATUS_SENT));
+
+    otherQueueService.releaseMessages(claimedIdList, "claim-4");
+    Assert.assertEquals(
+        claimedIdList, queueService.claimQueuedMessages(emailAccountId, "claim-5"));
+    queueService.markMessagesSent(claimedIdList, "claim-5");
+    Assert.assertEquals(3, this.countMessages(emailAccount, MessageRepository.STATUS_SENT));
+  }
+
+  @Test
+  public void testRetryThenBackToDraft() throws InterruptedException {
+    SendMailQueueService queueService = this.createQueueService(2, 10, 2);
+    EmailAccount emailAccount = this.createEmailAccount(0);
+    Long failedMessageId = this.createMessage(emailAccount, "unknown@example.com").getId();
+    this.createMessage(emailAccount, "user@example.com");
+    smtpServer.reject("unknown@example.com", Integer.MAX_VALUE);
+
+    this.wakeUp(queueService, emailAccount);
+    this.await(() -> this.getMessage(failedMessageId).getSendAttemptCount() == 1);
+
+    Message failedMessage = this.getMessage(failedMessageId);
+    Assert.assertEquals(
+        MessageRepository.STATUS_IN_PROGRESS, (int) failedMessage.getStatusSelect());
+    Assert.assertTrue(
+        failedMessage.getNextSendAttemptDateT().isAfter(LocalDateTime.now().plusSeconds(30)));
+    Assert.assertNull(failedMessage.getSendClaimToken());
+    this.await(() -> this.countMessages(emailAccount, MessageRepository.STATUS_SENT) == 1);
+
+    // not due yet
+    Assert.assertTrue(
+        queueService.claimQueuedMessages(emailAccount.getId(), "claim-1").isEmpty());
+
+    this.setNextSendAttemptDateT(failedMessageId, LocalDateTime.now().minusSeconds(1));
+    this.wakeUp(queueService, emailAccount);
+    this.await(
+        () ->
+            this.getMessage(failedMessageId).getStatusSelect()
+                == MessageRepository.STATUS_DRAFT);
+
+    failedMessage = this.getMessage(failedMessageId);
+    Assert.assertEquals(2, (int) failedMessage.getSendAttemptCount());
+    Assert.assertNull(failedMessage.getNextSendAttemptDateT());
+    Assert.assertEquals(2, smtpServer.getAttemptTimeList("unknown@example.com").size());
+  }
+
+  @Test
+  public void testResumeSkipsLiveClaims() throws InterruptedException {
+    SendMailQueueService queueService = this.createQueueService(2, 10, 5);
+    SendMailQueueService otherQueueService = this.createQueueService(2, 10, 5);
+    EmailAccount emailAccount = this.createEmailAccount(0);
+    Long messageId = this.createMessage(emailAccount, "user@example.com").getId();
+
+    Assert.assertEquals(
+        Collections.singletonList(messageId),
+        otherQueueService.claimQueuedMessages(emailAccount.getId(), "claim-1"));
+
+    queueService.resume(queueService.getTenant());
+    this.await(() -> queueService.drainingAccountSet.isEmpty());
+    Assert.assertTrue(smtpServer.receivedList.isEmpty());
+    Assert.assertEquals("claim-1", this.getMessage(messageId).getSendClaimToken());
+
+    this.expireClaim("claim-1");
+    queueService.resume(queueService.getTenant());
+    this.await(() -> this.countMessages(emailAccount, MessageRepository.STATUS_SENT) == 1);
+    Assert.assertEquals(Collections.singletonList("user@example.com"), smtpServer.receivedList);
+  }
+
+  @Test
+  public void testRateLimitDoesNotHoldWorker() throws InterruptedException {
+    SendMailQueueService queueService = this.createQueueService(1, 10, 5);
+    EmailAccount limitedAccount = this.createEmailAccount(600);
+    EmailAccount freeAccount = this.createEmailAccount(0);
+    for (int i = 1; i <= 5; i++) {
+      this.createMessage(limitedAccount, "limited" + i + "@example.com");
+      this.createMessage(freeAccount, "free" + i + "@example.com");
+    }
+
+    this.wakeUp(queueService, limitedAccount);
+    this.wakeUp(queueService, freeAccount);
+    this.await(
+        () ->
+            this.countMessages(limitedAccount, MessageRepository.STATUS_SENT)
+                    + this.countMessages(freeAccount, MessageRepository.STATUS_SENT)
+                == 10);
+
+    // the only worker thread sent the messages of the other account while waiting for the rate
+    List<String> receivedList = smtpServer.receivedList;
+    Assert.assertTrue(
+        receivedList.lastIndexOf("free5@example.com")
+            < receivedList.indexOf("limited5@example.com"));
+    for (int i = 2; i <= 5; i++) {
+      long interval =
+          smtpServer.getAttemptTimeList("limited" + i + "@example.com").get(0)
+              - smtpServer.getAttemptTimeList("limited" + (i - 1) + "@example.com").get(0);
+      Assert.assertTrue(interval >= 90);
+    }
+  }
+
+  private SendMailQueueService createQueueService(int threadCount, int batchSize, int maxAttempts) {
+    SendMailQueueService queueService =
+        new SendMailQueueService(
+            messageRepo,
+            emailAccountRepo,
+            mailAccountService,
+            threadCount,
+            batchSize,
+            maxAttempts,
+            10);
+    queueServiceList.add(queueService);
+    return queueService;
+  }
+
+  private void wakeUp(SendMailQueueService queueService, EmailAccount emailAccount) {
+    queueService.wakeUp(
+        new SendMailQueueService.AccountKey(queueService.getTenant(), emailAccount.getId()));
+  }
+
+  private EmailAccount createEmailAccount(int maxSentPerMinute) {
+    EmailAccount emailAccount = new EmailAccount();
+    emailAccount.setName("Mail queue test");
+    emailAccount.setServerTypeSelect(EmailAccountRepository.SERVER_TYPE_SMTP);
+    emailAccount.setSecuritySelect(EmailAccountRepository.SECURITY_NONE);
+    emailAccount.setHost(InetAddress.getLoopbackAddress().getHostAddress());
+    emailAccount.setPort(smtpServer.getPort());
+    emailAccount.setFromAddress("queue@example.com");
+    emailAccount.setMaxSentPerMinute(maxSentPerMinute);
+    JPA.runInTransaction(() -> emailAccountRepo.save(emailAccount));
+    emailAccountIdList.add(emailAccount.getId());
+    return emailAccount;
+  }
+
+  private Message createMessage(EmailAccount emailAccount, String recipient) {
+    EmailAddress emailAddress = new EmailAddress();
+    emailAddress.setAddress(recipient);
+
+    Message message = new Message();
+    message.setMailAccount(emailAccount);
+    message.setStatusSelect(MessageRepository.STATUS_IN_PROGRESS);
+    message.setMediaTypeSelect(MessageRepository.MEDIA_TYPE_EMAIL);
+    message.setSendAttemptCount(0);
+    message.setSubject("Queued message");
+    message.setContent("<p>Queued message</p>");
+    message.setToEmailAddressSet(new HashSet<>(Arrays.asList(emailAddress)));
+
+    JPA.runInTransaction(
+        () -> {
+          emailAddressRepo.save(emailAddress);
+          messageRepo.save(message);
+        });
+    return message;
+  }
+
+  private Message getMessage(Long messageId) {
+    JPA.em().clear();
+    return messageRepo.find(messageId);
+  }
+
+  private long countMessages(EmailAccount emailAccount, int statusSelect) {
+    JPA.em().clear();
+    return messageRepo
+        .all()
+        .filter(
+            "self.mailAccount.id = ? AND self.statusSelect = ?", emailAccount.getId(), statusSelect)
+        .count();
+  }
+
+  private void expireClaim(String claimToken) {
+    JPA.runInTransaction(
+        () ->
+            JPA.em()
+                .createQuery(
+                    "UPDATE Message self SET self.sendClaimDateT = :claimDateT "
+                        + "WHERE self.sendClaimToken = :claimToken")
+                .setParameter("claimDateT", LocalDateTime.now().minusHours(1))
+                .setParameter("claimToken", claimToken)
+                .executeUpdate());
+  }
+
+  private void setNextSendAttemptDateT(Long messageId, LocalDateTime nextSendAttemptDateT) {
+    JPA.runInTransaction(
+        () ->
+            JPA.em()
+                .createQuery(
+                    "UPDATE Message self SET self.nextSendAttemptDateT = :nextSendAttemptDateT "
+                        + "WHERE self.id = :messageId")
+                .setParameter("nextSendAttemptDateT", nextSendAttemptDateT)
+                .setParameter("messageId", messageId)
+                .executeUpdate());
+  }
+
+  private void await(BooleanSupplier condition) throws InterruptedException {
+    long timeout = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!condition.getAsBoolean()) {
+      Assert.assertTrue("Timeout", System.currentTimeMillis() < timeout);
+      Thread.sleep(20);
+    }
+  }
+
+  /** In-process SMTP server, which can reject the first deliveries to a recipient. */
+  private static class SmtpServer implements Closeable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final Map<String, AtomicInteger> rejectCountMap = new ConcurrentHashMap<>();
+    private final Map<String, List<Long>> attemptTimeMap = new ConcurrentHashMap<>();
+    private final List<String> receivedList = new CopyOnWriteArrayList<>();
+
+    SmtpServer() throws IOException {
+      serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+      executor.execute(this::accept);
+    }
+
+    int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    void reject(String recipient, int count) {
+      rejectCountMap.put(recipient, new AtomicInteger(count));
+    }
+
+    List<Long> getAttemptTimeList(String recipient) {
+      return attemptTimeMap.getOrDefault(recipient, Collections.emptyList());
+    }
+
+    private void accept() {
+      while (!serverSocket.isClosed()) {
+        try {
+          Socket socket = serverSocket.accept();
+          connectionCount.incrementAndGet();
+          executor.execute(() -> this.handle(socket));
+        } catch (IOException e) {
+          return;
+        }
+      }
+    }
+
+    private void handle(Socket socket) {
+      try (Socket ignored = socket;
+          BufferedReader reader =
+              new BufferedReader(
+                  new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+          Writer writer =
+              new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII)) {
+        this.reply(writer, "220 localhost");
+        List<String> recipientList = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String command = line.toUpperCase();
+          if (command.startsWith("RCPT TO:")) {
+            String recipient = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+            attemptTimeMap
+                .computeIfAbsent(recipient, key -> new CopyOnWriteArrayList<>())
+                .add(System.currentTimeMillis());
+            AtomicInteger rejectCount = rejectCountMap.get(recipient);
+            if (rejectCount != null && rejectCount.getAndDecrement() > 0) {
+              this.reply(writer, "550 Mailbox unavailable");
+            } else {
+              recipientList.add(recipient);
+              this.reply(writer, "250 OK");
+            }
+          } else if (command.equals("DATA")) {
+            this.reply(writer, "354 End data with <CR><LF>.<CR><LF>");
+            while ((line = reader.readLine()) != null && !line.equals(".")) {
+              // message content
+            }
+            receivedList.addAll(recipientList);
+            recipientList.clear();
+            this.reply(writer, "250 OK");
+          } else if (command.equals("QUIT")) {
+            this.reply(writer, "221 Bye");
+            return;
+          } else {
+            // EHLO, MAIL FROM, RSET, NOOP
+            recipientList.clear();
+            this.reply(writer, "250 OK");
+          }
+        }
+      } catch (IOException e) {
+        // connection closed by the client
+      }
+    }
+
+    private void reply(Writer writer, String reply) throws IOException {
+      writer.write(reply + "\r\n");
+      writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      serverSocket.close();
+      executor.shutdownNow();
+    }
+  }
+}
@@ -102,6 +102,9 @@ public interface IExceptionMessage {
   static final String OPERATION_ORDER_1 = /*$$(*/
       "Please select the Operation order(s) to print." /*)*/;
 
+  static final String OPERATION_ORDER_SCHEDULING_NO_WORKING_PERIOD = /*$$(*/
+      "The planning %s has no working period within %s days from %s, the operation order cannot be scheduled." /*)*/;
+
   /** Sale order line Controller */
   static final String SALE_ORDER_LINE_1 = /*$$(*/ "Personalized nomenclature created" /*)*/;
 
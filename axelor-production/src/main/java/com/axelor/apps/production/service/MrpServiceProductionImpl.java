@@ -61,13 +61,19 @@ import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -631,6 +637,102 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
             availableStockMrpLineType));
   }
 
+  @Override
+  protected Set<Long> getChangedProductIdSet(LocalDateTime lastRunDateTime) {
+
+    Set<Long> productIdSet = super.getChangedProductIdSet(lastRunDateTime);
+
+    if (!appProductionService.isApp("production")) {
+      return productIdSet;
+    }
+
+    productIdSet.addAll(
+        JPA.em()
+            .createQuery(
+                "SELECT DISTINCT self.product.id FROM BillOfMaterial self "
+                    + "WHERE COALESCE(self.updatedOn, self.createdOn) > :lastRunDateTime",
+                Long.class)
+            .setParameter("lastRunDateTime", lastRunDateTime)
+            .getResultList());
+    productIdSet.addAll(
+        this.getChangedProductIdList(
+            "SELECT DISTINCT self.product.id FROM ManufOrder self "
+                + "WHERE self.prodProcess.stockLocation IN (:stockLocationList) "
+                + "AND COALESCE(self.updatedOn, self.createdOn) > :lastRunDateTime",
+            lastRunDateTime));
+    productIdSet.addAll(
+        this.getRemovedOriginProductIdList("ManufOrder", ManufOrder.class.getCanonicalName()));
+    productIdSet.addAll(
+        this.getRemovedOriginProductIdList(
+            "OperationOrder", OperationOrder.class.getCanonicalName()));
+
+    return productIdSet;
+  }
+
+  /**
+   * The lines of a component are created from the proposals and manufacturing orders of the
+   * products using it, so the whole connected part of the bill of materials and manufacturing
+   * orders graph has to be computed again.
+   */
+  @Override
+  protected Set<Long> getProductIdSetToRecompute(LocalDateTime lastRunDateTime) {
+
+    Set<Long> productIdSet = super.getProductIdSetToRecompute(lastRunDateTime);
+
+    if (!appProductionService.isApp("production")) {
+      return productIdSet;
+    }
+
+    Set<Long> newProductIdSet = new HashSet<>(productIdSet);
+
+    while (!newProductIdSet.isEmpty()) {
+      Set<Long> relatedProductIdSet = new HashSet<>();
+
+      for (List<Long> productIdChunk :
+          Lists.partition(new ArrayList<>(newProductIdSet), PRODUCT_CHUNK_SIZE)) {
+        relatedProductIdSet.addAll(this.getRelatedProductIdList(productIdChunk));
+      }
+
+      relatedProductIdSet.removeAll(productIdSet);
+      productIdSet.addAll(relatedProductIdSet);
+      newProductIdSet = relatedProductIdSet;
+    }
+
+    return productIdSet;
+  }
+
+  protected List<Long> getRelatedProductIdList(List<Long> productIdList) {
+
+    List<Long> relatedProductIdList = new ArrayList<>();
+
+    for (String query :
+        Arrays.asList(
+            "SELECT DISTINCT child.product.id FROM BillOfMaterial self "
+                + "JOIN self.billOfMaterialSet child WHERE self.product.id IN (:productIdList)",
+            "SELECT DISTINCT self.product.id FROM BillOfMaterial self "
+                + "JOIN self.billOfMaterialSet child WHERE child.product.id IN (:productIdList)",
+            "SELECT DISTINCT prodProduct.product.id FROM ManufOrder self "
+                + "JOIN self.toConsumeProdProductList prodProduct "
+                + "WHERE self.product.id IN (:productIdList)",
+            "SELECT DISTINCT self.product.id FROM ManufOrder self "
+                + "JOIN self.toConsumeProdProductList prodProduct "
+                + "WHERE prodProduct.product.id IN (:productIdList)",
+            "SELECT DISTINCT prodProduct.product.id FROM OperationOrder self "
+                + "JOIN self.toConsumeProdProductList prodProduct "
+                + "WHERE self.manufOrder.product.id IN (:productIdList)",
+            "SELECT DISTINCT self.manufOrder.product.id FROM OperationOrder self "
+                + "JOIN self.toConsumeProdProductList prodProduct "
+                + "WHERE prodProduct.product.id IN (:productIdList)")) {
+      relatedProductIdList.addAll(
+          JPA.em()
+              .createQuery(query, Long.class)
+              .setParameter("productIdList", productIdList)
+              .getResultList());
+    }
+
+    return relatedProductIdList;
+  }
+
   @Override
   protected Mrp completeProjectedStock(
       Mrp mrp, Product product, Company company, StockLocation stockLocation)
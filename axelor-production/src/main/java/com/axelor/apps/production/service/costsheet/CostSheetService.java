@@ -48,4 +48,10 @@ public interface CostSheetService {
   public CostSheet computeCostPrice(
       ManufOrder manufOrder, int calculationTypeSelect, LocalDate calculationDate)
       throws AxelorException;
+
+  /**
+   * Forget the sub bill of materials cost prices memoized during a bulk unit cost calculation. Must
+   * be called before starting a new calculation.
+   */
+  public void clearSubBillOfMaterialCostPriceMap();
 }
@@ -58,6 +58,7 @@ import java.time.Duration;
 import java.time.LocalDate;
 import java.time.Period;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -80,6 +81,13 @@ public class CostSheetServiceImpl implements CostSheetService {
   protected boolean manageResidualProductOnBom;
   protected CostSheet costSheet;
 
+  /**
+   * Cost price of the produced quantity of each bill of materials already computed during the
+   * current bulk unit cost calculation, by bill of materials id and company id: the cost of a bill
+   * of materials depends on the company it is computed for.
+   */
+  protected Map<List<Long>, BigDecimal> subBillOfMaterialCostPriceMap = new HashMap<>();
+
   @Inject
   public CostSheetServiceImpl(
       AppProductionService appProductionService,
@@ -139,6 +147,12 @@ public class CostSheetServiceImpl implements CostSheetService {
 
     billOfMaterial.setCostPrice(this.computeCostPrice(costSheet));
 
+    if (origin == ORIGIN_BULK_UNIT_COST_CALCULATION) {
+      subBillOfMaterialCostPriceMap.put(
+          this.getSubBillOfMaterialKey(billOfMaterial, company),
+          producedCostSheetLine.getCostPrice());
+    }
+
     billOfMaterialRepo.save(billOfMaterial);
 
     return costSheet;
@@ -311,6 +325,11 @@ public class CostSheetServiceImpl implements CostSheetService {
 
         if (product != null) {
 
+          int siblingCount =
+              parentCostSheetLine.getCostSheetLineList() != null
+                  ? parentCostSheetLine.getCostSheetLineList().size()
+                  : 0;
+
           CostSheetLine costSheetLine =
               costSheetLineService.createConsumedProductCostSheetLine(
                   company,
@@ -338,14 +357,61 @@ public class CostSheetServiceImpl implements CostSheetService {
           }
 
           if (billOfMaterialLine.getDefineSubBillOfMaterial()) {
-            this._computeCostPrice(
-                company, billOfMaterialLine, bomLevel, costSheetLine, origin, unitCostCalculation);
+            boolean isNewLine = parentCostSheetLine.getCostSheetLineList().size() > siblingCount;
+            this._computeSubBillOfMaterial(
+                company,
+                billOfMaterialLine,
+                bomLevel,
+                costSheetLine,
+                isNewLine,
+                origin,
+                unitCostCalculation);
           }
         }
       }
     }
   }
 
+  /**
+   * Compute the cost of a sub bill of materials. During a bulk unit cost calculation, the cost of a
+   * sub bill of materials is computed only once: it is reused for every other parent instead of
+   * walking its whole tree again.
+   */
+  protected void _computeSubBillOfMaterial(
+      Company company,
+      BillOfMaterial billOfMaterial,
+      int bomLevel,
+      CostSheetLine costSheetLine,
+      boolean isNewLine,
+      int origin,
+      UnitCostCalculation unitCostCalculation)
+      throws AxelorException {
+
+    boolean memoize = origin == ORIGIN_BULK_UNIT_COST_CALCULATION && isNewLine;
+    List<Long> key = this.getSubBillOfMaterialKey(billOfMaterial, company);
+
+    if (memoize && subBillOfMaterialCostPriceMap.containsKey(key)) {
+      costSheetLine.setCostPrice(subBillOfMaterialCostPriceMap.get(key));
+      return;
+    }
+
+    this._computeCostPrice(
+        company, billOfMaterial, bomLevel, costSheetLine, origin, unitCostCalculation);
+
+    if (memoize) {
+      subBillOfMaterialCostPriceMap.put(key, this.computeCostPrice(costSheetLine));
+    }
+  }
+
+  protected List<Long> getSubBillOfMaterialKey(BillOfMaterial billOfMaterial, Company company) {
+    return Arrays.asList(billOfMaterial.getId(), company != null ? company.getId() : null);
+  }
+
+  @Override
+  public void clearSubBillOfMaterialCostPriceMap() {
+    subBillOfMaterialCostPriceMap.clear();
+  }
+
   protected void _computeProcess(
       ProdProcess prodProcess,
       BigDecimal producedQty,
@@ -239,6 +239,8 @@ public class UnitCostCalculationServiceImpl implements UnitCostCalculationServic
   protected void calculationProcess(UnitCostCalculation unitCostCalculation)
       throws AxelorException {
 
+    costSheetService.clearSubBillOfMaterialCostPriceMap();
+
     for (int level = this.getMaxLevel(); level >= 0; level--) {
 
       for (Product product : this.getProductList(level)) {
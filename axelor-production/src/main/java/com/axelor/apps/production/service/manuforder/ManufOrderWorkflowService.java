@@ -50,6 +50,7 @@ import com.axelor.apps.production.db.repo.ProductionConfigRepository;
 import com.axelor.apps.production.exceptions.IExceptionMessage;
 import com.axelor.apps.production.service.app.AppProductionService;
 import com.axelor.apps.production.service.costsheet.CostSheetService;
+import com.axelor.apps.production.service.operationorder.OperationOrderSchedulingService;
 import com.axelor.apps.production.service.operationorder.OperationOrderWorkflowService;
 import com.axelor.apps.production.service.productionorder.ProductionOrderService;
 import com.axelor.apps.purchase.db.PurchaseOrder;
@@ -119,6 +120,8 @@ public class ManufOrderWorkflowService {
       throws AxelorException {
     ManufOrderService manufOrderService = Beans.get(ManufOrderService.class);
     SequenceService sequenceService = Beans.get(SequenceService.class);
+    boolean isFiniteCapacityScheduling =
+        Beans.get(AppProductionService.class).getAppProduction().getFiniteCapacityScheduling();
 
     for (ManufOrder manufOrder : manufOrderList) {
       if (manufOrder.getBillOfMaterial().getStatusSelect()
@@ -153,7 +156,8 @@ public class ManufOrderWorkflowService {
         manufOrder.setPlannedStartDateT(
             Beans.get(AppProductionService.class).getTodayDateTime().toLocalDateTime());
       } else if (manufOrder.getPlannedStartDateT() == null
-          && manufOrder.getPlannedEndDateT() != null) {
+          && manufOrder.getPlannedEndDateT() != null
+          && !isFiniteCapacityScheduling) {
         long duration = 0;
         for (OperationOrder order : manufOrder.getOperationOrderList()) {
           duration +=
@@ -164,10 +168,15 @@ public class ManufOrderWorkflowService {
       }
     }
 
-    for (ManufOrder manufOrder : manufOrderList) {
-      if (manufOrder.getOperationOrderList() != null) {
-        for (OperationOrder operationOrder : getSortedOperationOrderList(manufOrder)) {
-          operationOrderWorkflowService.plan(operationOrder, null);
+    if (isFiniteCapacityScheduling) {
+      // Manuf orders only having a planned end date are scheduled backward from this date.
+      Beans.get(OperationOrderSchedulingService.class).plan(manufOrderList);
+    } else {
+      for (ManufOrder manufOrder : manufOrderList) {
+        if (manufOrder.getOperationOrderList() != null) {
+          for (OperationOrder operationOrder : getSortedOperationOrderList(manufOrder)) {
+            operationOrderWorkflowService.plan(operationOrder, null);
+          }
         }
       }
     }
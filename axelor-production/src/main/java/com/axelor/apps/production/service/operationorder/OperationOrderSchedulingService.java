@@ -0,0 +1,545 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service.operationorder;
+
+import com.axelor.apps.base.db.DayPlanning;
+import com.axelor.apps.base.db.WeeklyPlanning;
+import com.axelor.apps.base.service.weeklyplanning.WeeklyPlanningService;
+import com.axelor.apps.production.db.Machine;
+import com.axelor.apps.production.db.ManufOrder;
+import com.axelor.apps.production.db.OperationOrder;
+import com.axelor.apps.production.db.repo.OperationOrderRepository;
+import com.axelor.apps.production.exceptions.IExceptionMessage;
+import com.axelor.apps.tool.date.DateTool;
+import com.axelor.db.JPA;
+import com.axelor.exception.AxelorException;
+import com.axelor.exception.db.repo.TraceBackRepository;
+import com.axelor.i18n.I18n;
+import com.google.common.base.MoreObjects;
+import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import javax.persistence.LockModeType;
+import javax.persistence.TypedQuery;
+import org.apache.commons.collections.CollectionUtils;
+
+/**
+ * Finite capacity scheduling of the operation orders of manufacturing orders: a machine only runs
+ * one operation order at a time, so an operation order is planned on the first period of the
+ * machine planning where the machine is not booked yet by another operation order.
+ *
+ * <p>The duration of an operation order only counts the working time of the machine planning: an
+ * operation order running past the end of a working period is resumed at the start of the next
+ * one. The machines are locked while they are scheduled, so that two planning sessions never
+ * book the same period of a machine.
+ */
+public class OperationOrderSchedulingService {
+
+  /**
+   * Number of days looked through to find a working period in a machine planning, beyond which the
+   * planning is considered as having no working period.
+   */
+  protected static final int MAX_DAYS_TO_WORKING_PERIOD = 7;
+
+  protected OperationOrderWorkflowService operationOrderWorkflowService;
+  protected OperationOrderService operationOrderService;
+  protected OperationOrderStockMoveService operationOrderStockMoveService;
+  protected WeeklyPlanningService weeklyPlanningService;
+
+  @Inject
+  public OperationOrderSchedulingService(
+      OperationOrderWorkflowService operationOrderWorkflowService,
+      OperationOrderService operationOrderService,
+      OperationOrderStockMoveService operationOrderStockMoveService,
+      WeeklyPlanningService weeklyPlanningService) {
+    this.operationOrderWorkflowService = operationOrderWorkflowService;
+    this.operationOrderService = operationOrderService;
+    this.operationOrderStockMoveService = operationOrderStockMoveService;
+    this.weeklyPlanningService = weeklyPlanningService;
+  }
+
+  /**
+   * Plan the operation orders of the manufacturing orders, by order of the list. Manufacturing
+   * orders having only a planned end date are scheduled backward from this date, the other ones
+   * are scheduled forward from their planned start date.
+   *
+   * @param manufOrderList
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {Exception.class})
+  public void plan(List<ManufOrder> manufOrderList) throws AxelorException {
+
+    Map<Long, MachineBookings> machineBookingsMap = this.getMachineBookingsMap(manufOrderList);
+
+    for (ManufOrder manufOrder : manufOrderList) {
+      List<OperationOrder> operationOrderList = this.getSortedOperationOrderList(manufOrder);
+
+      if (manufOrder.getPlannedStartDateT() == null && manufOrder.getPlannedEndDateT() != null) {
+        this.scheduleBackward(manufOrder, operationOrderList, machineBookingsMap);
+      } else {
+        this.scheduleForward(manufOrder, operationOrderList, machineBookingsMap);
+      }
+
+      for (OperationOrder operationOrder : operationOrderList) {
+        this.finishPlanning(operationOrder);
+      }
+    }
+  }
+
+  /**
+   * Get the bookings of the machines used by the manufacturing orders, i.e. the planned dates of
+   * the operation orders of the other manufacturing orders still to be done on these machines.
+   *
+   * @param manufOrderList
+   * @return the bookings by machine id
+   */
+  protected Map<Long, MachineBookings> getMachineBookingsMap(List<ManufOrder> manufOrderList) {
+
+    Map<Long, MachineBookings> machineBookingsMap = new HashMap<>();
+    for (ManufOrder manufOrder : manufOrderList) {
+      for (OperationOrder operationOrder : this.getSortedOperationOrderList(manufOrder)) {
+        Machine machine = operationOrder.getMachine();
+        if (machine != null && machine.getId() != null) {
+          machineBookingsMap.computeIfAbsent(machine.getId(), id -> new MachineBookings());
+        }
+      }
+    }
+    if (machineBookingsMap.isEmpty()) {
+      return machineBookingsMap;
+    }
+
+    this.lockMachines(machineBookingsMap.keySet());
+
+    List<Long> manufOrderIdList =
+        manufOrderList.stream()
+            .map(ManufOrder::getId)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+
+    String query =
+        "SELECT self.machine.id, self.plannedStartDateT, self.plannedEndDateT"
+            + " FROM OperationOrder self"
+            + " WHERE self.machine.id IN (:machineIds)"
+            + " AND self.statusSelect IN (:statusList)"
+            + " AND self.plannedStartDateT IS NOT NULL"
+            + " AND self.plannedEndDateT IS NOT NULL"
+            + (manufOrderIdList.isEmpty() ? "" : " AND self.manufOrder.id NOT IN (:manufOrderIds)");
+
+    TypedQuery<Object[]> bookingQuery =
+        JPA.em()
+            .createQuery(query, Object[].class)
+            .setParameter("machineIds", machineBookingsMap.keySet())
+            .setParameter(
+                "statusList",
+                Arrays.asList(
+                    OperationOrderRepository.STATUS_PLANNED,
+                    OperationOrderRepository.STATUS_IN_PROGRESS,
+                    OperationOrderRepository.STATUS_STANDBY));
+    if (!manufOrderIdList.isEmpty()) {
+      bookingQuery.setParameter("manufOrderIds", manufOrderIdList);
+    }
+
+    for (Object[] booking : bookingQuery.getResultList()) {
+      machineBookingsMap
+          .get((Long) booking[0])
+          .book((LocalDateTime) booking[1], (LocalDateTime) booking[2]);
+    }
+
+    return machineBookingsMap;
+  }
+
+  /**
+   * Lock the machines until the end of the transaction, so that another planning session waits for
+   * the bookings of this one before reading the bookings of the same machines. The machines are
+   * locked by order of id to avoid deadlocks between sessions.
+   *
+   * @param machineIdList
+   */
+  protected void lockMachines(Collection<Long> machineIdList) {
+    JPA.em()
+        .createQuery(
+            "SELECT self FROM Machine self WHERE self.id IN (:machineIds) ORDER BY self.id",
+            Machine.class)
+        .setParameter("machineIds", machineIdList)
+        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+        .getResultList();
+  }
+
+  /**
+   * Schedule the operation orders from the planned start date of the manufacturing order, an
+   * operation order starting once the operation orders of lower priority are finished.
+   */
+  protected void scheduleForward(
+      ManufOrder manufOrder,
+      List<OperationOrder> operationOrderList,
+      Map<Long, MachineBookings> machineBookingsMap)
+      throws AxelorException {
+
+    LocalDateTime priorityStartDate = manufOrder.getPlannedStartDateT();
+    LocalDateTime priorityEndDate = priorityStartDate;
+    Integer priority = null;
+
+    for (int i = 0; i < operationOrderList.size(); i++) {
+      OperationOrder operationOrder = operationOrderList.get(i);
+      if (i > 0 && !Objects.equals(priority, operationOrder.getPriority())) {
+        priorityStartDate = priorityEndDate;
+      }
+      priority = operationOrder.getPriority();
+
+      long duration = this.computeDuration(operationOrder);
+      MachineBookings machineBookings = this.getMachineBookings(operationOrder, machineBookingsMap);
+      WeeklyPlanning weeklyPlanning = this.getWeeklyPlanning(operationOrder);
+
+      LocalDateTime startDate = priorityStartDate;
+      LocalDateTime endDate;
+      while (true) {
+        if (weeklyPlanning != null) {
+          startDate = this.getNextWorkingPeriod(weeklyPlanning, startDate)[0];
+        }
+        endDate = this.computeEndDate(weeklyPlanning, startDate, duration);
+        Entry<LocalDateTime, LocalDateTime> booking =
+            machineBookings != null ? machineBookings.getLastOverlap(startDate, endDate) : null;
+        if (booking == null) {
+          break;
+        }
+        startDate = booking.getValue();
+      }
+
+      this.setPlannedDates(operationOrder, startDate, endDate, duration, machineBookings);
+      priorityEndDate = DateTool.max(priorityEndDate, operationOrder.getPlannedEndDateT());
+    }
+  }
+
+  /**
+   * Schedule the operation orders until the planned end date of the manufacturing order, an
+   * operation order ending before the operation orders of higher priority start. The planned
+   * start date of the manufacturing order is then the start date of its first operation order.
+   */
+  protected void scheduleBackward(
+      ManufOrder manufOrder,
+      List<OperationOrder> operationOrderList,
+      Map<Long, MachineBookings> machineBookingsMap)
+      throws AxelorException {
+
+    LocalDateTime priorityEndDate = manufOrder.getPlannedEndDateT();
+    LocalDateTime priorityStartDate = priorityEndDate;
+    Integer priority = null;
+
+    for (int i = operationOrderList.size() - 1; i >= 0; i--) {
+      OperationOrder operationOrder = operationOrderList.get(i);
+      if (i < operationOrderList.size() - 1
+          && !Objects.equals(priority, operationOrder.getPriority())) {
+        priorityEndDate = priorityStartDate;
+      }
+      priority = operationOrder.getPriority();
+
+      long duration = this.computeDuration(operationOrder);
+      MachineBookings machineBookings = this.getMachineBookings(operationOrder, machineBookingsMap);
+      WeeklyPlanning weeklyPlanning = this.getWeeklyPlanning(operationOrder);
+
+      LocalDateTime endDate = priorityEndDate;
+      LocalDateTime startDate;
+      while (true) {
+        if (weeklyPlanning != null) {
+          endDate = this.getPreviousWorkingPeriod(weeklyPlanning, endDate)[1];
+        }
+        startDate = this.computeStartDate(weeklyPlanning, endDate, duration);
+        Entry<LocalDateTime, LocalDateTime> booking =
+            machineBookings != null ? machineBookings.getLastOverlap(startDate, endDate) : null;
+        if (booking == null) {
+          break;
+        }
+        endDate = booking.getKey();
+      }
+
+      this.setPlannedDates(operationOrder, startDate, endDate, duration, machineBookings);
+      if (operationOrder.getPlannedStartDateT().isBefore(priorityStartDate)) {
+        priorityStartDate = operationOrder.getPlannedStartDateT();
+      }
+    }
+
+    manufOrder.setPlannedStartDateT(priorityStartDate);
+  }
+
+  protected long computeDuration(OperationOrder operationOrder) throws AxelorException {
+    if (operationOrder.getWorkCenter() == null) {
+      return 0;
+    }
+    return operationOrderWorkflowService.computeEntireCycleDuration(
+        operationOrder, operationOrder.getManufOrder().getQty());
+  }
+
+  protected MachineBookings getMachineBookings(
+      OperationOrder operationOrder, Map<Long, MachineBookings> machineBookingsMap) {
+    Machine machine = operationOrder.getMachine();
+    return machine != null ? machineBookingsMap.get(machine.getId()) : null;
+  }
+
+  protected WeeklyPlanning getWeeklyPlanning(OperationOrder operationOrder) {
+    Machine machine = operationOrder.getMachine();
+    return machine != null ? machine.getWeeklyPlanning() : null;
+  }
+
+  protected void setPlannedDates(
+      OperationOrder operationOrder,
+      LocalDateTime startDate,
+      LocalDateTime endDate,
+      long duration,
+      MachineBookings machineBookings) {
+
+    operationOrder.setPlannedStartDateT(startDate);
+    operationOrder.setPlannedEndDateT(endDate);
+    operationOrder.setPlannedDuration(duration);
+
+    if (machineBookings != null) {
+      machineBookings.book(startDate, endDate);
+    }
+  }
+
+  protected void finishPlanning(OperationOrder operationOrder) throws AxelorException {
+
+    if (CollectionUtils.isEmpty(operationOrder.getToConsumeProdProductList())) {
+      operationOrderService.createToConsumeProdProductList(operationOrder);
+    }
+
+    ManufOrder manufOrder = operationOrder.getManufOrder();
+    if (manufOrder == null || manufOrder.getIsConsProOnOperation()) {
+      operationOrderStockMoveService.createToConsumeStockMove(operationOrder);
+    }
+
+    operationOrder.setStatusSelect(OperationOrderRepository.STATUS_PLANNED);
+  }
+
+  /**
+   * Compute the date time when an operation started at the given date time ends, only counting the
+   * working time of the planning.
+   */
+  protected LocalDateTime computeEndDate(
+      WeeklyPlanning weeklyPlanning, LocalDateTime startDate, long duration)
+      throws AxelorException {
+
+    if (weeklyPlanning == null) {
+      return startDate.plusSeconds(duration);
+    }
+
+    LocalDateTime dateTime = startDate;
+    long remainingDuration = duration;
+    while (remainingDuration > 0) {
+      LocalDateTime[] period = this.getNextWorkingPeriod(weeklyPlanning, dateTime);
+      long periodDuration = Duration.between(period[0], period[1]).getSeconds();
+      if (remainingDuration <= periodDuration) {
+        return period[0].plusSeconds(remainingDuration);
+      }
+      remainingDuration -= periodDuration;
+      dateTime = period[1];
+    }
+
+    return dateTime;
+  }
+
+  /**
+   * Compute the date time when an operation ending at the given date time starts, only counting
+   * the working time of the planning.
+   */
+  protected LocalDateTime computeStartDate(
+      WeeklyPlanning weeklyPlanning, LocalDateTime endDate, long duration)
+      throws AxelorException {
+
+    if (weeklyPlanning == null) {
+      return endDate.minusSeconds(duration);
+    }
+
+    LocalDateTime dateTime = endDate;
+    long remainingDuration = duration;
+    while (remainingDuration > 0) {
+      LocalDateTime[] period = this.getPreviousWorkingPeriod(weeklyPlanning, dateTime);
+      long periodDuration = Duration.between(period[0], period[1]).getSeconds();
+      if (remainingDuration <= periodDuration) {
+        return period[1].minusSeconds(remainingDuration);
+      }
+      remainingDuration -= periodDuration;
+      dateTime = period[0];
+    }
+
+    return dateTime;
+  }
+
+  /**
+   * Get the first working period of the planning ending after the given date time.
+   *
+   * @return the start and end date times of the period, the start date time being the given one
+   *     if the period is already started
+   * @throws AxelorException if the planning has no working period in the next days
+   */
+  protected LocalDateTime[] getNextWorkingPeriod(
+      WeeklyPlanning weeklyPlanning, LocalDateTime dateTime) throws AxelorException {
+
+    for (int days = 0; days <= MAX_DAYS_TO_WORKING_PERIOD; days++) {
+      LocalDate date = dateTime.toLocalDate().plusDays(days);
+      DayPlanning dayPlanning = weeklyPlanningService.findDayPlanning(weeklyPlanning, date);
+      if (dayPlanning == null) {
+        continue;
+      }
+
+      LocalDateTime[][] periods = {
+        this.getPeriod(date, dayPlanning.getMorningFrom(), dayPlanning.getMorningTo()),
+        this.getPeriod(date, dayPlanning.getAfternoonFrom(), dayPlanning.getAfternoonTo())
+      };
+      for (LocalDateTime[] period : periods) {
+        if (period != null && period[1].isAfter(dateTime)) {
+          return new LocalDateTime[] {DateTool.max(period[0], dateTime), period[1]};
+        }
+      }
+    }
+
+    throw this.getNoWorkingPeriodException(weeklyPlanning, dateTime);
+  }
+
+  /**
+   * Get the last working period of the planning starting before the given date time.
+   *
+   * @return the start and end date times of the period, the end date time being the given one if
+   *     the period is not ended yet
+   * @throws AxelorException if the planning has no working period in the previous days
+   */
+  protected LocalDateTime[] getPreviousWorkingPeriod(
+      WeeklyPlanning weeklyPlanning, LocalDateTime dateTime) throws AxelorException {
+
+    for (int days = 0; days <= MAX_DAYS_TO_WORKING_PERIOD; days++) {
+      LocalDate date = dateTime.toLocalDate().minusDays(days);
+      DayPlanning dayPlanning = weeklyPlanningService.findDayPlanning(weeklyPlanning, date);
+      if (dayPlanning == null) {
+        continue;
+      }
+
+      LocalDateTime[][] periods = {
+        this.getPeriod(date, dayPlanning.getAfternoonFrom(), dayPlanning.getAfternoonTo()),
+        this.getPeriod(date, dayPlanning.getMorningFrom(), dayPlanning.getMorningTo())
+      };
+      for (LocalDateTime[] period : periods) {
+        if (period != null && period[0].isBefore(dateTime)) {
+          return new LocalDateTime[] {
+            period[0], period[1].isAfter(dateTime) ? dateTime : period[1]
+          };
+        }
+      }
+    }
+
+    throw this.getNoWorkingPeriodException(weeklyPlanning, dateTime);
+  }
+
+  /**
+   * Get the period of the given day between the given times, a period without end time ending at
+   * midnight.
+   *
+   * @return the start and end date times of the period, or null if it is not a valid period
+   */
+  protected LocalDateTime[] getPeriod(LocalDate date, LocalTime from, LocalTime to) {
+    if (from == null) {
+      return null;
+    }
+    LocalDateTime startDate = date.atTime(from);
+    LocalDateTime endDate = to != null ? date.atTime(to) : date.plusDays(1).atStartOfDay();
+    return endDate.isAfter(startDate) ? new LocalDateTime[] {startDate, endDate} : null;
+  }
+
+  protected AxelorException getNoWorkingPeriodException(
+      WeeklyPlanning weeklyPlanning, LocalDateTime dateTime) {
+    return new AxelorException(
+        weeklyPlanning,
+        TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
+        I18n.get(IExceptionMessage.OPERATION_ORDER_SCHEDULING_NO_WORKING_PERIOD),
+        weeklyPlanning.getName(),
+        MAX_DAYS_TO_WORKING_PERIOD,
+        dateTime);
+  }
+
+  protected List<OperationOrder> getSortedOperationOrderList(ManufOrder manufOrder) {
+    List<OperationOrder> operationOrderList =
+        MoreObjects.firstNonNull(manufOrder.getOperationOrderList(), Collections.emptyList());
+    Comparator<OperationOrder> byPriority =
+        Comparator.comparing(
+            OperationOrder::getPriority, Comparator.nullsFirst(Comparator.naturalOrder()));
+    Comparator<OperationOrder> byId =
+        Comparator.comparing(
+            OperationOrder::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    return operationOrderList.stream()
+        .sorted(byPriority.thenComparing(byId))
+        .collect(Collectors.toList());
+  }
+
+  /** Booked periods of a machine, merged so that they never overlap. */
+  protected static class MachineBookings {
+
+    private final TreeMap<LocalDateTime, LocalDateTime> bookingMap = new TreeMap<>();
+
+    public void book(LocalDateTime startDate, LocalDateTime endDate) {
+      if (!endDate.isAfter(startDate)) {
+        return;
+      }
+
+      Entry<LocalDateTime, LocalDateTime> previous = bookingMap.floorEntry(startDate);
+      if (previous != null && !previous.getValue().isBefore(startDate)) {
+        startDate = previous.getKey();
+        endDate = DateTool.max(endDate, previous.getValue());
+        bookingMap.remove(previous.getKey());
+      }
+
+      Entry<LocalDateTime, LocalDateTime> next = bookingMap.ceilingEntry(startDate);
+      while (next != null && !next.getKey().isAfter(endDate)) {
+        endDate = DateTool.max(endDate, next.getValue());
+        bookingMap.remove(next.getKey());
+        next = bookingMap.ceilingEntry(startDate);
+      }
+
+      bookingMap.put(startDate, endDate);
+    }
+
+    /**
+     * Get the last booked period overlapping the given period.
+     *
+     * @return the booked period as an entry from its start date to its end date, or null if the
+     *     machine is free during the given period
+     */
+    public Entry<LocalDateTime, LocalDateTime> getLastOverlap(
+        LocalDateTime startDate, LocalDateTime endDate) {
+
+      Entry<LocalDateTime, LocalDateTime> booking =
+          bookingMap.lowerEntry(endDate.isAfter(startDate) ? endDate : startDate.plusNanos(1));
+      if (booking != null && booking.getValue().isAfter(startDate)) {
+        return booking;
+      }
+      return null;
+    }
+  }
+}
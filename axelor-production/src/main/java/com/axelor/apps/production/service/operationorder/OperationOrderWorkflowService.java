@@ -20,6 +20,8 @@ package com.axelor.apps.production.service.operationorder;
 import com.axelor.apps.base.db.DayPlanning;
 import com.axelor.apps.base.db.WeeklyPlanning;
 import com.axelor.apps.base.service.weeklyplanning.WeeklyPlanningService;
+import com.axelor.apps.base.service.weeklyplanning.WorkingCalendar;
+import com.axelor.apps.base.service.weeklyplanning.WorkingCalendarCache;
 import com.axelor.apps.production.db.Machine;
 import com.axelor.apps.production.db.MachineTool;
 import com.axelor.apps.production.db.ManufOrder;
@@ -52,6 +54,7 @@ import com.google.inject.persist.Transactional;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
@@ -183,31 +186,18 @@ public class OperationOrderWorkflowService {
 
   public void searchForNextWorkingDay(
       OperationOrder operationOrder, WeeklyPlanning weeklyPlanning, LocalDateTime startDate) {
-    int daysToAddNbr = 0;
-    DayPlanning nextDayPlanning;
-    /* We will find the next DayPlanning with at least one working period. */
-    do {
-
-      daysToAddNbr++;
-      nextDayPlanning =
-          weeklyPlanningService.findDayPlanning(
-              weeklyPlanning, startDate.toLocalDate().plusDays(daysToAddNbr));
-    } while (nextDayPlanning.getAfternoonFrom() == null
-        && nextDayPlanning.getMorningFrom() == null);
+    WorkingCalendar workingCalendar =
+        Beans.get(WorkingCalendarCache.class).get(weeklyPlanning, null);
+    /* We will find the next day with at least one working period. */
+    LocalDate nextWorkingDate = workingCalendar.getNextWorkingDate(startDate.toLocalDate());
 
     /*
-     * We will add the nbr of days to retrieve the working day, and set the time to either the first
-     * morning period or the first afternoon period.
+     * We set the time to either the first morning period or the first afternoon period of the next
+     * working day.
      */
-    if (nextDayPlanning.getMorningFrom() != null) {
+    if (nextWorkingDate != null) {
       operationOrder.setPlannedStartDateT(
-          startDate.toLocalDate().plusDays(daysToAddNbr).atTime(nextDayPlanning.getMorningFrom()));
-    } else if (nextDayPlanning.getAfternoonFrom() != null) {
-      operationOrder.setPlannedStartDateT(
-          startDate
-              .toLocalDate()
-              .plusDays(daysToAddNbr)
-              .atTime(nextDayPlanning.getAfternoonFrom()));
+          nextWorkingDate.atTime(workingCalendar.getFirstPeriodFrom(nextWorkingDate)));
     }
   }
 
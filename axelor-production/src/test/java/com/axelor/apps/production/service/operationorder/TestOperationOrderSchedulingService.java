@@ -0,0 +1,297 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service.operationorder;
+
+import com.axelor.apps.base.db.DayPlanning;
+import com.axelor.apps.base.db.WeeklyPlanning;
+import com.axelor.apps.base.service.weeklyplanning.WeeklyPlanningServiceImp;
+import com.axelor.apps.production.db.Machine;
+import com.axelor.apps.production.db.ManufOrder;
+import com.axelor.apps.production.db.OperationOrder;
+import com.axelor.apps.production.service.operationorder.OperationOrderSchedulingService.MachineBookings;
+import com.axelor.exception.AxelorException;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestOperationOrderSchedulingService {
+
+  private static final LocalDateTime MONDAY = LocalDateTime.of(2020, 6, 1, 0, 0);
+  private static final LocalTime[][] WORKING_PERIODS = {
+    {LocalTime.of(8, 0), LocalTime.of(12, 0)}, {LocalTime.of(13, 0), LocalTime.of(17, 0)}
+  };
+
+  private TestSchedulingService schedulingService;
+  private WeeklyPlanning weeklyPlanning;
+
+  @Before
+  public void setUp() {
+    schedulingService = new TestSchedulingService();
+
+    weeklyPlanning = new WeeklyPlanning();
+    weeklyPlanning.setName("Machine planning");
+    weeklyPlanning.setWeekDays(new ArrayList<>());
+    for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+      DayPlanning dayPlanning = new DayPlanning();
+      dayPlanning.setName(dayOfWeek.name().toLowerCase());
+      if (dayOfWeek != DayOfWeek.SATURDAY && dayOfWeek != DayOfWeek.SUNDAY) {
+        dayPlanning.setMorningFrom(WORKING_PERIODS[0][0]);
+        dayPlanning.setMorningTo(WORKING_PERIODS[0][1]);
+        dayPlanning.setAfternoonFrom(WORKING_PERIODS[1][0]);
+        dayPlanning.setAfternoonTo(WORKING_PERIODS[1][1]);
+      }
+      weeklyPlanning.getWeekDays().add(dayPlanning);
+    }
+  }
+
+  @Test
+  public void testPlanForwardAcrossWorkingPeriods() throws AxelorException {
+    Machine machine = this.createMachine(1L);
+    ManufOrder manufOrder = new ManufOrder();
+    manufOrder.setPlannedStartDateT(MONDAY.plusHours(10));
+    OperationOrder first = this.createOperationOrder(manufOrder, machine, 10, 6 * 3600);
+    OperationOrder second = this.createOperationOrder(manufOrder, machine, 20, 4 * 3600);
+
+    schedulingService.plan(Collections.singletonList(manufOrder));
+
+    // 2 hours in the morning, 4 hours in the afternoon.
+    Assert.assertEquals(MONDAY.plusHours(10), first.getPlannedStartDateT());
+    Assert.assertEquals(MONDAY.plusHours(17), first.getPlannedEndDateT());
+    Assert.assertEquals(MONDAY.plusDays(1).plusHours(8), second.getPlannedStartDateT());
+    Assert.assertEquals(MONDAY.plusDays(1).plusHours(12), second.getPlannedEndDateT());
+  }
+
+  @Test
+  public void testPlanForwardOverWeekEnd() throws AxelorException {
+    Machine machine = this.createMachine(1L);
+    ManufOrder manufOrder = new ManufOrder();
+    manufOrder.setPlannedStartDateT(MONDAY.plusDays(4).plusHours(15));
+    OperationOrder operationOrder = this.createOperationOrder(manufOrder, machine, 10, 4 * 3600);
+
+    schedulingService.plan(Collections.singletonList(manufOrder));
+
+    Assert.assertEquals(MONDAY.plusDays(4).plusHours(15), operationOrder.getPlannedStartDateT());
+    Assert.assertEquals(MONDAY.plusDays(7).plusHours(10), operationOrder.getPlannedEndDateT());
+    Assert.assertEquals(4 * 3600L, (long) operationOrder.getPlannedDuration());
+  }
+
+  @Test
+  public void testPlanBackwardAcrossWorkingPeriods() throws AxelorException {
+    Machine machine = this.createMachine(1L);
+    ManufOrder manufOrder = new ManufOrder();
+    manufOrder.setPlannedEndDateT(MONDAY.plusDays(7).plusHours(10));
+    OperationOrder first = this.createOperationOrder(manufOrder, machine, 10, 2 * 3600);
+    OperationOrder second = this.createOperationOrder(manufOrder, machine, 20, 3 * 3600);
+
+    schedulingService.plan(Collections.singletonList(manufOrder));
+
+    Assert.assertEquals(MONDAY.plusDays(4).plusHours(16), second.getPlannedStartDateT());
+    Assert.assertEquals(MONDAY.plusDays(7).plusHours(10), second.getPlannedEndDateT());
+    Assert.assertEquals(MONDAY.plusDays(4).plusHours(14), first.getPlannedStartDateT());
+    Assert.assertEquals(MONDAY.plusDays(4).plusHours(16), first.getPlannedEndDateT());
+    Assert.assertEquals(first.getPlannedStartDateT(), manufOrder.getPlannedStartDateT());
+  }
+
+  @Test(expected = AxelorException.class)
+  public void testPlanWithoutWorkingPeriod() throws AxelorException {
+    for (DayPlanning dayPlanning : weeklyPlanning.getWeekDays()) {
+      dayPlanning.setMorningFrom(null);
+      dayPlanning.setAfternoonFrom(null);
+    }
+    ManufOrder manufOrder = new ManufOrder();
+    manufOrder.setPlannedStartDateT(MONDAY);
+    this.createOperationOrder(manufOrder, this.createMachine(1L), 10, 3600);
+
+    schedulingService.plan(Collections.singletonList(manufOrder));
+  }
+
+  @Test
+  public void testPlanManyOperationOrdersWithoutOverlap() throws AxelorException {
+    Random random = new Random(42);
+    List<Machine> machineList = new ArrayList<>();
+    for (long id = 1; id <= 10; id++) {
+      Machine machine = this.createMachine(id);
+      machineList.add(machine);
+      // Operation orders of other manuf orders already planned on the machine.
+      LocalDateTime startDate = MONDAY;
+      for (int i = 0; i < 20; i++) {
+        startDate = startDate.plusHours(1 + random.nextInt(100));
+        LocalDateTime endDate = startDate.plusMinutes(30 + random.nextInt(600));
+        schedulingService.book(machine, startDate, endDate);
+        startDate = endDate;
+      }
+    }
+
+    List<ManufOrder> manufOrderList = new ArrayList<>();
+    List<OperationOrder> operationOrderList = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      ManufOrder manufOrder = new ManufOrder();
+      if (i % 5 == 0) {
+        manufOrder.setPlannedEndDateT(MONDAY.plusHours(2000 + random.nextInt(2000)));
+      } else {
+        manufOrder.setPlannedStartDateT(MONDAY.plusHours(random.nextInt(2000)));
+      }
+      for (int j = 0; j < 10; j++) {
+        operationOrderList.add(
+            this.createOperationOrder(
+                manufOrder,
+                machineList.get(random.nextInt(machineList.size())),
+                (j / 2 + 1) * 10,
+                600 + random.nextInt(8 * 3600)));
+      }
+      manufOrderList.add(manufOrder);
+    }
+
+    schedulingService.plan(manufOrderList);
+
+    Map<Long, List<LocalDateTime[]>> periodMap = new HashMap<>(schedulingService.bookedPeriodMap);
+    for (OperationOrder operationOrder : operationOrderList) {
+      LocalDateTime startDate = operationOrder.getPlannedStartDateT();
+      LocalDateTime endDate = operationOrder.getPlannedEndDateT();
+      Assert.assertTrue(this.isWorkingTime(startDate));
+      Assert.assertEquals(
+          (long) operationOrder.getPlannedDuration(), this.getWorkingSeconds(startDate, endDate));
+      periodMap
+          .get(operationOrder.getMachine().getId())
+          .add(new LocalDateTime[] {startDate, endDate});
+    }
+
+    for (List<LocalDateTime[]> periodList : periodMap.values()) {
+      periodList.sort(Comparator.comparing(period -> period[0]));
+      for (int i = 1; i < periodList.size(); i++) {
+        Assert.assertFalse(periodList.get(i)[0].isBefore(periodList.get(i - 1)[1]));
+      }
+    }
+
+    for (ManufOrder manufOrder : manufOrderList) {
+      for (OperationOrder operationOrder : manufOrder.getOperationOrderList()) {
+        for (OperationOrder previous : manufOrder.getOperationOrderList()) {
+          if (previous.getPriority() < operationOrder.getPriority()) {
+            Assert.assertFalse(
+                operationOrder.getPlannedStartDateT().isBefore(previous.getPlannedEndDateT()));
+          }
+        }
+      }
+      if (manufOrder.getPlannedEndDateT() != null) {
+        for (OperationOrder operationOrder : manufOrder.getOperationOrderList()) {
+          Assert.assertFalse(
+              operationOrder.getPlannedEndDateT().isAfter(manufOrder.getPlannedEndDateT()));
+        }
+      }
+    }
+  }
+
+  private Machine createMachine(Long id) {
+    Machine machine = new Machine();
+    machine.setId(id);
+    machine.setWeeklyPlanning(weeklyPlanning);
+    schedulingService.bookedPeriodMap.putIfAbsent(id, new ArrayList<>());
+    return machine;
+  }
+
+  private OperationOrder createOperationOrder(
+      ManufOrder manufOrder, Machine machine, int priority, long duration) {
+    OperationOrder operationOrder = new OperationOrder();
+    operationOrder.setMachine(machine);
+    operationOrder.setPriority(priority);
+    operationOrder.setPlannedDuration(duration);
+    manufOrder.addOperationOrderListItem(operationOrder);
+    return operationOrder;
+  }
+
+  private boolean isWorkingTime(LocalDateTime dateTime) {
+    if (dateTime.getDayOfWeek().getValue() > DayOfWeek.FRIDAY.getValue()) {
+      return false;
+    }
+    for (LocalTime[] period : WORKING_PERIODS) {
+      LocalTime time = dateTime.toLocalTime();
+      if (!time.isBefore(period[0]) && time.isBefore(period[1])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private long getWorkingSeconds(LocalDateTime startDate, LocalDateTime endDate) {
+    long seconds = 0;
+    for (LocalDate date = startDate.toLocalDate();
+        !date.isAfter(endDate.toLocalDate());
+        date = date.plusDays(1)) {
+      if (date.getDayOfWeek().getValue() > DayOfWeek.FRIDAY.getValue()) {
+        continue;
+      }
+      for (LocalTime[] period : WORKING_PERIODS) {
+        LocalDateTime from = date.atTime(period[0]);
+        LocalDateTime to = date.atTime(period[1]);
+        from = from.isBefore(startDate) ? startDate : from;
+        to = to.isAfter(endDate) ? endDate : to;
+        if (to.isAfter(from)) {
+          seconds += Duration.between(from, to).getSeconds();
+        }
+      }
+    }
+    return seconds;
+  }
+
+  /** Scheduling service with bookings and durations kept in memory instead of in database. */
+  private static class TestSchedulingService extends OperationOrderSchedulingService {
+
+    private final Map<Long, List<LocalDateTime[]>> bookedPeriodMap = new HashMap<>();
+
+    TestSchedulingService() {
+      super(null, null, null, new WeeklyPlanningServiceImp());
+    }
+
+    void book(Machine machine, LocalDateTime startDate, LocalDateTime endDate) {
+      bookedPeriodMap.get(machine.getId()).add(new LocalDateTime[] {startDate, endDate});
+    }
+
+    @Override
+    protected Map<Long, MachineBookings> getMachineBookingsMap(List<ManufOrder> manufOrderList) {
+      Map<Long, MachineBookings> machineBookingsMap = new HashMap<>();
+      for (Map.Entry<Long, List<LocalDateTime[]>> entry : bookedPeriodMap.entrySet()) {
+        MachineBookings machineBookings = new MachineBookings();
+        for (LocalDateTime[] period : entry.getValue()) {
+          machineBookings.book(period[0], period[1]);
+        }
+        machineBookingsMap.put(entry.getKey(), machineBookings);
+      }
+      return machineBookingsMap;
+    }
+
+    @Override
+    protected long computeDuration(OperationOrder operationOrder) {
+      return operationOrder.getPlannedDuration();
+    }
+
+    @Override
+    protected void finishPlanning(OperationOrder operationOrder) {}
+  }
+}
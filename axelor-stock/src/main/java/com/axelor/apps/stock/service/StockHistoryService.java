@@ -23,6 +23,7 @@ import com.axelor.meta.db.MetaFile;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 public interface StockHistoryService {
 
@@ -41,6 +42,25 @@ public interface StockHistoryService {
       Long productId, Long companyId, Long stockLocationId, LocalDate beginDate, LocalDate endDate)
       throws AxelorException;
 
+  /**
+   * Compute lines for stock history of several products at once, with a few grouped queries on
+   * the stock move lines instead of several queries per product and per month.
+   *
+   * @param productIdList ids of the queried products, cannot be null.
+   * @param companyId id of the company used as filter, cannot be null.
+   * @param stockLocationId id of the stock location used as filter, can be null.
+   * @param beginDate mandatory date used for the generation.
+   * @param endDate mandatory date used for the generation.
+   * @return the computed lines, by product id.
+   */
+  Map<Long, List<StockHistoryLine>> computeStockHistoryLineMap(
+      List<Long> productIdList,
+      Long companyId,
+      Long stockLocationId,
+      LocalDate beginDate,
+      LocalDate endDate)
+      throws AxelorException;
+
   MetaFile exportStockHistoryLineList(List<StockHistoryLine> stockHistoryLineList, String fileName)
       throws IOException;
 
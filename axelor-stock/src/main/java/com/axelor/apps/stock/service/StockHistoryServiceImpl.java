@@ -18,19 +18,21 @@
 package com.axelor.apps.stock.service;
 
 import com.axelor.apps.base.db.Company;
+import com.axelor.apps.base.db.Period;
 import com.axelor.apps.base.db.Product;
 import com.axelor.apps.base.db.repo.CompanyRepository;
 import com.axelor.apps.base.db.repo.ProductRepository;
+import com.axelor.apps.base.db.repo.UnitRepository;
 import com.axelor.apps.base.db.repo.YearRepository;
 import com.axelor.apps.base.service.PeriodService;
 import com.axelor.apps.base.service.UnitConversionService;
 import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.apps.stock.db.StockHistoryLine;
-import com.axelor.apps.stock.db.StockMoveLine;
 import com.axelor.apps.stock.db.repo.StockLocationRepository;
 import com.axelor.apps.stock.db.repo.StockMoveLineRepository;
 import com.axelor.apps.stock.db.repo.StockMoveRepository;
 import com.axelor.apps.tool.file.CsvTool;
+import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
@@ -45,8 +47,13 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
@@ -67,7 +74,20 @@ public class StockHistoryServiceImpl implements StockHistoryService {
   public List<StockHistoryLine> computeStockHistoryLineList(
       Long productId, Long companyId, Long stockLocationId, LocalDate beginDate, LocalDate endDate)
       throws AxelorException {
-    List<StockHistoryLine> stockHistoryLineList = new ArrayList<>();
+    return computeStockHistoryLineMap(
+            Collections.singletonList(productId), companyId, stockLocationId, beginDate, endDate)
+        .get(productId);
+  }
+
+  @Override
+  @Transactional
+  public Map<Long, List<StockHistoryLine>> computeStockHistoryLineMap(
+      List<Long> productIdList,
+      Long companyId,
+      Long stockLocationId,
+      LocalDate beginDate,
+      LocalDate endDate)
+      throws AxelorException {
     List<Long> stockLocationIdList = new ArrayList<>();
     if (stockLocationId == null) {
       stockLocationIdList.addAll(
@@ -81,49 +101,96 @@ public class StockHistoryServiceImpl implements StockHistoryService {
       stockLocationIdList.add(stockLocationId);
     }
 
-    CompanyRepository companyRepo = Beans.get(CompanyRepository.class);
+    Company company = Beans.get(CompanyRepository.class).find(companyId);
     ProductRepository productRepo = Beans.get(ProductRepository.class);
+    PeriodService periodService = Beans.get(PeriodService.class);
 
     // one line per month
+    List<LocalDate> periodBeginDateList = new ArrayList<>();
+    List<Period> periodList = new ArrayList<>();
     for (LocalDate periodBeginDate = beginDate.withDayOfMonth(1);
         periodBeginDate.isBefore(endDate);
         periodBeginDate = periodBeginDate.plusMonths(1)) {
-      LocalDate periodEndDate = periodBeginDate.plusMonths(1);
-      StockHistoryLine stockHistoryLine = new StockHistoryLine();
-      Company company = companyRepo.find(companyId);
+      periodBeginDateList.add(periodBeginDate);
+      periodList.add(
+          periodService.getActivePeriod(periodBeginDate, company, YearRepository.TYPE_CIVIL));
+    }
+
+    Map<Long, List<StockHistoryLine>> stockHistoryLineMap = new LinkedHashMap<>();
+    for (Long productId : productIdList) {
       Product product = productRepo.find(productId);
-      stockHistoryLine.setProduct(product);
-      stockHistoryLine.setCompany(company);
-      stockHistoryLine.setLabel(periodBeginDate.toString());
-      stockHistoryLine.setPeriod(
-          Beans.get(PeriodService.class)
-              .getActivePeriod(periodBeginDate, company, YearRepository.TYPE_CIVIL));
-      fetchAndFillResultForStockHistoryQuery(
-          stockHistoryLine,
-          productId,
+      List<StockHistoryLine> stockHistoryLineList = new ArrayList<>();
+      for (int month = 0; month < periodBeginDateList.size(); month++) {
+        StockHistoryLine stockHistoryLine = new StockHistoryLine();
+        stockHistoryLine.setProduct(product);
+        stockHistoryLine.setCompany(company);
+        stockHistoryLine.setLabel(periodBeginDateList.get(month).toString());
+        stockHistoryLine.setPeriod(periodList.get(month));
+        stockHistoryLineList.add(stockHistoryLine);
+      }
+      stockHistoryLineMap.put(productId, stockHistoryLineList);
+    }
+
+    if (!periodBeginDateList.isEmpty()
+        && !productIdList.isEmpty()
+        && !stockLocationIdList.isEmpty()) {
+      LocalDate firstPeriodBeginDate = periodBeginDateList.get(0);
+      LocalDate lastPeriodEndDate =
+          periodBeginDateList.get(periodBeginDateList.size() - 1).plusMonths(1);
+
+      // outgoing quantities by month, starting 12 months before the first line
+      Map<Long, BigDecimal[]> outQtyMap = new HashMap<>();
+      fillStockMoveLineSums(
+          stockHistoryLineMap,
+          null,
+          productIdList,
+          companyId,
+          stockLocationIdList,
+          firstPeriodBeginDate,
+          firstPeriodBeginDate,
+          lastPeriodEndDate,
+          true);
+      fillStockMoveLineSums(
+          stockHistoryLineMap,
+          outQtyMap,
+          productIdList,
+          companyId,
+          stockLocationIdList,
+          firstPeriodBeginDate,
+          firstPeriodBeginDate.minusMonths(12),
+          lastPeriodEndDate,
+          false);
+      fillStockMoveCounts(
+          stockHistoryLineMap,
+          productIdList,
           companyId,
           stockLocationIdList,
-          periodBeginDate,
-          periodEndDate,
+          firstPeriodBeginDate,
+          lastPeriodEndDate,
           true);
-      fetchAndFillResultForStockHistoryQuery(
-          stockHistoryLine,
-          productId,
+      fillStockMoveCounts(
+          stockHistoryLineMap,
+          productIdList,
           companyId,
           stockLocationIdList,
-          periodBeginDate,
-          periodEndDate,
+          firstPeriodBeginDate,
+          lastPeriodEndDate,
           false);
-      stockHistoryLineList.add(stockHistoryLine);
+      for (Long productId : productIdList) {
+        computeAvgOutQtyOn12PastMonth(stockHistoryLineMap.get(productId), outQtyMap.get(productId));
+      }
+    }
+
+    for (List<StockHistoryLine> stockHistoryLineList : stockHistoryLineMap.values()) {
+      StockHistoryLine totalStockHistoryLine = createStockHistoryTotalLine(stockHistoryLineList);
+      StockHistoryLine avgStockHistoryLine =
+          createStockHistoryAvgLine(stockHistoryLineList, totalStockHistoryLine);
+      stockHistoryLineList.add(totalStockHistoryLine);
+      stockHistoryLineList.add(avgStockHistoryLine);
     }
-    StockHistoryLine totalStockHistoryLine = createStockHistoryTotalLine(stockHistoryLineList);
-    StockHistoryLine avgStockHistoryLine =
-        createStockHistoryAvgLine(stockHistoryLineList, totalStockHistoryLine);
-    stockHistoryLineList.add(totalStockHistoryLine);
-    stockHistoryLineList.add(avgStockHistoryLine);
 
     // result lines
-    return stockHistoryLineList;
+    return stockHistoryLineMap;
   }
 
   public String getStockHistoryLineExportName(String productName) {
@@ -176,147 +243,208 @@ public class StockHistoryServiceImpl implements StockHistoryService {
     return metaFile;
   }
 
+  /**
+   * Compute the average outgoing quantity on the 12 past months of each line, with a sliding sum
+   * over the monthly outgoing quantities.
+   *
+   * @param stockHistoryLineList the monthly lines of a product
+   * @param outQtyArray the outgoing quantities by month, starting 12 months before the first line
+   */
   protected void computeAvgOutQtyOn12PastMonth(
-      StockHistoryLine stockHistoryLine,
-      Long productId,
-      Long companyId,
-      List<Long> stockLocationIdList,
-      LocalDate periodBeginDate)
-      throws AxelorException {
-    String filter =
-        "self.product.id = :productId "
-            + "AND self.stockMove.statusSelect = :realized "
-            + "AND self.stockMove.company.id = :companyId "
-            + "AND self.stockMove.realDate >= :beginDate "
-            + "AND self.stockMove.realDate < :endDate "
-            + "AND self.stockMove.fromStockLocation.id IN :stockLocationIdList ";
-
-    List<StockMoveLine> stockMoveLineList =
-        stockMoveLineRepository
-            .all()
-            .filter(filter)
-            .bind("productId", productId)
-            .bind("companyId", companyId)
-            .bind("stockLocationIdList", stockLocationIdList)
-            .bind("realized", StockMoveRepository.STATUS_REALIZED)
-            .bind("beginDate", periodBeginDate.minusMonths(12))
-            .bind("endDate", periodBeginDate)
-            .fetch();
-
-    BigDecimal avgOutQtyOn12PastMonth = BigDecimal.ZERO;
-    for (StockMoveLine stockMoveLine : stockMoveLineList) {
-      // quantity in product unit
-      BigDecimal qtyConverted =
-          unitConversionService.convert(
-              stockMoveLine.getUnit(),
-              stockMoveLine.getProduct().getUnit(),
-              stockMoveLine.getRealQty(),
-              stockMoveLine.getRealQty().scale(),
-              stockMoveLine.getProduct());
-      avgOutQtyOn12PastMonth = avgOutQtyOn12PastMonth.add(qtyConverted);
+      List<StockHistoryLine> stockHistoryLineList, BigDecimal[] outQtyArray) {
+    int qtyScale = Beans.get(AppBaseService.class).getNbDecimalDigitForQty();
+    BigDecimal outQtyOn12PastMonth = BigDecimal.ZERO;
+    for (int month = 0; month < 12; month++) {
+      outQtyOn12PastMonth = outQtyOn12PastMonth.add(getOutQty(outQtyArray, month));
+    }
+    for (int month = 0; month < stockHistoryLineList.size(); month++) {
+      stockHistoryLineList
+          .get(month)
+          .setAvgOutQtyOn12PastMonth(
+              outQtyOn12PastMonth.divide(new BigDecimal(12), qtyScale, RoundingMode.HALF_EVEN));
+      outQtyOn12PastMonth =
+          outQtyOn12PastMonth
+              .add(getOutQty(outQtyArray, month + 12))
+              .subtract(getOutQty(outQtyArray, month));
     }
-    avgOutQtyOn12PastMonth =
-        avgOutQtyOn12PastMonth.divide(
-            new BigDecimal(12),
-            Beans.get(AppBaseService.class).getNbDecimalDigitForQty(),
-            RoundingMode.HALF_EVEN);
-    stockHistoryLine.setAvgOutQtyOn12PastMonth(avgOutQtyOn12PastMonth);
   }
 
-  protected void fetchAndFillResultForStockHistoryQuery(
-      StockHistoryLine stockHistoryLine,
-      Long productId,
+  protected BigDecimal getOutQty(BigDecimal[] outQtyArray, int index) {
+    if (outQtyArray == null || outQtyArray[index] == null) {
+      return BigDecimal.ZERO;
+    }
+    return outQtyArray[index];
+  }
+
+  /**
+   * Get the query summing the real quantity and the unit price of the realized stock move lines,
+   * grouped by product, real date and unit. The selected columns are the product id, the real
+   * date, the unit id, the quantity sum and the unit price sum.
+   *
+   * @param incoming true for the moves to the stock locations, false for the moves from them.
+   * @return the JPQL query.
+   */
+  protected String getStockMoveLineSumQuery(boolean incoming) {
+    return "SELECT self.product.id, stockMove.realDate, unit.id, "
+        + "SUM(self.realQty), SUM(self.companyUnitPriceUntaxed) "
+        + "FROM StockMoveLine self "
+        + "JOIN self.stockMove stockMove "
+        + "LEFT JOIN self.unit unit "
+        + getStockMoveLineFilter(incoming)
+        + "GROUP BY self.product.id, stockMove.realDate, unit.id";
+  }
+
+  protected String getStockMoveLineFilter(boolean incoming) {
+    return "WHERE self.product.id IN :productIdList "
+        + "AND stockMove.statusSelect = :realized "
+        + "AND stockMove.company.id = :companyId "
+        + "AND stockMove.realDate >= :beginDate "
+        + "AND stockMove.realDate < :endDate "
+        + (incoming
+            ? "AND stockMove.toStockLocation.id IN :stockLocationIdList "
+            : "AND stockMove.fromStockLocation.id IN :stockLocationIdList ");
+  }
+
+  /**
+   * Fill the quantities and amounts of the monthly lines with the sums of the stock move lines.
+   *
+   * @param stockHistoryLineMap the monthly lines by product id.
+   * @param outQtyMap if not null, filled with the outgoing quantities by month in product unit,
+   *     starting at beginDate.
+   * @param firstPeriodBeginDate the begin date of the first monthly line.
+   * @param beginDate the begin date of the query, before or equal to firstPeriodBeginDate.
+   */
+  protected void fillStockMoveLineSums(
+      Map<Long, List<StockHistoryLine>> stockHistoryLineMap,
+      Map<Long, BigDecimal[]> outQtyMap,
+      List<Long> productIdList,
       Long companyId,
       List<Long> stockLocationIdList,
-      LocalDate periodBeginDate,
-      LocalDate periodEndDate,
+      LocalDate firstPeriodBeginDate,
+      LocalDate beginDate,
+      LocalDate endDate,
       boolean incoming)
       throws AxelorException {
-    String filter =
-        "self.product.id = :productId "
-            + "AND self.stockMove.statusSelect = :realized "
-            + "AND self.stockMove.company.id = :companyId "
-            + "AND self.stockMove.realDate >= :beginDate "
-            + "AND self.stockMove.realDate < :endDate ";
-
-    if (incoming) {
-      filter += "AND self.stockMove.toStockLocation.id IN :stockLocationIdList ";
-    } else {
-      filter += "AND self.stockMove.fromStockLocation.id IN :stockLocationIdList ";
-    }
+    List<Object[]> resultList =
+        JPA.em()
+            .createQuery(getStockMoveLineSumQuery(incoming), Object[].class)
+            .setParameter("productIdList", productIdList)
+            .setParameter("companyId", companyId)
+            .setParameter("stockLocationIdList", stockLocationIdList)
+            .setParameter("realized", StockMoveRepository.STATUS_REALIZED)
+            .setParameter("beginDate", beginDate)
+            .setParameter("endDate", endDate)
+            .getResultList();
 
-    List<StockMoveLine> stockMoveLineList =
-        stockMoveLineRepository
-            .all()
-            .filter(filter)
-            .bind("productId", productId)
-            .bind("companyId", companyId)
-            .bind("stockLocationIdList", stockLocationIdList)
-            .bind("realized", StockMoveRepository.STATUS_REALIZED)
-            .bind("beginDate", periodBeginDate)
-            .bind("endDate", periodEndDate)
-            .fetch();
-    if (incoming) {
-      fillIncomingStockHistoryLineFields(stockHistoryLine, stockMoveLineList);
-    } else {
-      fillOutgoingStockHistoryLineFields(stockHistoryLine, stockMoveLineList);
-      computeAvgOutQtyOn12PastMonth(
-          stockHistoryLine, productId, companyId, stockLocationIdList, periodBeginDate);
-    }
-  }
+    ProductRepository productRepo = Beans.get(ProductRepository.class);
+    UnitRepository unitRepo = Beans.get(UnitRepository.class);
+    int monthCount = (int) ChronoUnit.MONTHS.between(beginDate, endDate);
+    int monthOffset = (int) ChronoUnit.MONTHS.between(beginDate, firstPeriodBeginDate);
 
-  protected void fillIncomingStockHistoryLineFields(
-      StockHistoryLine stockHistoryLine, List<StockMoveLine> stockMoveLineList)
-      throws AxelorException {
+    for (Object[] result : resultList) {
+      Long productId = (Long) result[0];
+      LocalDate realDate = (LocalDate) result[1];
+      Long unitId = (Long) result[2];
+      BigDecimal realQty = (BigDecimal) result[3];
+      BigDecimal unitPrice = (BigDecimal) result[4];
 
-    stockHistoryLine.setCountIncMvtStockPeriod(
-        Math.toIntExact(
-            stockMoveLineList.stream().map(StockMoveLine::getStockMove).distinct().count()));
-    BigDecimal sumIncQtyPeriod = BigDecimal.ZERO;
-    for (StockMoveLine stockMoveLine : stockMoveLineList) {
       // quantity in product unit
+      Product product = productRepo.find(productId);
       BigDecimal qtyConverted =
           unitConversionService.convert(
-              stockMoveLine.getUnit(),
-              stockMoveLine.getProduct().getUnit(),
-              stockMoveLine.getRealQty(),
-              stockMoveLine.getRealQty().scale(),
-              stockMoveLine.getProduct());
-      sumIncQtyPeriod = sumIncQtyPeriod.add(qtyConverted);
+              unitId != null ? unitRepo.find(unitId) : null,
+              product.getUnit(),
+              realQty,
+              realQty.scale(),
+              product);
+
+      int month = (int) ChronoUnit.MONTHS.between(beginDate, realDate.withDayOfMonth(1));
+      if (outQtyMap != null) {
+        BigDecimal[] outQtyArray =
+            outQtyMap.computeIfAbsent(productId, id -> new BigDecimal[monthCount]);
+        outQtyArray[month] = getOutQty(outQtyArray, month).add(qtyConverted);
+      }
+      if (month >= monthOffset) {
+        addStockMoveLineSum(
+            stockHistoryLineMap.get(productId).get(month - monthOffset),
+            result,
+            qtyConverted,
+            unitPrice,
+            incoming);
+      }
     }
-    stockHistoryLine.setSumIncQtyPeriod(sumIncQtyPeriod);
-    stockHistoryLine.setPriceIncStockMovePeriod(
-        stockMoveLineList.stream()
-            .map(StockMoveLine::getCompanyUnitPriceUntaxed)
-            .reduce(BigDecimal::add)
-            .orElse(BigDecimal.ZERO));
   }
 
-  protected void fillOutgoingStockHistoryLineFields(
-      StockHistoryLine stockHistoryLine, List<StockMoveLine> stockMoveLineList)
-      throws AxelorException {
+  /**
+   * Add a result row of {@link #getStockMoveLineSumQuery(boolean)} to a monthly line.
+   *
+   * @param stockHistoryLine
+   * @param result the result row.
+   * @param qtyConverted the quantity of the row in product unit.
+   * @param unitPrice the unit price sum of the row.
+   * @param incoming
+   */
+  protected void addStockMoveLineSum(
+      StockHistoryLine stockHistoryLine,
+      Object[] result,
+      BigDecimal qtyConverted,
+      BigDecimal unitPrice,
+      boolean incoming) {
+    if (incoming) {
+      stockHistoryLine.setSumIncQtyPeriod(stockHistoryLine.getSumIncQtyPeriod().add(qtyConverted));
+      stockHistoryLine.setPriceIncStockMovePeriod(
+          stockHistoryLine.getPriceIncStockMovePeriod().add(unitPrice));
+    } else {
+      stockHistoryLine.setSumOutQtyPeriod(stockHistoryLine.getSumOutQtyPeriod().add(qtyConverted));
+      stockHistoryLine.setPriceOutStockMovePeriod(
+          stockHistoryLine.getPriceOutStockMovePeriod().add(unitPrice));
+    }
+  }
 
-    stockHistoryLine.setCountOutMvtStockPeriod(
-        Math.toIntExact(
-            stockMoveLineList.stream().map(StockMoveLine::getStockMove).distinct().count()));
-    BigDecimal sumOutQtyPeriod = BigDecimal.ZERO;
-    for (StockMoveLine stockMoveLine : stockMoveLineList) {
-      // quantity in product unit
-      BigDecimal qtyConverted =
-          unitConversionService.convert(
-              stockMoveLine.getUnit(),
-              stockMoveLine.getProduct().getUnit(),
-              stockMoveLine.getRealQty(),
-              stockMoveLine.getRealQty().scale(),
-              stockMoveLine.getProduct());
-      sumOutQtyPeriod = sumOutQtyPeriod.add(qtyConverted);
+  /**
+   * Fill the number of stock moves of the monthly lines. A stock move has a single real date, so
+   * the distinct moves of each day add up to the distinct moves of the month.
+   */
+  protected void fillStockMoveCounts(
+      Map<Long, List<StockHistoryLine>> stockHistoryLineMap,
+      List<Long> productIdList,
+      Long companyId,
+      List<Long> stockLocationIdList,
+      LocalDate beginDate,
+      LocalDate endDate,
+      boolean incoming) {
+    List<Object[]> resultList =
+        JPA.em()
+            .createQuery(
+                "SELECT self.product.id, stockMove.realDate, COUNT(DISTINCT stockMove.id) "
+                    + "FROM StockMoveLine self "
+                    + "JOIN self.stockMove stockMove "
+                    + getStockMoveLineFilter(incoming)
+                    + "GROUP BY self.product.id, stockMove.realDate",
+                Object[].class)
+            .setParameter("productIdList", productIdList)
+            .setParameter("companyId", companyId)
+            .setParameter("stockLocationIdList", stockLocationIdList)
+            .setParameter("realized", StockMoveRepository.STATUS_REALIZED)
+            .setParameter("beginDate", beginDate)
+            .setParameter("endDate", endDate)
+            .getResultList();
+
+    for (Object[] result : resultList) {
+      LocalDate realDate = (LocalDate) result[1];
+      int count = ((Long) result[2]).intValue();
+      StockHistoryLine stockHistoryLine =
+          stockHistoryLineMap
+              .get((Long) result[0])
+              .get((int) ChronoUnit.MONTHS.between(beginDate, realDate.withDayOfMonth(1)));
+      if (incoming) {
+        stockHistoryLine.setCountIncMvtStockPeriod(
+            stockHistoryLine.getCountIncMvtStockPeriod() + count);
+      } else {
+        stockHistoryLine.setCountOutMvtStockPeriod(
+            stockHistoryLine.getCountOutMvtStockPeriod() + count);
+      }
     }
-    stockHistoryLine.setSumOutQtyPeriod(sumOutQtyPeriod);
-    stockHistoryLine.setPriceOutStockMovePeriod(
-        stockMoveLineList.stream()
-            .map(StockMoveLine::getCompanyUnitPriceUntaxed)
-            .reduce(BigDecimal::add)
-            .orElse(BigDecimal.ZERO));
   }
 
   /**
@@ -0,0 +1,162 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.stock.service;
+
+import com.axelor.apps.stock.db.repo.StockLocationRepository;
+import com.axelor.apps.tool.TransactionTool;
+import com.axelor.db.JPA;
+import com.axelor.db.tenants.TenantConfig;
+import com.axelor.db.tenants.TenantResolver;
+import com.google.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the stock location tree for each tenant, so that the sub-locations of a stock location
+ * are resolved without any query. The cache of a tenant is cleared when a transaction saving or
+ * removing a stock location is committed.
+ *
+ * <p>The cache is local to each node: on a cluster, a stock location changed on a node is only
+ * seen by the other nodes after their restart.
+ */
+@Singleton
+public class StockLocationHierarchyCache {
+
+  protected final Map<String, Hierarchy> hierarchyCache = new ConcurrentHashMap<>();
+
+  protected final AtomicLong invalidationCount = new AtomicLong();
+
+  /**
+   * Get the ids of a stock location and of all its sub-locations, sub-locations first.
+   *
+   * @param stockLocationId
+   * @param isVirtualInclude false to exclude the virtual sub-locations and their own sub-locations
+   * @return an unmodifiable list
+   */
+  public List<Long> getLocationAndSubLocationIdList(
+      Long stockLocationId, boolean isVirtualInclude) {
+
+    Hierarchy hierarchy = this.getHierarchy();
+
+    return (isVirtualInclude ? hierarchy.descendantMap : hierarchy.nonVirtualDescendantMap)
+        .computeIfAbsent(
+            stockLocationId,
+            id -> {
+              List<Long> idList = new ArrayList<>();
+              this.addLocationAndSubLocationIds(hierarchy, id, isVirtualInclude, idList);
+              return Collections.unmodifiableList(idList);
+            });
+  }
+
+  protected Hierarchy getHierarchy() {
+
+    String tenant = getTenant();
+    Hierarchy hierarchy = hierarchyCache.get(tenant);
+
+    if (hierarchy == null) {
+      // loaded outside of the map, the query may flush and trigger a listener using the cache
+      long loadInvalidationCount = invalidationCount.get();
+      hierarchy = this.load();
+      Hierarchy cachedHierarchy = hierarchyCache.putIfAbsent(tenant, hierarchy);
+
+      if (cachedHierarchy != null) {
+        hierarchy = cachedHierarchy;
+      } else if (loadInvalidationCount != invalidationCount.get()) {
+        // invalidated while loading, the loaded tree may be outdated
+        hierarchyCache.remove(tenant, hierarchy);
+      }
+    }
+
+    return hierarchy;
+  }
+
+  public void invalidate() {
+    this.invalidate(getTenant());
+  }
+
+  /** Clear the cache of the current tenant once the current transaction is committed. */
+  public void invalidateAfterCommit() {
+    String tenant = getTenant();
+    TransactionTool.afterCommit(() -> this.invalidate(tenant));
+  }
+
+  protected void invalidate(String tenant) {
+    invalidationCount.incrementAndGet();
+    hierarchyCache.remove(tenant);
+  }
+
+  protected void addLocationAndSubLocationIds(
+      Hierarchy hierarchy, Long stockLocationId, boolean isVirtualInclude, List<Long> idList) {
+
+    for (Long childId : hierarchy.childMap.getOrDefault(stockLocationId, Collections.emptyList())) {
+      if (isVirtualInclude || !hierarchy.virtualIdSet.contains(childId)) {
+        this.addLocationAndSubLocationIds(hierarchy, childId, isVirtualInclude, idList);
+      }
+    }
+    idList.add(stockLocationId);
+  }
+
+  @SuppressWarnings("unchecked")
+  protected Hierarchy load() {
+
+    Hierarchy hierarchy = new Hierarchy();
+
+    List<Object[]> results =
+        JPA.em()
+            .createQuery(
+                "SELECT self.id, self.parentStockLocation.id, self.typeSelect "
+                    + "FROM StockLocation self "
+                    + "ORDER BY self.id")
+            .getResultList();
+
+    for (Object[] result : results) {
+      Long id = (Long) result[0];
+      if (result[1] != null) {
+        hierarchy.childMap.computeIfAbsent((Long) result[1], key -> new ArrayList<>()).add(id);
+      }
+      if (result[2] != null && (Integer) result[2] == StockLocationRepository.TYPE_VIRTUAL) {
+        hierarchy.virtualIdSet.add(id);
+      }
+    }
+
+    return hierarchy;
+  }
+
+  protected String getTenant() {
+
+    String tenantId = TenantResolver.currentTenantIdentifier();
+
+    return tenantId == null ? TenantConfig.DEFAULT_TENANT_ID : tenantId;
+  }
+
+  /** Stock location tree of a tenant, with the sub-location id lists computed so far. */
+  protected static class Hierarchy {
+
+    protected final Map<Long, List<Long>> childMap = new HashMap<>();
+    protected final Set<Long> virtualIdSet = new HashSet<>();
+    protected final Map<Long, List<Long>> descendantMap = new ConcurrentHashMap<>();
+    protected final Map<Long, List<Long>> nonVirtualDescendantMap = new ConcurrentHashMap<>();
+  }
+}
@@ -142,6 +142,20 @@ public interface StockLocationLineService {
    */
   public StockLocationLine getStockLocationLine(StockLocation stockLocation, Product product);
 
+  /**
+   * Lock the stock location lines and detail location lines of the given products in the given
+   * locations until the end of the transaction. The rows are locked in the order of their location
+   * and product, so that concurrent stock moves lock them in the same order and do not deadlock.
+   * For the lines which do not exist yet, the products are locked instead, so that concurrent stock
+   * moves do not create the same line twice.
+   *
+   * @param stockLocationIdList the ids of the locations
+   * @param productIdList the ids of the products
+   * @param trackingNumberIdList the ids of the tracking numbers of the detail lines to lock
+   */
+  void lockStockLocationLines(
+      List<Long> stockLocationIdList, List<Long> productIdList, List<Long> trackingNumberIdList);
+
   /**
    * Allow to get the location lines of a given product.
    *
@@ -211,6 +225,17 @@ public interface StockLocationLineService {
    */
   BigDecimal computeFutureQty(StockLocationLine stockLocationLine) throws AxelorException;
 
+  /**
+   * Compute and save the future quantity of the stock location lines and detail stock location
+   * lines of a stock location in one pass, with one grouped query for incoming and one for outgoing
+   * planned stock move lines.
+   *
+   * @param stockLocation the stock location to update.
+   * @param productList the products to update, or null to update every line of the stock location.
+   */
+  void updateFutureQty(StockLocation stockLocation, List<Product> productList)
+      throws AxelorException;
+
   /**
    * Create a query to find stock location line of a product of a specific/all company and a
    * specific/all stock location
@@ -19,6 +19,7 @@ package com.axelor.apps.stock.service;
 
 import com.axelor.apps.base.db.Product;
 import com.axelor.apps.base.db.Unit;
+import com.axelor.apps.base.db.repo.UnitRepository;
 import com.axelor.apps.base.service.UnitConversionService;
 import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.apps.stock.db.StockLocation;
@@ -33,6 +34,7 @@ import com.axelor.apps.stock.db.repo.StockMoveRepository;
 import com.axelor.apps.stock.db.repo.StockRulesRepository;
 import com.axelor.apps.stock.exception.IExceptionMessage;
 import com.axelor.apps.tool.StringTool;
+import com.axelor.db.JPA;
 import com.axelor.db.Query;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
@@ -45,7 +47,16 @@ import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.persistence.LockModeType;
+import javax.persistence.TypedQuery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -391,21 +402,142 @@ public class StockLocationLineServiceImpl implements StockLocationLineService {
       LocalDate lastFutureStockMoveDate)
       throws AxelorException {
 
-    if (current) {
-      if (isIncrement) {
-        stockLocationLine.setCurrentQty(stockLocationLine.getCurrentQty().add(qty));
-      } else {
-        stockLocationLine.setCurrentQty(stockLocationLine.getCurrentQty().subtract(qty));
-      }
+    BigDecimal signedQty = isIncrement ? qty : qty.negate();
+    if (current || future) {
+      this.addQty(
+          stockLocationLine,
+          current ? signedQty : BigDecimal.ZERO,
+          future ? signedQty : BigDecimal.ZERO);
     }
     if (future) {
-      stockLocationLine.setFutureQty(computeFutureQty(stockLocationLine));
       stockLocationLine.setLastFutureStockMoveDate(lastFutureStockMoveDate);
     }
 
     return stockLocationLine;
   }
 
+  /**
+   * Add quantities to the current and future quantities of a stock location line. For a persisted
+   * line, the quantities are added by an update statement on the row, which keeps the row locked
+   * until the end of the transaction, so concurrent stock moves on the same line wait for each
+   * other instead of overwriting each other's quantities. The line is then refreshed with the
+   * resulting quantities and version.
+   *
+   * @param stockLocationLine
+   * @param currentQty the quantity to add to the current quantity, negative to remove stock.
+   * @param futureQty the quantity to add to the future quantity, negative to remove stock.
+   */
+  protected void addQty(
+      StockLocationLine stockLocationLine, BigDecimal currentQty, BigDecimal futureQty) {
+    if (stockLocationLine.getId() == null) {
+      stockLocationLine.setCurrentQty(stockLocationLine.getCurrentQty().add(currentQty));
+      stockLocationLine.setFutureQty(stockLocationLine.getFutureQty().add(futureQty));
+      return;
+    }
+
+    JPA.em()
+        .createQuery(
+            "UPDATE StockLocationLine self "
+                + "SET self.currentQty = COALESCE(self.currentQty, 0) + :currentQty, "
+                + "self.futureQty = COALESCE(self.futureQty, 0) + :futureQty, "
+                + "self.version = self.version + 1, self.updatedOn = :updatedOn "
+                + "WHERE self.id = :id")
+        .setParameter("currentQty", currentQty)
+        .setParameter("futureQty", futureQty)
+        .setParameter("updatedOn", LocalDateTime.now())
+        .setParameter("id", stockLocationLine.getId())
+        .executeUpdate();
+    JPA.em().refresh(stockLocationLine);
+  }
+
+  @Override
+  public void lockStockLocationLines(
+      List<Long> stockLocationIdList, List<Long> productIdList, List<Long> trackingNumberIdList) {
+
+    if (stockLocationIdList.isEmpty() || productIdList.isEmpty()) {
+      return;
+    }
+
+    List<StockLocationLine> stockLocationLineList =
+        this.lockExistingStockLocationLines(
+            stockLocationIdList, productIdList, trackingNumberIdList);
+
+    Set<List<Long>> existingKeySet = new HashSet<>();
+    for (StockLocationLine stockLocationLine : stockLocationLineList) {
+      existingKeySet.add(
+          stockLocationLine.getDetailsStockLocation() != null
+              ? Arrays.asList(
+                  stockLocationLine.getDetailsStockLocation().getId(),
+                  null,
+                  stockLocationLine.getTrackingNumber().getId())
+              : Arrays.asList(
+                  stockLocationLine.getStockLocation().getId(),
+                  stockLocationLine.getProduct().getId(),
+                  null));
+    }
+
+    // The lines to create have no row to lock: the rows of their products are locked instead, so
+    // that the same line is not created twice by concurrent stock moves.
+    Set<Long> missingProductIdSet = new TreeSet<>();
+    for (Long stockLocationId : stockLocationIdList) {
+      for (Long productId : productIdList) {
+        if (!existingKeySet.contains(Arrays.asList(stockLocationId, productId, null))) {
+          missingProductIdSet.add(productId);
+        }
+      }
+      for (Long trackingNumberId : trackingNumberIdList) {
+        if (!existingKeySet.contains(Arrays.asList(stockLocationId, null, trackingNumberId))) {
+          missingProductIdSet.add(
+              JPA.find(TrackingNumber.class, trackingNumberId).getProduct().getId());
+        }
+      }
+    }
+    if (missingProductIdSet.isEmpty()) {
+      return;
+    }
+
+    JPA.em()
+        .createQuery(
+            "SELECT self FROM Product self WHERE self.id IN :productIdList ORDER BY self.id",
+            Product.class)
+        .setParameter("productIdList", missingProductIdSet)
+        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+        .getResultList();
+
+    // Lock the lines created by the stock moves which held the product locks.
+    this.lockExistingStockLocationLines(stockLocationIdList, productIdList, trackingNumberIdList);
+  }
+
+  protected List<StockLocationLine> lockExistingStockLocationLines(
+      List<Long> stockLocationIdList, List<Long> productIdList, List<Long> trackingNumberIdList) {
+
+    String trackingNumberFilter =
+        trackingNumberIdList.isEmpty()
+            ? "self.trackingNumber IS NULL"
+            : "(self.trackingNumber IS NULL OR self.trackingNumber.id IN :trackingNumberIdList)";
+
+    TypedQuery<StockLocationLine> query =
+        JPA.em()
+            .createQuery(
+                "SELECT self FROM StockLocationLine self "
+                    + "WHERE (self.stockLocation.id IN :stockLocationIdList "
+                    + "OR self.detailsStockLocation.id IN :stockLocationIdList) "
+                    + "AND self.product.id IN :productIdList AND "
+                    + trackingNumberFilter
+                    + " ORDER BY COALESCE(self.stockLocation.id, self.detailsStockLocation.id), "
+                    + "self.product.id, self.id",
+                StockLocationLine.class)
+            .setParameter("stockLocationIdList", stockLocationIdList)
+            .setParameter("productIdList", productIdList)
+            .setLockMode(LockModeType.PESSIMISTIC_WRITE);
+
+    if (!trackingNumberIdList.isEmpty()) {
+      query.setParameter("trackingNumberIdList", trackingNumberIdList);
+    }
+
+    return query.getResultList();
+  }
+
   @Override
   public StockLocationLine getOrCreateStockLocationLine(
       StockLocation stockLocation, Product product) {
@@ -621,13 +753,6 @@ public class StockLocationLineServiceImpl implements StockLocationLineService {
 
     Product product = stockLocationLine.getProduct();
 
-    BigDecimal futureQty = stockLocationLine.getCurrentQty();
-
-    List<StockMoveLine> incomingStockMoveLineList =
-        findIncomingPlannedStockMoveLines(stockLocationLine);
-    List<StockMoveLine> outgoingStockMoveLineList =
-        findOutgoingPlannedStockMoveLines(stockLocationLine);
-
     if (stockLocationLine.getUnit() == null) {
       throw new AxelorException(
           TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
@@ -636,29 +761,193 @@ public class StockLocationLineServiceImpl implements StockLocationLineService {
           product.getFullName());
     }
 
-    for (StockMoveLine incomingStockMoveLine : incomingStockMoveLineList) {
-      BigDecimal qtyToAdd =
-          unitConversionService.convert(
-              incomingStockMoveLine.getUnit(),
-              stockLocationLine.getUnit(),
-              incomingStockMoveLine.getRealQty(),
-              incomingStockMoveLine.getRealQty().scale(),
-              product);
-      futureQty = futureQty.add(qtyToAdd);
+    return stockLocationLine
+        .getCurrentQty()
+        .add(
+            convertPlannedQty(
+                computePlannedQtyByUnit(stockLocationLine, true), stockLocationLine, product))
+        .subtract(
+            convertPlannedQty(
+                computePlannedQtyByUnit(stockLocationLine, false), stockLocationLine, product));
+  }
+
+  @Override
+  @Transactional(rollbackOn = {Exception.class})
+  public void updateFutureQty(StockLocation stockLocation, List<Product> productList)
+      throws AxelorException {
+    if (productList != null && productList.isEmpty()) {
+      return;
+    }
+    String filter =
+        "(self.stockLocation.id = :stockLocationId "
+            + "OR self.detailsStockLocation.id = :stockLocationId)";
+    if (productList != null) {
+      filter += " AND self.product IN :productList";
+    }
+    Query<StockLocationLine> stockLocationLineQuery =
+        stockLocationLineRepo.all().filter(filter).bind("stockLocationId", stockLocation.getId());
+    if (productList != null) {
+      stockLocationLineQuery.bind("productList", productList);
+    }
+    List<StockLocationLine> stockLocationLineList = stockLocationLineQuery.fetch();
+    if (stockLocationLineList.isEmpty()) {
+      return;
     }
 
-    for (StockMoveLine outgoingStockMoveLine : outgoingStockMoveLineList) {
-      BigDecimal qtyToSubtract =
-          unitConversionService.convert(
-              outgoingStockMoveLine.getUnit(),
-              stockLocationLine.getUnit(),
-              outgoingStockMoveLine.getRealQty(),
-              outgoingStockMoveLine.getRealQty().scale(),
-              product);
-      futureQty = futureQty.subtract(qtyToSubtract);
+    Map<List<Long>, Map<Long, BigDecimal>> incomingQtyMap =
+        computePlannedQtyByUnit(stockLocation, productList, true);
+    Map<List<Long>, Map<Long, BigDecimal>> outgoingQtyMap =
+        computePlannedQtyByUnit(stockLocation, productList, false);
+
+    for (StockLocationLine stockLocationLine : stockLocationLineList) {
+      Product product = stockLocationLine.getProduct();
+      if (stockLocationLine.getUnit() == null) {
+        throw new AxelorException(
+            TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
+            I18n.get(IExceptionMessage.LOCATION_LINE_MISSING_UNIT),
+            stockLocation.getName(),
+            product.getFullName());
+      }
+      List<Long> key =
+          Arrays.asList(
+              product.getId(),
+              stockLocationLine.getDetailsStockLocation() != null
+                  ? stockLocationLine.getTrackingNumber().getId()
+                  : null);
+      stockLocationLine.setFutureQty(
+          stockLocationLine
+              .getCurrentQty()
+              .add(convertPlannedQty(incomingQtyMap.get(key), stockLocationLine, product))
+              .subtract(convertPlannedQty(outgoingQtyMap.get(key), stockLocationLine, product)));
+      stockLocationLineRepo.save(stockLocationLine);
+    }
+  }
+
+  /**
+   * Sum the real quantity of the planned stock move lines of a stock location line, by unit.
+   *
+   * @param stockLocationLine
+   * @param incoming true for the lines moving to the stock location, false for the lines moving
+   *     from it.
+   * @return the quantity sums by unit id.
+   */
+  protected Map<Long, BigDecimal> computePlannedQtyByUnit(
+      StockLocationLine stockLocationLine, boolean incoming) {
+    boolean isDetailsStockLocationLine = stockLocationLine.getDetailsStockLocation() != null;
+    String query =
+        "SELECT unit.id, SUM(self.realQty) FROM StockMoveLine self LEFT JOIN self.unit unit WHERE "
+            + STOCK_MOVE_LINE_FILTER
+            + (incoming
+                ? "AND self.stockMove.toStockLocation.id = :stockLocationId"
+                : "AND self.stockMove.fromStockLocation.id = :stockLocationId");
+    if (isDetailsStockLocationLine) {
+      query += " AND self.trackingNumber.id = :trackingNumberId";
     }
+    query += " GROUP BY unit.id";
 
-    return futureQty;
+    TypedQuery<Object[]> plannedQtyQuery =
+        JPA.em()
+            .createQuery(query, Object[].class)
+            .setParameter("planned", StockMoveRepository.STATUS_PLANNED)
+            .setParameter("productId", stockLocationLine.getProduct().getId());
+    if (isDetailsStockLocationLine) {
+      plannedQtyQuery
+          .setParameter("stockLocationId", stockLocationLine.getDetailsStockLocation().getId())
+          .setParameter("trackingNumberId", stockLocationLine.getTrackingNumber().getId());
+    } else {
+      plannedQtyQuery.setParameter("stockLocationId", stockLocationLine.getStockLocation().getId());
+    }
+
+    Map<Long, BigDecimal> plannedQtyMap = new HashMap<>();
+    for (Object[] result : plannedQtyQuery.getResultList()) {
+      plannedQtyMap.put((Long) result[0], (BigDecimal) result[1]);
+    }
+    return plannedQtyMap;
+  }
+
+  /**
+   * Sum the real quantity of the planned stock move lines of a stock location, by product,
+   * tracking number and unit.
+   *
+   * @param stockLocation
+   * @param productList the products to compute, or null for every product.
+   * @param incoming true for the lines moving to the stock location, false for the lines moving
+   *     from it.
+   * @return the quantity sums by unit id, for each product id and tracking number id pair. The
+   *     pair with a null tracking number holds the sums of every tracking number of the product.
+   */
+  protected Map<List<Long>, Map<Long, BigDecimal>> computePlannedQtyByUnit(
+      StockLocation stockLocation, List<Product> productList, boolean incoming) {
+    String query =
+        "SELECT self.product.id, trackingNumber.id, unit.id, SUM(self.realQty) "
+            + "FROM StockMoveLine self "
+            + "LEFT JOIN self.trackingNumber trackingNumber "
+            + "LEFT JOIN self.unit unit "
+            + "WHERE (self.stockMove.archived IS NULL OR self.archived IS FALSE) "
+            + "AND self.stockMove.statusSelect = :planned "
+            + (incoming
+                ? "AND self.stockMove.toStockLocation.id = :stockLocationId "
+                : "AND self.stockMove.fromStockLocation.id = :stockLocationId ");
+    if (productList != null) {
+      query += "AND self.product IN :productList ";
+    }
+    query += "GROUP BY self.product.id, trackingNumber.id, unit.id";
+
+    TypedQuery<Object[]> plannedQtyQuery =
+        JPA.em()
+            .createQuery(query, Object[].class)
+            .setParameter("planned", StockMoveRepository.STATUS_PLANNED)
+            .setParameter("stockLocationId", stockLocation.getId());
+    if (productList != null) {
+      plannedQtyQuery.setParameter("productList", productList);
+    }
+
+    Map<List<Long>, Map<Long, BigDecimal>> plannedQtyMap = new HashMap<>();
+    for (Object[] result : plannedQtyQuery.getResultList()) {
+      Long productId = (Long) result[0];
+      Long trackingNumberId = (Long) result[1];
+      Long unitId = (Long) result[2];
+      BigDecimal qty = (BigDecimal) result[3];
+      plannedQtyMap
+          .computeIfAbsent(Arrays.asList(productId, null), key -> new HashMap<>())
+          .merge(unitId, qty, BigDecimal::add);
+      if (trackingNumberId != null) {
+        plannedQtyMap
+            .computeIfAbsent(Arrays.asList(productId, trackingNumberId), key -> new HashMap<>())
+            .merge(unitId, qty, BigDecimal::add);
+      }
+    }
+    return plannedQtyMap;
+  }
+
+  /**
+   * Convert quantity sums by unit to the unit of a stock location line, converting each unit once.
+   *
+   * @param plannedQtyMap the quantity sums by unit id, can be null.
+   * @param stockLocationLine
+   * @param product
+   * @return the total quantity in the unit of the stock location line.
+   */
+  protected BigDecimal convertPlannedQty(
+      Map<Long, BigDecimal> plannedQtyMap, StockLocationLine stockLocationLine, Product product)
+      throws AxelorException {
+    BigDecimal plannedQty = BigDecimal.ZERO;
+    if (plannedQtyMap == null) {
+      return plannedQty;
+    }
+    UnitRepository unitRepo = Beans.get(UnitRepository.class);
+    for (Map.Entry<Long, BigDecimal> entry : plannedQtyMap.entrySet()) {
+      BigDecimal qty = entry.getValue();
+      plannedQty =
+          plannedQty.add(
+              unitConversionService.convert(
+                  entry.getKey() != null ? unitRepo.find(entry.getKey()) : null,
+                  stockLocationLine.getUnit(),
+                  qty,
+                  qty.scale(),
+                  product));
+    }
+    return plannedQty;
   }
 
   protected List<StockMoveLine> findIncomingPlannedStockMoveLines(
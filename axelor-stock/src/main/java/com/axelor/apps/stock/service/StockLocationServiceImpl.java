@@ -21,6 +21,7 @@ import com.axelor.apps.base.db.Company;
 import com.axelor.apps.base.db.Product;
 import com.axelor.apps.base.db.Unit;
 import com.axelor.apps.base.db.repo.ProductRepository;
+import com.axelor.apps.base.db.repo.UnitRepository;
 import com.axelor.apps.base.service.UnitConversionService;
 import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.apps.stock.db.StockConfig;
@@ -42,22 +43,26 @@ import com.google.inject.servlet.RequestScoped;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 
 @RequestScoped
 public class StockLocationServiceImpl implements StockLocationService {
 
+  protected static final int ID_LIST_PARTITION_SIZE = 1000;
+
   protected StockLocationRepository stockLocationRepo;
 
   protected StockLocationLineService stockLocationLineService;
 
   protected ProductRepository productRepo;
 
-  protected Set<Long> locationIdSet = new HashSet<>();
+  @Inject protected StockLocationHierarchyCache stockLocationHierarchyCache;
 
   @Inject
   public StockLocationServiceImpl(
@@ -118,31 +123,39 @@ public class StockLocationServiceImpl implements StockLocationService {
     BigDecimal qty = BigDecimal.ZERO;
 
     if (locationId == null || locationId == 0L) {
-      List<StockLocation> stockLocations = getNonVirtualStockLocations(companyId);
-      if (stockLocations.isEmpty()) {
-        return BigDecimal.ZERO;
+      // Quantities of all the non virtual stock locations, summed by unit in a single query.
+      String query =
+          "SELECT self.unit.id, SUM("
+              + (qtyType.equals("real") ? "self.currentQty" : "self.futureQty")
+              + ") FROM StockLocationLine self "
+              + "WHERE self.product.id = :productId "
+              + "AND self.stockLocation.typeSelect != :stockLocationTypSelect "
+              + (companyId != null && companyId != 0L
+                  ? "AND self.stockLocation.company.id = :companyId "
+                  : "")
+              + "GROUP BY self.unit.id";
+      TypedQuery<Object[]> typedQuery =
+          JPA.em()
+              .createQuery(query, Object[].class)
+              .setParameter("productId", productId)
+              .setParameter("stockLocationTypSelect", StockLocationRepository.TYPE_VIRTUAL);
+      if (companyId != null && companyId != 0L) {
+        typedQuery.setParameter("companyId", companyId);
       }
 
-      for (StockLocation stockLocation : stockLocations) {
-        StockLocationLine stockLocationLine =
-            stockLocationLineService.getStockLocationLine(
-                stockLocationRepo.find(stockLocation.getId()), productRepo.find(productId));
-        if (stockLocationLine == null) {
+      UnitRepository unitRepo = Beans.get(UnitRepository.class);
+      for (Object[] result : typedQuery.getResultList()) {
+        BigDecimal unitQty = (BigDecimal) result[1];
+        if (unitQty == null) {
           continue;
         }
-
-        Unit stockLocationLineUnit = stockLocationLine.getUnit();
-        qty =
-            qty.add(
-                qtyType.equals("real")
-                    ? stockLocationLine.getCurrentQty()
-                    : stockLocationLine.getFutureQty());
-
+        Unit stockLocationLineUnit = result[0] != null ? unitRepo.find((Long) result[0]) : null;
         if (productUnit != null && !productUnit.equals(stockLocationLineUnit)) {
-          qty =
+          unitQty =
               unitConversionService.convert(
-                  stockLocationLineUnit, productUnit, qty, qty.scale(), product);
+                  stockLocationLineUnit, productUnit, unitQty, unitQty.scale(), product);
         }
+        qty = qty.add(unitQty);
       }
 
     } else {
@@ -218,12 +231,11 @@ public class StockLocationServiceImpl implements StockLocationService {
 
   @Override
   public Set<Long> getContentStockLocationIds(StockLocation stockLocation) {
-    locationIdSet = new HashSet<>();
-    if (stockLocation != null) {
-      List<StockLocation> stockLocations = getAllLocationAndSubLocation(stockLocation, true);
-      for (StockLocation item : stockLocations) {
-        locationIdSet.add(item.getId());
-      }
+    Set<Long> locationIdSet = new HashSet<>();
+    if (stockLocation != null && stockLocation.getId() != null) {
+      locationIdSet.addAll(
+          stockLocationHierarchyCache.getLocationAndSubLocationIdList(
+              stockLocation.getId(), true));
     } else {
       locationIdSet.add(0L);
     }
@@ -234,34 +246,31 @@ public class StockLocationServiceImpl implements StockLocationService {
   public List<StockLocation> getAllLocationAndSubLocation(
       StockLocation stockLocation, boolean isVirtualInclude) {
 
-    List<StockLocation> resultList = new ArrayList<>();
     if (stockLocation == null) {
-      return resultList;
+      return new ArrayList<>();
+    }
+    if (stockLocation.getId() == null) {
+      return Lists.newArrayList(stockLocation);
     }
-    if (isVirtualInclude) {
-      for (StockLocation subLocation :
-          stockLocationRepo
-              .all()
-              .filter("self.parentStockLocation.id = :stockLocationId")
-              .bind("stockLocationId", stockLocation.getId())
-              .fetch()) {
 
-        resultList.addAll(this.getAllLocationAndSubLocation(subLocation, isVirtualInclude));
-      }
-    } else {
+    List<Long> stockLocationIdList =
+        stockLocationHierarchyCache.getLocationAndSubLocationIdList(
+            stockLocation.getId(), isVirtualInclude);
+    Map<Long, StockLocation> stockLocationMap = new HashMap<>();
+    for (List<Long> idList : Lists.partition(stockLocationIdList, ID_LIST_PARTITION_SIZE)) {
       for (StockLocation subLocation :
-          stockLocationRepo
-              .all()
-              .filter(
-                  "self.parentStockLocation.id = :stockLocationId AND self.typeSelect != :virtual")
-              .bind("stockLocationId", stockLocation.getId())
-              .bind("virtual", StockLocationRepository.TYPE_VIRTUAL)
-              .fetch()) {
+          stockLocationRepo.all().filter("self.id IN :idList").bind("idList", idList).fetch()) {
+        stockLocationMap.put(subLocation.getId(), subLocation);
+      }
+    }
 
-        resultList.addAll(this.getAllLocationAndSubLocation(subLocation, isVirtualInclude));
+    List<StockLocation> resultList = new ArrayList<>();
+    for (Long stockLocationId : stockLocationIdList) {
+      StockLocation subLocation = stockLocationMap.get(stockLocationId);
+      if (subLocation != null) {
+        resultList.add(subLocation);
       }
     }
-    resultList.add(stockLocation);
 
     return resultList;
   }
@@ -293,14 +302,12 @@ public class StockLocationServiceImpl implements StockLocationService {
   @Override
   public List<Long> getAllLocationAndSubLocationId(
       StockLocation stockLocation, boolean isVirtualInclude) {
-    List<StockLocation> stockLocationList =
-        getAllLocationAndSubLocation(stockLocation, isVirtualInclude);
-    List<Long> stockLocationListId = null;
-    if (stockLocationList != null) {
-      stockLocationListId =
-          stockLocationList.stream().map(StockLocation::getId).collect(Collectors.toList());
+    if (stockLocation == null || stockLocation.getId() == null) {
+      return new ArrayList<>();
     }
-    return stockLocationListId;
+    return new ArrayList<>(
+        stockLocationHierarchyCache.getLocationAndSubLocationIdList(
+            stockLocation.getId(), isVirtualInclude));
   }
 
   @Override
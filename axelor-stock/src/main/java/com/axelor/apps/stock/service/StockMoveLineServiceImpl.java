@@ -63,8 +63,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -450,6 +453,10 @@ public class StockMoveLineServiceImpl implements StockMoveLineService {
       throws AxelorException {
 
     stockMoveLineList = MoreObjects.firstNonNull(stockMoveLineList, Collections.emptyList());
+    List<StockMoveLine> stockManagedLineList = this.getStockManagedLineList(stockMoveLineList);
+    this.lockStockLocationLines(fromStockLocation, toStockLocation, stockManagedLineList);
+    // Average prices are computed once per product after all the lines are realized.
+    Map<Long, Product> avgPriceProductMap = new LinkedHashMap<>();
 
     for (StockMoveLine stockMoveLine : stockMoveLineList) {
 
@@ -478,10 +485,79 @@ public class StockMoveLineServiceImpl implements StockMoveLineService {
         if (toStockLocation.getTypeSelect() != StockLocationRepository.TYPE_VIRTUAL
             && toStatus == StockMoveRepository.STATUS_REALIZED) {
           this.updateAveragePriceLocationLine(toStockLocation, stockMoveLine, fromStatus, toStatus);
-          weightedAveragePriceService.computeAvgPriceForProduct(stockMoveLine.getProduct());
+          avgPriceProductMap.put(product.getId(), product);
         }
       }
     }
+
+    weightedAveragePriceService.computeAvgPriceForProducts(avgPriceProductMap.values());
+
+    // The future quantities are added line by line for the stock rules, then computed again for
+    // all the products at once from the planned stock move lines.
+    List<Product> productList =
+        stockManagedLineList.stream()
+            .map(StockMoveLine::getProduct)
+            .distinct()
+            .collect(Collectors.toList());
+    stockLocationLineService.updateFutureQty(fromStockLocation, productList);
+    if (!toStockLocation.equals(fromStockLocation)) {
+      stockLocationLineService.updateFutureQty(toStockLocation, productList);
+    }
+  }
+
+  /**
+   * Get the stock move lines which update stock location lines, that is the lines of storable and
+   * stock managed products.
+   *
+   * @param stockMoveLineList
+   * @return the stock move lines of stock managed products
+   */
+  protected List<StockMoveLine> getStockManagedLineList(List<StockMoveLine> stockMoveLineList) {
+    return stockMoveLineList.stream()
+        .filter(
+            stockMoveLine ->
+                stockMoveLine.getProduct() != null
+                    && stockMoveLine.getProduct().getStockManaged()
+                    && stockMoveLine
+                        .getProduct()
+                        .getProductTypeSelect()
+                        .equals(ProductRepository.PRODUCT_TYPE_STORABLE))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Lock the stock location lines updated by the stock move lines before updating them, in the
+   * order of their location and product, so that concurrent stock moves do not deadlock.
+   *
+   * @param fromStockLocation
+   * @param toStockLocation
+   * @param stockManagedLineList the stock move lines of stock managed products
+   */
+  protected void lockStockLocationLines(
+      StockLocation fromStockLocation,
+      StockLocation toStockLocation,
+      List<StockMoveLine> stockManagedLineList) {
+
+    List<Long> productIdList =
+        stockManagedLineList.stream()
+            .map(StockMoveLine::getProduct)
+            .map(Product::getId)
+            .distinct()
+            .collect(Collectors.toList());
+    List<Long> trackingNumberIdList =
+        stockManagedLineList.stream()
+            .map(StockMoveLine::getTrackingNumber)
+            .filter(Objects::nonNull)
+            .map(TrackingNumber::getId)
+            .distinct()
+            .collect(Collectors.toList());
+
+    stockLocationLineService.lockStockLocationLines(
+        Stream.of(fromStockLocation.getId(), toStockLocation.getId())
+            .distinct()
+            .collect(Collectors.toList()),
+        productIdList,
+        trackingNumberIdList);
   }
 
   @Override
@@ -22,11 +22,23 @@ import com.axelor.apps.base.db.Product;
 import com.axelor.exception.AxelorException;
 import com.google.inject.persist.Transactional;
 import java.math.BigDecimal;
+import java.util.Collection;
 
 public interface WeightedAveragePriceService {
 
   @Transactional
   public void computeAvgPriceForProduct(Product product) throws AxelorException;
 
+  /**
+   * Compute the weighted average price of several products, aggregating their stock location lines
+   * with a single grouped query. Used to update the products of a whole stock move or of mass
+   * receipts at once.
+   *
+   * @param productList
+   * @throws AxelorException
+   */
+  @Transactional
+  public void computeAvgPriceForProducts(Collection<Product> productList) throws AxelorException;
+
   public BigDecimal computeAvgPriceForCompany(Product product, Company company);
 }
@@ -29,12 +29,18 @@ import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.inject.Beans;
 import com.axelor.meta.db.MetaField;
+import com.google.common.base.MoreObjects;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import com.google.inject.servlet.RequestScoped;
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 @RequestScoped
 public class WeightedAveragePriceServiceImpl implements WeightedAveragePriceService {
@@ -56,6 +62,16 @@ public class WeightedAveragePriceServiceImpl implements WeightedAveragePriceServ
   @Override
   @Transactional
   public void computeAvgPriceForProduct(Product product) throws AxelorException {
+    this.computeAvgPriceForProducts(Collections.singletonList(product));
+  }
+
+  @Override
+  @Transactional
+  public void computeAvgPriceForProducts(Collection<Product> productList) throws AxelorException {
+
+    if (productList.isEmpty()) {
+      return;
+    }
 
     Boolean avgPriceHandledByCompany = false;
     Set<MetaField> companySpecificFields =
@@ -66,41 +82,106 @@ public class WeightedAveragePriceServiceImpl implements WeightedAveragePriceServ
         break;
       }
     }
-    if (avgPriceHandledByCompany
-        && product.getProductCompanyList() != null
-        && !product.getProductCompanyList().isEmpty()) {
-      for (ProductCompany productCompany : product.getProductCompanyList()) {
-        Company company = productCompany.getCompany();
-        BigDecimal productAvgPrice = this.computeAvgPriceForCompany(product, company);
+
+    Map<Long, Map<Long, BigDecimal[]>> avgPriceTotalMap =
+        this.getAvgPriceTotalMap(
+            productList.stream().map(Product::getId).collect(Collectors.toList()));
+
+    for (Product product : productList) {
+      Map<Long, BigDecimal[]> companyTotalMap =
+          avgPriceTotalMap.getOrDefault(product.getId(), Collections.emptyMap());
+
+      if (avgPriceHandledByCompany
+          && product.getProductCompanyList() != null
+          && !product.getProductCompanyList().isEmpty()) {
+        for (ProductCompany productCompany : product.getProductCompanyList()) {
+          Company company = productCompany.getCompany();
+          BigDecimal productAvgPrice =
+              this.computeAvgPrice(
+                  Collections.singletonList(companyTotalMap.get(company.getId())));
+          if (productAvgPrice.compareTo(BigDecimal.ZERO) == 0) {
+            continue;
+          }
+
+          productCompanyService.set(product, "avgPrice", productAvgPrice, company);
+          if ((Integer) productCompanyService.get(product, "costTypeSelect", company)
+              == ProductRepository.COST_TYPE_AVERAGE_PRICE) {
+            productCompanyService.set(product, "costPrice", productAvgPrice, company);
+            if ((Boolean) productCompanyService.get(product, "autoUpdateSalePrice", company)) {
+              Beans.get(ProductService.class).updateSalePrice(product, company);
+            }
+          }
+        }
+      } else {
+        BigDecimal productAvgPrice = this.computeAvgPrice(companyTotalMap.values());
+
         if (productAvgPrice.compareTo(BigDecimal.ZERO) == 0) {
           continue;
         }
 
-        productCompanyService.set(product, "avgPrice", productAvgPrice, company);
-        if ((Integer) productCompanyService.get(product, "costTypeSelect", company)
-            == ProductRepository.COST_TYPE_AVERAGE_PRICE) {
-          productCompanyService.set(product, "costPrice", productAvgPrice, company);
-          if ((Boolean) productCompanyService.get(product, "autoUpdateSalePrice", company)) {
-            Beans.get(ProductService.class).updateSalePrice(product, company);
+        product.setAvgPrice(productAvgPrice);
+        if (product.getCostTypeSelect() == ProductRepository.COST_TYPE_AVERAGE_PRICE) {
+          product.setCostPrice(productAvgPrice);
+          if (product.getAutoUpdateSalePrice()) {
+            Beans.get(ProductService.class).updateSalePrice(product, null);
           }
         }
       }
-    } else {
-      BigDecimal productAvgPrice = this.computeAvgPriceForCompany(product, null);
+      productRepo.save(product);
+    }
+  }
 
-      if (productAvgPrice.compareTo(BigDecimal.ZERO) == 0) {
-        return;
-      }
+  /**
+   * Sum the stock value and the quantity of the non virtual stock location lines of the given
+   * products with a single grouped query.
+   *
+   * @param productIdList
+   * @return the sums of value and quantity, by stock location company id (null when the stock
+   *     location has no company), by product id.
+   */
+  protected Map<Long, Map<Long, BigDecimal[]>> getAvgPriceTotalMap(List<Long> productIdList) {
+    List<Object[]> results =
+        JPA.em()
+            .createQuery(
+                "SELECT self.product.id, self.stockLocation.company.id, "
+                    + "SUM(self.avgPrice * self.currentQty), SUM(self.currentQty) "
+                    + "FROM StockLocationLine self "
+                    + "WHERE self.product.id IN :productIdList "
+                    + "AND self.stockLocation.typeSelect != :typeVirtual "
+                    + "GROUP BY self.product.id, self.stockLocation.company.id",
+                Object[].class)
+            .setParameter("productIdList", productIdList)
+            .setParameter("typeVirtual", StockLocationRepository.TYPE_VIRTUAL)
+            .getResultList();
 
-      product.setAvgPrice(productAvgPrice);
-      if (product.getCostTypeSelect() == ProductRepository.COST_TYPE_AVERAGE_PRICE) {
-        product.setCostPrice(productAvgPrice);
-        if (product.getAutoUpdateSalePrice()) {
-          Beans.get(ProductService.class).updateSalePrice(product, null);
-        }
+    Map<Long, Map<Long, BigDecimal[]>> avgPriceTotalMap = new HashMap<>();
+    for (Object[] result : results) {
+      avgPriceTotalMap
+          .computeIfAbsent((Long) result[0], productId -> new HashMap<>())
+          .put(
+              (Long) result[1],
+              new BigDecimal[] {
+                MoreObjects.firstNonNull((BigDecimal) result[2], BigDecimal.ZERO),
+                MoreObjects.firstNonNull((BigDecimal) result[3], BigDecimal.ZERO)
+              });
+    }
+    return avgPriceTotalMap;
+  }
+
+  protected BigDecimal computeAvgPrice(Collection<BigDecimal[]> totalList) {
+    BigDecimal productAvgPrice = BigDecimal.ZERO;
+    BigDecimal qtyTot = BigDecimal.ZERO;
+    for (BigDecimal[] total : totalList) {
+      if (total != null) {
+        productAvgPrice = productAvgPrice.add(total[0]);
+        qtyTot = qtyTot.add(total[1]);
       }
     }
-    productRepo.save(product);
+    if (qtyTot.compareTo(BigDecimal.ZERO) == 0) {
+      return BigDecimal.ZERO;
+    }
+    int scale = appBaseService.getNbDecimalDigitForUnitPrice();
+    return productAvgPrice.divide(qtyTot, scale, BigDecimal.ROUND_HALF_UP);
   }
 
   @Override
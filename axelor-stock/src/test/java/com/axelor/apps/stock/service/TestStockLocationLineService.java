@@ -0,0 +1,122 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.stock.service;
+
+import com.axelor.apps.stock.db.StockLocationLine;
+import com.axelor.apps.stock.db.repo.StockLocationLineRepository;
+import com.axelor.db.JPA;
+import com.axelor.db.JpaModule;
+import com.axelor.exception.AxelorException;
+import com.axelor.test.GuiceModules;
+import com.axelor.test.GuiceRunner;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.persist.UnitOfWork;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(GuiceRunner.class)
+@GuiceModules({TestStockLocationLineService.MyModule.class})
+public class TestStockLocationLineService {
+
+  protected static final int THREAD_COUNT = 2;
+  protected static final int UPDATE_COUNT = 50;
+
+  public static class MyModule extends AbstractModule {
+
+    @Override
+    protected void configure() {
+      install(new JpaModule("testUnit", true, true));
+    }
+  }
+
+  @Inject protected StockLocationLineRepository stockLocationLineRepo;
+
+  @Inject protected UnitOfWork unitOfWork;
+
+  protected StockLocationLineService stockLocationLineService;
+
+  @Before
+  public void prepare() {
+    stockLocationLineService =
+        new StockLocationLineServiceImpl(stockLocationLineRepo, null, null, null, null, null);
+  }
+
+  @Test
+  public void testConcurrentUpdatesAreNotLost() throws Exception {
+    StockLocationLine stockLocationLine = new StockLocationLine();
+    stockLocationLine.setCurrentQty(BigDecimal.ZERO);
+    stockLocationLine.setFutureQty(BigDecimal.ZERO);
+    JPA.runInTransaction(() -> stockLocationLineRepo.save(stockLocationLine));
+    Long stockLocationLineId = stockLocationLine.getId();
+
+    // Every thread loads the line before the other threads update it, so the threads update the
+    // line from the same stale version.
+    CyclicBarrier barrier = new CyclicBarrier(THREAD_COUNT);
+    ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+    try {
+      List<Future<?>> futureList = new ArrayList<>();
+      for (int i = 0; i < THREAD_COUNT; i++) {
+        futureList.add(
+            executor.submit(
+                () -> {
+                  try {
+                    StockLocationLine line = stockLocationLineRepo.find(stockLocationLineId);
+                    barrier.await();
+                    for (int j = 0; j < UPDATE_COUNT; j++) {
+                      JPA.runInTransaction(() -> addOne(line));
+                    }
+                  } finally {
+                    unitOfWork.end();
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> future : futureList) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    JPA.em().clear();
+    StockLocationLine result = stockLocationLineRepo.find(stockLocationLineId);
+    BigDecimal expectedQty = BigDecimal.valueOf(THREAD_COUNT * UPDATE_COUNT);
+    Assert.assertEquals(0, expectedQty.compareTo(result.getCurrentQty()));
+    Assert.assertEquals(0, expectedQty.compareTo(result.getFutureQty()));
+  }
+
+  protected void addOne(StockLocationLine stockLocationLine) {
+    try {
+      stockLocationLineService.updateLocation(
+          stockLocationLine, null, null, BigDecimal.ONE, true, true, true, null);
+      stockLocationLineRepo.save(stockLocationLine);
+    } catch (AxelorException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
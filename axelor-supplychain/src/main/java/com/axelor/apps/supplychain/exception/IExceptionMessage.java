@@ -143,6 +143,8 @@ public interface IExceptionMessage {
   static final String MRP_TOO_MANY_ITERATIONS = /*$$(*/
       "The process was stopped because the computation is stuck in an infinite loop. This error can be caused by a configuration error." /*)*/;
   static final String MRP_ALREADY_STARTED = /*$$(*/ "Mrp calculation is already on going." /*)*/;
+  static final String MRP_PRODUCT_COMPUTATION_ERROR = /*$$(*/
+      "Error during the computation of product %s: %s" /*)*/;
 
   //  Mrp Forecast
   static final String MRP_FORECAST_CONFIRM_WRONG_STATUS = /*$$(*/
@@ -26,6 +26,7 @@ import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.exception.AxelorException;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
+import java.math.BigDecimal;
 
 public class AccountCustomerServiceSupplyChain extends AccountCustomerService {
 
@@ -46,19 +47,16 @@ public class AccountCustomerServiceSupplyChain extends AccountCustomerService {
   @Transactional(rollbackOn = {Exception.class})
   public AccountingSituation updateAccountingSituationCustomerAccount(
       AccountingSituation accountingSituation,
-      boolean updateCustAccount,
-      boolean updateDueCustAccount,
-      boolean updateDueDebtRecoveryCustAccount)
+      BigDecimal balance,
+      BigDecimal balanceDue,
+      BigDecimal balanceDueDebtRecovery)
       throws AxelorException {
 
     accountingSituation =
         super.updateAccountingSituationCustomerAccount(
-            accountingSituation,
-            updateCustAccount,
-            updateDueCustAccount,
-            updateDueDebtRecoveryCustAccount);
+            accountingSituation, balance, balanceDue, balanceDueDebtRecovery);
 
-    if (updateCustAccount && appBaseService.isApp("supplychain")) {
+    if (balance != null && appBaseService.isApp("supplychain")) {
       accountingSituationService.updateCustomerCredit(accountingSituation.getPartner());
     }
 
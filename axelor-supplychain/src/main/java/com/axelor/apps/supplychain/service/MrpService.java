@@ -36,6 +36,24 @@ public interface MrpService extends Callable<Mrp> {
 
   public void runCalculation(Mrp mrp) throws AxelorException;
 
+  /**
+   * Compute again only the products impacted by the documents created, updated or removed since
+   * the last successful calculation. Run a complete calculation if the mrp has never been
+   * successfully computed.
+   *
+   * @param mrp
+   * @throws AxelorException
+   */
+  public void runIncrementalCalculation(Mrp mrp) throws AxelorException;
+
+  /**
+   * To call before using it as a callable, to run an incremental calculation instead of a complete
+   * one.
+   *
+   * @param incremental
+   */
+  public void setIncremental(boolean incremental);
+
   public void generateProposals(Mrp mrp, boolean isProposalsPerSupplier) throws AxelorException;
 
   public void reset(Mrp mrp);
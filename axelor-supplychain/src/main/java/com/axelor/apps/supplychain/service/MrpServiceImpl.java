@@ -56,6 +56,7 @@ import com.axelor.apps.supplychain.db.MrpLine;
 import com.axelor.apps.supplychain.db.MrpLineOrigin;
 import com.axelor.apps.supplychain.db.MrpLineType;
 import com.axelor.apps.supplychain.db.repo.MrpForecastRepository;
+import com.axelor.apps.supplychain.db.repo.MrpLineOriginRepository;
 import com.axelor.apps.supplychain.db.repo.MrpLineRepository;
 import com.axelor.apps.supplychain.db.repo.MrpLineTypeRepository;
 import com.axelor.apps.supplychain.db.repo.MrpRepository;
@@ -65,29 +66,39 @@ import com.axelor.auth.AuthUtils;
 import com.axelor.db.JPA;
 import com.axelor.db.Model;
 import com.axelor.db.Query;
+import com.axelor.db.tenants.TenantAware;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
+import com.axelor.inject.Beans;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
+import com.google.inject.persist.UnitOfWork;
 import com.google.inject.servlet.RequestScoper;
 import com.google.inject.servlet.ServletScopes;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
@@ -97,6 +108,8 @@ public class MrpServiceImpl implements MrpService {
 
   private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
   private static final Integer ITERATIONS = 100;
+  protected static final int PRODUCT_CHUNK_SIZE = 500;
+  protected static final int PROGRESS_STEP = 100;
 
   protected MrpRepository mrpRepository;
   protected StockLocationRepository stockLocationRepository;
@@ -122,6 +135,12 @@ public class MrpServiceImpl implements MrpService {
   protected Map<Long, Integer> productMap;
   protected Mrp mrp;
   protected LocalDate today;
+  protected Object proposalLock = new Object();
+
+  /** Products computed by an incremental calculation, null for a complete calculation. */
+  protected Set<Long> productIdToRecomputeSet;
+
+  protected boolean incremental;
 
   @Inject
   public MrpServiceImpl(
@@ -168,6 +187,11 @@ public class MrpServiceImpl implements MrpService {
     this.mrp = mrp;
   }
 
+  @Override
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
   @Override
   public void runCalculation(Mrp mrp) throws AxelorException {
 
@@ -218,6 +242,9 @@ public class MrpServiceImpl implements MrpService {
 
     mrp.setStatusSelect(MrpRepository.STATUS_DRAFT);
     mrp.setErrorLog(null);
+    mrp.setTotalProductNb(0);
+    mrp.setComputedProductNb(0);
+    mrp.setFailedProductNb(0);
 
     mrpRepository.save(mrp);
   }
@@ -226,7 +253,26 @@ public class MrpServiceImpl implements MrpService {
 
     log.debug("Complete MRP");
 
-    // Initialize
+    // Initialize, already done by an incremental calculation
+    if (this.productIdToRecomputeSet == null) {
+      this.initProductsAndStockLocations(mrp);
+    } else {
+      this.mrp = mrp;
+      this.productMap.keySet().retainAll(this.productIdToRecomputeSet);
+    }
+
+    // Get the stock for each product on each stock location
+    this.createAvailableStockMrpLines();
+
+    this.createPurchaseMrpLines();
+
+    this.createSaleOrderMrpLines();
+
+    this.createSaleForecastMrpLines();
+  }
+
+  protected void initProductsAndStockLocations(Mrp mrp) throws AxelorException {
+
     this.mrp = mrp;
     List<StockLocation> slList =
         stockLocationService.getAllLocationAndSubLocation(mrp.getStockLocation(), false).stream()
@@ -241,14 +287,179 @@ public class MrpServiceImpl implements MrpService {
           TraceBackRepository.CATEGORY_NO_VALUE,
           I18n.get(IExceptionMessage.MRP_MISSING_STOCK_LOCATION_VALID));
     }
-    // Get the stock for each product on each stock location
-    this.createAvailableStockMrpLines();
+  }
 
-    this.createPurchaseMrpLines();
+  @Override
+  public void runIncrementalCalculation(Mrp mrp) throws AxelorException {
 
-    this.createSaleOrderMrpLines();
+    mrp = mrpRepository.find(mrp.getId());
 
-    this.createSaleForecastMrpLines();
+    if (mrp.getStatusSelect() != MrpRepository.STATUS_CALCULATION_ENDED
+        || mrp.getStartDateTime() == null) {
+      this.runCalculation(mrp);
+      return;
+    }
+
+    LocalDateTime lastRunDateTime = mrp.getStartDateTime();
+    today = appBaseService.getTodayDate(mrp.getStockLocation().getCompany());
+
+    this.initProductsAndStockLocations(mrp);
+    Set<Long> productIdSet = this.getProductIdSetToRecompute(lastRunDateTime);
+    productIdSet.retainAll(this.productMap.keySet());
+
+    log.debug("Incremental MRP: {} products to recompute", productIdSet.size());
+
+    if (productIdSet.isEmpty()) {
+      return;
+    }
+
+    this.productIdToRecomputeSet = productIdSet;
+    try {
+      this.resetProducts(mrpRepository.find(mrp.getId()), productIdSet);
+
+      this.startMrp(mrpRepository.find(mrp.getId()));
+      this.completeMrp(mrpRepository.find(mrp.getId()));
+      this.doCalculation(mrpRepository.find(mrp.getId()));
+      this.finish(mrpRepository.find(mrp.getId()));
+    } finally {
+      this.productIdToRecomputeSet = null;
+    }
+  }
+
+  /**
+   * Same as {@link #reset(Mrp)}, restricted to the lines of the given products.
+   *
+   * @param mrp
+   * @param productIdSet
+   */
+  @Transactional
+  protected void resetProducts(Mrp mrp, Set<Long> productIdSet) {
+
+    for (List<Long> productIdChunk :
+        Lists.partition(new ArrayList<>(productIdSet), PRODUCT_CHUNK_SIZE)) {
+      mrpLineRepository
+          .all()
+          .filter(
+              "self.mrp.id = ?1 AND self.isEditedByUser = false AND self.product.id IN (?2)",
+              mrp.getId(),
+              productIdChunk)
+          .remove();
+      mrpLineRepository
+          .all()
+          .filter(
+              "self.mrp.id = ?1 AND self.isEditedByUser = true AND self.maturityDate < ?2 "
+                  + "AND self.product.id IN (?3)",
+              mrp.getId(),
+              today,
+              productIdChunk)
+          .update("maturityDate", today);
+    }
+
+    mrp.setErrorLog(null);
+    mrp.setTotalProductNb(0);
+    mrp.setComputedProductNb(0);
+    mrp.setFailedProductNb(0);
+    mrpRepository.save(mrp);
+  }
+
+  /**
+   * Get the products whose lines must be computed again since the last run.
+   *
+   * @param lastRunDateTime the start date time of the last successful calculation
+   * @return a mutable set of product ids
+   */
+  protected Set<Long> getProductIdSetToRecompute(LocalDateTime lastRunDateTime) {
+
+    return this.getChangedProductIdSet(lastRunDateTime);
+  }
+
+  /**
+   * Get the products with a sale order line, a purchase order line, a forecast or a stock location
+   * line created or updated since the given date time, the products moved from or to the stock
+   * locations by a stock move updated since then, and the products of the lines whose origin has
+   * been removed.
+   *
+   * @param lastRunDateTime
+   * @return a mutable set of product ids
+   */
+  protected Set<Long> getChangedProductIdSet(LocalDateTime lastRunDateTime) {
+
+    Set<Long> productIdSet = new HashSet<>();
+
+    productIdSet.addAll(
+        this.getChangedProductIdList(
+            "SELECT DISTINCT self.product.id FROM SaleOrderLine self "
+                + "WHERE self.saleOrder.stockLocation IN (:stockLocationList) "
+                + "AND (COALESCE(self.updatedOn, self.createdOn) > :lastRunDateTime "
+                + "OR COALESCE(self.saleOrder.updatedOn, self.saleOrder.createdOn) "
+                + "> :lastRunDateTime)",
+            lastRunDateTime));
+    productIdSet.addAll(
+        this.getChangedProductIdList(
+            "SELECT DISTINCT self.product.id FROM PurchaseOrderLine self "
+                + "WHERE self.purchaseOrder.stockLocation IN (:stockLocationList) "
+                + "AND (COALESCE(self.updatedOn, self.createdOn) > :lastRunDateTime "
+                + "OR COALESCE(self.purchaseOrder.updatedOn, self.purchaseOrder.createdOn) "
+                + "> :lastRunDateTime)",
+            lastRunDateTime));
+    productIdSet.addAll(
+        this.getChangedProductIdList(
+            "SELECT DISTINCT self.product.id FROM MrpForecast self "
+                + "WHERE self.stockLocation IN (:stockLocationList) "
+                + "AND COALESCE(self.updatedOn, self.createdOn) > :lastRunDateTime",
+            lastRunDateTime));
+    productIdSet.addAll(
+        this.getChangedProductIdList(
+            "SELECT DISTINCT self.product.id FROM StockLocationLine self "
+                + "WHERE self.stockLocation IN (:stockLocationList) "
+                + "AND COALESCE(self.updatedOn, self.createdOn) > :lastRunDateTime",
+            lastRunDateTime));
+    // stock location line quantities may be updated without their audit dates, the stock moves
+    // realized or canceled since the last run are checked too
+    productIdSet.addAll(
+        this.getChangedProductIdList(
+            "SELECT DISTINCT self.product.id FROM StockMoveLine self "
+                + "WHERE (self.stockMove.fromStockLocation IN (:stockLocationList) "
+                + "OR self.stockMove.toStockLocation IN (:stockLocationList)) "
+                + "AND COALESCE(self.stockMove.updatedOn, self.stockMove.createdOn) "
+                + "> :lastRunDateTime",
+            lastRunDateTime));
+
+    productIdSet.addAll(
+        this.getRemovedOriginProductIdList(
+            "SaleOrderLine", MrpLineOriginRepository.RELATED_TO_SALE_ORDER_LINE));
+    productIdSet.addAll(
+        this.getRemovedOriginProductIdList(
+            "PurchaseOrderLine", MrpLineOriginRepository.RELATED_TO_PURCHASE_ORDER_LINE));
+    productIdSet.addAll(
+        this.getRemovedOriginProductIdList(
+            "MrpForecast", MrpLineOriginRepository.RELATED_TO_MRP_FORECAST));
+
+    return productIdSet;
+  }
+
+  protected List<Long> getChangedProductIdList(String query, LocalDateTime lastRunDateTime) {
+
+    return JPA.em()
+        .createQuery(query, Long.class)
+        .setParameter("stockLocationList", this.stockLocationList)
+        .setParameter("lastRunDateTime", lastRunDateTime)
+        .getResultList();
+  }
+
+  protected List<Long> getRemovedOriginProductIdList(String entityName, String relatedToSelect) {
+
+    return JPA.em()
+        .createQuery(
+            "SELECT DISTINCT self.mrpLine.product.id FROM MrpLineOrigin self "
+                + "WHERE self.mrpLine.mrp.id = :mrpId AND self.relatedToSelect = :relatedToSelect "
+                + "AND NOT EXISTS (SELECT origin.id FROM "
+                + entityName
+                + " origin WHERE origin.id = self.relatedToSelectId)",
+            Long.class)
+        .setParameter("mrpId", mrp.getId())
+        .setParameter("relatedToSelect", relatedToSelect)
+        .getResultList();
   }
 
   protected void doCalculation(Mrp mrp) throws AxelorException {
@@ -275,6 +486,16 @@ public class MrpServiceImpl implements MrpService {
 
   protected void checkInsufficientCumulativeQty() throws AxelorException {
 
+    if (mrp.getComputationModeSelect() == MrpRepository.COMPUTATION_MODE_IN_MEMORY) {
+      this.checkInsufficientCumulativeQtyInMemory();
+      return;
+    }
+
+    if (mrp.getComputationModeSelect() == MrpRepository.COMPUTATION_MODE_PARALLEL) {
+      this.checkInsufficientCumulativeQtyInParallel();
+      return;
+    }
+
     for (int level = 0; level <= this.getMaxLevel(); level++) {
 
       for (Product product : this.getProductList(level)) {
@@ -284,6 +505,309 @@ public class MrpServiceImpl implements MrpService {
     }
   }
 
+  /**
+   * In memory version of {@link #checkInsufficientCumulativeQty()}: the lines of a whole level are
+   * loaded at once, cumulative quantities are computed on the loaded lines and the lines are
+   * persisted at the end of the level. The lines of a product are only fetched again when a
+   * proposal has been created for this product.
+   *
+   * @throws AxelorException
+   */
+  protected void checkInsufficientCumulativeQtyInMemory() throws AxelorException {
+
+    for (int level = 0; level <= this.getMaxLevel(); level++) {
+
+      Map<Long, List<MrpLine>> timelineMap = this.getLevelMrpLineMap(level);
+
+      for (Map.Entry<Long, List<MrpLine>> timeline : timelineMap.entrySet()) {
+
+        this.checkInsufficientCumulativeQtyInMemory(
+            productRepository.find(timeline.getKey()), timeline.getValue());
+      }
+
+      this.saveMrpLines(timelineMap.values());
+      this.clearSession();
+    }
+  }
+
+  protected void checkInsufficientCumulativeQtyInMemory(Product product, List<MrpLine> timeline)
+      throws AxelorException {
+
+    final int MAX_ITERATION = 1000;
+
+    for (int counter = 0; ; counter++) {
+
+      if (counter > MAX_ITERATION) {
+        throw new AxelorException(
+            TraceBackRepository.CATEGORY_INCONSISTENCY,
+            I18n.get(IExceptionMessage.MRP_TOO_MANY_ITERATIONS));
+      }
+
+      this.computeCumulativeQty(timeline);
+
+      boolean doASecondPass = false;
+
+      for (MrpLine mrpLine : timeline) {
+        if (this.isInsufficientCumulativeQty(mrpLine, counter == 0)
+            && this.checkInsufficientCumulativeQtyWithLock(mrpLine, product, counter == 0)) {
+          doASecondPass = true;
+          break;
+        }
+      }
+
+      if (!doASecondPass) {
+        return;
+      }
+
+      // a proposal has been created or merged in an existing line
+      timeline.clear();
+      timeline.addAll(this.getProductMrpLineList(product));
+    }
+  }
+
+  /**
+   * Proposals can create or update lines of other products (the components of a manufactured
+   * product), so they are created one at a time when products are computed in parallel.
+   */
+  protected boolean checkInsufficientCumulativeQtyWithLock(
+      MrpLine mrpLine, Product product, boolean firstPass) throws AxelorException {
+
+    synchronized (proposalLock) {
+      return this.checkInsufficientCumulativeQty(mrpLine, product, firstPass);
+    }
+  }
+
+  /**
+   * Parallel version of {@link #checkInsufficientCumulativeQty()}: the levels are still computed
+   * one after the other, but the products of a level are dispatched to a pool of workers, each one
+   * using its own entity manager and transactions. Errors are saved in the mrp without stopping the
+   * computation of the other products.
+   *
+   * @throws AxelorException
+   */
+  protected void checkInsufficientCumulativeQtyInParallel() throws AxelorException {
+
+    ExecutorService executor =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    int computedProductNb = 0;
+    List<String> errorList = Collections.synchronizedList(new ArrayList<>());
+
+    this.initProgress(mrpRepository.find(mrp.getId()), this.productMap.size());
+
+    // the workers get a copy of the state of the computation, only the lock is shared
+    Long mrpId = mrp.getId();
+    LocalDate workerToday = this.today;
+    Map<Long, Integer> workerProductMap =
+        Collections.unmodifiableMap(new HashMap<>(this.productMap));
+
+    try {
+      for (int level = 0; level <= this.getMaxLevel(); level++) {
+
+        List<Future<?>> futureList = new ArrayList<>();
+
+        for (Long productId : this.getProductIdList(level)) {
+          futureList.add(
+              executor.submit(
+                  this.withTenant(
+                      () ->
+                          this.computeProductInWorker(
+                              mrpId, workerToday, workerProductMap, productId, errorList))));
+        }
+
+        for (Future<?> future : futureList) {
+          future.get();
+          if (++computedProductNb % PROGRESS_STEP == 0) {
+            this.updateProgress(
+                mrpRepository.find(mrp.getId()), computedProductNb, new ArrayList<>(errorList));
+          }
+        }
+
+        this.updateProgress(
+            mrpRepository.find(mrp.getId()), computedProductNb, new ArrayList<>(errorList));
+        this.clearSession();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AxelorException(e, TraceBackRepository.CATEGORY_INCONSISTENCY);
+    } catch (ExecutionException e) {
+      throw new AxelorException(e.getCause(), TraceBackRepository.CATEGORY_INCONSISTENCY);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Wrap a task so that it runs with the tenant of the current thread.
+   *
+   * @param task
+   * @return
+   */
+  protected Runnable withTenant(Runnable task) {
+    return new TenantAware(task).withTransaction(false);
+  }
+
+  /**
+   * Compute the cumulative qty and the proposals of one product in a worker thread, with its own
+   * request scope, unit of work and service instance.
+   *
+   * @param mrpId
+   * @param today
+   * @param productMap the levels of the products, not modified by the workers
+   * @param productId
+   * @param errorList the list to add the error message to if the computation fails
+   */
+  protected void computeProductInWorker(
+      Long mrpId,
+      LocalDate today,
+      Map<Long, Integer> productMap,
+      Long productId,
+      List<String> errorList) {
+
+    final RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      MrpServiceImpl workerService = this.createWorkerService();
+      workerService.initWorker(mrpRepository.find(mrpId), today, productMap, proposalLock);
+      String error = workerService.computeProduct(productId);
+      if (error != null) {
+        errorList.add(error);
+      }
+    } finally {
+      Beans.get(UnitOfWork.class).end();
+    }
+  }
+
+  /**
+   * Create the service used by a worker thread, so that the workers never share the mrp loaded in
+   * another entity manager.
+   *
+   * @return a new instance of the service
+   */
+  protected MrpServiceImpl createWorkerService() {
+    return (MrpServiceImpl) Beans.get(MrpService.class);
+  }
+
+  /**
+   * Initialize the service of a worker thread with the state of the computation.
+   *
+   * @param mrp the mrp, loaded in the entity manager of the worker
+   * @param today
+   * @param productMap
+   * @param proposalLock the lock shared by the workers of the computation
+   */
+  protected void initWorker(
+      Mrp mrp, LocalDate today, Map<Long, Integer> productMap, Object proposalLock) {
+    this.mrp = mrp;
+    this.today = today;
+    this.productMap = productMap;
+    this.proposalLock = proposalLock;
+  }
+
+  /**
+   * Compute the cumulative qty and the proposals of one product.
+   *
+   * @param productId
+   * @return the error message if the computation failed, null otherwise
+   */
+  protected String computeProduct(Long productId) {
+
+    Product product = productRepository.find(productId);
+    try {
+      List<MrpLine> timeline = this.getProductMrpLineList(product);
+      this.checkInsufficientCumulativeQtyInMemory(product, timeline);
+      this.saveMrpLines(Collections.singletonList(timeline));
+      return null;
+    } catch (Exception e) {
+      TraceBackService.trace(e);
+      return String.format(
+          I18n.get(IExceptionMessage.MRP_PRODUCT_COMPUTATION_ERROR),
+          product.getFullName(),
+          e.getMessage());
+    }
+  }
+
+  @Transactional
+  protected void initProgress(Mrp mrp, int totalProductNb) {
+    mrp.setTotalProductNb(totalProductNb);
+    mrp.setComputedProductNb(0);
+    mrp.setFailedProductNb(0);
+    mrpRepository.save(mrp);
+  }
+
+  @Transactional
+  protected void updateProgress(Mrp mrp, int computedProductNb, List<String> errorList) {
+    mrp.setComputedProductNb(computedProductNb);
+    mrp.setFailedProductNb(errorList.size());
+    if (!errorList.isEmpty()) {
+      mrp.setErrorLog(String.join("\n", errorList));
+    }
+    mrpRepository.save(mrp);
+  }
+
+  protected List<Long> getProductIdList(int level) {
+
+    return this.productMap.entrySet().stream()
+        .filter(entry -> entry.getValue() == level)
+        .map(Map.Entry::getKey)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Load the lines of every product of the given level with one query per chunk of products.
+   *
+   * @param level
+   * @return a map of product id to the sorted list of lines of this product
+   */
+  protected Map<Long, List<MrpLine>> getLevelMrpLineMap(int level) {
+
+    List<Long> productIdList = this.getProductIdList(level);
+
+    Map<Long, List<MrpLine>> timelineMap = new LinkedHashMap<>();
+    productIdList.forEach(productId -> timelineMap.put(productId, new ArrayList<>()));
+
+    for (List<Long> productIdChunk : Lists.partition(productIdList, PRODUCT_CHUNK_SIZE)) {
+      List<MrpLine> mrpLineList =
+          mrpLineRepository
+              .all()
+              .filter("self.mrp.id = ?1 AND self.product.id IN (?2)", mrp.getId(), productIdChunk)
+              .order("maturityDate")
+              .order("mrpLineType.typeSelect")
+              .order("mrpLineType.sequence")
+              .order("id")
+              .fetch();
+
+      for (MrpLine mrpLine : mrpLineList) {
+        timelineMap.get(mrpLine.getProduct().getId()).add(mrpLine);
+      }
+    }
+
+    return timelineMap;
+  }
+
+  @Transactional
+  protected void saveMrpLines(Collection<List<MrpLine>> mrpLineLists) {
+
+    for (List<MrpLine> mrpLineList : mrpLineLists) {
+      mrpLineList.forEach(mrpLineRepository::save);
+    }
+  }
+
+  /** Clear the persistence context between two steps of the computation. */
+  protected void clearSession() {
+    JPA.clear();
+  }
+
+  protected List<MrpLine> getProductMrpLineList(Product product) {
+
+    return mrpLineRepository
+        .all()
+        .filter("self.mrp.id = ?1 AND self.product.id = ?2", mrp.getId(), product.getId())
+        .order("maturityDate")
+        .order("mrpLineType.typeSelect")
+        .order("mrpLineType.sequence")
+        .order("id")
+        .fetch();
+  }
+
   /**
    * Get the list of product for a level
    *
@@ -337,17 +861,9 @@ public class MrpServiceImpl implements MrpService {
 
     this.computeCumulativeQty(productRepository.find(product.getId()));
 
-    JPA.clear();
+    this.clearSession();
 
-    List<MrpLine> mrpLineList =
-        mrpLineRepository
-            .all()
-            .filter("self.mrp.id = ?1 AND self.product.id = ?2", mrp.getId(), product.getId())
-            .order("maturityDate")
-            .order("mrpLineType.typeSelect")
-            .order("mrpLineType.sequence")
-            .order("id")
-            .fetch();
+    List<MrpLine> mrpLineList = this.getProductMrpLineList(product);
 
     for (MrpLine mrpLine : mrpLineList) {
 
@@ -356,7 +872,7 @@ public class MrpServiceImpl implements MrpService {
               mrpLineRepository.find(mrpLine.getId()),
               productRepository.find(product.getId()),
               counter == 0);
-      JPA.clear();
+      this.clearSession();
       if (doASecondPass) {
         break;
       }
@@ -374,20 +890,9 @@ public class MrpServiceImpl implements MrpService {
 
     BigDecimal cumulativeQty = mrpLine.getCumulativeQty();
 
-    MrpLineType mrpLineType = mrpLine.getMrpLineType();
-
-    boolean isProposalElement = this.isProposalElement(mrpLineType);
-
     BigDecimal minQty = mrpLine.getMinQty();
 
-    if ((((mrpLine.getMrpLineType().getElementSelect()
-                    != MrpLineTypeRepository.ELEMENT_AVAILABLE_STOCK)
-                && (!isProposalElement
-                    || mrpLineType.getTypeSelect() == MrpLineTypeRepository.TYPE_OUT))
-            || (mrpLine.getMrpLineType().getElementSelect()
-                    == MrpLineTypeRepository.ELEMENT_AVAILABLE_STOCK
-                && firstPass))
-        && cumulativeQty.compareTo(mrpLine.getMinQty()) < 0) {
+    if (this.isInsufficientCumulativeQty(mrpLine, firstPass)) {
 
       Company company = null;
       StockLocation stockLocation = mrpLine.getStockLocation();
@@ -454,6 +959,28 @@ public class MrpServiceImpl implements MrpService {
     return false;
   }
 
+  /**
+   * Checks whether the cumulative qty of the given line is under its min qty and may require a
+   * proposal.
+   *
+   * @param mrpLine a mrp line with an up to date cumulative qty
+   * @param firstPass true if this is the first pass on the lines of the product
+   * @return true if a proposal may be needed for this line
+   */
+  protected boolean isInsufficientCumulativeQty(MrpLine mrpLine, boolean firstPass) {
+
+    MrpLineType mrpLineType = mrpLine.getMrpLineType();
+
+    boolean isProposalElement = this.isProposalElement(mrpLineType);
+
+    return (((mrpLineType.getElementSelect() != MrpLineTypeRepository.ELEMENT_AVAILABLE_STOCK)
+                && (!isProposalElement
+                    || mrpLineType.getTypeSelect() == MrpLineTypeRepository.TYPE_OUT))
+            || (mrpLineType.getElementSelect() == MrpLineTypeRepository.ELEMENT_AVAILABLE_STOCK
+                && firstPass))
+        && mrpLine.getCumulativeQty().compareTo(mrpLine.getMinQty()) < 0;
+  }
+
   public MrpLine getPreviousProposalMrpLine(
       Product product,
       MrpLineType mrpLineType,
@@ -657,15 +1184,15 @@ public class MrpServiceImpl implements MrpService {
   @Transactional
   protected void computeCumulativeQty(Product product) {
 
-    List<MrpLine> mrpLineList =
-        mrpLineRepository
-            .all()
-            .filter("self.mrp.id = ?1 AND self.product.id = ?2", mrp.getId(), product.getId())
-            .order("maturityDate")
-            .order("mrpLineType.typeSelect")
-            .order("mrpLineType.sequence")
-            .order("id")
-            .fetch();
+    this.computeCumulativeQty(this.getProductMrpLineList(product));
+  }
+
+  /**
+   * Compute the cumulative qty of the given lines, without any query.
+   *
+   * @param mrpLineList the lines of a product, sorted as in {@link #getProductMrpLineList(Product)}
+   */
+  protected void computeCumulativeQty(List<MrpLine> mrpLineList) {
 
     BigDecimal previousCumulativeQty = BigDecimal.ZERO;
 
@@ -1337,7 +1864,11 @@ public class MrpServiceImpl implements MrpService {
   public Mrp call() throws AxelorException {
     final RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
     try (RequestScoper.CloseableScope ignored = scope.open()) {
-      this.runCalculation(mrp);
+      if (incremental) {
+        this.runIncrementalCalculation(mrp);
+      } else {
+        this.runCalculation(mrp);
+      }
       mailMessageService.sendNotification(
           AuthUtils.getUser(),
           String.format(I18n.get(IExceptionMessage.MRP_FINISHED_MESSAGE_SUBJECT), mrp.getMrpSeq()),
@@ -19,13 +19,10 @@ package com.axelor.apps.supplychain.service;
 
 import com.axelor.apps.base.service.UnitConversionService;
 import com.axelor.apps.stock.db.StockHistoryLine;
-import com.axelor.apps.stock.db.StockMoveLine;
 import com.axelor.apps.stock.db.repo.StockMoveLineRepository;
 import com.axelor.apps.stock.service.StockHistoryServiceImpl;
-import com.axelor.exception.AxelorException;
 import com.google.inject.Inject;
 import java.math.BigDecimal;
-import java.util.List;
 
 public class StockHistoryServiceSupplyChainImpl extends StockHistoryServiceImpl {
 
@@ -37,30 +34,37 @@ public class StockHistoryServiceSupplyChainImpl extends StockHistoryServiceImpl
   }
 
   @Override
-  protected void fillOutgoingStockHistoryLineFields(
-      StockHistoryLine stockHistoryLine, List<StockMoveLine> stockMoveLineList)
-      throws AxelorException {
+  protected String getStockMoveLineSumQuery(boolean incoming) {
+    if (incoming) {
+      return super.getStockMoveLineSumQuery(incoming);
+    }
+    return "SELECT self.product.id, stockMove.realDate, unit.id, "
+        + "SUM(self.realQty), SUM(self.companyUnitPriceUntaxed), saleOrder.oneoffSale "
+        + "FROM StockMoveLine self "
+        + "JOIN self.stockMove stockMove "
+        + "LEFT JOIN self.unit unit "
+        + "LEFT JOIN self.saleOrderLine saleOrderLine "
+        + "LEFT JOIN saleOrderLine.saleOrder saleOrder "
+        + getStockMoveLineFilter(incoming)
+        + "GROUP BY self.product.id, stockMove.realDate, unit.id, saleOrder.oneoffSale";
+  }
 
-    super.fillOutgoingStockHistoryLineFields(stockHistoryLine, stockMoveLineList);
+  @Override
+  protected void addStockMoveLineSum(
+      StockHistoryLine stockHistoryLine,
+      Object[] result,
+      BigDecimal qtyConverted,
+      BigDecimal unitPrice,
+      boolean incoming) {
 
-    BigDecimal sumOutQtyPeriod = BigDecimal.ZERO;
-    BigDecimal sumOneoffSaleOutQtyPeriod = BigDecimal.ZERO;
-    BigDecimal qtyConverted = BigDecimal.ZERO;
-    for (StockMoveLine stockMoveLine : stockMoveLineList) {
-      qtyConverted =
-          unitConversionService.convert(
-              stockMoveLine.getUnit(),
-              stockMoveLine.getProduct().getUnit(),
-              stockMoveLine.getRealQty(),
-              stockMoveLine.getRealQty().scale(),
-              stockMoveLine.getProduct());
-      if (stockMoveLine.getSaleOrderLine().getSaleOrder().getOneoffSale()) {
-        sumOneoffSaleOutQtyPeriod = sumOneoffSaleOutQtyPeriod.add(qtyConverted);
-      } else {
-        sumOutQtyPeriod = sumOutQtyPeriod.add(qtyConverted);
-      }
+    if (incoming || !Boolean.TRUE.equals(result[5])) {
+      super.addStockMoveLineSum(stockHistoryLine, result, qtyConverted, unitPrice, incoming);
+      return;
     }
-    stockHistoryLine.setSumOutQtyPeriod(sumOutQtyPeriod);
-    stockHistoryLine.setSumOneoffSaleOutQtyPeriod(sumOneoffSaleOutQtyPeriod);
+
+    stockHistoryLine.setSumOneoffSaleOutQtyPeriod(
+        stockHistoryLine.getSumOneoffSaleOutQtyPeriod().add(qtyConverted));
+    stockHistoryLine.setPriceOutStockMovePeriod(
+        stockHistoryLine.getPriceOutStockMovePeriod().add(unitPrice));
   }
 }
@@ -20,6 +20,7 @@ package com.axelor.apps.supplychain.service.batch;
 import com.axelor.apps.base.db.Product;
 import com.axelor.apps.base.db.repo.ProductRepository;
 import com.axelor.apps.stock.db.StockHistoryLine;
+import com.axelor.apps.stock.db.repo.StockHistoryLineRepository;
 import com.axelor.apps.stock.service.StockHistoryService;
 import com.axelor.apps.supplychain.db.SupplychainBatch;
 import com.axelor.apps.supplychain.exception.IExceptionMessage;
@@ -30,24 +31,37 @@ import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
 import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public class BatchUpdateStockHistory extends BatchStrategy {
 
+  protected static final int PRODUCT_CHUNK_SIZE = 100;
+
   protected StockHistoryService stockHistoryService;
+  protected StockHistoryLineRepository stockHistoryLineRepository;
 
   @Inject
-  public BatchUpdateStockHistory(StockHistoryService stockHistoryService) {
+  public BatchUpdateStockHistory(
+      StockHistoryService stockHistoryService,
+      StockHistoryLineRepository stockHistoryLineRepository) {
     this.stockHistoryService = stockHistoryService;
+    this.stockHistoryLineRepository = stockHistoryLineRepository;
   }
 
   @Override
   protected void process() {
     SupplychainBatch supplychainBatch = batch.getSupplychainBatch();
+    Long companyId = supplychainBatch.getCompany().getId();
+    LocalDate beginDate = supplychainBatch.getPeriod().getFromDate();
+    LocalDate endDate = supplychainBatch.getPeriod().getToDate();
 
     List<Product> productList;
-    List<StockHistoryLine> stockHistoryLineList = new ArrayList<>();
     Query<Product> productQuery =
         Beans.get(ProductRepository.class)
             .all()
@@ -56,28 +70,80 @@ public class BatchUpdateStockHistory extends BatchStrategy {
 
     int offset = 0;
 
-    while (!(productList = productQuery.order("id").fetch(FETCH_LIMIT, offset)).isEmpty()) {
+    while (!(productList = productQuery.order("id").fetch(PRODUCT_CHUNK_SIZE, offset)).isEmpty()) {
+      offset += productList.size();
+      List<Long> productIdList =
+          productList.stream().map(Product::getId).collect(Collectors.toList());
 
-      for (Product product : productList) {
-        ++offset;
-        try {
-          stockHistoryLineList.addAll(
-              stockHistoryService.computeStockHistoryLineList(
-                  product.getId(),
-                  supplychainBatch.getCompany().getId(),
-                  null,
-                  supplychainBatch.getPeriod().getFromDate(),
-                  supplychainBatch.getPeriod().getToDate()));
+      try {
+        saveStockHistoryLines(
+            stockHistoryService.computeStockHistoryLineMap(
+                productIdList, companyId, null, beginDate, endDate),
+            companyId);
+        for (int i = 0; i < productIdList.size(); i++) {
           incrementDone();
-        } catch (Exception e) {
-          incrementAnomaly();
-          TraceBackService.trace(e, ExceptionOriginRepository.UPDATE_STOCK_HISTORY, batch.getId());
+        }
+      } catch (Exception chunkException) {
+        // compute the products of the chunk one by one to find the ones in error
+        JPA.clear();
+        for (Long productId : productIdList) {
+          try {
+            saveStockHistoryLines(
+                Collections.singletonMap(
+                    productId,
+                    stockHistoryService.computeStockHistoryLineList(
+                        productId, companyId, null, beginDate, endDate)),
+                companyId);
+            incrementDone();
+          } catch (Exception e) {
+            incrementAnomaly();
+            TraceBackService.trace(
+                e, ExceptionOriginRepository.UPDATE_STOCK_HISTORY, batch.getId());
+          }
         }
       }
       JPA.clear();
     }
   }
 
+  /**
+   * Save the monthly lines of a chunk of products, replacing the lines previously computed for the
+   * same months. Total and average lines are not saved.
+   *
+   * @param stockHistoryLineMap the computed lines by product id.
+   * @param companyId
+   */
+  @Transactional(rollbackOn = {Exception.class})
+  protected void saveStockHistoryLines(
+      Map<Long, List<StockHistoryLine>> stockHistoryLineMap, Long companyId) {
+    List<StockHistoryLine> stockHistoryLineList =
+        stockHistoryLineMap.values().stream()
+            .flatMap(List::stream)
+            .filter(stockHistoryLine -> stockHistoryLine.getProduct() != null)
+            .collect(Collectors.toList());
+    if (stockHistoryLineList.isEmpty()) {
+      return;
+    }
+
+    stockHistoryLineRepository
+        .all()
+        .filter(
+            "self.company.id = :companyId "
+                + "AND self.product.id IN :productIdList "
+                + "AND self.label IN :labelList")
+        .bind("companyId", companyId)
+        .bind("productIdList", new ArrayList<>(stockHistoryLineMap.keySet()))
+        .bind(
+            "labelList",
+            stockHistoryLineList.stream()
+                .map(StockHistoryLine::getLabel)
+                .distinct()
+                .collect(Collectors.toList()))
+        .delete();
+
+    stockHistoryLineList.forEach(stockHistoryLineRepository::save);
+  }
+
   @Override
   protected void stop() {
     String comment = I18n.get(IExceptionMessage.BATCH_UPDATE_STOCK_HISTORY_1) + " ";
@@ -75,6 +75,30 @@ public class MrpController {
     }
   }
 
+  public void runIncrementalCalculation(ActionRequest request, ActionResponse response) {
+
+    Mrp mrp = request.getContext().asType(Mrp.class);
+    MrpService mrpService = Beans.get(MrpService.class);
+    MrpRepository mrpRepository = Beans.get(MrpRepository.class);
+    try {
+      if (mrpService.isOnGoing(mrpRepository.find(mrp.getId()))) {
+        response.setFlash(I18n.get(IExceptionMessage.MRP_ALREADY_STARTED));
+        return;
+      }
+      mrpService.setMrp(mrpRepository.find(mrp.getId()));
+      mrpService.setIncremental(true);
+
+      ControllerCallableTool<Mrp> mrpControllerCallableTool = new ControllerCallableTool<>();
+
+      mrpControllerCallableTool.runInSeparateThread(mrpService, response);
+    } catch (Exception e) {
+      TraceBackService.trace(response, e);
+      mrpService.saveErrorInMrp(mrpRepository.find(mrp.getId()), e);
+    } finally {
+      response.setReload(true);
+    }
+  }
+
   public void generateAllProposals(ActionRequest request, ActionResponse response) {
 
     try {
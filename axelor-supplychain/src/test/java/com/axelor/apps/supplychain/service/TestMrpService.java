@@ -0,0 +1,400 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.supplychain.service;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.axelor.apps.base.db.Company;
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.base.db.Unit;
+import com.axelor.apps.base.db.repo.CompanyRepository;
+import com.axelor.apps.base.db.repo.ProductRepository;
+import com.axelor.apps.base.db.repo.UnitRepository;
+import com.axelor.apps.base.service.ProductCategoryService;
+import com.axelor.apps.base.service.UnitConversionService;
+import com.axelor.apps.base.service.app.AppBaseService;
+import com.axelor.apps.message.service.MailMessageService;
+import com.axelor.apps.purchase.service.PurchaseOrderLineService;
+import com.axelor.apps.purchase.service.PurchaseOrderService;
+import com.axelor.apps.purchase.service.app.AppPurchaseService;
+import com.axelor.apps.sale.service.app.AppSaleService;
+import com.axelor.apps.stock.db.StockLocation;
+import com.axelor.apps.stock.db.StockLocationLine;
+import com.axelor.apps.stock.db.StockRules;
+import com.axelor.apps.stock.db.repo.StockLocationLineRepository;
+import com.axelor.apps.stock.db.repo.StockLocationRepository;
+import com.axelor.apps.stock.db.repo.StockRulesRepository;
+import com.axelor.apps.stock.service.StockLocationService;
+import com.axelor.apps.stock.service.StockRulesService;
+import com.axelor.apps.stock.service.StockRulesServiceImpl;
+import com.axelor.apps.supplychain.db.Mrp;
+import com.axelor.apps.supplychain.db.MrpForecast;
+import com.axelor.apps.supplychain.db.MrpLine;
+import com.axelor.apps.supplychain.db.MrpLineType;
+import com.axelor.apps.supplychain.db.repo.MrpForecastRepository;
+import com.axelor.apps.supplychain.db.repo.MrpLineRepository;
+import com.axelor.apps.supplychain.db.repo.MrpLineTypeRepository;
+import com.axelor.apps.supplychain.db.repo.MrpRepository;
+import com.axelor.db.JPA;
+import com.axelor.db.JpaModule;
+import com.axelor.exception.AxelorException;
+import com.axelor.test.GuiceModules;
+import com.axelor.test.GuiceRunner;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that the computation modes of the MRP give the same lines, by running the calculation on
+ * forecasts, stocks and stock rules saved in the database. The services of the other modules are
+ * mocked, the calculation itself and the proposals use the real services.
+ */
+@RunWith(GuiceRunner.class)
+@GuiceModules({TestMrpService.MyModule.class})
+public class TestMrpService {
+
+  public static class MyModule extends AbstractModule {
+
+    @Override
+    protected void configure() {
+      install(new JpaModule("testUnit", true, true));
+      bind(MrpService.class).to(MrpServiceImpl.class);
+      bind(MrpLineService.class).to(MrpLineServiceImpl.class);
+      bind(StockRulesService.class).to(StockRulesServiceImpl.class);
+
+      bind(AppBaseService.class).toInstance(mock(AppBaseService.class));
+      bind(AppSaleService.class).toInstance(mock(AppSaleService.class));
+      bind(AppPurchaseService.class).toInstance(mock(AppPurchaseService.class));
+      bind(StockLocationService.class).toInstance(mock(StockLocationService.class));
+      bind(MailMessageService.class).toInstance(mock(MailMessageService.class));
+      bind(UnitConversionService.class).toInstance(mock(UnitConversionService.class));
+      bind(ProductCategoryService.class).toInstance(mock(ProductCategoryService.class));
+      bind(PurchaseOrderSupplychainService.class)
+          .toInstance(mock(PurchaseOrderSupplychainService.class));
+      bind(PurchaseOrderService.class).toInstance(mock(PurchaseOrderService.class));
+      bind(PurchaseOrderLineService.class).toInstance(mock(PurchaseOrderLineService.class));
+    }
+  }
+
+  @Inject protected Provider<MrpService> mrpServiceProvider;
+
+  @Inject protected AppBaseService appBaseService;
+  @Inject protected StockLocationService stockLocationService;
+
+  @Inject protected CompanyRepository companyRepo;
+  @Inject protected UnitRepository unitRepo;
+  @Inject protected ProductRepository productRepo;
+  @Inject protected StockLocationRepository stockLocationRepo;
+  @Inject protected StockLocationLineRepository stockLocationLineRepo;
+  @Inject protected StockRulesRepository stockRulesRepo;
+  @Inject protected MrpLineTypeRepository mrpLineTypeRepo;
+  @Inject protected MrpForecastRepository mrpForecastRepo;
+  @Inject protected MrpRepository mrpRepo;
+  @Inject protected MrpLineRepository mrpLineRepo;
+
+  protected LocalDate today;
+  protected String suffix;
+
+  protected Company company;
+  protected Unit unit;
+  protected StockLocation stockLocation;
+  protected List<Product> productList = new ArrayList<>();
+  protected List<MrpLineType> mrpLineTypeList = new ArrayList<>();
+  protected List<Mrp> mrpList = new ArrayList<>();
+
+  @Before
+  public void prepare() {
+    today = LocalDate.now();
+    suffix = UUID.randomUUID().toString().substring(0, 8);
+
+    when(appBaseService.getTodayDate(any())).thenAnswer(invocation -> LocalDate.now());
+    when(appBaseService.getTodayDateTime()).thenAnswer(invocation -> ZonedDateTime.now());
+    when(stockLocationService.getAllLocationAndSubLocation(any(), anyBoolean()))
+        .thenAnswer(
+            invocation -> Collections.singletonList(invocation.<StockLocation>getArgument(0)));
+
+    JPA.runInTransaction(this::createData);
+  }
+
+  @After
+  public void cleanUp() {
+    JPA.em().clear();
+    JPA.runInTransaction(
+        () -> {
+          List<Long> mrpIdList = mrpList.stream().map(Mrp::getId).collect(Collectors.toList());
+          if (!mrpIdList.isEmpty()) {
+            mrpLineRepo.all().filter("self.mrp.id IN (?1)", mrpIdList).remove();
+            mrpRepo.all().filter("self.id IN (?1)", mrpIdList).remove();
+          }
+          mrpForecastRepo.all().filter("self.stockLocation = ?1", stockLocation).remove();
+          stockRulesRepo.all().filter("self.stockLocation = ?1", stockLocation).remove();
+          stockLocationLineRepo.all().filter("self.stockLocation = ?1", stockLocation).remove();
+          productRepo.all().filter("self.id IN (?1)", productList).remove();
+          mrpLineTypeRepo.all().filter("self.id IN (?1)", mrpLineTypeList).remove();
+          stockLocationRepo.all().filter("self.id = ?1", stockLocation.getId()).remove();
+          companyRepo.all().filter("self.id = ?1", company.getId()).remove();
+          unitRepo.all().filter("self.id = ?1", unit.getId()).remove();
+        });
+  }
+
+  @Test
+  public void testInMemoryModeGivesSameLinesAsStandardMode() throws AxelorException {
+    List<String> standardLineList = compute(MrpRepository.COMPUTATION_MODE_STANDARD);
+
+    Assert.assertTrue(
+        "no proposal", standardLineList.stream().anyMatch(line -> line.contains("Proposal")));
+    Assert.assertEquals(standardLineList, compute(MrpRepository.COMPUTATION_MODE_IN_MEMORY));
+  }
+
+  @Test
+  public void testParallelModeGivesSameLinesAsStandardMode() throws AxelorException {
+    List<String> standardLineList = compute(MrpRepository.COMPUTATION_MODE_STANDARD);
+
+    Assert.assertTrue(
+        "no proposal", standardLineList.stream().anyMatch(line -> line.contains("Proposal")));
+    Assert.assertEquals(standardLineList, compute(MrpRepository.COMPUTATION_MODE_PARALLEL));
+  }
+
+  @Test
+  public void testIncrementalCalculationGivesSameLinesAsCompleteCalculation()
+      throws AxelorException {
+
+    Mrp incrementalMrp = createMrp(MrpRepository.COMPUTATION_MODE_STANDARD);
+    mrpServiceProvider.get().runCalculation(incrementalMrp);
+    Product unchangedProduct = productList.get(2);
+    List<Long> unchangedLineIdList = getLineIdList(incrementalMrp, unchangedProduct);
+
+    // a new forecast on the first product, and a new stock for the second one
+    JPA.runInTransaction(
+        () -> {
+          createForecast(productList.get(0), 7, 8);
+          StockLocationLine stockLocationLine =
+              stockLocationLineRepo
+                  .all()
+                  .filter(
+                      "self.stockLocation = ?1 AND self.product = ?2",
+                      stockLocation,
+                      productList.get(1))
+                  .fetchOne();
+          stockLocationLine.setCurrentQty(BigDecimal.valueOf(9));
+          stockLocationLineRepo.save(stockLocationLine);
+        });
+    mrpServiceProvider.get().runIncrementalCalculation(incrementalMrp);
+
+    Mrp completeMrp = createMrp(MrpRepository.COMPUTATION_MODE_STANDARD);
+    mrpServiceProvider.get().runCalculation(completeMrp);
+
+    Assert.assertEquals(getLineList(completeMrp), getLineList(incrementalMrp));
+    // the lines of the products without any change are kept
+    Assert.assertEquals(unchangedLineIdList, getLineIdList(incrementalMrp, unchangedProduct));
+  }
+
+  protected List<String> compute(int computationModeSelect) throws AxelorException {
+    Mrp mrp = createMrp(computationModeSelect);
+    mrpServiceProvider.get().runCalculation(mrp);
+
+    Mrp result = mrpRepo.find(mrp.getId());
+    Assert.assertEquals(MrpRepository.STATUS_CALCULATION_ENDED, (int) result.getStatusSelect());
+    Assert.assertNull(result.getErrorLog());
+
+    return getLineList(mrp);
+  }
+
+  /**
+   * Four purchased products: two of them run out of stock, one has a supplier delivery time longer
+   * than the time to its first forecast, and the last one has enough stock.
+   */
+  protected void createData() {
+    company = new Company();
+    company.setName("MRP test " + suffix);
+    company.setCode("MRP" + suffix);
+    companyRepo.save(company);
+
+    unit = new Unit();
+    unit.setName("Unit " + suffix);
+    unitRepo.save(unit);
+
+    stockLocation = new StockLocation();
+    stockLocation.setName("MRP test " + suffix);
+    stockLocation.setCompany(company);
+    stockLocation.setTypeSelect(StockLocationRepository.TYPE_INTERNAL);
+    stockLocationRepo.save(stockLocation);
+
+    mrpLineTypeList.add(
+        createMrpLineType(
+            "Stock", MrpLineTypeRepository.ELEMENT_AVAILABLE_STOCK, MrpLineTypeRepository.TYPE_IN));
+    mrpLineTypeList.add(
+        createMrpLineType(
+            "Forecast",
+            MrpLineTypeRepository.ELEMENT_SALE_FORECAST,
+            MrpLineTypeRepository.TYPE_OUT));
+    mrpLineTypeList.add(
+        createMrpLineType(
+            "Proposal",
+            MrpLineTypeRepository.ELEMENT_PURCHASE_PROPOSAL,
+            MrpLineTypeRepository.TYPE_IN));
+
+    Product product1 = createProduct("1", 3, 5, 2, 10);
+    createForecast(product1, 4, 2);
+    createForecast(product1, 6, 5);
+    createForecast(product1, 8, 12);
+
+    Product product2 = createProduct("2", 0, 0, 0, 5);
+    createForecast(product2, 3, 1);
+    createForecast(product2, 2, 7);
+
+    Product product3 = createProduct("3", 0, 20, -1, 0);
+    createForecast(product3, 5, 3);
+
+    Product product4 = createProduct("4", 10, 1, 1, 1);
+    createForecast(product4, 10, 4);
+  }
+
+  protected MrpLineType createMrpLineType(String name, int elementSelect, int typeSelect) {
+    MrpLineType mrpLineType = new MrpLineType();
+    mrpLineType.setName(name);
+    mrpLineType.setCode(name + suffix);
+    mrpLineType.setElementSelect(elementSelect);
+    mrpLineType.setTypeSelect(typeSelect);
+    mrpLineType.setSequence(elementSelect);
+    mrpLineType.setApplicationFieldSelect(
+        String.valueOf(MrpLineTypeRepository.APPLICATION_FIELD_MRP));
+    return mrpLineTypeRepo.save(mrpLineType);
+  }
+
+  /**
+   * Create a product with its stock, and its stock rule if the given min qty is not negative.
+   *
+   * @param name
+   * @param supplierDeliveryTime
+   * @param stockQty
+   * @param minQty
+   * @param reOrderQty
+   * @return the product
+   */
+  protected Product createProduct(
+      String name, int supplierDeliveryTime, long stockQty, long minQty, long reOrderQty) {
+
+    Product product = new Product();
+    product.setName("Product " + name);
+    product.setFullName("Product " + name);
+    product.setCode("MRP" + name + suffix);
+    product.setUnit(unit);
+    product.setProductTypeSelect(ProductRepository.PRODUCT_TYPE_STORABLE);
+    product.setSupplierDeliveryTime(supplierDeliveryTime);
+    productRepo.save(product);
+    productList.add(product);
+
+    StockLocationLine stockLocationLine = new StockLocationLine();
+    stockLocationLine.setStockLocation(stockLocation);
+    stockLocationLine.setProduct(product);
+    stockLocationLine.setUnit(unit);
+    stockLocationLine.setCurrentQty(BigDecimal.valueOf(stockQty));
+    stockLocationLine.setFutureQty(BigDecimal.valueOf(stockQty));
+    stockLocationLineRepo.save(stockLocationLine);
+
+    if (minQty >= 0) {
+      StockRules stockRules = new StockRules();
+      stockRules.setStockLocation(stockLocation);
+      stockRules.setProduct(product);
+      stockRules.setUseCaseSelect(StockRulesRepository.USE_CASE_USED_FOR_MRP);
+      stockRules.setTypeSelect(StockRulesRepository.TYPE_FUTURE);
+      stockRules.setOrderAlertSelect(StockRulesRepository.ORDER_ALERT_PURCHASE_ORDER);
+      stockRules.setMinQty(BigDecimal.valueOf(minQty));
+      stockRules.setReOrderQty(BigDecimal.valueOf(reOrderQty));
+      stockRulesRepo.save(stockRules);
+    }
+
+    return product;
+  }
+
+  protected MrpForecast createForecast(Product product, long qty, int days) {
+    MrpForecast mrpForecast = new MrpForecast();
+    mrpForecast.setProduct(product);
+    mrpForecast.setStockLocation(stockLocation);
+    mrpForecast.setUnit(unit);
+    mrpForecast.setQty(BigDecimal.valueOf(qty));
+    mrpForecast.setForecastDate(today.plusDays(days));
+    mrpForecast.setStatusSelect(MrpForecastRepository.STATUS_CONFIRMED);
+    return mrpForecastRepo.save(mrpForecast);
+  }
+
+  protected Mrp createMrp(int computationModeSelect) {
+    Mrp mrp = new Mrp();
+    mrp.setStockLocation(stockLocation);
+    mrp.setMrpTypeSelect(MrpRepository.MRP_TYPE_MRP);
+    mrp.setComputationModeSelect(computationModeSelect);
+    productList.forEach(mrp::addProductSetItem);
+    JPA.runInTransaction(() -> mrpRepo.save(mrp));
+    mrpList.add(mrp);
+    return mrp;
+  }
+
+  protected List<MrpLine> fetchLines(String filter, Object... params) {
+    JPA.em().clear();
+    return mrpLineRepo
+        .all()
+        .filter(filter, params)
+        .order("product.code")
+        .order("maturityDate")
+        .order("mrpLineType.typeSelect")
+        .order("mrpLineType.sequence")
+        .order("id")
+        .fetch();
+  }
+
+  protected List<Long> getLineIdList(Mrp mrp, Product product) {
+    return fetchLines(
+            "self.mrp.id = ?1 AND self.product.id = ?2", mrp.getId(), product.getId())
+        .stream()
+        .map(MrpLine::getId)
+        .collect(Collectors.toList());
+  }
+
+  /** The lines of the mrp, described without their ids so that two mrps can be compared. */
+  protected List<String> getLineList(Mrp mrp) {
+    return fetchLines("self.mrp.id = ?1", mrp.getId()).stream()
+        .map(
+            mrpLine ->
+                String.join(
+                    " ",
+                    mrpLine.getProduct().getFullName(),
+                    mrpLine.getMrpLineType().getName(),
+                    mrpLine.getMaturityDate().toString(),
+                    mrpLine.getQty().stripTrailingZeros().toPlainString(),
+                    mrpLine.getCumulativeQty().stripTrailingZeros().toPlainString(),
+                    String.valueOf(mrpLine.getRelatedToSelectName())))
+        .collect(Collectors.toList());
+  }
+}
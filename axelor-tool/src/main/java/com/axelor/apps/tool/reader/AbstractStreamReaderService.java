@@ -0,0 +1,113 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.tool.reader;
+
+import com.axelor.meta.MetaFiles;
+import com.axelor.meta.db.MetaFile;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reader going through the input file without loading it in memory. Rows read by index are
+ * served by a cursor kept open between calls, so reading rows in increasing order only goes
+ * through the file once.
+ */
+public abstract class AbstractStreamReaderService implements DataReaderService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private DataRowCursor cursor;
+  private String cursorSheetName;
+  private Map<String, Integer> totalLinesMap = new HashMap<>();
+
+  @Override
+  public abstract DataRowCursor openCursor(String sheetName) throws IOException;
+
+  @Override
+  public String[] read(String sheetName, int index, int headerSize) {
+
+    try {
+      if (cursor == null || !sheetName.equals(cursorSheetName) || cursor.getIndex() > index) {
+        closeCursor();
+        cursor = openCursor(sheetName);
+        cursorSheetName = sheetName;
+      }
+      while (cursor.getIndex() < index && cursor.next()) {}
+    } catch (IOException e) {
+      LOG.error(e.getMessage());
+      return null;
+    }
+
+    return cursor.getIndex() == index ? cursor.getRow(headerSize) : null;
+  }
+
+  @Override
+  public int getTotalLines(String sheetName) {
+
+    Integer totalLines = totalLinesMap.get(sheetName);
+    if (totalLines != null) {
+      return totalLines;
+    }
+
+    totalLines = 0;
+    try (DataRowCursor sheetCursor = openCursor(sheetName)) {
+      while (sheetCursor.next()) {
+        totalLines = sheetCursor.getIndex() + 1;
+      }
+    } catch (IOException e) {
+      LOG.error(e.getMessage());
+    }
+    totalLinesMap.put(sheetName, totalLines);
+
+    return totalLines;
+  }
+
+  @Override
+  public void close() {
+    closeCursor();
+    totalLinesMap.clear();
+  }
+
+  /**
+   * Get the file of the input, to be read by the cursors.
+   *
+   * @param input
+   * @return
+   */
+  protected File getFile(MetaFile input) {
+    return MetaFiles.getPath(input).toFile();
+  }
+
+  protected void closeCursor() {
+    if (cursor == null) {
+      return;
+    }
+    try {
+      cursor.close();
+    } catch (IOException e) {
+      LOG.error(e.getMessage());
+    }
+    cursor = null;
+    cursorSheetName = null;
+  }
+}
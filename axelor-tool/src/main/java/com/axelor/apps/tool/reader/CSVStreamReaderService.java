@@ -0,0 +1,136 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.tool.reader;
+
+import com.axelor.meta.db.MetaFile;
+import com.opencsv.CSVReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Reader of csv files reading records one by one instead of loading the whole file. */
+public class CSVStreamReaderService extends AbstractStreamReaderService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private File inFile;
+  private char separator;
+  private String fileName;
+
+  @Override
+  public boolean initialize(MetaFile input, String separator) {
+
+    if (input == null) {
+      return false;
+    }
+
+    fileName = input.getFileName().replaceAll(".csv", "");
+    File file = getFile(input);
+    if (!file.exists()) {
+      return false;
+    }
+
+    inFile = file;
+    this.separator = separator.charAt(0);
+
+    try (DataRowCursor cursor = openCursor(fileName)) {
+      if (!cursor.next()) {
+        inFile = null;
+        return false;
+      }
+    } catch (IOException e) {
+      LOG.error(e.getMessage());
+      inFile = null;
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public DataRowCursor openCursor(String sheetName) throws IOException {
+
+    if (inFile == null) {
+      return new CSVRowCursor(null);
+    }
+
+    return new CSVRowCursor(
+        new CSVReader(
+            new InputStreamReader(new FileInputStream(inFile), StandardCharsets.UTF_8),
+            separator));
+  }
+
+  @Override
+  public String[] getSheetNames() {
+
+    if (inFile == null) {
+      return new String[0];
+    }
+
+    String[] sheets = new String[1];
+    sheets[0] = fileName;
+
+    return sheets;
+  }
+
+  protected static class CSVRowCursor implements DataRowCursor {
+
+    private final CSVReader csvReader;
+    private String[] row;
+    private int index = -1;
+
+    public CSVRowCursor(CSVReader csvReader) {
+      this.csvReader = csvReader;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+      if (csvReader == null) {
+        return false;
+      }
+      String[] nextRow = csvReader.readNext();
+      if (nextRow == null) {
+        return false;
+      }
+      row = nextRow;
+      index++;
+      return true;
+    }
+
+    @Override
+    public int getIndex() {
+      return index;
+    }
+
+    @Override
+    public String[] getRow(int headerSize) {
+      return row;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (csvReader != null) {
+        csvReader.close();
+      }
+    }
+  }
+}
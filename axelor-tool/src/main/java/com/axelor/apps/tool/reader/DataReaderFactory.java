@@ -36,4 +36,26 @@ public class DataReaderFactory {
     }
     return reader;
   }
+
+  /**
+   * Get a reader going through the file without loading it in memory, to be used with {@link
+   * DataReaderService#openCursor}.
+   */
+  public DataReaderService getStreamDataReader(String type) {
+
+    DataReaderService reader = null;
+
+    switch (type) {
+      case "xls":
+      case "xlsx":
+        reader = new ExcelStreamReaderService();
+        break;
+      case "csv":
+        reader = new CSVStreamReaderService();
+        break;
+      default:
+        break;
+    }
+    return reader;
+  }
 }
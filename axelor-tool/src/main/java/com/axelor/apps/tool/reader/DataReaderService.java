@@ -18,6 +18,7 @@
 package com.axelor.apps.tool.reader;
 
 import com.axelor.meta.db.MetaFile;
+import java.io.IOException;
 
 public interface DataReaderService {
 
@@ -53,4 +54,19 @@ public interface DataReaderService {
    * @return
    */
   public String[] getSheetNames();
+
+  /**
+   * Returns a forward-only cursor on the rows of a sheet. Rows are read one by one, so it should
+   * be preferred to {@link #read} to go through a whole sheet.
+   *
+   * @param sheetName
+   * @return
+   * @throws IOException
+   */
+  public default DataRowCursor openCursor(String sheetName) throws IOException {
+    return new IndexedDataRowCursor(this, sheetName);
+  }
+
+  /** Release the resources used to read the input file. */
+  public default void close() {}
 }
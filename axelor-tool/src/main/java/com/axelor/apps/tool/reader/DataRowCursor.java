@@ -0,0 +1,48 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.tool.reader;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/** Forward-only cursor on the rows of a sheet. */
+public interface DataRowCursor extends Closeable {
+
+  /**
+   * Move to the next row.
+   *
+   * @return false when there is no more row
+   * @throws IOException
+   */
+  public boolean next() throws IOException;
+
+  /**
+   * Returns index of the current row.
+   *
+   * @return
+   */
+  public int getIndex();
+
+  /**
+   * Returns values of the current row, the same way as {@link DataReaderService#read}.
+   *
+   * @param headerSize
+   * @return
+   */
+  public String[] getRow(int headerSize);
+}
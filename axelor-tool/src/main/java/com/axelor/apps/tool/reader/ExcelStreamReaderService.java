@@ -0,0 +1,309 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.tool.reader;
+
+import com.axelor.meta.db.MetaFile;
+import com.google.common.base.Strings;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Reader of xlsx files parsing the sheets as xml events instead of loading the whole workbook.
+ * Only the shared strings and the styles of the workbook are kept in memory.
+ */
+public class ExcelStreamReaderService extends AbstractStreamReaderService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private OPCPackage pkg = null;
+  private XSSFReader xssfReader = null;
+  private ReadOnlySharedStringsTable sharedStrings = null;
+  private StylesTable styles = null;
+  private DataFormatter formatter = null;
+  private XMLInputFactory xmlInputFactory = null;
+  private String[] sheetNames = null;
+
+  @Override
+  public boolean initialize(MetaFile input, String separator) {
+
+    if (input == null) {
+      return false;
+    }
+
+    File inFile = getFile(input);
+    if (!inFile.exists()) {
+      return false;
+    }
+
+    try {
+      pkg = OPCPackage.open(inFile, PackageAccess.READ);
+      xssfReader = new XSSFReader(pkg);
+      sharedStrings = new ReadOnlySharedStringsTable(pkg);
+      styles = xssfReader.getStylesTable();
+      formatter = new DataFormatter();
+
+      xmlInputFactory = XMLInputFactory.newInstance();
+      xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+      xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+      List<String> sheetNameList = new ArrayList<>();
+      XSSFReader.SheetIterator sheetIterator =
+          (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+      while (sheetIterator.hasNext()) {
+        try (InputStream sheetStream = sheetIterator.next()) {
+          sheetNameList.add(sheetIterator.getSheetName());
+        }
+      }
+      if (sheetNameList.isEmpty()) {
+        close();
+        return false;
+      }
+      sheetNames = sheetNameList.toArray(new String[0]);
+    } catch (IOException | OpenXML4JException | SAXException e) {
+      LOG.error(e.getMessage());
+      close();
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public DataRowCursor openCursor(String sheetName) throws IOException {
+
+    if (xssfReader == null || sheetName == null) {
+      return new ExcelRowCursor(null);
+    }
+
+    try {
+      XSSFReader.SheetIterator sheetIterator =
+          (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+      while (sheetIterator.hasNext()) {
+        InputStream sheetStream = sheetIterator.next();
+        if (sheetName.equals(sheetIterator.getSheetName())) {
+          return new ExcelRowCursor(sheetStream);
+        }
+        sheetStream.close();
+      }
+    } catch (OpenXML4JException e) {
+      throw new IOException(e);
+    }
+
+    return new ExcelRowCursor(null);
+  }
+
+  @Override
+  public String[] getSheetNames() {
+    return sheetNames;
+  }
+
+  @Override
+  public void close() {
+    super.close();
+    if (pkg != null) {
+      pkg.revert();
+      pkg = null;
+    }
+    xssfReader = null;
+    sharedStrings = null;
+    styles = null;
+    sheetNames = null;
+  }
+
+  protected String formatCellValue(
+      String type, String styleIndex, String rawValue, String inlineValue) {
+
+    if ("inlineStr".equals(type)) {
+      return inlineValue;
+    }
+    if (rawValue == null) {
+      return null;
+    }
+
+    switch (type == null ? "n" : type) {
+      case "s":
+        return sharedStrings.getItemAt(Integer.parseInt(rawValue)).getString();
+      case "b":
+        return "0".equals(rawValue) ? "FALSE" : "TRUE";
+      case "str":
+      case "e":
+        return rawValue;
+      default:
+        short formatIndex = 0;
+        String formatString = null;
+        XSSFCellStyle style = null;
+        if (styleIndex != null) {
+          style = styles.getStyleAt(Integer.parseInt(styleIndex));
+        } else if (styles.getNumCellStyles() > 0) {
+          style = styles.getStyleAt(0);
+        }
+        if (style != null) {
+          formatIndex = style.getDataFormat();
+          formatString = style.getDataFormatString();
+        }
+        if (formatString == null) {
+          formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+        }
+        return formatter.formatRawCellContents(
+            Double.parseDouble(rawValue), formatIndex, formatString);
+    }
+  }
+
+  protected class ExcelRowCursor implements DataRowCursor {
+
+    private final InputStream sheetStream;
+    private final XMLStreamReader xmlReader;
+    private String[] values = new String[0];
+    private int index = -1;
+
+    public ExcelRowCursor(InputStream sheetStream) throws IOException {
+      this.sheetStream = sheetStream;
+      try {
+        this.xmlReader =
+            sheetStream != null ? xmlInputFactory.createXMLStreamReader(sheetStream) : null;
+      } catch (XMLStreamException e) {
+        sheetStream.close();
+        throw new IOException(e);
+      }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+
+      if (xmlReader == null) {
+        return false;
+      }
+
+      try {
+        while (xmlReader.hasNext()) {
+          if (xmlReader.next() == XMLStreamConstants.START_ELEMENT
+              && "row".equals(xmlReader.getLocalName())) {
+            readRow();
+            return true;
+          }
+        }
+      } catch (XMLStreamException e) {
+        throw new IOException(e);
+      }
+
+      return false;
+    }
+
+    protected void readRow() throws XMLStreamException {
+
+      String rowNum = xmlReader.getAttributeValue(null, "r");
+      index = rowNum != null ? Integer.parseInt(rowNum) - 1 : index + 1;
+
+      List<String> cellValues = new ArrayList<>();
+      int column = -1;
+
+      while (xmlReader.hasNext()) {
+        int event = xmlReader.next();
+        if (event == XMLStreamConstants.END_ELEMENT && "row".equals(xmlReader.getLocalName())) {
+          break;
+        }
+        if (event != XMLStreamConstants.START_ELEMENT || !"c".equals(xmlReader.getLocalName())) {
+          continue;
+        }
+
+        String cellRef = xmlReader.getAttributeValue(null, "r");
+        column = cellRef != null ? new CellReference(cellRef).getCol() : column + 1;
+        String value = readCellValue();
+
+        while (cellValues.size() <= column) {
+          cellValues.add(null);
+        }
+        cellValues.set(column, Strings.isNullOrEmpty(value) ? null : value);
+      }
+
+      values = cellValues.toArray(new String[0]);
+    }
+
+    protected String readCellValue() throws XMLStreamException {
+
+      String type = xmlReader.getAttributeValue(null, "t");
+      String styleIndex = xmlReader.getAttributeValue(null, "s");
+      String rawValue = null;
+      StringBuilder inlineValue = new StringBuilder();
+
+      while (xmlReader.hasNext()) {
+        int event = xmlReader.next();
+        if (event == XMLStreamConstants.END_ELEMENT && "c".equals(xmlReader.getLocalName())) {
+          break;
+        }
+        if (event != XMLStreamConstants.START_ELEMENT) {
+          continue;
+        }
+        if ("v".equals(xmlReader.getLocalName())) {
+          rawValue = xmlReader.getElementText();
+        } else if ("t".equals(xmlReader.getLocalName())) {
+          inlineValue.append(xmlReader.getElementText());
+        }
+      }
+
+      return formatCellValue(type, styleIndex, rawValue, inlineValue.toString());
+    }
+
+    @Override
+    public int getIndex() {
+      return index;
+    }
+
+    @Override
+    public String[] getRow(int headerSize) {
+      return Arrays.copyOf(values, headerSize == 0 ? values.length : headerSize);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        if (xmlReader != null) {
+          xmlReader.close();
+        }
+      } catch (XMLStreamException e) {
+        throw new IOException(e);
+      } finally {
+        if (sheetStream != null) {
+          sheetStream.close();
+        }
+      }
+    }
+  }
+}
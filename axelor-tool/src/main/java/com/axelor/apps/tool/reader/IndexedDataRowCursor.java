@@ -0,0 +1,55 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.tool.reader;
+
+/** Cursor on the rows of a reader giving access to the rows by index. */
+public class IndexedDataRowCursor implements DataRowCursor {
+
+  private final DataReaderService reader;
+  private final String sheetName;
+  private final int totalLines;
+  private int index = -1;
+
+  public IndexedDataRowCursor(DataReaderService reader, String sheetName) {
+    this.reader = reader;
+    this.sheetName = sheetName;
+    this.totalLines = reader.getTotalLines(sheetName);
+  }
+
+  @Override
+  public boolean next() {
+    if (index + 1 >= totalLines) {
+      return false;
+    }
+    index++;
+    return true;
+  }
+
+  @Override
+  public int getIndex() {
+    return index;
+  }
+
+  @Override
+  public String[] getRow(int headerSize) {
+    return reader.read(sheetName, index, headerSize);
+  }
+
+  @Override
+  public void close() {}
+}
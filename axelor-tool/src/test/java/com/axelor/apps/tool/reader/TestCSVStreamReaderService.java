@@ -0,0 +1,103 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.tool.reader;
+
+import com.axelor.meta.db.MetaFile;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestCSVStreamReaderService {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private CSVStreamReaderService reader;
+
+  @Before
+  public void setUp() throws IOException {
+    reader = createReader("name;code;qty\n\"Doe; John\";JD;12\n;;\nSmith;;3\n");
+  }
+
+  @After
+  public void tearDown() {
+    reader.close();
+  }
+
+  @Test
+  public void testCursorReadsRowsInOrder() throws IOException {
+    Assert.assertArrayEquals(new String[] {"data"}, reader.getSheetNames());
+
+    try (DataRowCursor cursor = reader.openCursor("data")) {
+      Assert.assertTrue(cursor.next());
+      Assert.assertEquals(0, cursor.getIndex());
+      Assert.assertArrayEquals(new String[] {"name", "code", "qty"}, cursor.getRow(0));
+      Assert.assertTrue(cursor.next());
+      Assert.assertArrayEquals(new String[] {"Doe; John", "JD", "12"}, cursor.getRow(3));
+      Assert.assertTrue(cursor.next());
+      Assert.assertArrayEquals(new String[] {"", "", ""}, cursor.getRow(3));
+      Assert.assertTrue(cursor.next());
+      Assert.assertEquals(3, cursor.getIndex());
+      Assert.assertArrayEquals(new String[] {"Smith", "", "3"}, cursor.getRow(3));
+      Assert.assertFalse(cursor.next());
+    }
+  }
+
+  @Test
+  public void testReadByIndex() {
+    Assert.assertEquals("Smith", reader.read("data", 3, 0)[0]);
+    // reading a previous row opens a new cursor
+    Assert.assertEquals("Doe; John", reader.read("data", 1, 0)[0]);
+    Assert.assertNull(reader.read("data", 4, 0));
+    Assert.assertEquals(4, reader.getTotalLines("data"));
+  }
+
+  @Test
+  public void testEmptyFileIsNotInitialized() throws IOException {
+    CSVStreamReaderService emptyReader = createReader("");
+
+    Assert.assertEquals(0, emptyReader.getSheetNames().length);
+    try (DataRowCursor cursor = emptyReader.openCursor("data")) {
+      Assert.assertFalse(cursor.next());
+    }
+  }
+
+  private CSVStreamReaderService createReader(String content) throws IOException {
+    File file = folder.newFile();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+    MetaFile metaFile = new MetaFile();
+    metaFile.setFileName("data.csv");
+
+    CSVStreamReaderService csvReader =
+        new CSVStreamReaderService() {
+          @Override
+          protected File getFile(MetaFile input) {
+            return file;
+          }
+        };
+    csvReader.initialize(metaFile, ";");
+    return csvReader;
+  }
+}
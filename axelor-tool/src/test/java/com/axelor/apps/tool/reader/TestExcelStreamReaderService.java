@@ -0,0 +1,143 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.tool.reader;
+
+import com.axelor.meta.db.MetaFile;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestExcelStreamReaderService {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private ExcelStreamReaderService reader;
+
+  @Before
+  public void setUp() throws IOException {
+    File file = folder.newFile("data.xlsx");
+
+    try (XSSFWorkbook workbook = new XSSFWorkbook();
+        OutputStream out = new FileOutputStream(file)) {
+      XSSFSheet productSheet = workbook.createSheet("Products");
+      XSSFRow row = productSheet.createRow(0);
+      row.createCell(0).setCellValue("code");
+      row.createCell(1).setCellValue("name");
+      row.createCell(2).setCellValue("price");
+      // the name cell exists but is empty
+      row = productSheet.createRow(1);
+      row.createCell(0).setCellValue("P1");
+      row.createCell(1);
+      row.createCell(2).setCellValue(12.5);
+      // rows 2 and 3 are missing from the sheet
+      row = productSheet.createRow(4);
+      row.createCell(0).setCellValue("P2");
+      row.createCell(1).setCellValue("Second");
+      row.createCell(2).setCellValue(3);
+
+      XSSFSheet unitSheet = workbook.createSheet("Units");
+      row = unitSheet.createRow(0);
+      row.createCell(0).setCellValue("code");
+      row.createCell(1).setCellValue("active");
+      row = unitSheet.createRow(1);
+      row.createCell(0).setCellValue("KG");
+      row.createCell(1).setCellValue(true);
+      // only the last cell of the row is filled
+      row = unitSheet.createRow(2);
+      row.createCell(1).setCellValue(false);
+
+      workbook.write(out);
+    }
+
+    MetaFile metaFile = new MetaFile();
+    metaFile.setFileName(file.getName());
+
+    reader =
+        new ExcelStreamReaderService() {
+          @Override
+          protected File getFile(MetaFile input) {
+            return file;
+          }
+        };
+    Assert.assertTrue(reader.initialize(metaFile, null));
+  }
+
+  @After
+  public void tearDown() {
+    reader.close();
+  }
+
+  @Test
+  public void testSheetNames() {
+    Assert.assertArrayEquals(new String[] {"Products", "Units"}, reader.getSheetNames());
+  }
+
+  @Test
+  public void testCursorSkipsMissingRows() throws IOException {
+    try (DataRowCursor cursor = reader.openCursor("Products")) {
+      Assert.assertTrue(cursor.next());
+      Assert.assertEquals(0, cursor.getIndex());
+      // the strings repeated in both sheets are read from the shared strings
+      Assert.assertArrayEquals(new String[] {"code", "name", "price"}, cursor.getRow(0));
+      Assert.assertTrue(cursor.next());
+      Assert.assertEquals(1, cursor.getIndex());
+      Assert.assertArrayEquals(new String[] {"P1", null, "12.5"}, cursor.getRow(3));
+      Assert.assertTrue(cursor.next());
+      Assert.assertEquals(4, cursor.getIndex());
+      Assert.assertArrayEquals(new String[] {"P2", "Second", "3"}, cursor.getRow(3));
+      Assert.assertFalse(cursor.next());
+    }
+  }
+
+  @Test
+  public void testCursorOnSecondSheet() throws IOException {
+    try (DataRowCursor cursor = reader.openCursor("Units")) {
+      Assert.assertTrue(cursor.next());
+      Assert.assertArrayEquals(new String[] {"code", "active"}, cursor.getRow(0));
+      Assert.assertTrue(cursor.next());
+      Assert.assertArrayEquals(new String[] {"KG", "TRUE"}, cursor.getRow(0));
+      Assert.assertTrue(cursor.next());
+      Assert.assertArrayEquals(new String[] {null, "FALSE"}, cursor.getRow(0));
+      // padded to the header size
+      Assert.assertArrayEquals(new String[] {null, "FALSE", null}, cursor.getRow(3));
+      Assert.assertFalse(cursor.next());
+    }
+  }
+
+  @Test
+  public void testReadByIndex() {
+    Assert.assertNull(reader.read("Products", 2, 3));
+    Assert.assertEquals("P2", reader.read("Products", 4, 3)[0]);
+    Assert.assertEquals("KG", reader.read("Units", 1, 0)[0]);
+    // reading a previous row of the first sheet opens a new cursor
+    Assert.assertEquals("P1", reader.read("Products", 1, 3)[0]);
+    Assert.assertEquals(5, reader.getTotalLines("Products"));
+    Assert.assertEquals(3, reader.getTotalLines("Units"));
+    Assert.assertEquals(0, reader.getTotalLines("Unknown"));
+  }
+}